@@ -0,0 +1,107 @@
+package ai.tech5.finger.benchmark;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ai.tech5.finger.utils.GrayscaleImageKernel;
+import ai.tech5.sdk.abis.T5AirSnap.T5AirSnap;
+
+/**
+ * Java kernel against the native conversions it replaced, on the image sizes a capture produces.
+ * Run on a device with {@code ./gradlew :AirsnapFingerBenchmark:connectedReleaseAndroidTest}.
+ */
+@RunWith(Parameterized.class)
+public class GrayscaleImageKernelBenchmark {
+
+    private static final int PADDING_COLOR = 255;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<Object[]> sizes() {
+        return Arrays.asList(new Object[][]{
+                // segmented finger, the crop pads the width and cuts the height
+                {"finger_400x600_to_512x512", 400, 600, 512, 512},
+                // segmented finger already at the target size
+                {"finger_512x512_to_512x512", 512, 512, 512, 512},
+                // full slap at the analysis resolution
+                {"slap_1080x1920_to_1600x1600", 1080, 1920, 1600, 1600},
+        });
+    }
+
+    @Rule
+    public BenchmarkRule m_benchmarkRule = new BenchmarkRule();
+
+    private final int m_width;
+    private final int m_height;
+    private final int m_cropWidth;
+    private final int m_cropHeight;
+
+    private T5AirSnap m_cellSdk;
+    private byte[] m_image;
+    private byte[] m_cropped;
+
+    public GrayscaleImageKernelBenchmark(String name, int width, int height, int cropWidth, int cropHeight) {
+        this.m_width = width;
+        this.m_height = height;
+        this.m_cropWidth = cropWidth;
+        this.m_cropHeight = cropHeight;
+    }
+
+    @Before
+    public void setUp() {
+        m_cellSdk = new T5AirSnap(InstrumentationRegistry.getInstrumentation().getTargetContext());
+        m_image = createImage(m_width, m_height);
+        m_cropped = new byte[m_cropWidth * m_cropHeight];
+    }
+
+    @Test
+    public void cropKernel() {
+        BenchmarkState state = m_benchmarkRule.getState();
+        while (state.keepRunning()) {
+            GrayscaleImageKernel.cropImage(m_image, m_width, m_height, m_cropped, m_cropWidth, m_cropHeight, PADDING_COLOR);
+        }
+    }
+
+    @Test
+    public void cropNative() {
+        BenchmarkState state = m_benchmarkRule.getState();
+        while (state.keepRunning()) {
+            m_cellSdk.cropImage(m_image, m_width, m_height, m_cropped, m_cropWidth, m_cropHeight, PADDING_COLOR);
+        }
+    }
+
+    @Test
+    public void bmpKernel() {
+        BenchmarkState state = m_benchmarkRule.getState();
+        while (state.keepRunning()) {
+            GrayscaleImageKernel.convertRawToBmp(m_image, m_width, m_height);
+        }
+    }
+
+    @Test
+    public void bmpNative() {
+        BenchmarkState state = m_benchmarkRule.getState();
+        while (state.keepRunning()) {
+            m_cellSdk.convertRawToBmp(m_image, m_width, m_height);
+        }
+    }
+
+    private static byte[] createImage(int width, int height) {
+        byte[] image = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image[y * width + x] = (byte) (x * 7 + y * 13);
+            }
+        }
+        return image;
+    }
+}
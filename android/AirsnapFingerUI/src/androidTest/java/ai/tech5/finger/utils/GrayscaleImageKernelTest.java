@@ -0,0 +1,99 @@
+package ai.tech5.finger.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import ai.tech5.sdk.abis.T5AirSnap.T5AirSnap;
+
+/**
+ * The Java kernel must produce byte-identical output to the native conversions it replaces.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GrayscaleImageKernelTest {
+
+    // odd sizes, so BMP rows need padding and centring rounds
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 23;
+    private static final int PADDING_COLOR = 255;
+
+    private T5AirSnap m_cellSdk;
+    private byte[] m_image;
+
+    @Before
+    public void setUp() {
+        m_cellSdk = new T5AirSnap(InstrumentationRegistry.getInstrumentation().getTargetContext());
+        m_image = createImage(WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void cropMatchesNative() {
+        int[][] sizes = {
+                {WIDTH, HEIGHT},
+                {20, 10},   // crop both
+                {50, 40},   // pad both
+                {50, 10},   // pad width, crop height
+                {20, 40},   // crop width, pad height
+                {36, 22},   // off by one, centring rounds down
+        };
+
+        for (int[] size : sizes) {
+            byte[] expected = new byte[size[0] * size[1]];
+            byte[] actual = new byte[size[0] * size[1]];
+
+            assertEquals(m_cellSdk.cropImage(m_image, WIDTH, HEIGHT, expected, size[0], size[1], PADDING_COLOR),
+                    GrayscaleImageKernel.cropImage(m_image, WIDTH, HEIGHT, actual, size[0], size[1], PADDING_COLOR));
+            assertArrayEquals(size[0] + "x" + size[1], expected, actual);
+        }
+    }
+
+    @Test
+    public void cropIntoLargerScratchBufferMatchesNative() {
+        byte[] expected = new byte[20 * 10];
+        m_cellSdk.cropImage(m_image, WIDTH, HEIGHT, expected, 20, 10, PADDING_COLOR);
+
+        byte[] scratch = GrayscaleImageKernel.obtainScratchBuffer(50 * 40);
+        // a smaller request reuses the grown buffer
+        assertSame(scratch, GrayscaleImageKernel.obtainScratchBuffer(20 * 10));
+        GrayscaleImageKernel.cropImage(m_image, WIDTH, HEIGHT, scratch, 20, 10, PADDING_COLOR);
+
+        assertArrayEquals(expected, Arrays.copyOf(scratch, expected.length));
+    }
+
+    @Test
+    public void bmpMatchesNative() throws Exception {
+        int[][] sizes = {{WIDTH, HEIGHT}, {40, 20}, {1, 1}, {2, 3}};
+
+        for (int[] size : sizes) {
+            byte[] image = createImage(size[0], size[1]);
+            byte[] expected = m_cellSdk.convertRawToBmp(image, size[0], size[1]);
+
+            assertArrayEquals(size[0] + "x" + size[1], expected, GrayscaleImageKernel.convertRawToBmp(image, size[0], size[1]));
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hashed = GrayscaleImageKernel.convertRawToBmp(image, size[0], size[1], digest);
+            assertArrayEquals(expected, hashed);
+            assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(expected), digest.digest());
+        }
+    }
+
+    static byte[] createImage(int width, int height) {
+        byte[] image = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image[y * width + x] = (byte) (x * 7 + y * 13);
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,198 @@
+package ai.tech5.finger;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Size;
+
+/**
+ * Trades capture speed for heat and battery on long sessions. The device thermal status and the
+ * battery level are folded into a {@link Level}, each level caps the analysis rate and resolution,
+ * the quality/encode pool and the optional proprietary denoising. Callbacks arrive on the main
+ * thread, only when the level changes.
+ */
+final class CaptureGovernor
+{
+    interface Listener
+    {
+        void onLevelChanged(Level previous, Level level, String reason);
+    }
+
+    enum Level
+    {
+        //      min frame interval ms, analysis size, pool threads, denoise
+        NORMAL  (0,   new Size(1080, 1920), 10, true),
+        WARM    (66,  new Size(1080, 1920), 6,  true),
+        HOT     (125, new Size(720,  1280), 4,  false),
+        CRITICAL(250, new Size(720,  1280), 2,  false);
+
+        final long    minFrameIntervalNs;
+        final Size    analysisSize;
+        final int     poolSize;
+        final boolean denoiseAllowed;
+
+        Level(long minFrameIntervalMs, Size analysisSize, int poolSize, boolean denoiseAllowed)
+        {
+            this.minFrameIntervalNs = minFrameIntervalMs * 1_000_000L;
+            this.analysisSize       = analysisSize;
+            this.poolSize           = poolSize;
+            this.denoiseAllowed     = denoiseAllowed;
+        }
+    }
+
+    // battery percentages that count as warm / hot while not charging
+    private static final int BATTERY_LOW      = 15;
+    private static final int BATTERY_CRITICAL = 5;
+
+    private final Context      m_context;
+    private final Listener     m_listener;
+    private final PowerManager m_powerManager;
+
+    private int     m_thermalStatus = 0;
+    private int     m_batteryLevel  = 100;
+    private boolean m_charging      = true;
+    private volatile Level m_level  = Level.NORMAL;
+
+    private PowerManager.OnThermalStatusChangedListener m_thermalListener = null;
+
+    private final BroadcastReceiver m_batteryReceiver = new BroadcastReceiver()
+    {
+        @Override
+        public void onReceive(Context context, Intent intent)
+        {
+            onBatteryChanged(intent);
+        }
+    };
+
+    CaptureGovernor(Context context, Listener listener)
+    {
+        m_context      = context.getApplicationContext();
+        m_listener     = listener;
+        m_powerManager = (PowerManager) m_context.getSystemService(Context.POWER_SERVICE);
+    }
+
+    /**
+     * Reads the current state without notifying, so the capture can start at the right level.
+     * Main thread only.
+     */
+    void start()
+    {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && m_powerManager != null)
+        {
+            m_thermalStatus   = m_powerManager.getCurrentThermalStatus();
+            m_thermalListener = new PowerManager.OnThermalStatusChangedListener()
+            {
+                @Override
+                public void onThermalStatusChanged(int status)
+                {
+                    m_thermalStatus = status;
+                    update();
+                }
+            };
+            m_powerManager.addThermalStatusListener(m_thermalListener);
+        }
+
+        // the battery broadcast is sticky, its last value comes back right away
+        Intent battery = m_context.registerReceiver(m_batteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null)
+        {
+            readBattery(battery);
+        }
+
+        m_level = computeLevel();
+    }
+
+    void stop()
+    {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && m_thermalListener != null)
+        {
+            m_powerManager.removeThermalStatusListener(m_thermalListener);
+            m_thermalListener = null;
+        }
+
+        try
+        {
+            m_context.unregisterReceiver(m_batteryReceiver);
+        }
+        catch (IllegalArgumentException e)
+        {
+            // not registered, start() wasn't called
+        }
+    }
+
+    Level getLevel()
+    {
+        return m_level;
+    }
+
+    private void onBatteryChanged(Intent intent)
+    {
+        readBattery(intent);
+        update();
+    }
+
+    private void readBattery(Intent intent)
+    {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        if (level >= 0 && scale > 0)
+        {
+            m_batteryLevel = level * 100 / scale;
+        }
+
+        m_charging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    private void update()
+    {
+        Level previous = m_level;
+        Level level    = computeLevel();
+        if (level == previous)
+        {
+            return;
+        }
+
+        m_level = level;
+        m_listener.onLevelChanged(previous, level,
+                "thermal " + m_thermalStatus + ", battery " + m_batteryLevel + "%" + (m_charging ? " charging" : ""));
+    }
+
+    private Level computeLevel()
+    {
+        Level level;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || m_thermalStatus <= PowerManager.THERMAL_STATUS_LIGHT)
+        {
+            level = Level.NORMAL;
+        }
+        else if (m_thermalStatus == PowerManager.THERMAL_STATUS_MODERATE)
+        {
+            level = Level.WARM;
+        }
+        else if (m_thermalStatus == PowerManager.THERMAL_STATUS_SEVERE)
+        {
+            level = Level.HOT;
+        }
+        else
+        {
+            level = Level.CRITICAL;
+        }
+
+        if (!m_charging)
+        {
+            if (m_batteryLevel <= BATTERY_CRITICAL && level.ordinal() < Level.HOT.ordinal())
+            {
+                level = Level.HOT;
+            }
+            else if (m_batteryLevel <= BATTERY_LOW && level.ordinal() < Level.WARM.ordinal())
+            {
+                level = Level.WARM;
+            }
+        }
+
+        return level;
+    }
+}
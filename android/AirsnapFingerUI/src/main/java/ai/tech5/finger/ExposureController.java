@@ -0,0 +1,194 @@
+package ai.tech5.finger;
+
+import android.util.Range;
+
+import androidx.camera.core.CameraControl;
+import androidx.camera.core.ImageProxy;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Steers the exposure compensation from a luminance histogram of the finger region. Only frames
+ * with fingers in the border are fed in; the index moves one step at a time, only after the
+ * image has been too dark or too bright for a few frames in a row, and waits for the camera to
+ * apply a change (or a torch switch) before judging again. Analyzer thread only, apart from
+ * {@link #setRegion} which the UI thread calls before the first frame.
+ */
+final class ExposureController
+{
+    private static final int SAMPLE_STEP = 4;
+
+    // median below / above these is too dark / too bright, the band between them is left alone
+    private static final int DARK_MEDIAN   = 80;
+    private static final int BRIGHT_MEDIAN = 170;
+    private static final int CLIP_LEVEL    = 250;
+    // share of clipped samples that counts as too bright, and that blocks brightening
+    private static final float CLIPPED_TOO_BRIGHT = 0.05f;
+    private static final float CLIPPED_MAX        = 0.01f;
+
+    private static final int CONFIRM_FRAMES = 2;
+    private static final int SETTLE_FRAMES  = 4;
+
+    private final CameraControl  m_cameraControl;
+    private final Range<Integer> m_range;
+    private int m_index;
+
+    private final int[] m_histogram = new int[256];
+
+    // finger region as fractions of the upright image
+    private volatile float m_regionLeft   = 0.25f;
+    private volatile float m_regionTop    = 0.25f;
+    private volatile float m_regionRight  = 0.75f;
+    private volatile float m_regionBottom = 0.75f;
+
+    private int m_settleFrames = SETTLE_FRAMES;
+    private int m_direction    = 0;
+    private int m_streak       = 0;
+
+    ExposureController(CameraControl cameraControl, Range<Integer> range, int initialIndex)
+    {
+        m_cameraControl = cameraControl;
+        m_range         = range;
+        m_index         = initialIndex;
+    }
+
+    /**
+     * Meters the border rectangle of a {@code width} x {@code height} overlay.
+     */
+    void setRegion(int left, int top, int right, int bottom, int width, int height)
+    {
+        if (width <= 0 || height <= 0 || right <= left || bottom <= top)
+        {
+            return;
+        }
+
+        m_regionLeft   = (float) left   / width;
+        m_regionTop    = (float) top    / height;
+        m_regionRight  = (float) right  / width;
+        m_regionBottom = (float) bottom / height;
+    }
+
+    /**
+     * The torch changes the scene far more than one compensation step, start over after it.
+     */
+    void onTorchChanged()
+    {
+        m_settleFrames = SETTLE_FRAMES;
+        m_streak       = 0;
+    }
+
+    void onFrame(ImageProxy image)
+    {
+        if (m_settleFrames > 0)
+        {
+            m_settleFrames--;
+            return;
+        }
+
+        int samples = computeHistogram(image);
+        if (samples == 0)
+        {
+            return;
+        }
+
+        int clipped = 0;
+        for (int i = CLIP_LEVEL; i < 256; i++)
+        {
+            clipped += m_histogram[i];
+        }
+
+        int median = 0;
+        for (int count = 0; median < 255; median++)
+        {
+            count += m_histogram[median];
+            if (2 * count >= samples)
+            {
+                break;
+            }
+        }
+
+        float clippedShare = (float) clipped / samples;
+
+        int direction = 0;
+        if (median > BRIGHT_MEDIAN || clippedShare > CLIPPED_TOO_BRIGHT)
+        {
+            direction = -1;
+        }
+        else if (median < DARK_MEDIAN && clippedShare < CLIPPED_MAX)
+        {
+            direction = 1;
+        }
+
+        if (direction == 0 || direction != m_direction)
+        {
+            m_direction = direction;
+            m_streak    = direction == 0 ? 0 : 1;
+            return;
+        }
+
+        if (++m_streak < CONFIRM_FRAMES)
+        {
+            return;
+        }
+
+        int index = m_index + direction;
+        if (!m_range.contains(index))
+        {
+            return;
+        }
+
+        m_index        = index;
+        m_streak       = 0;
+        m_settleFrames = SETTLE_FRAMES;
+        m_cameraControl.setExposureCompensationIndex(index);
+    }
+
+    /**
+     * Subsampled histogram of the Y plane inside the region, returns the number of samples.
+     */
+    private int computeHistogram(ImageProxy image)
+    {
+        ImageProxy.PlaneProxy plane = image.getPlanes()[0];
+        ByteBuffer buffer      = plane.getBuffer();
+        int        rowStride   = plane.getRowStride();
+        int        pixelStride = plane.getPixelStride();
+        int        width       = image.getWidth();
+        int        height      = image.getHeight();
+
+        // the region is upright, the plane is in sensor orientation
+        float left   = m_regionLeft;
+        float top    = m_regionTop;
+        float right  = m_regionRight;
+        float bottom = m_regionBottom;
+        float x0, y0, x1, y1;
+        switch (image.getImageInfo().getRotationDegrees())
+        {
+            case 90:  x0 = top;        y0 = 1 - right;  x1 = bottom;     y1 = 1 - left;   break;
+            case 180: x0 = 1 - right;  y0 = 1 - bottom; x1 = 1 - left;   y1 = 1 - top;    break;
+            case 270: x0 = 1 - bottom; y0 = left;       x1 = 1 - top;    y1 = right;      break;
+            default:  x0 = left;       y0 = top;        x1 = right;      y1 = bottom;     break;
+        }
+
+        int startX = Math.max(0, (int) (x0 * width));
+        int startY = Math.max(0, (int) (y0 * height));
+        int endX   = Math.min(width,  (int) (x1 * width));
+        int endY   = Math.min(height, (int) (y1 * height));
+
+        int[] histogram = m_histogram;
+        Arrays.fill(histogram, 0);
+
+        int samples = 0;
+        for (int y = startY; y < endY; y += SAMPLE_STEP)
+        {
+            int offset = y * rowStride;
+            for (int x = startX; x < endX; x += SAMPLE_STEP)
+            {
+                histogram[buffer.get(offset + x * pixelStride) & 0xFF]++;
+                samples++;
+            }
+        }
+
+        return samples;
+    }
+}
@@ -2,48 +2,21 @@ package ai.tech5.finger;
 
 import static androidx.camera.core.ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST;
 import static java.lang.Math.round;
-import static ai.tech5.finger.utils.Constants.CAPTURE_SPEED;
-import static ai.tech5.finger.utils.Constants.CLEAN_FINGERPRINTS;
-import static ai.tech5.finger.utils.Constants.DETECTOR_THRESHOLD;
-import static ai.tech5.finger.utils.Constants.EXTRA_SHOW_BACK_BUTTON;
-import static ai.tech5.finger.utils.Constants.IS_GET_NIST2_QUALITY;
-import static ai.tech5.finger.utils.Constants.IS_GET_NIST_QUALITY;
-import static ai.tech5.finger.utils.Constants.LIVENESS_CHECK;
-import static ai.tech5.finger.utils.Constants.MISSING_FINGERS;
-import static ai.tech5.finger.utils.Constants.ORIENTATION_CHECK;
-import static ai.tech5.finger.utils.Constants.OUTSIDE_CAPTURE_FLAG;
-import static ai.tech5.finger.utils.Constants.PAGE_TITLE;
-import static ai.tech5.finger.utils.Constants.PROJECT_TOKEN;
-import static ai.tech5.finger.utils.Constants.PROP_DENOISE;
-import static ai.tech5.finger.utils.Constants.SEGMENTATION_MODES;
-import static ai.tech5.finger.utils.Constants.SEGMENTED_IMAGE_CONFIG;
-import static ai.tech5.finger.utils.Constants.SHOW_BOUNDING_BOXES;
-import static ai.tech5.finger.utils.Constants.SLAP_IMAGE_CONFIG;
-import static ai.tech5.finger.utils.Constants.TIME_OUT;
+import static ai.tech5.finger.utils.Constants.KIOSK_MODE;
 import static ai.tech5.finger.utils.ModelsUtil.extractModels;
 import static ai.tech5.sdk.abis.T5AirSnap.CaptureStatus.bestFrameChosen;
-import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_L_AND_R_THUMBS;
-import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_L_INDEX_F;
 import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_L_LITTLE_F;
 import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_L_MIDDLE_F;
 import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_L_RING_F;
-import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_L_THUMB;
 import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_R_INDEX_F;
 import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_R_LITTLE_F;
-import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_R_MIDDLE_F;
 import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_R_RING_F;
-import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_R_THUMB;
 
 import android.annotation.SuppressLint;
 import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
@@ -61,7 +34,6 @@ import android.util.SizeF;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.WindowManager;
-import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
@@ -80,6 +52,7 @@ import androidx.camera.core.ImageProxy;
 import androidx.camera.core.MeteringPoint;
 import androidx.camera.core.Preview;
 import androidx.camera.core.SurfaceOrientedMeteringPointFactory;
+import androidx.camera.core.TorchState;
 import androidx.camera.core.ZoomState;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
@@ -88,6 +61,8 @@ import androidx.core.content.ContextCompat;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -96,20 +71,31 @@ import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import ai.tech5.finger.utils.AirsnapUtils;
-import ai.tech5.finger.utils.CaptureObjectNameUtil;
+import ai.tech5.finger.utils.CancellationToken;
+import ai.tech5.finger.utils.CaptureCheckpointStore;
+import ai.tech5.finger.utils.CaptureMemoryWatchdog;
+import ai.tech5.finger.utils.DeviceCalibration;
 import ai.tech5.finger.utils.DeviceChecker;
+import ai.tech5.finger.utils.EncodedImage;
+import ai.tech5.finger.utils.FingerPositionTable;
 import ai.tech5.finger.utils.Finger;
+import ai.tech5.finger.utils.FingerCaptureProfile;
 import ai.tech5.finger.utils.FingerCaptureResult;
+import ai.tech5.finger.utils.FingerTemplateContainer;
 import ai.tech5.finger.utils.ImageConfiguration;
+import ai.tech5.finger.utils.ImageType;
+import ai.tech5.finger.utils.KioskCaptureHost;
 import ai.tech5.finger.utils.LivenessScore;
 import ai.tech5.finger.utils.Logger;
 import ai.tech5.finger.utils.MyExceptionHandler;
 import ai.tech5.finger.utils.Quality;
 import ai.tech5.finger.utils.RawSlap;
+import ai.tech5.finger.utils.RawSlapSpillFile;
 import ai.tech5.finger.utils.Slap;
 import ai.tech5.finger.utils.T5FingerCaptureController;
 import ai.tech5.sdk.abis.T5AirSnap.CaptureStatus;
@@ -118,10 +104,12 @@ import ai.tech5.sdk.abis.T5AirSnap.SgmRectImage;
 import ai.tech5.sdk.abis.T5AirSnap.T5AirSnap;
 
 
-public class FingerCaptureActivity extends AppCompatActivity {
+public class FingerCaptureActivity extends AppCompatActivity implements KioskCaptureHost {
 
 
     private static final String TAG = FingerCaptureActivity.class.getSimpleName();
+    private static final String CHECKPOINT_FILE_NAME = "capture_checkpoint.bin";
+    private static final String SPILL_FILE_NAME = "capture_slaps.bin";
 
     private T5AirSnap m_cellSdk = null;
 
@@ -139,7 +127,6 @@ public class FingerCaptureActivity extends AppCompatActivity {
 
     ArrayList<RawSlap> slaps = new ArrayList<>();
 
-    private ImageView m_transparentImageView;
 
 
     private FingerCaptureResult captureResult = null;
@@ -171,6 +158,13 @@ public class FingerCaptureActivity extends AppCompatActivity {
     int posIndex = 0;
 
     private GraphicOverlay m_graphicOverlay;
+    private OverlayDispatcher m_overlayDispatcher;
+    // resolved once, the analyzer picks one per frame
+    private int m_borderErrorColor;
+    private int m_borderInfoColor;
+    private int m_borderPassColor;
+    // status texts of every position, formatted once for the current locale
+    private FingerPositionTable.Labels m_positionLabels;
     private ProgressDialog m_progressDialog;
     private TextView txtStatus;
     private CountDownTimer countDownTimer = null;
@@ -180,38 +174,46 @@ public class FingerCaptureActivity extends AppCompatActivity {
     private AirsnapUtils airsnapUtils;
 
 
-    private final AtomicBoolean m_zoomApplied = new AtomicBoolean(false);
-    private long  m_setZoomTime = 0;
+    // analysis resumes on the first frame captured with the requested zoom
+    private final ZoomSettleTracker m_zoomTracker = new ZoomSettleTracker();
+    // null when the camera has no exposure compensation
+    private volatile ExposureController m_exposureController = null;
 
+    // steps capture work down as the device heats up or the battery runs low
+    private CaptureGovernor m_captureGovernor = null;
+    private volatile CaptureGovernor.Level m_governorLevel = CaptureGovernor.Level.NORMAL;
+    // measured limits of this device, null until it has been calibrated
+    private DeviceCalibration.DeviceProfile m_deviceProfile = null;
+    // analyzer thread only
+    private long m_lastAnalyzedTimestamp = 0;
+    private final AtomicBoolean m_resultDelivered = new AtomicBoolean(false);
 
-    public static void start(Context context, String projectToken, ArrayList<Integer> segmentationModes,
-                             boolean orientationCheck,
-                             boolean m_showBoundingBoxes, ImageConfiguration segmentedFingerConfiguration,
-                             ImageConfiguration slapConfiguration, boolean m_livenessCheck, boolean isGetNist2Quality,
-                             boolean isGetNistQuality, float captureSpeed, boolean propDenoise, boolean cleanFingerPrints,
-                             ArrayList<Integer> missingFingers, String title,
-                             boolean showBackButton,
-                             int timeout, float detectorThreshold,
-                             boolean outsideCapture) {
+    // latest goodFocus frame of the position in progress, returned on timeout
+    private RawSlap m_candidateFrame = null;
+
+    private CaptureCheckpointStore m_checkpointStore = null;
+
+    // raw slaps of completed positions move here when the subject goes over its memory budget
+    private RawSlapSpillFile m_spillFile = null;
+    private CaptureMemoryWatchdog m_memoryWatchdog = new CaptureMemoryWatchdog();
+
+    // cancelled when the subject is abandoned, stops its quality and encode work
+    private volatile CancellationToken m_cancellationToken = new CancellationToken();
+
+    // kiosk mode keeps the SDK and camera alive between subjects, frames are dropped while idle
+    private boolean m_kioskMode = false;
+    private volatile boolean m_kioskIdle = false;
+    private boolean m_nfiq2Initialized = false;
+    private boolean m_livenessInitialized = false;
+
+
+    /**
+     * Captures with {@link T5FingerCaptureController#getLaunchProfile()}, the profile is handed over
+     * in-process instead of through Intent extras.
+     */
+    public static void start(Context context, boolean kioskMode) {
         Intent intent = new Intent(context, FingerCaptureActivity.class);
-        intent.putExtra(PROJECT_TOKEN, projectToken);
-        intent.putExtra(SHOW_BOUNDING_BOXES, m_showBoundingBoxes);
-        intent.putExtra(SEGMENTED_IMAGE_CONFIG, segmentedFingerConfiguration);
-        intent.putExtra(SLAP_IMAGE_CONFIG, slapConfiguration);
-        intent.putExtra(LIVENESS_CHECK, m_livenessCheck);
-        intent.putExtra(IS_GET_NIST2_QUALITY, isGetNist2Quality);
-        intent.putExtra(IS_GET_NIST_QUALITY, isGetNistQuality);
-        intent.putExtra(SEGMENTATION_MODES, segmentationModes);
-        intent.putExtra(ORIENTATION_CHECK, orientationCheck);
-        intent.putExtra(PAGE_TITLE, title);
-        intent.putExtra(EXTRA_SHOW_BACK_BUTTON, showBackButton);
-        intent.putExtra(TIME_OUT, timeout);
-        intent.putExtra(DETECTOR_THRESHOLD, detectorThreshold);
-        intent.putExtra(CAPTURE_SPEED, captureSpeed);
-        intent.putExtra(PROP_DENOISE, propDenoise);
-        intent.putExtra(CLEAN_FINGERPRINTS, cleanFingerPrints);
-        intent.putIntegerArrayListExtra(MISSING_FINGERS, missingFingers);
-        intent.putExtra(OUTSIDE_CAPTURE_FLAG, outsideCapture);
+        intent.putExtra(KIOSK_MODE, kioskMode);
 
         context.startActivity(intent);
     }
@@ -226,29 +228,37 @@ public class FingerCaptureActivity extends AppCompatActivity {
 
         Intent intent = getIntent();
 
+        FingerCaptureProfile profile = T5FingerCaptureController.getInstance().getLaunchProfile();
+        if (profile == null) {
+            // the process was recreated and the in-process capture profile is gone. The caller's
+            // promise died with it, so nobody is waiting; the checkpoint is kept and a new capture
+            // of the same subject resumes from it
+            Log.d(TAG, "no capture profile, finishing");
+            finish();
+            return;
+        }
+
         //[] m_nistQuality     = new byte[4];
-        String projectToken = intent.getStringExtra(PROJECT_TOKEN);
-        this.m_showBoundingBoxes = intent.getBooleanExtra(SHOW_BOUNDING_BOXES, false);
-        this.segmentedFingerImageConfiguration = intent.getParcelableExtra(SEGMENTED_IMAGE_CONFIG);
-        this.slapImageConfiguration = intent.getParcelableExtra(SLAP_IMAGE_CONFIG);
-        this.m_livenessCheck = intent.getBooleanExtra(LIVENESS_CHECK, false);
-        this.m_getNistQuality = intent.getBooleanExtra(IS_GET_NIST_QUALITY, false);
-        this.m_getNist2Quality = intent.getBooleanExtra(IS_GET_NIST2_QUALITY, false);
-        float detectorThreshold = intent.getFloatExtra(DETECTOR_THRESHOLD, 0.9F);
-        segmentationModes = intent.getIntegerArrayListExtra(SEGMENTATION_MODES);
+        String projectToken = profile.getProjectToken();
+        this.m_showBoundingBoxes = profile.isShowBoundingBoxes();
+        this.segmentedFingerImageConfiguration = profile.getSegmentedFingerImageConfiguration();
+        this.slapImageConfiguration = profile.getSlapImageConfiguration();
+        this.m_livenessCheck = profile.isLivenessCheck();
+        this.m_getNistQuality = profile.isGetNistQuality();
+        this.m_getNist2Quality = profile.isGetNist2Quality();
+        float detectorThreshold = profile.getDetectorThreshold();
+        segmentationModes = new ArrayList<>(profile.getSegmentationModes());
         m_positionCode = segmentationModes.get(posIndex);
 
-        boolean m_orientationCheck = intent.getBooleanExtra(ORIENTATION_CHECK, true);
-        this.timeout = intent.getIntExtra(TIME_OUT, 60);
+        boolean m_orientationCheck = profile.isOrientationCheck();
+        this.timeout = profile.getTimeoutInSecs();
 
-        float m_captureSpeed = intent.getFloatExtra(CAPTURE_SPEED, 0.0f);
-        this.m_propDenoise = intent.getBooleanExtra(PROP_DENOISE, false);
-        this.m_cleanFingerPrints = intent.getBooleanExtra(CLEAN_FINGERPRINTS, false);
-        this.missingFingers = intent.getIntegerArrayListExtra(MISSING_FINGERS);
-        this.m_outsideCapture = intent.getBooleanExtra(OUTSIDE_CAPTURE_FLAG, false);
-        if (this.missingFingers == null) {
-            this.missingFingers = new ArrayList<>();
-        }
+        float m_captureSpeed = profile.getCaptureSpeed();
+        this.m_propDenoise = profile.isPropDenoise();
+        this.m_cleanFingerPrints = profile.isCleanFingerPrints();
+        this.missingFingers = new ArrayList<>(profile.getMissingFingers());
+        this.m_outsideCapture = profile.isOutsideCapture();
+        this.m_kioskMode = intent.getBooleanExtra(KIOSK_MODE, false);
 
 
         setContentView(R.layout.activity_finger_capture);
@@ -256,12 +266,22 @@ public class FingerCaptureActivity extends AppCompatActivity {
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
 
-        int m_poolSize = 10;
+        this.m_captureGovernor = new CaptureGovernor(this, this::onGovernorLevelChanged);
+        this.m_captureGovernor.start();
+        this.m_governorLevel = m_captureGovernor.getLevel();
+
+        this.m_deviceProfile = DeviceCalibration.load(this);
+
+        int m_poolSize = getPoolSize(m_governorLevel);
         m_service = Executors.newFixedThreadPool(m_poolSize);
-        this.m_transparentImageView = findViewById(R.id.iv_transparent_view);
         this.m_viewFinder = findViewById(R.id.view_finder);
         this.m_graphicOverlay = findViewById(R.id.graphic_overlay);
         this.txtStatus = findViewById(R.id.txt_status);
+        this.m_overlayDispatcher = new OverlayDispatcher(m_graphicOverlay, txtStatus);
+        this.m_borderErrorColor = getResources().getColor(R.color.border_color_error);
+        this.m_borderInfoColor = getResources().getColor(R.color.border_color_info);
+        this.m_borderPassColor = getResources().getColor(R.color.border_color_pass);
+        this.m_positionLabels = FingerPositionTable.getLabels(getResources());
 
 
         this.m_logFile = createLogFile();
@@ -271,11 +291,11 @@ public class FingerCaptureActivity extends AppCompatActivity {
         if (actionBar != null) {
             actionBar.setTitle(getResources().getString(R.string.title));
 
-            if (getIntent().getStringExtra("PAGE_TITLE") != null) {
-                actionBar.setTitle(getIntent().getStringExtra("PAGE_TITLE"));
+            if (profile.getTitle() != null) {
+                actionBar.setTitle(profile.getTitle());
             }
 
-            boolean showBackButton = getIntent().getBooleanExtra(EXTRA_SHOW_BACK_BUTTON, false);
+            boolean showBackButton = profile.isShowBackButton();
 
             if (showBackButton) {
                 getSupportActionBar().setDisplayHomeAsUpEnabled(true);
@@ -333,15 +353,19 @@ public class FingerCaptureActivity extends AppCompatActivity {
         }
         Logger.addToLog(TAG, "init SDK success: detectr threshold " + detectorThreshold, this.m_logFile);
 
+        this.m_nfiq2Initialized = m_getNist2Quality;
+        this.m_livenessInitialized = m_livenessCheck;
+
         m_cellSdk.setPositionCode(this.m_positionCode);
         m_cellSdk.setLivenessCheck(this.m_livenessCheck);
         m_cellSdk.setOrientationCheck(m_orientationCheck);
         m_cellSdk.setDetectorThreshold(detectorThreshold);
 
         Logger.addToLog(TAG, "clean " + m_cleanFingerPrints + ", denoise " + m_propDenoise + ", capSpeed :" + m_captureSpeed, this.m_logFile);
+        Logger.addToLog(TAG, "governor level " + m_governorLevel, this.m_logFile);
 
         m_cellSdk.setSaveFramesFlag(false);
-        m_cellSdk.setPropDenoiseFlag(m_propDenoise);
+        m_cellSdk.setPropDenoiseFlag(isPropDenoiseEnabled());
         m_cellSdk.setCaptureSpeed(m_captureSpeed);
         m_cellSdk.setOutsideCaptureFlag(m_outsideCapture);
 
@@ -353,6 +377,20 @@ public class FingerCaptureActivity extends AppCompatActivity {
             dir.mkdirs();
         }
 
+        try {
+            this.m_spillFile = new RawSlapSpillFile(new File(getCacheDir(), SPILL_FILE_NAME));
+        } catch (IOException e) {
+            // slaps just stay on the heap
+            Logger.logException(TAG, e, this.m_logFile);
+        }
+
+        // internal storage, the checkpoint holds raw fingerprints of the subject
+        this.m_checkpointStore = new CaptureCheckpointStore(new File(getFilesDir(), CHECKPOINT_FILE_NAME),
+                T5FingerCaptureController.getInstance().getCheckpointKey(), profile.getSubjectId(), segmentationModes);
+        if (!m_kioskMode) {
+            restoreCheckpoint();
+        }
+
 
         this.m_cameraExecutorService = Executors.newFixedThreadPool(1);
 
@@ -373,7 +411,131 @@ public class FingerCaptureActivity extends AppCompatActivity {
         this.airsnapUtils = new AirsnapUtils(m_cellSdk, m_service);
 
 
-        initCountDownTimer();
+        if (m_kioskMode) {
+            m_kioskIdle = true;
+            setStatus(getResources().getString(R.string.label_kiosk_waiting));
+
+            FingerCaptureProfile pendingSubject = T5FingerCaptureController.getInstance().registerKioskHost(this);
+            if (pendingSubject != null) {
+                startSubject(pendingSubject);
+            }
+        } else {
+            initCountDownTimer();
+        }
+    }
+
+
+    @Override
+    public void startSubject(FingerCaptureProfile subject) {
+        // the analyzer executor is single threaded, so the previous subject is fully done here
+        m_cameraExecutorService.execute(() -> {
+            String errorMessage = applyKioskSubject(subject);
+
+            runOnUiThread(() -> {
+                if (errorMessage != null) {
+                    T5FingerCaptureController.getInstance().getFingerCapturedListener().onFailure(errorMessage);
+                    return;
+                }
+
+                setStatus("");
+                m_kioskIdle = false;
+
+                if (this.countDownTimer != null) {
+                    this.countDownTimer.cancel();
+                }
+                initCountDownTimer();
+            });
+        });
+    }
+
+    @Override
+    public void endKiosk() {
+        finish();
+    }
+
+    /**
+     * Applies the per-subject part of {@code subject}; SDK level settings stay as the kiosk was started.
+     */
+    private String applyKioskSubject(FingerCaptureProfile subject) {
+        if (subject.isGetNist2Quality() && !m_nfiq2Initialized) {
+            if (m_cellSdk.initNfiq2() != 0) {
+                return "init NFIQ2 failed";
+            }
+            m_nfiq2Initialized = true;
+        }
+
+        if (subject.isLivenessCheck() && !m_livenessInitialized) {
+            if (m_cellSdk.initLivenessDetector() != 0) {
+                return "init Liveness detector failed";
+            }
+            m_livenessInitialized = true;
+        }
+
+        this.segmentationModes = new ArrayList<>(subject.getSegmentationModes());
+        this.segmentedFingerImageConfiguration = subject.getSegmentedFingerImageConfiguration();
+        this.slapImageConfiguration = subject.getSlapImageConfiguration();
+        this.missingFingers = new ArrayList<>(subject.getMissingFingers());
+        this.m_livenessCheck = subject.isLivenessCheck();
+        this.m_getNistQuality = subject.isGetNistQuality();
+        this.m_getNist2Quality = subject.isGetNist2Quality();
+        this.timeout = subject.getTimeoutInSecs();
+
+        this.posIndex = 0;
+        this.m_positionCode = segmentationModes.get(posIndex);
+        this.segmentedRects.clear();
+        this.slaps.clear();
+        // the previous result still references these, so they are replaced rather than cleared
+        this.livenessScoresList = new ArrayList<>();
+        this.nistQualitiesMap = new HashMap<>();
+        this.nist2QualitiesMap = new HashMap<>();
+        this.captureResult = new FingerCaptureResult();
+        this.m_candidateFrame = null;
+        this.m_cancellationToken = new CancellationToken();
+        this.m_memoryWatchdog = new CaptureMemoryWatchdog();
+        if (m_spillFile != null) {
+            m_spillFile.reset();
+        }
+
+        m_cellSdk.setPositionCode(m_positionCode);
+        m_cellSdk.setLivenessCheck(m_livenessCheck);
+
+        this.m_checkpointStore.startSubject(subject.getSubjectId(), segmentationModes);
+
+        m_resultDelivered.set(false);
+        return null;
+    }
+
+    /**
+     * Ends the current subject: the activity finishes, or in kiosk mode the camera is rebound and
+     * frames are dropped until the next subject starts.
+     */
+    private void completeSubject() {
+        if (m_checkpointStore != null) {
+            m_checkpointStore.clear();
+        }
+
+        if (!m_kioskMode) {
+            finish();
+            return;
+        }
+
+        m_kioskIdle = true;
+        hideProgress();
+
+        m_viewFinder.setVisibility(View.VISIBLE);
+        m_graphicOverlay.setVisibility(View.VISIBLE);
+
+        setStatus(getResources().getString(R.string.label_kiosk_waiting));
+
+        if (m_cameraProvider == null) {
+            return;
+        }
+
+        bindCameraUseCases();
+        @SuppressLint("RestrictedApi") Size size = m_imageAnalyzer.getAttachedSurfaceResolution();
+        if (size != null) {
+            initBorder(size.getHeight(), size.getWidth());
+        }
     }
 
 
@@ -390,10 +552,12 @@ public class FingerCaptureActivity extends AppCompatActivity {
                 } catch (Exception exception) {
                 }
 
-                FingerCaptureActivity.this.hideProgress();
-                T5FingerCaptureController.getInstance().getFingerCapturedListener().onTimedout();
-                FingerCaptureActivity.this.finish();
-
+                // the analyzer executor is single threaded, so this runs after any in-flight frame
+                try {
+                    m_cameraExecutorService.execute(FingerCaptureActivity.this::deliverPartialResult);
+                } catch (Exception exception) {
+                    deliverPartialResult();
+                }
             }
         };
 
@@ -419,20 +583,82 @@ public class FingerCaptureActivity extends AppCompatActivity {
             }
 
 
-            // Build and bind the camera use cases
-            bindCameraUseCases();
+            bindCameraAndBorder();
 
-            @SuppressLint("RestrictedApi") Size size = m_imageAnalyzer.getAttachedSurfaceResolution();
-            @SuppressLint("RestrictedApi") Size previewSize = m_preview.getAttachedSurfaceResolution();
+        }, ContextCompat.getMainExecutor(FingerCaptureActivity.this));
 
-            Logger.addToLog(TAG, "preview size " + previewSize, m_logFile);
-            Logger.addToLog(TAG, "analyze size " + size, m_logFile);
 
-            initBorder(size.getHeight(), size.getWidth());
+    }
 
-        }, ContextCompat.getMainExecutor(FingerCaptureActivity.this));
+    private void bindCameraAndBorder() {
+        // Build and bind the camera use cases
+        bindCameraUseCases();
 
+        @SuppressLint("RestrictedApi") Size size = m_imageAnalyzer.getAttachedSurfaceResolution();
+        @SuppressLint("RestrictedApi") Size previewSize = m_preview.getAttachedSurfaceResolution();
 
+        Logger.addToLog(TAG, "preview size " + previewSize, m_logFile);
+        Logger.addToLog(TAG, "analyze size " + size, m_logFile);
+
+        initBorder(size.getHeight(), size.getWidth());
+    }
+
+    /**
+     * The governor's pool size, capped by what calibration found this device to gain from.
+     */
+    private int getPoolSize(CaptureGovernor.Level level) {
+        return m_deviceProfile != null ? Math.min(level.poolSize, m_deviceProfile.poolSize) : level.poolSize;
+    }
+
+    private Size getAnalysisSize(CaptureGovernor.Level level) {
+        Size size = level.analysisSize;
+        if (m_deviceProfile != null && m_deviceProfile.analysisWidth * m_deviceProfile.analysisHeight < size.getWidth() * size.getHeight()) {
+            return new Size(m_deviceProfile.analysisWidth, m_deviceProfile.analysisHeight);
+        }
+        return size;
+    }
+
+    private boolean isPropDenoiseEnabled() {
+        return m_propDenoise && m_governorLevel.denoiseAllowed;
+    }
+
+    /**
+     * Main thread. Pool size and frame rate change in place, the analysis size and the noise
+     * reduction request option need the camera to be bound again.
+     */
+    private void onGovernorLevelChanged(CaptureGovernor.Level previous, CaptureGovernor.Level level, String reason) {
+        Logger.addToLog(TAG, "governor " + previous + " -> " + level + " (" + reason + ")", m_logFile);
+
+        boolean wasDenoiseEnabled = isPropDenoiseEnabled();
+        m_governorLevel = level;
+
+        if (m_service instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) m_service;
+            // the core size may never exceed the maximum, order the two calls accordingly
+            int poolSize = getPoolSize(level);
+            if (poolSize < pool.getCorePoolSize()) {
+                pool.setCorePoolSize(poolSize);
+                pool.setMaximumPoolSize(poolSize);
+            } else {
+                pool.setMaximumPoolSize(poolSize);
+                pool.setCorePoolSize(poolSize);
+            }
+        }
+
+        boolean denoiseEnabled = isPropDenoiseEnabled();
+        if (denoiseEnabled != wasDenoiseEnabled && m_cellSdk != null) {
+            // the SDK is driven from the analyzer thread
+            m_cameraExecutorService.execute(() -> {
+                if (m_cellSdk != null) {
+                    m_cellSdk.setPropDenoiseFlag(denoiseEnabled);
+                }
+            });
+        }
+
+        if (m_cameraProvider != null && !isFinishing()
+                && (denoiseEnabled != wasDenoiseEnabled || !getAnalysisSize(level).equals(getAnalysisSize(previous)))) {
+            bindCameraAndBorder();
+        }
     }
 
     /**
@@ -449,10 +675,10 @@ public class FingerCaptureActivity extends AppCompatActivity {
 
 
         ImageAnalysis.Builder imageAnalysisBuilder = new ImageAnalysis.Builder().setBackpressureStrategy(STRATEGY_KEEP_ONLY_LATEST)
-                .setTargetResolution(new Size(1080, 1920)).setTargetRotation(rotation);
+                .setTargetResolution(getAnalysisSize(m_governorLevel)).setTargetRotation(rotation);
 
         Camera2Interop.Extender extender = new Camera2Interop.Extender(imageAnalysisBuilder);
-        if (m_propDenoise) {
+        if (isPropDenoiseEnabled()) {
 
             extender.setCaptureRequestOption(CaptureRequest.NOISE_REDUCTION_MODE,
                     CaptureRequest.NOISE_REDUCTION_MODE_OFF);
@@ -470,6 +696,8 @@ public class FingerCaptureActivity extends AppCompatActivity {
                 } catch (Exception e) {
                     m_current_distance = 0.0f;
                 }
+
+                m_zoomTracker.onCaptureResult(partialResult);
             }
         });
 
@@ -519,6 +747,10 @@ public class FingerCaptureActivity extends AppCompatActivity {
 
                 cameraControl.setExposureCompensationIndex(exposureCompensation);
 
+                m_exposureController = exposureState.isExposureCompensationSupported()
+                        ? new ExposureController(cameraControl, exposureCompensationRange, exposureCompensation)
+                        : null;
+
 
                 float zoomRatio = 1.0f;
 
@@ -538,6 +770,7 @@ public class FingerCaptureActivity extends AppCompatActivity {
 
                 Logger.addToLog(TAG, "setZoomRatio " + zoomRatio, m_logFile);
 
+                m_zoomTracker.setActiveArray(mCameraInfo.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE));
                 setZoom(zoomRatio);
 
                 SizeF sensorSize = mCameraInfo.get(CameraCharacteristics.SENSOR_INFO_PHYSICAL_SIZE);  //SENSOR_INFO_PHYSICAL_SIZE
@@ -574,16 +807,12 @@ public class FingerCaptureActivity extends AppCompatActivity {
     }
 
 
-    private String getCaptureObjectName(int numRects) {
-        return CaptureObjectNameUtil.getCaptureObjectName(m_positionCode, numRects, getResources());
-    }
-
-
     private void updateStatus(int captureStatus, int numRects, ArrayList<SgmRectImage> rects) {
         int color;
+        FingerPositionTable.Labels labels = m_positionLabels;
         //statusTextBackgroundColor;
         //  Drawable statusStripIcon;
-        Logger.addToLog(TAG, getCaptureObjectName(rects.size()) + ": captureStatus: " + captureStatus, this.m_logFile);
+        Logger.addToLog(TAG, labels.getCaptureObjectName(m_positionCode, rects.size()) + ": captureStatus: " + captureStatus, this.m_logFile);
 
 
         if (captureStatus == CaptureStatus.frameSkipped) {
@@ -596,92 +825,220 @@ public class FingerCaptureActivity extends AppCompatActivity {
             Logger.addToLog(TAG, "Too few fingers detected", this.m_logFile);
             Log.d(TAG, "analyze captureStatus :Too few fingers detected " + rects.size());
 
-            setStatus(getResources().getString(R.string.label_frame_hand, getCaptureObjectName(numRects)));
+            setStatus(labels.getFrameHandStatus(m_positionCode, numRects));
 
         } else if (captureStatus == CaptureStatus.tooManyFingers) {
             Logger.addToLog(TAG, "Too many fingers detected", this.m_logFile);
 
             Log.d(TAG, "analyze captureStatus :Too many fingers detected " + rects.size());
 
-
-            int expectedFingerCount =
-                    ((m_positionCode == NistPosCode.POS_CODE_PL_R_4F) ||
-                            (m_positionCode == NistPosCode.POS_CODE_PL_L_4F)) ? rects.size() :
-                            ((m_positionCode == NistPosCode.POS_CODE_L_AND_R_THUMBS) ||
-                                    (m_positionCode == NistPosCode.POS_CODE_R_RING_LITTLE) ||
-                                    (m_positionCode == NistPosCode.POS_CODE_L_RING_LITTLE) ||
-                                    (m_positionCode == NistPosCode.POS_CODE_R_INDEX_MIDDLE) ||
-                                    (m_positionCode == NistPosCode.POS_CODE_L_INDEX_MIDDLE)) ? 2 : 1;
-
-
-            if (expectedFingerCount == 1) {
-                setStatus(getResources().getString(R.string.label_more_than_one_finger_detected));
-            } else {
-                setStatus(getResources().getString(R.string.label_more_than_n_fingers_detected, expectedFingerCount));
-            }
+            setStatus(labels.getTooManyFingersStatus(m_positionCode, rects.size()));
 
         } else if (captureStatus == CaptureStatus.wrongAngle) {
 
-            String wrongAngleStatus = ((m_positionCode == POS_CODE_L_AND_R_THUMBS)
-                    || (m_positionCode == POS_CODE_R_THUMB)
-                    || (m_positionCode == POS_CODE_L_THUMB)
-                    || (m_positionCode == POS_CODE_R_INDEX_F)
-                    || (m_positionCode == POS_CODE_L_INDEX_F)
-                    || (m_positionCode == POS_CODE_R_MIDDLE_F)
-                    || (m_positionCode == POS_CODE_L_MIDDLE_F)
-                    || (m_positionCode == POS_CODE_R_RING_F)
-                    || (m_positionCode == POS_CODE_L_RING_F)
-                    || (m_positionCode == POS_CODE_R_LITTLE_F)
-                    || (m_positionCode == POS_CODE_L_LITTLE_F)) ? (getResources().getString(R.string.hold_vertically, getCaptureObjectName(numRects))) : (getResources().getString(R.string.hold_horizontally, getCaptureObjectName(numRects)));
-
-            setStatus(wrongAngleStatus);
+            setStatus(labels.getHoldStatus(m_positionCode, numRects));
 
         } else if (captureStatus == CaptureStatus.tooFar) {
-            setStatus(getResources().getString(R.string.label_too_far));
+            setStatus(labels.getTooFarStatus());
         } else if (captureStatus == CaptureStatus.tooClose) {
-            setStatus(getResources().getString(R.string.label_too_close));
+            setStatus(labels.getTooCloseStatus());
         } else if (captureStatus == CaptureStatus.lowFocus) {
 
-            setStatus(getResources().getString(R.string.label_low_focus));
+            setStatus(labels.getLowFocusStatus());
         } else if (captureStatus == CaptureStatus.goodFocus) {
 
-            setStatus(getResources().getString(R.string.label_good_focus));
+            setStatus(labels.getGoodFocusStatus());
         } else if (captureStatus == bestFrameChosen) {
             setStatus("");
         }
 
-        color = ((captureStatus == CaptureStatus.tooFewFingers) || (captureStatus == CaptureStatus.tooManyFingers) || (captureStatus == CaptureStatus.wrongHand)) ? getResources().getColor(R.color.border_color_error) : ((captureStatus == CaptureStatus.wrongAngle) || (captureStatus == CaptureStatus.tooFar) || (captureStatus == CaptureStatus.tooClose) || (captureStatus == CaptureStatus.lowFocus)) ? getResources().getColor(R.color.border_color_info) : getResources().getColor(R.color.border_color_pass);
+        color = ((captureStatus == CaptureStatus.tooFewFingers) || (captureStatus == CaptureStatus.tooManyFingers) || (captureStatus == CaptureStatus.wrongHand)) ? m_borderErrorColor : ((captureStatus == CaptureStatus.wrongAngle) || (captureStatus == CaptureStatus.tooFar) || (captureStatus == CaptureStatus.tooClose) || (captureStatus == CaptureStatus.lowFocus)) ? m_borderInfoColor : m_borderPassColor;
 
-        int finalColor = color;
+        // coalesced with the status to one overlay update per vsync
+        m_overlayDispatcher.postOverlay(color, this.m_showBoundingBoxes ? rects : null);
+    }
 
-        if (!this.m_showBoundingBoxes) {
-            rects.clear();
+    /**
+     * Resumes after the last position completed by a previous instance that was killed or
+     * recreated before delivering its result.
+     */
+    private void restoreCheckpoint() {
+        CaptureCheckpointStore.Checkpoint checkpoint = m_checkpointStore.load();
+        if (checkpoint == null || checkpoint.completedPositions >= segmentationModes.size()) {
+            return;
         }
 
-        runOnUiThread(() -> {
+        for (SgmRectImage rectImage : checkpoint.rects) {
+            this.segmentedRects.put(rectImage.pos, rectImage);
+            m_memoryWatchdog.track(rectImage.image);
+        }
+        for (RawSlap slap : checkpoint.slaps) {
+            addSlap(slap);
+            spillIfOverBudget(slap);
+        }
+        this.livenessScoresList.addAll(checkpoint.livenessScores);
+
+        posIndex = checkpoint.completedPositions;
+        m_positionCode = segmentationModes.get(posIndex);
+        m_cellSdk.setPositionCode(m_positionCode);
+
+        Logger.addToLog(TAG, "resumed from checkpoint, completed positions " + posIndex, this.m_logFile);
+    }
+
+    private void deliverPartialResult() {
+        if (!m_resultDelivered.compareAndSet(false, true)) {
+            return;
+        }
+
+        if (m_checkpointStore != null) {
+            m_checkpointStore.clear();
+        }
+
+        FingerCaptureResult partialResult = null;
+
+        try {
+            if (m_cellSdk != null) {
+                addInProgressCandidate();
+
+                if (!this.segmentedRects.isEmpty() || !slaps.isEmpty()) {
+                    saveFingerprints(new ArrayList<>(this.segmentedRects.values()));
 
-            this.m_graphicOverlay.drawBorderAndBoundBoxes(finalColor, rects);
-            Logger.addToLog(TAG, "setting status end", this.m_logFile);
+                    this.captureResult.partial = true;
+                    this.captureResult.inProgressPosition = m_positionCode;
+                    partialResult = this.captureResult;
+                }
+            }
+        } catch (Exception e) {
+            Logger.logException(TAG, e, this.m_logFile);
+        }
+
+        FingerCaptureResult result = partialResult;
+        runOnUiThread(() -> {
+            hideProgress();
+            T5FingerCaptureController.getInstance().getFingerCapturedListener().onTimedout(result);
+            completeSubject();
         });
     }
 
+    /**
+     * Asks the SDK to segment its best frame so far for the position in progress; if it has none,
+     * the last goodFocus frame is kept as an unsegmented slap.
+     */
+    private void addInProgressCandidate() {
+        RawSlap candidateFrame = m_candidateFrame;
+        if (candidateFrame == null) {
+            return;
+        }
+
+        byte[] frameBuffer = new byte[candidateFrame.imageWidth * candidateFrame.imageHeight];
+        ArrayList<SgmRectImage> rects = new ArrayList<>();
+        float[] livenessScores = new float[4];
+
+        int result = m_cellSdk.getSegmentedFingers(frameBuffer, 0, 0, m_cleanFingerPrints, rects, livenessScores);
+
+        Logger.addToLog(TAG, "Timeout segmentation result: " + result + " rects " + rects.size(), this.m_logFile);
+
+        if (rects.isEmpty()) {
+            addSlap(candidateFrame);
+            return;
+        }
+
+        for (SgmRectImage rectImage : rects) {
+            this.segmentedRects.put(rectImage.pos, rectImage);
+            m_memoryWatchdog.track(rectImage.image);
+        }
+
+        RawSlap rawSlap = new RawSlap();
+        rawSlap.imageWidth = candidateFrame.imageWidth;
+        rawSlap.imageHeight = candidateFrame.imageHeight;
+        rawSlap.rawData = frameBuffer;
+        rawSlap.pos = m_positionCode;
+        addSlap(rawSlap);
+
+        if (m_livenessCheck) {
+            livenessScoresList.add(new LivenessScore(m_positionCode, livenessScores[0]));
+        }
+    }
+
+    private void keepCandidateFrame(Image previewImage) {
+        Image.Plane yPlane = previewImage.getPlanes()[0];
+        ByteBuffer yBuffer = yPlane.getBuffer();
+        int width = previewImage.getWidth();
+        int height = previewImage.getHeight();
+        int rowStride = yPlane.getRowStride();
+
+        RawSlap candidateFrame = m_candidateFrame;
+        // a frame delivered with a timed-out result has been released
+        if (candidateFrame == null || candidateFrame.rawData == null
+                || candidateFrame.imageWidth != width || candidateFrame.imageHeight != height) {
+            candidateFrame = new RawSlap();
+            candidateFrame.imageWidth = width;
+            candidateFrame.imageHeight = height;
+            candidateFrame.rawData = new byte[width * height];
+        }
+        candidateFrame.pos = m_positionCode;
+
+        for (int row = 0; row < height; row++) {
+            yBuffer.position(row * rowStride);
+            yBuffer.get(candidateFrame.rawData, row * width, width);
+        }
+
+        m_candidateFrame = candidateFrame;
+    }
+
+    private void addSlap(RawSlap slap) {
+        slaps.add(slap);
+        m_memoryWatchdog.track(slap.rawData);
+    }
+
+    /**
+     * Moves {@code slap} off the heap while the subject is over budget; it is read back when
+     * the subject is encoded.
+     */
+    private void spillIfOverBudget(RawSlap slap) {
+        if (m_spillFile == null || slap.rawData == null || !m_memoryWatchdog.exceedsBudget(0)) {
+            return;
+        }
+
+        int length = slap.rawData.length;
+        try {
+            m_spillFile.spill(slap);
+            m_memoryWatchdog.release(length);
+        } catch (IOException e) {
+            Logger.logException(TAG, e, this.m_logFile);
+        }
+    }
+
+    private void releaseSlap(RawSlap slap) {
+        if (slap.rawData != null) {
+            m_memoryWatchdog.release(slap.rawData.length);
+        }
+        slap.rawData = null;
+        slap.spilledData = null;
+    }
+
     private void saveFingerprints(List<SgmRectImage> rects) {
-        if (rects == null || rects.isEmpty()) {
+        if (rects == null) {
+            rects = new ArrayList<>();
+        }
+
+        if (rects.isEmpty() && slaps.isEmpty()) {
             return;
         }
 
 
         ArrayList<Finger> capturedFingers = new ArrayList<>();
+        CancellationToken token = m_cancellationToken;
 
         Log.d(TAG, "is get nist quality " + this.m_getNistQuality);
 
         if (this.m_getNistQuality) {
-            nistQualitiesMap = airsnapUtils.createTemplates(rects);
+            nistQualitiesMap = airsnapUtils.createTemplates(rects, token);
         }
 
 
         if (this.m_getNist2Quality) {
-            nist2QualitiesMap = airsnapUtils.getNist2QualityValues(rects);
+            nist2QualitiesMap = airsnapUtils.getNist2QualityValues(rects, token);
         }
 
 
@@ -697,12 +1054,35 @@ public class FingerCaptureActivity extends AppCompatActivity {
 
             finger.primaryImageType = this.segmentedFingerImageConfiguration.getPrimaryImageType();
 
-            if (segmentedFingerImageConfiguration.isCropImage()) {
-                finger.primaryImage = airsnapUtils.convertImage(rect.image, rect.width, rect.height, this.segmentedFingerImageConfiguration.getPrimaryImageType(), true, this.segmentedFingerImageConfiguration.getCroppedImageWidth(), this.segmentedFingerImageConfiguration.getCroppedImageHeight(), this.segmentedFingerImageConfiguration.getCompressionRatio(), this.segmentedFingerImageConfiguration.getPaddingColor());
+            if (token.isCancelled()) {
+                // the remaining fingers are only reported by position
+                finger.incomplete = true;
+                capturedFingers.add(finger);
+                continue;
+            }
+
+            if (finger.primaryImageType == ImageType.IMAGE_TYPE_WSQ && segmentedFingerImageConfiguration.getTargetSizeInBytes() > 0) {
+                EncodedImage encodedImage = airsnapUtils.convertImageToTargetSize(rect.image, rect.width, rect.height, segmentedFingerImageConfiguration.isCropImage(), this.segmentedFingerImageConfiguration.getCroppedImageWidth(), this.segmentedFingerImageConfiguration.getCroppedImageHeight(), this.segmentedFingerImageConfiguration.getCompressionRatio(), this.segmentedFingerImageConfiguration.getTargetSizeInBytes(), this.segmentedFingerImageConfiguration.getPaddingColor(), token);
+                finger.primaryImage = encodedImage.image;
+                finger.primaryImageSha256 = encodedImage.sha256;
+                finger.compressionRatio = encodedImage.compressionRatio;
+                finger.incomplete = encodedImage.abandoned;
+
+            } else if (segmentedFingerImageConfiguration.isCropImage()) {
+                EncodedImage primaryImage = airsnapUtils.encodeImage(rect.image, rect.width, rect.height, this.segmentedFingerImageConfiguration.getPrimaryImageType(), true, this.segmentedFingerImageConfiguration.getCroppedImageWidth(), this.segmentedFingerImageConfiguration.getCroppedImageHeight(), this.segmentedFingerImageConfiguration.getCompressionRatio(), this.segmentedFingerImageConfiguration.getPaddingColor());
+                finger.primaryImage = primaryImage.image;
+                finger.primaryImageSha256 = primaryImage.sha256;
 
             } else {
-                finger.primaryImage = airsnapUtils.convertImage(rect.image, rect.width, rect.height, this.segmentedFingerImageConfiguration.getPrimaryImageType(), false, 0, 0, this.segmentedFingerImageConfiguration.getCompressionRatio(), this.segmentedFingerImageConfiguration.getPaddingColor());
+                EncodedImage primaryImage = airsnapUtils.encodeImage(rect.image, rect.width, rect.height, this.segmentedFingerImageConfiguration.getPrimaryImageType(), false, 0, 0, this.segmentedFingerImageConfiguration.getCompressionRatio(), this.segmentedFingerImageConfiguration.getPaddingColor());
+                finger.primaryImage = primaryImage.image;
+                finger.primaryImageSha256 = primaryImage.sha256;
+            }
+
+            if (finger.primaryImageType == ImageType.IMAGE_TYPE_WSQ && finger.compressionRatio == 0.0f) {
+                finger.compressionRatio = this.segmentedFingerImageConfiguration.getCompressionRatio();
             }
+            finger.primaryImageSize = finger.primaryImage == null ? 0 : finger.primaryImage.length;
 
 
             if (segmentedFingerImageConfiguration.isRequireDisplayImage()) {
@@ -710,10 +1090,14 @@ public class FingerCaptureActivity extends AppCompatActivity {
                 finger.displayImageType = segmentedFingerImageConfiguration.getDisplayImageType();
 
                 if (segmentedFingerImageConfiguration.isCropImage()) {
-                    finger.displayImage = airsnapUtils.convertImage(rect.image, rect.width, rect.height, this.segmentedFingerImageConfiguration.getDisplayImageType(), true, this.segmentedFingerImageConfiguration.getCroppedImageWidth(), this.segmentedFingerImageConfiguration.getCroppedImageHeight(), this.segmentedFingerImageConfiguration.getCompressionRatio(), this.segmentedFingerImageConfiguration.getPaddingColor());
+                    EncodedImage displayImage = airsnapUtils.encodeImage(rect.image, rect.width, rect.height, this.segmentedFingerImageConfiguration.getDisplayImageType(), true, this.segmentedFingerImageConfiguration.getCroppedImageWidth(), this.segmentedFingerImageConfiguration.getCroppedImageHeight(), this.segmentedFingerImageConfiguration.getCompressionRatio(), this.segmentedFingerImageConfiguration.getPaddingColor());
+                    finger.displayImage = displayImage.image;
+                    finger.displayImageSha256 = displayImage.sha256;
 
                 } else {
-                    finger.displayImage = airsnapUtils.convertImage(rect.image, rect.width, rect.height, this.segmentedFingerImageConfiguration.getDisplayImageType(), false, 0, 0, this.segmentedFingerImageConfiguration.getCompressionRatio(), this.segmentedFingerImageConfiguration.getPaddingColor());
+                    EncodedImage displayImage = airsnapUtils.encodeImage(rect.image, rect.width, rect.height, this.segmentedFingerImageConfiguration.getDisplayImageType(), false, 0, 0, this.segmentedFingerImageConfiguration.getCompressionRatio(), this.segmentedFingerImageConfiguration.getPaddingColor());
+                    finger.displayImage = displayImage.image;
+                    finger.displayImageSha256 = displayImage.sha256;
                 }
 
             }
@@ -727,13 +1111,18 @@ public class FingerCaptureActivity extends AppCompatActivity {
                         finger.nistQuality = quality.nistQuality;
                         finger.quality = quality.quality;
                         finger.minutiaesNumber = quality.minutiaesNumber;
+                        finger.template = quality.template;
 
+                    } else {
+                        // abandoned by the template stage
+                        finger.incomplete = true;
                     }
                 }
 
                 if (this.m_getNist2Quality) {
                     Byte nist2Quality = nist2QualitiesMap.get(rect.pos);
                     finger.nist2Quality = nist2Quality == null ? 0 : nist2Quality;
+                    finger.incomplete |= nist2Quality == null;
                 }
 
 
@@ -742,34 +1131,66 @@ public class FingerCaptureActivity extends AppCompatActivity {
 
 
             capturedFingers.add(finger);
+            this.captureResult.incomplete |= finger.incomplete;
+            m_memoryWatchdog.track(finger.primaryImage);
+            m_memoryWatchdog.track(finger.displayImage);
 
 
         }
 
         this.captureResult.fingers = capturedFingers;
+        this.captureResult.segmentedRects = new ArrayList<>(rects);
+        this.captureResult.templates = FingerTemplateContainer.pack(capturedFingers);
 
 
         ArrayList<Slap> slapArrayList = new ArrayList<>();
+        // spilled slaps are read back one at a time into this buffer
+        byte[] slapBuffer = null;
 
         for (RawSlap rawSlap : slaps) {
 
+            if (token.isCancelled()) {
+                this.captureResult.incomplete = true;
+                break;
+            }
+
+            byte[] rawData = RawSlapSpillFile.read(rawSlap, slapBuffer);
+            if (rawData == null) {
+                continue;
+            }
+            if (rawSlap.rawData == null) {
+                slapBuffer = rawData;
+            }
+
             Slap slap = new Slap();
             slap.pos = rawSlap.pos;
             slap.imageType = slapImageConfiguration.getPrimaryImageType();
 
             if (slapImageConfiguration.isCropImage()) {
-                slap.image = airsnapUtils.convertImage(rawSlap.rawData, rawSlap.imageWidth, rawSlap.imageHeight, this.slapImageConfiguration.getPrimaryImageType(), true, this.slapImageConfiguration.getCroppedImageWidth(), this.slapImageConfiguration.getCroppedImageHeight(), this.slapImageConfiguration.getCompressionRatio(), this.slapImageConfiguration.getPaddingColor());
+                EncodedImage slapImage = airsnapUtils.encodeImage(rawData, rawSlap.imageWidth, rawSlap.imageHeight, this.slapImageConfiguration.getPrimaryImageType(), true, this.slapImageConfiguration.getCroppedImageWidth(), this.slapImageConfiguration.getCroppedImageHeight(), this.slapImageConfiguration.getCompressionRatio(), this.slapImageConfiguration.getPaddingColor());
+                slap.image = slapImage.image;
+                slap.imageSha256 = slapImage.sha256;
             } else {
-                slap.image = airsnapUtils.convertImage(rawSlap.rawData, rawSlap.imageWidth, rawSlap.imageHeight, this.slapImageConfiguration.getPrimaryImageType(), false, 0, 0, this.slapImageConfiguration.getCompressionRatio(), this.slapImageConfiguration.getPaddingColor());
+                EncodedImage slapImage = airsnapUtils.encodeImage(rawData, rawSlap.imageWidth, rawSlap.imageHeight, this.slapImageConfiguration.getPrimaryImageType(), false, 0, 0, this.slapImageConfiguration.getCompressionRatio(), this.slapImageConfiguration.getPaddingColor());
+                slap.image = slapImage.image;
+                slap.imageSha256 = slapImage.sha256;
 
             }
 
             slapArrayList.add(slap);
+            m_memoryWatchdog.track(slap.image);
 
+            // the encoded slap is all the result needs
+            releaseSlap(rawSlap);
         }
 
         this.captureResult.slapImages = slapArrayList;
         this.captureResult.livenessScores = livenessScoresList;
+        this.captureResult.peakMemoryBytes = m_memoryWatchdog.getPeakTrackedBytes();
+        this.captureResult.peakHeapBytes = m_memoryWatchdog.getPeakHeapBytes();
+
+        Logger.addToLog(TAG, "peak capture memory " + m_memoryWatchdog.getPeakTrackedBytes() + " bytes (budget "
+                + m_memoryWatchdog.getBudgetBytes() + "), peak heap " + m_memoryWatchdog.getPeakHeapBytes(), this.m_logFile);
 
 
         Log.d("TAG", "time taken save finger prints convetion " + (System.currentTimeMillis() - startTime));
@@ -779,11 +1200,10 @@ public class FingerCaptureActivity extends AppCompatActivity {
 
     public void setZoom(float zoomRatio)
     {
-        m_setZoomTime = System.currentTimeMillis();
         Logger.addToLog(TAG, "setZoom: " + zoomRatio, m_logFile);
-        m_zoomApplied.set(false);
+        m_zoomTracker.expect(zoomRatio);
         m_camera.getCameraControl().setZoomRatio(zoomRatio).addListener(
-                () -> m_zoomApplied.set(true),
+                () -> m_zoomTracker.onZoomApplied(zoomRatio),
                 ContextCompat.getMainExecutor(this));
     }
 
@@ -791,15 +1211,25 @@ public class FingerCaptureActivity extends AppCompatActivity {
     private void analyzeImage(ImageProxy imageProxy) {
         try {
 
-            long timeDeltaThreshold = 500;
-            long timeDelta          = System.currentTimeMillis() - m_setZoomTime;
+            if (m_kioskIdle) {
+                imageProxy.close();
+                return;
+            }
+
+            long frameTimestamp = imageProxy.getImageInfo().getTimestamp();
 
-            if (!m_zoomApplied.get() && (timeDelta < timeDeltaThreshold))
+            if (!m_zoomTracker.isSettled(frameTimestamp))
             {
-                Logger.addToLog(TAG, "!m_zoomApplied", m_logFile);
+                Logger.addToLog(TAG, "zoom not settled", m_logFile);
+                imageProxy.close();
+                return;
+            }
+
+            if (frameTimestamp - m_lastAnalyzedTimestamp < m_governorLevel.minFrameIntervalNs) {
                 imageProxy.close();
                 return;
             }
+            m_lastAnalyzedTimestamp = frameTimestamp;
 
             Logger.addToLog(TAG, "-------------------------------------------------------", this.m_logFile);
             Logger.addToLog(TAG, "Analyzing preview image  width: " + imageProxy.getWidth() + " height: " + imageProxy.getHeight() + " rotation: " + imageProxy.getImageInfo().getRotationDegrees(), this.m_logFile);
@@ -857,15 +1287,19 @@ public class FingerCaptureActivity extends AppCompatActivity {
             } else if (captureStatus == CaptureStatus.turnOffFlashlight) {
                 toggleFlash(false);
             }
+
+            // meter only while fingers are in the border, the background would pull it off
+            ExposureController exposureController = m_exposureController;
+            if (exposureController != null && isFingerStatus(captureStatus)) {
+                exposureController.onFrame(imageProxy);
+            }
             if (captureStatus == CaptureStatus.set1xZoom) {
 
                 setZoom(1.0f);
 
                 runOnUiThread(() -> {
                     m_viewFinder.setVisibility(View.INVISIBLE);
-                    m_transparentImageView.setImageBitmap(null);
-                    m_transparentImageView.setVisibility(View.INVISIBLE);
-                    m_graphicOverlay.drawBorderAndBoundBoxes(Color.GRAY, new ArrayList<>());
+                    m_overlayDispatcher.clearOverlay(Color.GRAY);
                     m_graphicOverlay.setVisibility(View.INVISIBLE);
 
                     m_preview.setSurfaceProvider(null);
@@ -882,6 +1316,10 @@ public class FingerCaptureActivity extends AppCompatActivity {
 
             }
 
+            if (captureStatus == CaptureStatus.goodFocus) {
+                keepCandidateFrame(previewImage);
+            }
+
 
             Log.d(TAG, "analyze captureStatus :-------------------------- ");
 
@@ -893,9 +1331,7 @@ public class FingerCaptureActivity extends AppCompatActivity {
                     this.m_cameraProvider.unbindAll();
 
                     m_viewFinder.setVisibility(View.INVISIBLE);
-                    m_transparentImageView.setImageBitmap(null);
-                    m_transparentImageView.setVisibility(View.INVISIBLE);
-                    m_graphicOverlay.drawBorderAndBoundBoxes(Color.GRAY, new ArrayList<>());
+                    m_overlayDispatcher.clearOverlay(Color.GRAY);
                     m_graphicOverlay.setVisibility(View.INVISIBLE);
 
                     m_preview.setSurfaceProvider(null);
@@ -925,9 +1361,11 @@ public class FingerCaptureActivity extends AppCompatActivity {
                 Logger.addToLog(TAG, "Segmentation result: " + result + " liveness scores " + Arrays.toString(livenessScores), this.m_logFile);
 
 
+                LivenessScore livenessScore = null;
                 if (m_livenessCheck) {
 
-                    livenessScoresList.add(new LivenessScore(m_positionCode, livenessScores[0]));
+                    livenessScore = new LivenessScore(m_positionCode, livenessScores[0]);
+                    livenessScoresList.add(livenessScore);
                 }
 
                 if (!segmentedRects.isEmpty()) {
@@ -935,6 +1373,7 @@ public class FingerCaptureActivity extends AppCompatActivity {
                     for (SgmRectImage rectImage : segmentedRects) {
 
                         this.segmentedRects.put(rectImage.pos, rectImage);
+                        m_memoryWatchdog.track(rectImage.image);
 
                     }
                 }
@@ -946,7 +1385,8 @@ public class FingerCaptureActivity extends AppCompatActivity {
                 rawSlap.rawData = previewImageBuffer;
                 rawSlap.pos = m_positionCode;
 
-                slaps.add(rawSlap);
+                addSlap(rawSlap);
+                m_candidateFrame = null;
 
 
                 if (posIndex >= segmentationModes.size() - 1) {
@@ -955,6 +1395,12 @@ public class FingerCaptureActivity extends AppCompatActivity {
                         countDownTimer.cancel();
                     }
 
+                    if (!m_resultDelivered.compareAndSet(false, true)) {
+                        return;
+                    }
+
+                    m_checkpointStore.clear();
+
                     List<SgmRectImage> rectImages = new ArrayList<>(this.segmentedRects.values());
 
                     long startTime = System.currentTimeMillis();
@@ -962,14 +1408,24 @@ public class FingerCaptureActivity extends AppCompatActivity {
 
                     Log.d("TAG", "time taken save finger prints " + (System.currentTimeMillis() - startTime));
 
+                    if (m_cancellationToken.isCancelled()) {
+                        // the listener already got onCancelled
+                        return;
+                    }
+
 
+                    FingerCaptureResult subjectResult = this.captureResult;
                     runOnUiThread(() -> {
-                        T5FingerCaptureController.getInstance().getFingerCapturedListener().onSuccess(this.captureResult);
-                        finish();
+                        T5FingerCaptureController.getInstance().getFingerCapturedListener().onSuccess(subjectResult);
+                        completeSubject();
                     });
 
                 } else {
 
+                    // the last position is delivered right away, only intermediate ones need a checkpoint
+                    m_checkpointStore.appendPosition(m_positionCode, rawSlap, segmentedRects, livenessScore);
+                    spillIfOverBudget(rawSlap);
+
                     posIndex++;
 
                     m_positionCode = segmentationModes.get(posIndex);
@@ -978,7 +1434,6 @@ public class FingerCaptureActivity extends AppCompatActivity {
 
 
                         m_viewFinder.setVisibility(View.VISIBLE);
-                        m_transparentImageView.setVisibility(View.VISIBLE);
                         m_graphicOverlay.setVisibility(View.VISIBLE);
 
                         setStatus("");
@@ -1010,15 +1465,6 @@ public class FingerCaptureActivity extends AppCompatActivity {
 
     private void initBorder(int width, int height) {
         try {
-            Bitmap bitmap = Bitmap.createBitmap(m_transparentImageView.getWidth(), m_transparentImageView.getHeight(),
-                    Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(bitmap);
-            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
-
-            paint.setStyle(Paint.Style.FILL);
-            canvas.drawColor(getResources().getColor(R.color.airsnapfinger_overlay_color));
-            paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
-
             m_cellSdk.initBorder(width, height, m_graphicOverlay.getWidth(), m_graphicOverlay.getHeight());
 
             Integer borderRectLeft = new Integer(0);
@@ -1032,13 +1478,15 @@ public class FingerCaptureActivity extends AppCompatActivity {
 
             m_graphicOverlay.init(borderRect);
 
+            ExposureController exposureController = m_exposureController;
+            if (exposureController != null) {
+                exposureController.setRegion(borderRectLeft, borderRectTop, borderRectRight, borderRectBottom,
+                        m_graphicOverlay.getWidth(), m_graphicOverlay.getHeight());
+            }
+
             Logger.addToLog(TAG, "Drawing rect with " + " left: " + borderRectLeft + " top: " + borderRectTop + " right: " + borderRectRight + " bottom: " + borderRectBottom, m_logFile);
 
             Logger.addToLog(TAG, "width: " + width + " height: " + height, m_logFile);
-
-            canvas.drawRect(borderRect, paint);
-
-            m_transparentImageView.setImageBitmap(bitmap);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -1076,19 +1524,24 @@ public class FingerCaptureActivity extends AppCompatActivity {
             if (this.m_camera.getCameraInfo().hasFlashUnit() && cameraInfo.getTorchState().getValue() != null) {
                 int torchState = ((Integer) cameraInfo.getTorchState().getValue()).intValue();
                 this.m_camera.getCameraControl().enableTorch(enable);
+
+                ExposureController exposureController = m_exposureController;
+                if (exposureController != null && (torchState == TorchState.ON) != enable) {
+                    exposureController.onTorchChanged();
+                }
             }
         }
     }
 
 
+    private static boolean isFingerStatus(int captureStatus) {
+        return captureStatus == CaptureStatus.goodFocus || captureStatus == CaptureStatus.lowFocus
+                || captureStatus == CaptureStatus.tooClose || captureStatus == CaptureStatus.tooFar
+                || captureStatus == CaptureStatus.wrongAngle;
+    }
+
     private void setStatus(String msg) {
-        runOnUiThread(() -> {
-            if (msg != null && !msg.isEmpty()) {
-                this.txtStatus.setText(msg);
-            } else {
-                this.txtStatus.setText("");
-            }
-        });
+        m_overlayDispatcher.postStatus(msg);
     }
 
 
@@ -1125,6 +1578,10 @@ public class FingerCaptureActivity extends AppCompatActivity {
 
     public void onBackPressed() {
         super.onBackPressed();
+        m_cancellationToken.cancel();
+        if (m_checkpointStore != null) {
+            m_checkpointStore.clear();
+        }
         T5FingerCaptureController.getInstance().getFingerCapturedListener().onCancelled();
     }
 
@@ -1135,12 +1592,38 @@ public class FingerCaptureActivity extends AppCompatActivity {
 
         hideProgress();
 
+        if (m_overlayDispatcher != null) {
+            m_overlayDispatcher.release();
+        }
+
+        if (m_captureGovernor != null) {
+            m_captureGovernor.stop();
+        }
+
         toggleFlash(false);
 
         if (this.m_cameraExecutorService != null) {
             this.m_cameraExecutorService.shutdown();
         }
 
+        if (this.m_checkpointStore != null) {
+            // a recreated activity resumes from the checkpoint, a finished one never will
+            if (isFinishing()) {
+                this.m_checkpointStore.clear();
+            }
+            this.m_checkpointStore.close();
+        }
+
+        if (this.m_spillFile != null) {
+            this.m_spillFile.close();
+        }
+
+        if (m_kioskMode) {
+            T5FingerCaptureController.getInstance().unregisterKioskHost(this);
+        }
+
+        // work still queued for the pool would only delay its shutdown
+        m_cancellationToken.cancel();
         if (m_service != null) {
             m_service.shutdown();
         }
@@ -1170,7 +1653,7 @@ public class FingerCaptureActivity extends AppCompatActivity {
         @Nullable
         @Override
         public Size getDefaultTargetResolution() {
-            return new Size(1080, 1920);
+            return getAnalysisSize(m_governorLevel);
         }
 
         @SuppressLint({"UnsafeExperimentalUsageError"})
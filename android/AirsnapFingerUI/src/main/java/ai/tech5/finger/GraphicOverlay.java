@@ -10,18 +10,32 @@ import android.view.View;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.util.ArrayList;
-
-import ai.tech5.sdk.abis.T5AirSnap.SgmRectImage;
-
 
 public class GraphicOverlay extends View
 {
+    private static final int GAUGE_LINES = 10;
+
     private final Paint m_borderPaint;
     private Rect  m_borderRect    = null;
+    // dims everything outside the border, drawn as four rects instead of a cleared bitmap
+    private final Paint m_maskPaint;
     private final Paint m_boundBoxPaint;
-
-    private final ArrayList<SgmRectImage> m_rectangles = new ArrayList<SgmRectImage>();
+    private final Paint m_boundBoxFillPaint;
+
+    // distance gauge, its geometry follows the view size
+    private final Paint m_gaugePanelPaint;
+    private final Paint m_gaugeLimitPaint;
+    private final Paint m_gaugeWarningPaint;
+    private final Paint m_gaugeGoodPaint;
+    private final Paint m_gaugeMarkerPaint;
+    private float m_gaugeTop;
+    private float m_gaugeRight;
+    private float m_gaugeBottom;
+    private float m_gaugeLinesTop;
+    private float m_gaugeLinesHeight;
+
+    // owned by the UI thread, replaced through setFrame
+    private OverlayFrame m_frame = null;
 
     public GraphicOverlay(Context context, @Nullable AttributeSet attrs)
     {
@@ -30,9 +44,29 @@ public class GraphicOverlay extends View
         m_borderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         m_borderPaint.setStyle(Paint.Style.STROKE);
 
+        m_maskPaint = createFillPaint(getResources().getColor(R.color.airsnapfinger_overlay_color));
+
         m_boundBoxPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         m_boundBoxPaint.setStyle(Paint.Style.STROKE);
         m_boundBoxPaint.setColor(getResources().getColor(R.color.bounding_boxes_border_color));
+
+        m_boundBoxFillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        m_boundBoxFillPaint.setStyle(Paint.Style.FILL);
+        m_boundBoxFillPaint.setColor(getResources().getColor(R.color.bounding_boxes_fill_color));
+
+        m_gaugePanelPaint   = createFillPaint(0x80000000);
+        m_gaugeLimitPaint   = createFillPaint(0x60FF0000);
+        m_gaugeWarningPaint = createFillPaint(0x60FFFF00);
+        m_gaugeGoodPaint    = createFillPaint(0x6000FF00);
+        m_gaugeMarkerPaint  = createFillPaint(0xFFFFFFFF);
+    }
+
+    private static Paint createFillPaint(int color)
+    {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setStyle(Paint.Style.FILL);
+        paint.setColor(color);
+        return paint;
     }
 
     public void init(Rect borderRect)
@@ -41,8 +75,35 @@ public class GraphicOverlay extends View
 
         m_borderPaint.setStrokeWidth(0.02f * squareWidth);
         m_boundBoxPaint.setStrokeWidth(0.01f * squareWidth);
+        m_boundBoxFillPaint.setStrokeWidth(0.01f * squareWidth);
 
         m_borderRect = borderRect;
+
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight)
+    {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+
+        m_gaugeTop         = 0.35f * height;
+        m_gaugeRight       = 0.1f  * width;
+        m_gaugeBottom      = 0.65f * height;
+        m_gaugeLinesTop    = m_gaugeTop + 0.05f * (m_gaugeBottom - m_gaugeTop);
+        m_gaugeLinesHeight = 0.9f * (m_gaugeBottom - m_gaugeTop);
+    }
+
+    /**
+     * Shows {@code frame} from the next draw on. UI thread only; the frame must stay unchanged
+     * until it is replaced.
+     */
+    void setFrame(OverlayFrame frame)
+    {
+        m_frame = frame;
+        m_borderPaint.setColor(frame.borderColor);
+
+        invalidate();
     }
 
     @Override
@@ -50,94 +111,68 @@ public class GraphicOverlay extends View
     {
         super.onDraw(canvas);
 
-        if (m_borderRect == null)
+        Rect borderRect = m_borderRect;
+
+        if (borderRect == null)
         {
             return;
         }
 
-        float fingersDistance = 0.0f;
-
-        for (int i = 0; i < m_rectangles.size(); i++)
-        {
+        int width  = getWidth();
+        int height = getHeight();
 
-            SgmRectImage rectangle = m_rectangles.get(i);
+        canvas.drawRect(0, 0, width, borderRect.top, m_maskPaint);
+        canvas.drawRect(0, borderRect.bottom, width, height, m_maskPaint);
+        canvas.drawRect(0, borderRect.top, borderRect.left, borderRect.bottom, m_maskPaint);
+        canvas.drawRect(borderRect.right, borderRect.top, width, borderRect.bottom, m_maskPaint);
 
-            fingersDistance += rectangle.distance;
+        OverlayFrame frame = m_frame;
 
-            float  x0 = rectangle.coords[0][0];
-            float  y0 = rectangle.coords[0][1];
-            double dx = rectangle.coords[1][0] - x0;
-            double dy = rectangle.coords[1][1] - y0;
+        if (frame == null)
+        {
+            return;
+        }
 
-            float  angle    = (float)(Math.atan2(dy, dx) * 180.0 / Math.PI);
-            float  distance = (float)Math.sqrt(Math.pow(dx, 2) + Math.pow(dy, 2));
+        float[] ovals = frame.ovals;
 
-            canvas.rotate(angle, x0, y0);
+        for (int i = 0; i < frame.ovalCount; i++)
+        {
+            int offset = i * OverlayFrame.OVAL_STRIDE;
 
+            float x0       = ovals[offset];
+            float y0       = ovals[offset + 1];
+            float angle    = ovals[offset + 2];
+            float distance = ovals[offset + 3];
 
-            if (rectangle.focused)
-            {
-                m_boundBoxPaint.setStyle(Paint.Style.FILL);
-                m_boundBoxPaint.setColor(getResources().getColor(R.color.bounding_boxes_fill_color));
-            }
-            else
-            {
-                m_boundBoxPaint.setStyle(Paint.Style.STROKE);
-                m_boundBoxPaint.setColor(getResources().getColor(R.color.bounding_boxes_border_color));
-            }
+            canvas.rotate(angle, x0, y0);
 
             canvas.drawOval((x0 - distance), (y0 - 0.6f * distance),
                             (x0 + distance), (y0 + 0.6f * distance),
-                            m_boundBoxPaint);
+                            ovals[offset + 4] != 0.0f ? m_boundBoxFillPaint : m_boundBoxPaint);
 
             canvas.rotate(-angle, x0, y0);
         }
 
-        canvas.drawRect(m_borderRect, m_borderPaint);
-
+        canvas.drawRect(borderRect, m_borderPaint);
 
-        m_boundBoxPaint.setStyle(Paint.Style.FILL);
-        m_boundBoxPaint.setColor(0x80000000);
 
-        float left   = 0.0f;
-        float top    = 0.35f * this.getHeight();
-        float right  = 0.1f  * this.getWidth();
-        float bottom = 0.65f * this.getHeight();
+        canvas.drawRect(0.0f, m_gaugeTop, m_gaugeRight, m_gaugeBottom, m_gaugePanelPaint);
 
-        canvas.drawRect(left, top, right, bottom, m_boundBoxPaint);
-
-        float linesAreaHeight = 0.9f * (bottom - top);
-
-        for (int i = 0; i <= 10; i++)
+        for (int i = 0; i <= GAUGE_LINES; i++)
         {
-            if      ((i == 0) || (i == 10))  m_boundBoxPaint.setColor(0x60FF0000);
-            else if ((i <  3) || (i >  7 ))  m_boundBoxPaint.setColor(0x60FFFF00);
-            else                             m_boundBoxPaint.setColor(0x6000FF00);
+            Paint linePaint;
+            if      ((i == 0) || (i == 10))  linePaint = m_gaugeLimitPaint;
+            else if ((i <  3) || (i >  7 ))  linePaint = m_gaugeWarningPaint;
+            else                             linePaint = m_gaugeGoodPaint;
 
-            canvas.drawLine(0.55f * right, top + 0.05f * (bottom - top) + i * linesAreaHeight / 10.0f,
-                    0.9f  * right, top + 0.05f * (bottom - top) + i * linesAreaHeight / 10.0f,
-                    m_boundBoxPaint);
+            float y = m_gaugeLinesTop + i * m_gaugeLinesHeight / GAUGE_LINES;
+            canvas.drawLine(0.55f * m_gaugeRight, y, 0.9f * m_gaugeRight, y, linePaint);
         }
 
-        m_boundBoxPaint.setColor(0xFFFFFFFF);
-
-        if (!m_rectangles.isEmpty())
+        if (frame.ovalCount > 0)
         {
-            fingersDistance /= m_rectangles.size();
-
-            canvas.drawLine(0.1f  * right, top + 0.05f * (bottom - top) + (1.0f - fingersDistance) * linesAreaHeight,
-                    0.45f * right, top + 0.05f * (bottom - top) + (1.0f - fingersDistance) * linesAreaHeight,
-                    m_boundBoxPaint);
+            float y = m_gaugeLinesTop + (1.0f - frame.meanDistance) * m_gaugeLinesHeight;
+            canvas.drawLine(0.1f * m_gaugeRight, y, 0.45f * m_gaugeRight, y, m_gaugeMarkerPaint);
         }
     }
-
-    public void drawBorderAndBoundBoxes(int color, ArrayList<SgmRectImage> rectangles)
-    {
-        m_borderPaint.setColor(color);
-
-        m_rectangles.clear();
-        m_rectangles.addAll(rectangles);
-
-        invalidate();
-    }
 }
@@ -0,0 +1,123 @@
+package ai.tech5.finger;
+
+import android.view.Choreographer;
+import android.widget.TextView;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ai.tech5.sdk.abis.T5AirSnap.SgmRectImage;
+
+/**
+ * Hands analyzer results to the overlay and status text at most once per vsync. The analyzer
+ * fills its own {@link OverlayFrame} and swaps it with the shared one, the UI thread swaps that
+ * one with the frame it draws; neither side waits for the other and no frame is allocated while
+ * capturing. Updates that arrive between two vsyncs replace each other, only the latest is shown.
+ */
+final class OverlayDispatcher implements Choreographer.FrameCallback
+{
+    private final GraphicOverlay m_overlay;
+    private final TextView       m_statusView;
+    private final Choreographer  m_choreographer;
+
+    private final AtomicReference<OverlayFrame> m_pendingFrame  = new AtomicReference<>(new OverlayFrame());
+    private final AtomicReference<String>       m_pendingStatus = new AtomicReference<>();
+    private final AtomicBoolean                 m_scheduled     = new AtomicBoolean(false);
+
+    // analyzer thread only
+    private OverlayFrame m_backFrame = new OverlayFrame();
+    private long         m_sequence  = 0;
+    // written after the swap, so a reader that sees it finds that frame or a newer one pending
+    private volatile long m_publishedSequence = 0;
+
+    // UI thread only
+    private OverlayFrame       m_frontFrame       = new OverlayFrame();
+    private final OverlayFrame m_clearedFrame     = new OverlayFrame();
+    private long               m_appliedSequence  = 0;
+    private volatile boolean   m_released         = false;
+
+    /**
+     * Must be created on the UI thread, whose {@link Choreographer} paces the updates.
+     */
+    OverlayDispatcher(GraphicOverlay overlay, TextView statusView)
+    {
+        m_overlay       = overlay;
+        m_statusView    = statusView;
+        m_choreographer = Choreographer.getInstance();
+    }
+
+    /**
+     * Publishes the border color and finger ellipses of an analyzed frame. Called from the
+     * analyzer thread only; {@code rectangles} isn't kept.
+     */
+    void postOverlay(int borderColor, List<SgmRectImage> rectangles)
+    {
+        OverlayFrame frame = m_backFrame;
+        frame.set(++m_sequence, borderColor, rectangles);
+
+        m_backFrame         = m_pendingFrame.getAndSet(frame);
+        m_publishedSequence = frame.sequence;
+
+        schedule();
+    }
+
+    /**
+     * Safe from any thread, the last status posted before a vsync wins.
+     */
+    void postStatus(String status)
+    {
+        m_pendingStatus.set(status != null ? status : "");
+        schedule();
+    }
+
+    /**
+     * Empties the overlay right away and drops analyzer frames published so far. UI thread only.
+     */
+    void clearOverlay(int borderColor)
+    {
+        m_appliedSequence          = m_publishedSequence;
+        m_clearedFrame.borderColor = borderColor;
+        m_overlay.setFrame(m_clearedFrame);
+    }
+
+    void release()
+    {
+        m_released = true;
+        m_choreographer.removeFrameCallback(this);
+    }
+
+    private void schedule()
+    {
+        // Choreographer accepts callbacks from any thread
+        if (!m_released && m_scheduled.compareAndSet(false, true))
+        {
+            m_choreographer.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos)
+    {
+        // updates from here on schedule the next vsync
+        m_scheduled.set(false);
+
+        if (m_released)
+        {
+            return;
+        }
+
+        String status = m_pendingStatus.getAndSet(null);
+        if (status != null && !status.contentEquals(m_statusView.getText()))
+        {
+            m_statusView.setText(status);
+        }
+
+        if (m_publishedSequence > m_appliedSequence)
+        {
+            m_frontFrame      = m_pendingFrame.getAndSet(m_frontFrame);
+            m_appliedSequence = m_frontFrame.sequence;
+            m_overlay.setFrame(m_frontFrame);
+        }
+    }
+}
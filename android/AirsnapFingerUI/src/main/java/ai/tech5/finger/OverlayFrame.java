@@ -0,0 +1,57 @@
+package ai.tech5.finger;
+
+import java.util.List;
+
+import ai.tech5.sdk.abis.T5AirSnap.SgmRectImage;
+
+/**
+ * What {@link GraphicOverlay} draws for one analyzed frame. The finger ellipses are reduced to
+ * their centre, angle and radius when the frame is filled, so drawing needs no trigonometry.
+ */
+final class OverlayFrame
+{
+    // x0, y0, angle in degrees, radius, 1 when focused
+    static final int OVAL_STRIDE = 5;
+
+    long  sequence     = 0;
+    int   borderColor  = 0;
+    int   ovalCount    = 0;
+    float meanDistance = 0.0f;
+    float[] ovals      = new float[4 * OVAL_STRIDE];
+
+    void set(long sequence, int borderColor, List<SgmRectImage> rectangles)
+    {
+        this.sequence    = sequence;
+        this.borderColor = borderColor;
+
+        int count = rectangles == null ? 0 : rectangles.size();
+        if (ovals.length < count * OVAL_STRIDE)
+        {
+            ovals = new float[count * OVAL_STRIDE];
+        }
+
+        float distanceSum = 0.0f;
+
+        for (int i = 0; i < count; i++)
+        {
+            SgmRectImage rectangle = rectangles.get(i);
+
+            float x0 = rectangle.coords[0][0];
+            float y0 = rectangle.coords[0][1];
+            float dx = rectangle.coords[1][0] - x0;
+            float dy = rectangle.coords[1][1] - y0;
+
+            int offset = i * OVAL_STRIDE;
+            ovals[offset]     = x0;
+            ovals[offset + 1] = y0;
+            ovals[offset + 2] = (float) Math.toDegrees(Math.atan2(dy, dx));
+            ovals[offset + 3] = (float) Math.sqrt(dx * dx + dy * dy);
+            ovals[offset + 4] = rectangle.focused ? 1.0f : 0.0f;
+
+            distanceSum += rectangle.distance;
+        }
+
+        ovalCount    = count;
+        meanDistance = count > 0 ? distanceSum / count : 0.0f;
+    }
+}
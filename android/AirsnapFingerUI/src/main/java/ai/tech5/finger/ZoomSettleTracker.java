@@ -0,0 +1,119 @@
+package ai.tech5.finger;
+
+import android.graphics.Rect;
+import android.hardware.camera2.CaptureResult;
+import android.os.Build;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tells the analyzer when a requested zoom ratio has reached the sensor. Capture results are
+ * matched against the target through {@link CaptureResult#CONTROL_ZOOM_RATIO}, or through the
+ * crop region on devices that zoom by cropping; frames older than the first matching result are
+ * dropped, later ones are analyzed right away.
+ */
+final class ZoomSettleTracker
+{
+    private static final float RATIO_TOLERANCE = 0.02f;
+
+    private static final class Target
+    {
+        final float ratio;
+        // sensor timestamp of the first frame with this ratio, Long.MAX_VALUE until it arrives
+        final long  settledTimestamp;
+
+        Target(float ratio, long settledTimestamp)
+        {
+            this.ratio            = ratio;
+            this.settledTimestamp = settledTimestamp;
+        }
+    }
+
+    private final AtomicReference<Target> m_target = new AtomicReference<>(new Target(1.0f, 0));
+
+    private volatile Rect m_activeArray   = null;
+    private volatile long m_lastTimestamp = 0;
+
+    /**
+     * Sensor active array of the bound camera, needed to read the ratio from a crop region.
+     */
+    void setActiveArray(Rect activeArray)
+    {
+        m_activeArray = activeArray;
+    }
+
+    /**
+     * Starts waiting for {@code ratio}; frames are held back until a capture result shows it.
+     */
+    void expect(float ratio)
+    {
+        m_target.set(new Target(ratio, Long.MAX_VALUE));
+    }
+
+    /**
+     * Called from the session capture callback with every completed result.
+     */
+    void onCaptureResult(CaptureResult result)
+    {
+        Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if (timestamp == null)
+        {
+            return;
+        }
+
+        m_lastTimestamp = timestamp;
+
+        Target target = m_target.get();
+        if (target.settledTimestamp != Long.MAX_VALUE)
+        {
+            return;
+        }
+
+        float ratio = getZoomRatio(result);
+        if (ratio > 0.0f && Math.abs(ratio - target.ratio) <= RATIO_TOLERANCE * target.ratio)
+        {
+            // a newer expect() wins over this result
+            m_target.compareAndSet(target, new Target(target.ratio, timestamp));
+        }
+    }
+
+    /**
+     * Fallback for results that carry neither key: settles on the latest result seen once the
+     * camera reports the zoom request as done.
+     */
+    void onZoomApplied(float ratio)
+    {
+        Target target = m_target.get();
+        if (target.settledTimestamp == Long.MAX_VALUE && target.ratio == ratio)
+        {
+            m_target.compareAndSet(target, new Target(ratio, m_lastTimestamp));
+        }
+    }
+
+    boolean isSettled(long frameTimestamp)
+    {
+        return frameTimestamp >= m_target.get().settledTimestamp;
+    }
+
+    private float getZoomRatio(CaptureResult result)
+    {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R)
+        {
+            Float zoomRatio = result.get(CaptureResult.CONTROL_ZOOM_RATIO);
+            if (zoomRatio != null && zoomRatio != 1.0f)
+            {
+                return zoomRatio;
+            }
+        }
+
+        // zoom through cropping reports 1.0 above, the crop region carries the ratio instead
+        Rect activeArray = m_activeArray;
+        Rect cropRegion  = result.get(CaptureResult.SCALER_CROP_REGION);
+        if (activeArray == null || cropRegion == null || cropRegion.width() <= 0)
+        {
+            return 0.0f;
+        }
+
+        return (float) activeArray.width() / cropRegion.width();
+    }
+}
@@ -1,10 +1,17 @@
 package ai.tech5.finger.utils;
 
+import android.util.Log;
+
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import ai.tech5.sdk.abis.T5AirSnap.RawImage;
 import ai.tech5.sdk.abis.T5AirSnap.SgmRectImage;
@@ -12,6 +19,14 @@ import ai.tech5.sdk.abis.T5AirSnap.T5AirSnap;
 
 public class AirsnapUtils {
 
+    private static final String TAG = "AirsnapUtils";
+
+    private static final float MAX_WSQ_COMPRESSION_RATIO = 30.0F;
+    private static final float WSQ_COMPRESSION_RATIO_STEP = 1.25F;
+    private static final int WSQ_SEARCH_PARALLELISM = 3;
+    // how long the quality and encode stages wait for one finger before leaving it out
+    private static final long FINGER_DEADLINE_NS = TimeUnit.SECONDS.toNanos(4);
+
     private final T5AirSnap m_cellSdk;
     private final ExecutorService m_service;
 
@@ -20,18 +35,21 @@ public class AirsnapUtils {
         this.m_service = service;
     }
 
-    public HashMap<Integer, Quality> createTemplates(List<SgmRectImage> rects) {
+    /**
+     * Creates the templates of {@code rects} in parallel. Fingers whose task is cancelled through
+     * {@code token} or misses its deadline are left out of the result.
+     */
+    public HashMap<Integer, Quality> createTemplates(List<SgmRectImage> rects, CancellationToken token) {
         int threadCount = rects.size();
         short defaultPpi = 500;
 
-        CreateTemplateThread[] createTemplateThreads = null;
+        CreateTemplateThread[] createTemplateThreads = new CreateTemplateThread[threadCount];
         HashMap<Integer, Quality> nistQualitiesMap = new HashMap<>();
+        ArrayList<Future<?>> futures = new ArrayList<>();
 
         try {
-            createTemplateThreads = new CreateTemplateThread[threadCount];
-            ArrayList<Future<Runnable>> futures = new ArrayList<>();
             int threadIndex;
-            for (threadIndex = 0; threadIndex < threadCount; threadIndex++) {
+            for (threadIndex = 0; threadIndex < threadCount && !token.isCancelled(); threadIndex++) {
                 SgmRectImage rect = rects.get(threadIndex);
 
                 RawImage fingerRawImage = new RawImage();
@@ -42,17 +60,18 @@ public class AirsnapUtils {
                 fingerRawImage.m_ppi = defaultPpi;
 
                 createTemplateThreads[threadIndex] = new CreateTemplateThread(m_cellSdk, fingerRawImage);
-
-                Future future = m_service.submit(createTemplateThreads[threadIndex]);
-                futures.add(future);
+                futures.add(token.register(m_service.submit(createTemplateThreads[threadIndex])));
             }
 
-            for (Future<Runnable> future : futures) {
-                future.get();
-            }
+            // the fingers run side by side, so one deadline from submission holds for each of them
+            long deadline = System.nanoTime() + FINGER_DEADLINE_NS;
 
-            for (threadIndex = 0; threadIndex < threadCount; threadIndex++) {
+            for (threadIndex = 0; threadIndex < futures.size(); threadIndex++) {
                 CreateTemplateThread thread = createTemplateThreads[threadIndex];
+                if (!await(futures.get(threadIndex), deadline)) {
+                    Log.w(TAG, "template of finger " + thread.getFingerPos() + " abandoned");
+                    continue;
+                }
 
                 Quality quality = new Quality();
                 quality.nistQuality = thread.getNistQuality();
@@ -64,51 +83,97 @@ public class AirsnapUtils {
                 nistQualitiesMap.put(finger, quality);
             }
 
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
         } catch (Exception exception) {
             exception.printStackTrace();
+        } finally {
+            abandon(futures, token);
         }
 
         return nistQualitiesMap;
     }
 
-    public HashMap<Integer, Byte> getNist2QualityValues(List<SgmRectImage> rects) {
+    /**
+     * NFIQ2 values of {@code rects}, fingers cancelled through {@code token} or late are left out.
+     */
+    public HashMap<Integer, Byte> getNist2QualityValues(List<SgmRectImage> rects, CancellationToken token) {
         int threadCount = rects.size();
         HashMap<Integer, Byte> nist2QualitiesMap = new HashMap<>();
 
-        GetNistQualityThread[] getNistQualityThreads = null;
+        GetNistQualityThread[] getNistQualityThreads = new GetNistQualityThread[threadCount];
+        ArrayList<Future<?>> futures = new ArrayList<>();
 
         try {
-            getNistQualityThreads = new GetNistQualityThread[threadCount];
-            ArrayList<Future<Runnable>> futures = new ArrayList<>();
-
-            for (int threadIndex = 0; threadIndex < threadCount; threadIndex++) {
+            for (int threadIndex = 0; threadIndex < threadCount && !token.isCancelled(); threadIndex++) {
                 SgmRectImage rect = rects.get(threadIndex);
                 getNistQualityThreads[threadIndex] = new GetNistQualityThread(m_cellSdk, rect);
 
-                Future future = m_service.submit(getNistQualityThreads[threadIndex]);
-                futures.add(future);
+                futures.add(token.register(m_service.submit(getNistQualityThreads[threadIndex])));
             }
 
-            for (Future<Runnable> future : futures) {
-                future.get();
-            }
+            long deadline = System.nanoTime() + FINGER_DEADLINE_NS;
 
-            for (int threadIndex = 0; threadIndex < threadCount; threadIndex++) {
-                byte nist2Quality = getNistQualityThreads[threadIndex].getNistQuality();
+            for (int threadIndex = 0; threadIndex < futures.size(); threadIndex++) {
                 int finger = getNistQualityThreads[threadIndex].getFingerPos();
-                nist2QualitiesMap.put(finger, nist2Quality);
+                if (!await(futures.get(threadIndex), deadline)) {
+                    Log.w(TAG, "NFIQ2 of finger " + finger + " abandoned");
+                    continue;
+                }
+
+                nist2QualitiesMap.put(finger, getNistQualityThreads[threadIndex].getNistQuality());
             }
 
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         } catch (Exception ex) {
             ex.printStackTrace();
+        } finally {
+            abandon(futures, token);
         }
 
         return nist2QualitiesMap;
     }
 
+    /**
+     * @return false when the task was cancelled, failed or isn't done by {@code deadline}
+     */
+    private static boolean await(Future<?> future, long deadline) throws InterruptedException {
+        try {
+            future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (TimeoutException | CancellationException e) {
+            return false;
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Cancels the tasks nobody waits for anymore, so queued ones never take a pool thread.
+     */
+    private static void abandon(List<? extends Future<?>> futures, CancellationToken token) {
+        for (Future<?> future : futures) {
+            future.cancel(false);
+            token.unregister(future);
+        }
+    }
+
 
     public byte[] convertImage(byte[] rawImage, int width, int height, ImageType type, boolean resize, int newWidth, int newHeight, float compressionRatio, int paddingColor) {
-        byte[] convertedImage = null;
+        return encodeImage(rawImage, width, height, type, resize, newWidth, newHeight, compressionRatio, paddingColor).image;
+    }
+
+    /**
+     * Same as {@link #convertImage}, also returning the SHA-256 of the encoded bytes. BMP rows are
+     * hashed as they are written; PNG and WSQ come back from the SDK in one piece and are hashed
+     * straight away on the encoding thread while still cache-hot.
+     */
+    public EncodedImage encodeImage(byte[] rawImage, int width, int height, ImageType type, boolean resize, int newWidth, int newHeight, float compressionRatio, int paddingColor) {
+        EncodedImage encodedImage = new EncodedImage();
+        encodedImage.compressionRatio = compressionRatio;
+
         byte[] resizedImage = rawImage;
         int newW = width;
         int newH = height;
@@ -120,9 +185,9 @@ public class AirsnapUtils {
                 newH = newHeight;
 
 
-                byte[] newImage = new byte[newW * newH];
+                byte[] newImage = GrayscaleImageKernel.obtainScratchBuffer(newW * newH);
 
-                int retVal = m_cellSdk.cropImage(rawImage, width, height, newImage, newW, newH, paddingColor);
+                int retVal = GrayscaleImageKernel.cropImage(rawImage, width, height, newImage, newW, newH, paddingColor);
 
 
                 if (retVal == 0) {
@@ -134,23 +199,157 @@ public class AirsnapUtils {
             if (resizedImage != null) {
                 if (type == ImageType.IMAGE_TYPE_BMP) {
 
-                    convertedImage = m_cellSdk.convertRawToBmp(resizedImage, newW, newH);
+                    MessageDigest digest = ImageDigest.newSha256();
+                    encodedImage.image = GrayscaleImageKernel.convertRawToBmp(resizedImage, newW, newH, digest);
+                    if (encodedImage.image != null) {
+                        encodedImage.sha256 = ImageDigest.toHex(digest.digest());
+                    }
 
                 } else if (type == ImageType.IMAGE_TYPE_PNG) {
 
-                    convertedImage = m_cellSdk.convertRawToPng(resizedImage, newW, newH);
+                    encodedImage.image = m_cellSdk.convertRawToPng(resizedImage, newW, newH);
+                    encodedImage.sha256 = ImageDigest.sha256Hex(encodedImage.image);
 
                 } else {
 
-                    convertedImage = m_cellSdk.convertRawToWsq(resizedImage, newW, newH, compressionRatio);
+                    encodedImage.image = m_cellSdk.convertRawToWsq(resizedImage, newW, newH, compressionRatio);
+                    encodedImage.sha256 = ImageDigest.sha256Hex(encodedImage.image);
+
+                }
+
+            }
+        } catch (Exception e) {
+            encodedImage.image = new byte[0];
+            encodedImage.sha256 = null;
+        }
+
+        return encodedImage;
+    }
+
+    /**
+     * Encodes a WSQ image whose size fits {@code targetSizeInBytes}. Candidate ratios start at
+     * {@code minCompressionRatio} and grow geometrically; they are encoded in small parallel
+     * batches on the encode pool and the search stops at the first batch with a fitting candidate.
+     * The lowest fitting ratio wins; if nothing fits, the smallest output is returned.
+     * <p>
+     * The search is abandoned once {@code token} is cancelled or the finger deadline passes, with
+     * the best candidate finished so far and {@link EncodedImage#abandoned} set. A ratio whose
+     * encode fails is skipped.
+     */
+    public EncodedImage convertImageToTargetSize(byte[] rawImage, int width, int height, boolean resize, int newWidth, int newHeight, float minCompressionRatio, int targetSizeInBytes, int paddingColor, CancellationToken token) {
+        EncodedImage encodedImage = new EncodedImage();
+        encodedImage.compressionRatio = minCompressionRatio;
+        long deadline = System.nanoTime() + FINGER_DEADLINE_NS;
+        ArrayList<Future<byte[]>> futures = new ArrayList<>();
+        boolean scratchSource = false;
+
+        try {
+            byte[] sourceImage = rawImage;
+            int sourceWidth = width;
+            int sourceHeight = height;
+
+            if (resize) {
+                byte[] newImage = GrayscaleImageKernel.obtainScratchBuffer(newWidth * newHeight);
+
+                if (GrayscaleImageKernel.cropImage(rawImage, width, height, newImage, newWidth, newHeight, paddingColor) == 0) {
+                    sourceImage = newImage;
+                    sourceWidth = newWidth;
+                    sourceHeight = newHeight;
+                    scratchSource = true;
+                }
+            }
+
+            float[] ratios = getCandidateCompressionRatios(minCompressionRatio);
+            boolean targetMet = false;
+
+            for (int batchStart = 0; batchStart < ratios.length && !targetMet && !encodedImage.abandoned; batchStart += WSQ_SEARCH_PARALLELISM) {
+                if (token.isCancelled()) {
+                    encodedImage.abandoned = true;
+                    break;
+                }
+
+                int batchEnd = Math.min(batchStart + WSQ_SEARCH_PARALLELISM, ratios.length);
+
+                abandon(futures, token);
+                futures.clear();
+                for (int i = batchStart; i < batchEnd; i++) {
+                    final byte[] image = sourceImage;
+                    final int imageWidth = sourceWidth;
+                    final int imageHeight = sourceHeight;
+                    final float ratio = ratios[i];
 
+                    futures.add(token.register(m_service.submit(() -> m_cellSdk.convertRawToWsq(image, imageWidth, imageHeight, ratio))));
                 }
 
+                for (int i = batchStart; i < batchEnd; i++) {
+                    Future<byte[]> future = futures.get(i - batchStart);
+                    byte[] wsq;
+                    try {
+                        wsq = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    } catch (TimeoutException | CancellationException e) {
+                        encodedImage.abandoned = true;
+                        break;
+                    } catch (ExecutionException e) {
+                        // one failed ratio says nothing about the others, keep searching
+                        Log.w(TAG, "WSQ encode at ratio " + ratios[i] + " failed", e.getCause());
+                        continue;
+                    }
+
+                    if (wsq == null || wsq.length == 0 || targetMet) {
+                        continue;
+                    }
+
+                    if (wsq.length <= targetSizeInBytes) {
+                        targetMet = true;
+                    } else if (encodedImage.image != null && encodedImage.image.length <= wsq.length) {
+                        continue;
+                    }
+
+                    encodedImage.image = wsq;
+                    encodedImage.compressionRatio = ratios[i];
+                }
             }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            encodedImage.abandoned = true;
         } catch (Exception e) {
-            return new byte[0];
+            e.printStackTrace();
+        } finally {
+            abandon(futures, token);
+        }
+
+        if (encodedImage.abandoned) {
+            Log.w(TAG, "WSQ target size search abandoned at ratio " + encodedImage.compressionRatio);
+            if (scratchSource) {
+                // encodes still running keep reading the cropped image
+                GrayscaleImageKernel.detachScratchBuffer();
+            }
+        }
+
+        if (encodedImage.image == null) {
+            encodedImage.image = new byte[0];
         }
+        // only the winning candidate is hashed, rejected ratios never pay for it
+        encodedImage.sha256 = ImageDigest.sha256Hex(encodedImage.image);
 
-        return convertedImage;
+        return encodedImage;
+    }
+
+    private static float[] getCandidateCompressionRatios(float minCompressionRatio) {
+        ArrayList<Float> ratios = new ArrayList<>();
+
+        float ratio = Math.max(minCompressionRatio, 1.0F);
+        ratios.add(ratio);
+        while (ratio < MAX_WSQ_COMPRESSION_RATIO) {
+            ratio = Math.min(ratio * WSQ_COMPRESSION_RATIO_STEP, MAX_WSQ_COMPRESSION_RATIO);
+            ratios.add(ratio);
+        }
+
+        float[] candidates = new float[ratios.size()];
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = ratios.get(i);
+        }
+        return candidates;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,41 @@
+package ai.tech5.finger.utils;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+/**
+ * Cancellation of one capture subject, shared by its quality and encode stages. Cancelling drops
+ * every registered task that hasn't started yet and releases whoever waits on one; SDK calls that
+ * are already running can't be interrupted, their results are ignored instead.
+ */
+public class CancellationToken {
+
+    private final Set<Future<?>> m_futures = ConcurrentHashMap.newKeySet();
+    private volatile boolean m_cancelled = false;
+
+    public void cancel() {
+        m_cancelled = true;
+        for (Future<?> future : m_futures) {
+            future.cancel(false);
+        }
+        m_futures.clear();
+    }
+
+    public boolean isCancelled() {
+        return m_cancelled;
+    }
+
+    <T> Future<T> register(Future<T> future) {
+        m_futures.add(future);
+        // cancel() may have run between the submit and the add
+        if (m_cancelled) {
+            future.cancel(false);
+        }
+        return future;
+    }
+
+    void unregister(Future<?> future) {
+        m_futures.remove(future);
+    }
+}
@@ -0,0 +1,354 @@
+package ai.tech5.finger.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import ai.tech5.sdk.abis.T5AirSnap.SgmRectImage;
+
+/**
+ * Persists every completed capture position to a compact binary file on a background thread, so
+ * a capture killed by process death or recreated after a configuration change can resume from
+ * the last completed position instead of starting over.
+ * <p>
+ * Layout: magic, version, then length-prefixed blocks sealed with AES-GCM under the key given by
+ * the host app: first the subject id and segmentation mode list, then one block per completed
+ * position holding the raw slap, the segmented finger images and the liveness score. Each block
+ * is {@code iv(12), ciphertext+tag} and authenticates its index, so blocks can't be reordered.
+ * A capture without a subject id or key is never checkpointed: there would be no telling whose
+ * fingers a checkpoint holds, and raw fingerprints must not sit on disk in plaintext.
+ */
+public class CaptureCheckpointStore {
+
+    private static final int MAGIC = 0x5435434B; // "T5CK"
+    private static final int VERSION = 3;
+    private static final int IV_SIZE = 12;
+    private static final int TAG_SIZE = 16;
+    private static final long MAX_CHECKPOINT_AGE_MS = 10 * 60 * 1000L;
+    private static final int MAX_SUBJECT_ID_LENGTH = 1024;
+
+    private final File m_file;
+    private final SecretKey m_key;
+    private final SecureRandom m_random = new SecureRandom();
+    private final ExecutorService m_writer = Executors.newSingleThreadExecutor();
+
+    // replaced on the writer thread by startSubject, so queued writes keep the subject they belong to
+    private volatile String m_subjectId;
+    private volatile List<Integer> m_segmentationModes;
+    // false until the file holds this subject's header, the first write then starts a new file
+    private volatile boolean m_headerWritten = false;
+    // index of the next block written, authenticated with it
+    private volatile int m_blockIndex = 0;
+
+    /**
+     * @param key AES key the blocks are sealed with, or null to never checkpoint
+     */
+    public CaptureCheckpointStore(File file, SecretKey key, String subjectId, List<Integer> segmentationModes) {
+        this.m_file = file;
+        this.m_key = key;
+        this.m_subjectId = isEmpty(subjectId) ? null : subjectId;
+        this.m_segmentationModes = segmentationModes;
+    }
+
+    public static class Checkpoint {
+        public int completedPositions = 0;
+        public ArrayList<RawSlap> slaps = new ArrayList<>();
+        public ArrayList<SgmRectImage> rects = new ArrayList<>();
+        public ArrayList<LivenessScore> livenessScores = new ArrayList<>();
+    }
+
+    /**
+     * Reads the checkpoint left by a previous run of the same subject and segmentation modes.
+     * Returns null and discards the file when there is none, it is stale or it belongs to another
+     * capture. Later positions are appended to a checkpoint that was loaded.
+     */
+    public Checkpoint load() {
+        if (!m_file.exists()) {
+            return null;
+        }
+
+        if (m_subjectId == null || m_key == null
+                || System.currentTimeMillis() - m_file.lastModified() > MAX_CHECKPOINT_AGE_MS) {
+            m_file.delete();
+            return null;
+        }
+
+        Checkpoint checkpoint = new Checkpoint();
+        long remaining = m_file.length();
+        int blockIndex = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(m_file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                m_file.delete();
+                return null;
+            }
+            remaining -= 8;
+
+            while (true) {
+                int blockLength;
+                try {
+                    blockLength = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                remaining -= 4;
+
+                if (blockLength < IV_SIZE + TAG_SIZE) {
+                    throw new IOException("invalid block length " + blockLength);
+                }
+                if (blockLength > remaining) {
+                    // torn last block, keep what was completely written
+                    break;
+                }
+
+                byte[] block = new byte[blockLength];
+                in.readFully(block);
+                remaining -= blockLength;
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(open(block, blockIndex)));
+
+                if (blockIndex == 0) {
+                    if (!readSubjectId(record) || !readModes(record)) {
+                        m_file.delete();
+                        return null;
+                    }
+                } else {
+                    readPosition(record, checkpoint);
+                }
+                blockIndex++;
+            }
+        } catch (EOFException e) {
+            // torn last block, keep what was completely written
+        } catch (IOException | GeneralSecurityException e) {
+            // a tampered block or a checkpoint sealed with another key
+            e.printStackTrace();
+            m_file.delete();
+            return null;
+        }
+
+        if (checkpoint.completedPositions == 0) {
+            return null;
+        }
+
+        m_blockIndex = blockIndex;
+        m_headerWritten = true;
+        return checkpoint;
+    }
+
+    /**
+     * Drops the checkpoint of the previous subject and checkpoints the next one, in order with the
+     * writes already queued.
+     */
+    public void startSubject(String subjectId, List<Integer> segmentationModes) {
+        m_writer.execute(() -> {
+            m_file.delete();
+            m_headerWritten = false;
+            m_blockIndex = 0;
+            m_subjectId = isEmpty(subjectId) ? null : subjectId;
+            m_segmentationModes = segmentationModes;
+        });
+    }
+
+    public void appendPosition(int positionCode, RawSlap slap, List<SgmRectImage> rects, LivenessScore livenessScore) {
+        ArrayList<SgmRectImage> rectsCopy = new ArrayList<>(rects);
+        // the slap may be spilled or released before the write runs
+        byte[] rawData = slap.rawData;
+        int imageWidth = slap.imageWidth;
+        int imageHeight = slap.imageHeight;
+
+        m_writer.execute(() -> {
+            if (m_subjectId == null || m_key == null) {
+                return;
+            }
+
+            try {
+                boolean writeHeader = !m_headerWritten;
+                if (writeHeader) {
+                    m_blockIndex = 0;
+                }
+
+                ByteArrayOutputStream header = null;
+                if (writeHeader) {
+                    byte[] subjectId = m_subjectId.getBytes(StandardCharsets.UTF_8);
+                    header = new ByteArrayOutputStream();
+                    DataOutputStream headerOut = new DataOutputStream(header);
+                    headerOut.writeInt(subjectId.length);
+                    headerOut.write(subjectId);
+                    headerOut.writeInt(m_segmentationModes.size());
+                    for (int mode : m_segmentationModes) {
+                        headerOut.writeInt(mode);
+                    }
+                }
+
+                ByteArrayOutputStream record = new ByteArrayOutputStream(getRecordLength(rawData, rectsCopy));
+                DataOutputStream recordOut = new DataOutputStream(record);
+                recordOut.writeInt(positionCode);
+                recordOut.writeFloat(livenessScore == null ? Float.NaN : livenessScore.score);
+                recordOut.writeInt(imageWidth);
+                recordOut.writeInt(imageHeight);
+                recordOut.write(rawData);
+
+                recordOut.writeInt(rectsCopy.size());
+                for (SgmRectImage rect : rectsCopy) {
+                    recordOut.writeInt(rect.pos);
+                    recordOut.writeInt(rect.width);
+                    recordOut.writeInt(rect.height);
+                    recordOut.write(rect.image, 0, rect.width * rect.height);
+                }
+
+                // a file left by another subject is overwritten by the header
+                FileOutputStream fileOut = new FileOutputStream(m_file, !writeHeader);
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+                    int blockIndex = m_blockIndex;
+                    if (writeHeader) {
+                        out.writeInt(MAGIC);
+                        out.writeInt(VERSION);
+                        writeBlock(out, header.toByteArray(), blockIndex++);
+                    }
+                    writeBlock(out, record.toByteArray(), blockIndex++);
+
+                    out.flush();
+                    fileOut.getFD().sync();
+                    m_blockIndex = blockIndex;
+                }
+                m_headerWritten = true;
+            } catch (IOException | GeneralSecurityException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    public void clear() {
+        m_writer.execute(() -> {
+            m_file.delete();
+            m_headerWritten = false;
+            m_blockIndex = 0;
+        });
+    }
+
+    /**
+     * Lets queued writes finish in the background; no new writes are accepted afterwards.
+     */
+    public void close() {
+        m_writer.shutdown();
+    }
+
+    private boolean readSubjectId(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_SUBJECT_ID_LENGTH) {
+            return false;
+        }
+
+        byte[] subjectId = new byte[length];
+        in.readFully(subjectId);
+        return m_subjectId.equals(new String(subjectId, StandardCharsets.UTF_8));
+    }
+
+    private void writeBlock(DataOutputStream out, byte[] plaintext, int blockIndex) throws IOException, GeneralSecurityException {
+        byte[] iv = new byte[IV_SIZE];
+        m_random.nextBytes(iv);
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, m_key, new GCMParameterSpec(TAG_SIZE * 8, iv));
+        cipher.updateAAD(ByteBuffer.allocate(4).putInt(blockIndex).array());
+        byte[] sealed = cipher.doFinal(plaintext);
+
+        out.writeInt(IV_SIZE + sealed.length);
+        out.write(iv);
+        out.write(sealed);
+    }
+
+    private byte[] open(byte[] block, int blockIndex) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, m_key, new GCMParameterSpec(TAG_SIZE * 8, block, 0, IV_SIZE));
+        cipher.updateAAD(ByteBuffer.allocate(4).putInt(blockIndex).array());
+        return cipher.doFinal(block, IV_SIZE, block.length - IV_SIZE);
+    }
+
+    private boolean readModes(DataInputStream in) throws IOException {
+        int modeCount = in.readInt();
+        if (modeCount != m_segmentationModes.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < modeCount; i++) {
+            if (in.readInt() != m_segmentationModes.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void readPosition(DataInputStream in, Checkpoint checkpoint) throws IOException {
+        int positionCode = in.readInt();
+        float livenessScore = in.readFloat();
+
+        RawSlap slap = new RawSlap();
+        slap.pos = positionCode;
+        slap.imageWidth = in.readInt();
+        slap.imageHeight = in.readInt();
+        slap.rawData = new byte[checkImageLength(in, slap.imageWidth, slap.imageHeight)];
+        in.readFully(slap.rawData);
+
+        ArrayList<SgmRectImage> rects = new ArrayList<>();
+        int rectCount = in.readInt();
+        for (int i = 0; i < rectCount; i++) {
+            SgmRectImage rect = new SgmRectImage();
+            rect.pos = in.readInt();
+            rect.width = in.readInt();
+            rect.height = in.readInt();
+            rect.image = new byte[checkImageLength(in, rect.width, rect.height)];
+            in.readFully(rect.image);
+            rects.add(rect);
+        }
+
+        checkpoint.slaps.add(slap);
+        checkpoint.rects.addAll(rects);
+        if (!Float.isNaN(livenessScore)) {
+            checkpoint.livenessScores.add(new LivenessScore(positionCode, livenessScore));
+        }
+        checkpoint.completedPositions++;
+    }
+
+    /**
+     * @throws IOException when the image can't fit in what is left of the record
+     */
+    private static int checkImageLength(DataInputStream record, int width, int height) throws IOException {
+        long length = (long) width * height;
+        if (width < 0 || height < 0 || length > record.available()) {
+            throw new IOException("invalid image size " + width + "x" + height);
+        }
+        return (int) length;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private static int getRecordLength(byte[] rawData, List<SgmRectImage> rects) {
+        int length = 4 + 4 + 4 + 4 + rawData.length + 4;
+        for (SgmRectImage rect : rects) {
+            length += 12 + rect.width * rect.height;
+        }
+        return length;
+    }
+}
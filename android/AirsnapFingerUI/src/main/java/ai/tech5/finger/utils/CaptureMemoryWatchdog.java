@@ -0,0 +1,80 @@
+package ai.tech5.finger.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory accounting of one capture subject. Raw slaps, segmented finger images and encoded
+ * outputs are tracked as they are created and released; every change also samples the Java heap,
+ * so both peaks can be reported when the subject is delivered. Raw slaps that would push the
+ * tracked bytes over the budget are spilled instead of kept on the heap.
+ */
+public class CaptureMemoryWatchdog {
+
+    // share of the app's heap limit one subject may keep in tracked buffers
+    private static final int BUDGET_HEAP_DIVISOR = 16;
+
+    private final long m_budgetBytes;
+    private final AtomicLong m_trackedBytes = new AtomicLong();
+    private final AtomicLong m_peakTrackedBytes = new AtomicLong();
+    private final AtomicLong m_peakHeapBytes = new AtomicLong();
+
+    public CaptureMemoryWatchdog() {
+        this(Runtime.getRuntime().maxMemory() / BUDGET_HEAP_DIVISOR);
+    }
+
+    public CaptureMemoryWatchdog(long budgetBytes) {
+        m_budgetBytes = budgetBytes;
+        sampleHeap();
+    }
+
+    public long getBudgetBytes() {
+        return m_budgetBytes;
+    }
+
+    /**
+     * @return true when {@code bytes} more would exceed the budget
+     */
+    public boolean exceedsBudget(long bytes) {
+        return m_trackedBytes.get() + bytes > m_budgetBytes;
+    }
+
+    public void track(long bytes) {
+        updatePeak(m_peakTrackedBytes, m_trackedBytes.addAndGet(bytes));
+        sampleHeap();
+    }
+
+    public void track(byte[] buffer) {
+        if (buffer != null) {
+            track(buffer.length);
+        }
+    }
+
+    public void release(long bytes) {
+        m_trackedBytes.addAndGet(-bytes);
+        sampleHeap();
+    }
+
+    public void sampleHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        updatePeak(m_peakHeapBytes, runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    public long getTrackedBytes() {
+        return m_trackedBytes.get();
+    }
+
+    public long getPeakTrackedBytes() {
+        return m_peakTrackedBytes.get();
+    }
+
+    public long getPeakHeapBytes() {
+        return m_peakHeapBytes.get();
+    }
+
+    private static void updatePeak(AtomicLong peak, long value) {
+        long current;
+        while (value > (current = peak.get()) && !peak.compareAndSet(current, value)) {
+            // raced with another update, retry against the new peak
+        }
+    }
+}
@@ -20,4 +20,5 @@ public class Constants {
     public static final String MISSING_FINGERS = "MISSING_FINGERS";
     public static final String CAPTURE_SPEED = "CAPTURE_SPEED";
     public static final String OUTSIDE_CAPTURE_FLAG = "OUTSIDE_CAPTURE_FLAG";
+    public static final String KIOSK_MODE = "KIOSK_MODE";
 }
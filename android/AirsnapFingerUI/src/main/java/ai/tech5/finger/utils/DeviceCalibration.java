@@ -0,0 +1,312 @@
+package ai.tech5.finger.utils;
+
+import static ai.tech5.finger.utils.ModelsUtil.extractModels;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ai.tech5.sdk.abis.T5AirSnap.RawImage;
+import ai.tech5.sdk.abis.T5AirSnap.T5AirSnap;
+
+/**
+ * Measures how fast this device runs the per-finger stages of a capture and derives the capture
+ * speed, analysis resolution and pool size from it. The benchmark feeds synthetic ridge images
+ * through NFIQ2, template creation and WSQ encoding, first one finger at a time, then on pools
+ * of growing size. The profile is kept per device build and SDK version, so an OS or SDK update
+ * asks for a new calibration.
+ */
+public class DeviceCalibration {
+
+    private static final String TAG = "DeviceCalibration";
+    private static final String PREFERENCES_NAME = "t5_device_calibration";
+
+    private static final int FINGER_WIDTH = 352;
+    private static final int FINGER_HEIGHT = 416;
+    private static final int FINGERS = 4;
+    private static final int ROUNDS = 3;
+    private static final float WSQ_COMPRESSION_RATIO = 10.0f;
+
+    private static final int MIN_POOL_SIZE = 2;
+    private static final int MAX_POOL_SIZE = 10;
+    // a bigger pool has to add at least this share of the best throughput to be worth its threads
+    private static final double POOL_SATURATION = 0.9;
+
+    // serial per-finger cost above which the device is treated as slow
+    private static final double SLOW_FINGER_MS = 400.0;
+
+    public static class DeviceProfile {
+        public CaptureSpeed captureSpeed = CaptureSpeed.CAPTURE_SPEED_NORMAL;
+        public int analysisWidth = 1080;
+        public int analysisHeight = 1920;
+        public int poolSize = MAX_POOL_SIZE;
+
+        // serial cost of one finger per stage
+        public double qualityMs = 0;
+        public double templateMs = 0;
+        public double encodeMs = 0;
+
+        // fingers per second through all stages, for a pool of threadCounts[i] threads
+        public int[] threadCounts = new int[0];
+        public double[] fingersPerSecond = new double[0];
+
+        public int cores = 0;
+        public long calibratedAt = 0;
+        public String device = "";
+        public String sdkVersion = "";
+    }
+
+    private DeviceCalibration() {
+    }
+
+    /**
+     * The stored profile, or null when this device build or SDK version hasn't been calibrated.
+     */
+    public static DeviceProfile load(Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        if (!Build.FINGERPRINT.equals(preferences.getString("device", null))
+                || !T5AirSnap.getVersion().equals(preferences.getString("sdkVersion", null))) {
+            return null;
+        }
+
+        try {
+            DeviceProfile profile = new DeviceProfile();
+            profile.captureSpeed = CaptureSpeed.valueOf(preferences.getString("captureSpeed", profile.captureSpeed.name()));
+            profile.analysisWidth = preferences.getInt("analysisWidth", profile.analysisWidth);
+            profile.analysisHeight = preferences.getInt("analysisHeight", profile.analysisHeight);
+            profile.poolSize = preferences.getInt("poolSize", profile.poolSize);
+            profile.qualityMs = preferences.getFloat("qualityMs", 0);
+            profile.templateMs = preferences.getFloat("templateMs", 0);
+            profile.encodeMs = preferences.getFloat("encodeMs", 0);
+            profile.cores = preferences.getInt("cores", 0);
+            profile.calibratedAt = preferences.getLong("calibratedAt", 0);
+            profile.device = Build.FINGERPRINT;
+            profile.sdkVersion = T5AirSnap.getVersion();
+
+            String[] throughput = preferences.getString("throughput", "").split(",");
+            int count = throughput.length / 2;
+            profile.threadCounts = new int[count];
+            profile.fingersPerSecond = new double[count];
+            for (int i = 0; i < count; i++) {
+                profile.threadCounts[i] = Integer.parseInt(throughput[2 * i]);
+                profile.fingersPerSecond[i] = Double.parseDouble(throughput[2 * i + 1]);
+            }
+
+            return profile;
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "stored profile unreadable, ignoring it", e);
+            return null;
+        }
+    }
+
+    /**
+     * Runs the benchmark and stores its profile. Takes a few seconds, never call it on the main
+     * thread.
+     *
+     * @throws IllegalStateException when the SDK can't be initialized with {@code projectToken}
+     */
+    public static DeviceProfile calibrate(Context context, String projectToken) {
+        T5AirSnap cellSdk = new T5AirSnap(context);
+
+        try {
+            String modelsPath = Objects.requireNonNull(context.getExternalFilesDir(null)).toString();
+            extractModels(context, "models", modelsPath);
+            cellSdk.setModelsDir(modelsPath + File.separator + "models");
+            cellSdk.setCacheDir(Objects.requireNonNull(context.getExternalCacheDir()).getAbsolutePath());
+            cellSdk.setSaveSdkLogFlag(false);
+
+            int resultCode = cellSdk.initSdk(projectToken);
+            if (resultCode == 0) {
+                resultCode = cellSdk.initNfiq2();
+            }
+            if (resultCode != 0) {
+                throw new IllegalStateException("SDK init failed (code: " + resultCode + "): " + cellSdk.getErrorMessage());
+            }
+
+            DeviceProfile profile = measure(cellSdk);
+            store(context, profile);
+            return profile;
+        } finally {
+            cellSdk.closeSdk();
+        }
+    }
+
+    private static DeviceProfile measure(T5AirSnap cellSdk) {
+        DeviceProfile profile = new DeviceProfile();
+        profile.cores = Runtime.getRuntime().availableProcessors();
+        profile.calibratedAt = System.currentTimeMillis();
+        profile.device = Build.FINGERPRINT;
+        profile.sdkVersion = T5AirSnap.getVersion();
+
+        byte[][] fingers = new byte[FINGERS][];
+        for (int i = 0; i < FINGERS; i++) {
+            fingers[i] = createRidgeImage(i);
+        }
+
+        // warm-up, the first native calls load models and fault pages in
+        runFinger(cellSdk, fingers[0], 0, null);
+
+        double[] stageNs = new double[3];
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < FINGERS; i++) {
+                runFinger(cellSdk, fingers[i], i, stageNs);
+            }
+        }
+        int samples = ROUNDS * FINGERS;
+        profile.qualityMs = stageNs[0] / samples / 1e6;
+        profile.templateMs = stageNs[1] / samples / 1e6;
+        profile.encodeMs = stageNs[2] / samples / 1e6;
+
+        ArrayList<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < Math.min(profile.cores, MAX_POOL_SIZE); threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(Math.max(1, Math.min(profile.cores, MAX_POOL_SIZE)));
+
+        profile.threadCounts = new int[threadCounts.size()];
+        profile.fingersPerSecond = new double[threadCounts.size()];
+        double best = 0;
+        for (int i = 0; i < threadCounts.size(); i++) {
+            profile.threadCounts[i] = threadCounts.get(i);
+            profile.fingersPerSecond[i] = measureThroughput(cellSdk, fingers, threadCounts.get(i));
+            best = Math.max(best, profile.fingersPerSecond[i]);
+        }
+
+        profile.poolSize = MAX_POOL_SIZE;
+        for (int i = 0; i < profile.threadCounts.length; i++) {
+            if (profile.fingersPerSecond[i] >= POOL_SATURATION * best) {
+                profile.poolSize = Math.max(MIN_POOL_SIZE, profile.threadCounts[i]);
+                break;
+            }
+        }
+
+        // a slow device analyzes fewer frames per second, so it waits less for a better one and
+        // gets the smaller analysis frames
+        boolean slow = profile.qualityMs + profile.templateMs + profile.encodeMs > SLOW_FINGER_MS;
+        profile.captureSpeed = slow ? CaptureSpeed.CAPTURE_SPEED_HIGH : CaptureSpeed.CAPTURE_SPEED_NORMAL;
+        profile.analysisWidth = slow ? 720 : 1080;
+        profile.analysisHeight = slow ? 1280 : 1920;
+
+        Log.d(TAG, "calibrated: speed " + profile.captureSpeed + ", analysis " + profile.analysisWidth + "x"
+                + profile.analysisHeight + ", pool " + profile.poolSize);
+
+        return profile;
+    }
+
+    /**
+     * Runs the quality, template and encode stages of one finger, adding their durations to
+     * {@code stageNs} when given.
+     */
+    private static void runFinger(T5AirSnap cellSdk, byte[] image, int finger, double[] stageNs) {
+        long start = System.nanoTime();
+        Byte nistQuality = (byte) 0;
+        cellSdk.getNistFingerImageQuality(image, FINGER_WIDTH, FINGER_HEIGHT, nistQuality);
+        long qualityDone = System.nanoTime();
+
+        RawImage rawImage = new RawImage();
+        rawImage.m_finger = finger + 2;
+        rawImage.m_image = image;
+        rawImage.m_width = FINGER_WIDTH;
+        rawImage.m_height = FINGER_HEIGHT;
+        rawImage.m_ppi = 500;
+        new CreateTemplateThread(cellSdk, rawImage).run();
+        long templateDone = System.nanoTime();
+
+        cellSdk.convertRawToWsq(image, FINGER_WIDTH, FINGER_HEIGHT, WSQ_COMPRESSION_RATIO);
+        long encodeDone = System.nanoTime();
+
+        if (stageNs != null) {
+            stageNs[0] += qualityDone - start;
+            stageNs[1] += templateDone - qualityDone;
+            stageNs[2] += encodeDone - templateDone;
+        }
+    }
+
+    private static double measureThroughput(T5AirSnap cellSdk, byte[][] fingers, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            int tasks = Math.max(ROUNDS * FINGERS, 2 * threads);
+            List<Future<?>> futures = new ArrayList<>(tasks);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < tasks; i++) {
+                int finger = i % FINGERS;
+                futures.add(pool.submit(() -> runFinger(cellSdk, fingers[finger], finger, null)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            return tasks / ((System.nanoTime() - start) / 1e9);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } catch (Exception e) {
+            Log.w(TAG, "throughput with " + threads + " threads failed", e);
+            return 0;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Loop-shaped ridges around a per-finger core with a ridge period of about 9 px at 500 ppi,
+     * close enough to a finger for the quality and minutiae stages to do their usual work.
+     */
+    private static byte[] createRidgeImage(int seed) {
+        byte[] image = new byte[FINGER_WIDTH * FINGER_HEIGHT];
+        double coreX = FINGER_WIDTH * (0.45 + 0.03 * seed);
+        double coreY = FINGER_HEIGHT * (0.40 + 0.02 * seed);
+        double period = 9.0;
+
+        int offset = 0;
+        for (int y = 0; y < FINGER_HEIGHT; y++) {
+            for (int x = 0; x < FINGER_WIDTH; x++) {
+                double dx = x - coreX;
+                double dy = (y - coreY) * 0.8;
+                double radius = Math.sqrt(dx * dx + dy * dy);
+                double phase = 2 * Math.PI * radius / period + 0.6 * Math.atan2(dy, dx) + seed;
+
+                // fade to the background towards the edges of the fingertip
+                double edge = Math.min(1.0, Math.max(0.0, 1.6 - radius / (0.35 * FINGER_WIDTH)));
+                image[offset++] = (byte) (255 - edge * (100 + 90 * Math.sin(phase)));
+            }
+        }
+
+        return image;
+    }
+
+    private static void store(Context context, DeviceProfile profile) {
+        StringBuilder throughput = new StringBuilder();
+        for (int i = 0; i < profile.threadCounts.length; i++) {
+            if (i > 0) {
+                throughput.append(',');
+            }
+            throughput.append(profile.threadCounts[i]).append(',').append(profile.fingersPerSecond[i]);
+        }
+
+        context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE).edit()
+                .putString("device", profile.device)
+                .putString("sdkVersion", profile.sdkVersion)
+                .putString("captureSpeed", profile.captureSpeed.name())
+                .putInt("analysisWidth", profile.analysisWidth)
+                .putInt("analysisHeight", profile.analysisHeight)
+                .putInt("poolSize", profile.poolSize)
+                .putFloat("qualityMs", (float) profile.qualityMs)
+                .putFloat("templateMs", (float) profile.templateMs)
+                .putFloat("encodeMs", (float) profile.encodeMs)
+                .putInt("cores", profile.cores)
+                .putLong("calibratedAt", profile.calibratedAt)
+                .putString("throughput", throughput.toString())
+                .apply();
+    }
+}
@@ -0,0 +1,15 @@
+package ai.tech5.finger.utils;
+
+public class EncodedImage {
+    public byte[] image;
+    public float compressionRatio;
+    /**
+     * Hex SHA-256 of {@link #image}, null when nothing was encoded.
+     */
+    public String sha256;
+    /**
+     * Set when the encode was cancelled or ran past its deadline, {@link #image} is then the best
+     * candidate finished in time, possibly empty.
+     */
+    public boolean abandoned = false;
+}
@@ -14,6 +14,17 @@
 
    public byte[] displayImage;
 
+   public String primaryImageSha256;
+   public String displayImageSha256;
+
+   public float compressionRatio = 0.0f;
+   public int primaryImageSize = 0;
+
+   public byte[] template;
+
+   // quality, template or image encode was cancelled or ran past its deadline
+   public boolean incomplete = false;
+
 
 
  }
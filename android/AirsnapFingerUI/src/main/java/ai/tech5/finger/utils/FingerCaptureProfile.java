@@ -0,0 +1,335 @@
+package ai.tech5.finger.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable, validated finger capture configuration. Profiles are built once, can be registered
+ * by name on {@link T5FingerCaptureController} and are handed to the capture activity in-process.
+ */
+public final class FingerCaptureProfile {
+
+    private final String projectToken;
+    private final List<Integer> segmentationModes;
+    private final boolean orientationCheck;
+    private final boolean showBoundingBoxes;
+    private final ImageConfiguration segmentedFingerImageConfiguration;
+    private final ImageConfiguration slapImageConfiguration;
+    private final boolean livenessCheck;
+    private final boolean getNistQuality;
+    private final boolean getNist2Quality;
+    private final float captureSpeed;
+    private final boolean propDenoise;
+    private final boolean cleanFingerPrints;
+    private final List<Integer> missingFingers;
+    private final String title;
+    private final boolean showBackButton;
+    private final int timeoutInSecs;
+    private final float detectorThreshold;
+    private final boolean outsideCapture;
+    private final String subjectId;
+
+    private FingerCaptureProfile(Builder builder) {
+        this.projectToken = builder.projectToken;
+        this.segmentationModes = Collections.unmodifiableList(new ArrayList<>(builder.segmentationModes));
+        this.orientationCheck = builder.orientationCheck;
+        this.showBoundingBoxes = builder.showBoundingBoxes;
+        this.segmentedFingerImageConfiguration = builder.segmentedFingerImageConfiguration.copy();
+        this.slapImageConfiguration = builder.slapImageConfiguration.copy();
+        this.livenessCheck = builder.livenessCheck;
+        this.getNistQuality = builder.getNistQuality;
+        this.getNist2Quality = builder.getNist2Quality;
+        this.captureSpeed = builder.captureSpeed;
+        this.propDenoise = builder.propDenoise;
+        this.cleanFingerPrints = builder.cleanFingerPrints;
+        this.missingFingers = Collections.unmodifiableList(new ArrayList<>(builder.missingFingers));
+        this.title = builder.title;
+        this.showBackButton = builder.showBackButton;
+        this.timeoutInSecs = builder.timeoutInSecs;
+        this.detectorThreshold = builder.detectorThreshold;
+        this.outsideCapture = builder.outsideCapture;
+        this.subjectId = builder.subjectId;
+    }
+
+    public String getProjectToken() {
+        return projectToken;
+    }
+
+    /**
+     * NIST position codes captured in order.
+     */
+    public List<Integer> getSegmentationModes() {
+        return segmentationModes;
+    }
+
+    public boolean isOrientationCheck() {
+        return orientationCheck;
+    }
+
+    public boolean isShowBoundingBoxes() {
+        return showBoundingBoxes;
+    }
+
+    /**
+     * Shared by every capture using this profile, callers must not modify it.
+     */
+    public ImageConfiguration getSegmentedFingerImageConfiguration() {
+        return segmentedFingerImageConfiguration;
+    }
+
+    /**
+     * Shared by every capture using this profile, callers must not modify it.
+     */
+    public ImageConfiguration getSlapImageConfiguration() {
+        return slapImageConfiguration;
+    }
+
+    public boolean isLivenessCheck() {
+        return livenessCheck;
+    }
+
+    public boolean isGetNistQuality() {
+        return getNistQuality;
+    }
+
+    public boolean isGetNist2Quality() {
+        return getNist2Quality;
+    }
+
+    public float getCaptureSpeed() {
+        return captureSpeed;
+    }
+
+    public boolean isPropDenoise() {
+        return propDenoise;
+    }
+
+    public boolean isCleanFingerPrints() {
+        return cleanFingerPrints;
+    }
+
+    public List<Integer> getMissingFingers() {
+        return missingFingers;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public boolean isShowBackButton() {
+        return showBackButton;
+    }
+
+    public int getTimeoutInSecs() {
+        return timeoutInSecs;
+    }
+
+    public float getDetectorThreshold() {
+        return detectorThreshold;
+    }
+
+    public boolean isOutsideCapture() {
+        return outsideCapture;
+    }
+
+    /**
+     * Identifies the subject for resuming after process death; null when the capture can't be
+     * resumed.
+     */
+    public String getSubjectId() {
+        return subjectId;
+    }
+
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.projectToken = projectToken;
+        builder.segmentationModes = new ArrayList<>(segmentationModes);
+        builder.orientationCheck = orientationCheck;
+        builder.showBoundingBoxes = showBoundingBoxes;
+        builder.segmentedFingerImageConfiguration = segmentedFingerImageConfiguration;
+        builder.slapImageConfiguration = slapImageConfiguration;
+        builder.livenessCheck = livenessCheck;
+        builder.getNistQuality = getNistQuality;
+        builder.getNist2Quality = getNist2Quality;
+        builder.captureSpeed = captureSpeed;
+        builder.propDenoise = propDenoise;
+        builder.cleanFingerPrints = cleanFingerPrints;
+        builder.missingFingers = new ArrayList<>(missingFingers);
+        builder.title = title;
+        builder.showBackButton = showBackButton;
+        builder.timeoutInSecs = timeoutInSecs;
+        builder.detectorThreshold = detectorThreshold;
+        builder.outsideCapture = outsideCapture;
+        builder.subjectId = subjectId;
+        return builder;
+    }
+
+
+    public static class Builder {
+
+        private String projectToken = "";
+        private List<Integer> segmentationModes = new ArrayList<>();
+        private boolean orientationCheck = true;
+        private boolean showBoundingBoxes = true;
+        private ImageConfiguration segmentedFingerImageConfiguration = new ImageConfiguration();
+        private ImageConfiguration slapImageConfiguration = new ImageConfiguration();
+        private boolean livenessCheck = false;
+        private boolean getNistQuality = false;
+        private boolean getNist2Quality = false;
+        private float captureSpeed = 0.5f;
+        private boolean propDenoise = false;
+        private boolean cleanFingerPrints = false;
+        private List<Integer> missingFingers = new ArrayList<>();
+        private String title = null;
+        private boolean showBackButton = false;
+        private int timeoutInSecs = 60;
+        private float detectorThreshold = 0.9F;
+        private boolean outsideCapture = false;
+        private String subjectId = null;
+
+        public Builder setProjectToken(String projectToken) {
+            this.projectToken = projectToken != null ? projectToken : "";
+            return this;
+        }
+
+        /**
+         * @param positionCodes NIST position codes captured in order
+         */
+        public Builder setPositionCodes(Collection<Integer> positionCodes) {
+            this.segmentationModes = new ArrayList<>(positionCodes);
+            return this;
+        }
+
+        public Builder setSegmentationModes(Collection<SegmentationMode> modes) {
+            T5FingerCaptureController controller = T5FingerCaptureController.getInstance();
+
+            this.segmentationModes = new ArrayList<>();
+            for (SegmentationMode mode : modes) {
+                this.segmentationModes.add(controller.getNistPoscode(mode));
+            }
+            return this;
+        }
+
+        public Builder setCaptureMode(CaptureMode captureMode) {
+            this.orientationCheck = captureMode == CaptureMode.CAPTURE_MODE_SELF;
+            return this;
+        }
+
+        public Builder setShowBoundingBoxes(boolean showBoundingBoxes) {
+            this.showBoundingBoxes = showBoundingBoxes;
+            return this;
+        }
+
+        public Builder setSegmentedFingerImageConfiguration(ImageConfiguration configuration) {
+            this.segmentedFingerImageConfiguration = configuration != null ? configuration : new ImageConfiguration();
+            return this;
+        }
+
+        public Builder setSlapImageConfiguration(ImageConfiguration configuration) {
+            if (configuration == null) {
+                configuration = new ImageConfiguration();
+                configuration.setIsCropImage(false);
+            }
+            this.slapImageConfiguration = configuration;
+            return this;
+        }
+
+        public Builder setLivenessCheck(boolean livenessCheck) {
+            this.livenessCheck = livenessCheck;
+            return this;
+        }
+
+        public Builder setGetNistQuality(boolean getNistQuality) {
+            this.getNistQuality = getNistQuality;
+            return this;
+        }
+
+        public Builder setGetNist2Quality(boolean getNist2Quality) {
+            this.getNist2Quality = getNist2Quality;
+            return this;
+        }
+
+        public Builder setCaptureSpeed(CaptureSpeed captureSpeed) {
+            if (captureSpeed == CaptureSpeed.CAPTURE_SPEED_LOW) {
+                this.captureSpeed = 0.0f;
+            } else if (captureSpeed == CaptureSpeed.CAPTURE_SPEED_HIGH) {
+                this.captureSpeed = 1.0f;
+            } else {
+                this.captureSpeed = 0.5f;
+            }
+            return this;
+        }
+
+        public Builder setPropDenoise(boolean propDenoise) {
+            this.propDenoise = propDenoise;
+            return this;
+        }
+
+        public Builder setCleanFingerPrints(boolean cleanFingerPrints) {
+            this.cleanFingerPrints = cleanFingerPrints;
+            return this;
+        }
+
+        public Builder setMissingFingers(Collection<Integer> missingFingers) {
+            this.missingFingers = missingFingers != null ? new ArrayList<>(missingFingers) : new ArrayList<>();
+            return this;
+        }
+
+        public Builder setTitle(String title) {
+            this.title = title;
+            return this;
+        }
+
+        public Builder setShowBackButton(boolean showBackButton) {
+            this.showBackButton = showBackButton;
+            return this;
+        }
+
+        public Builder setTimeoutInSecs(int timeoutInSecs) {
+            this.timeoutInSecs = timeoutInSecs;
+            return this;
+        }
+
+        public Builder setDetectorThreshold(float detectorThreshold) {
+            this.detectorThreshold = detectorThreshold;
+            return this;
+        }
+
+        public Builder setOutsideCapture(boolean outsideCapture) {
+            this.outsideCapture = outsideCapture;
+            return this;
+        }
+
+        public Builder setSubjectId(String subjectId) {
+            this.subjectId = subjectId;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException when the configuration can't be captured
+         */
+        public FingerCaptureProfile build() {
+            if (segmentationModes.isEmpty()) {
+                throw new IllegalArgumentException("segmentation modes is empty");
+            }
+
+            for (int positionCode : segmentationModes) {
+                if (T5FingerCaptureController.getInstance().getSegmentationMode(positionCode) == null) {
+                    throw new IllegalArgumentException("unsupported position code " + positionCode);
+                }
+            }
+
+            if (timeoutInSecs <= 0) {
+                throw new IllegalArgumentException("timeout must be positive");
+            }
+
+            if (detectorThreshold < 0.0f || detectorThreshold > 1.0f) {
+                throw new IllegalArgumentException("detector threshold must be between 0 and 1");
+            }
+
+            return new FingerCaptureProfile(this);
+        }
+    }
+}
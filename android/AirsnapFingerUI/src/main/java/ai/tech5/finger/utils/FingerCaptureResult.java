@@ -2,11 +2,24 @@ package ai.tech5.finger.utils;
 
 import java.util.ArrayList;
 
+import ai.tech5.sdk.abis.T5AirSnap.SgmRectImage;
+
 public class FingerCaptureResult {
 
     public ArrayList<LivenessScore> livenessScores;
     public ArrayList<Slap> slapImages;
     public ArrayList<Finger> fingers;
+    public byte[] templates;
+    public ArrayList<SgmRectImage> segmentedRects;
+
+    public boolean partial = false;
+    public int inProgressPosition = -1;
+    // some fingers or slaps were left unfinished, see Finger.incomplete
+    public boolean incomplete = false;
+
+    // peak bytes held in raw, segmented and encoded images of the subject, and peak Java heap use
+    public long peakMemoryBytes = 0;
+    public long peakHeapBytes = 0;
 }
 
 
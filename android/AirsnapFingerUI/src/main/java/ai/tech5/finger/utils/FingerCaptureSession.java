@@ -0,0 +1,137 @@
+package ai.tech5.finger.utils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+import ai.tech5.sdk.abis.T5AirSnap.SgmRectImage;
+
+/**
+ * Accumulates the results of several capture attempts and keeps, per finger position, the
+ * highest quality sample seen so far together with its raw segmented image and encodings. A slap
+ * and its liveness score are only replaced by an attempt that also supplied every kept finger of
+ * that slap, so they always show the fingers that are returned.
+ */
+public class FingerCaptureSession {
+
+    private final LinkedHashMap<Integer, Finger> m_bestFingers = new LinkedHashMap<>();
+    private final LinkedHashMap<Integer, SgmRectImage> m_bestRects = new LinkedHashMap<>();
+    private final LinkedHashMap<Integer, Slap> m_slaps = new LinkedHashMap<>();
+    private final LinkedHashMap<Integer, LivenessScore> m_livenessScores = new LinkedHashMap<>();
+
+    private int m_attempts = 0;
+    private boolean m_incomplete = false;
+    private long m_peakMemoryBytes = 0;
+    private long m_peakHeapBytes = 0;
+
+    public synchronized int getAttempts() {
+        return m_attempts;
+    }
+
+    public synchronized SgmRectImage getRawImage(int position) {
+        return m_bestRects.get(position);
+    }
+
+    /**
+     * Merges a completed attempt, or the partial result of one that timed out, and returns the
+     * session result. The returned result is partial when {@code attempt} is.
+     */
+    public synchronized FingerCaptureResult merge(FingerCaptureResult attempt) {
+        m_attempts++;
+        m_incomplete |= attempt.incomplete;
+        m_peakMemoryBytes = Math.max(m_peakMemoryBytes, attempt.peakMemoryBytes);
+        m_peakHeapBytes = Math.max(m_peakHeapBytes, attempt.peakHeapBytes);
+
+        HashSet<Integer> improvedPositions = new HashSet<>();
+
+        if (attempt.fingers != null) {
+            for (Finger finger : attempt.fingers) {
+                Finger current = m_bestFingers.get(finger.pos);
+                if (current == null || isBetter(finger, current)) {
+                    m_bestFingers.put(finger.pos, finger);
+                    improvedPositions.add(finger.pos);
+                }
+            }
+        }
+
+        if (attempt.segmentedRects != null) {
+            for (SgmRectImage rect : attempt.segmentedRects) {
+                if (improvedPositions.contains(rect.pos)) {
+                    m_bestRects.put(rect.pos, rect);
+                }
+            }
+        }
+
+        if (attempt.slapImages != null) {
+            for (Slap slap : attempt.slapImages) {
+                if (!m_slaps.containsKey(slap.pos) || isFromAttempt(slap.pos, improvedPositions)) {
+                    m_slaps.put(slap.pos, slap);
+                }
+            }
+        }
+
+        if (attempt.livenessScores != null) {
+            for (LivenessScore score : attempt.livenessScores) {
+                if (!m_livenessScores.containsKey(score.pos) || isFromAttempt(score.pos, improvedPositions)) {
+                    m_livenessScores.put(score.pos, score);
+                }
+            }
+        }
+
+        FingerCaptureResult result = getResult();
+        result.partial = attempt.partial;
+        result.inProgressPosition = attempt.inProgressPosition;
+        return result;
+    }
+
+    public synchronized FingerCaptureResult getResult() {
+        FingerCaptureResult result = new FingerCaptureResult();
+        result.fingers = new ArrayList<>(m_bestFingers.values());
+        result.slapImages = new ArrayList<>(m_slaps.values());
+        result.livenessScores = new ArrayList<>(m_livenessScores.values());
+        result.segmentedRects = new ArrayList<>(m_bestRects.values());
+        result.templates = FingerTemplateContainer.pack(result.fingers);
+        result.incomplete = m_incomplete;
+        result.peakMemoryBytes = m_peakMemoryBytes;
+        result.peakHeapBytes = m_peakHeapBytes;
+        return result;
+    }
+
+    /**
+     * @return true when every kept finger of {@code positionCode} was taken from the attempt
+     * being merged
+     */
+    private boolean isFromAttempt(int positionCode, HashSet<Integer> attemptPositions) {
+        FingerPositionTable.Position position = FingerPositionTable.get(positionCode);
+        if (position == null) {
+            return attemptPositions.contains(positionCode) || !m_bestFingers.containsKey(positionCode);
+        }
+
+        for (int code = 0; code < Integer.SIZE; code++) {
+            if ((position.fingerMask & (1 << code)) != 0
+                    && m_bestFingers.containsKey(code) && !attemptPositions.contains(code)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * NFIQ2 (0-100, higher is better) decides first, then NFIQ1 (1-5, lower is better, 0 when not
+     * computed), then the proprietary quality score.
+     */
+    static boolean isBetter(Finger candidate, Finger current) {
+        if (candidate.nist2Quality != current.nist2Quality) {
+            return candidate.nist2Quality > current.nist2Quality;
+        }
+
+        if (candidate.nistQuality != current.nistQuality) {
+            if (candidate.nistQuality == 0 || current.nistQuality == 0) {
+                return current.nistQuality == 0;
+            }
+            return candidate.nistQuality < current.nistQuality;
+        }
+
+        return candidate.quality > current.quality;
+    }
+}
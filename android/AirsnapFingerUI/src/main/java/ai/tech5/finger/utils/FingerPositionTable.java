@@ -0,0 +1,283 @@
+package ai.tech5.finger.utils;
+
+import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_L_AND_R_THUMBS;
+import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_L_INDEX_F;
+import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_L_INDEX_MIDDLE;
+import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_L_LITTLE_F;
+import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_L_MIDDLE_F;
+import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_L_RING_F;
+import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_L_RING_LITTLE;
+import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_L_THUMB;
+import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_PL_L_4F;
+import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_PL_R_4F;
+import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_R_INDEX_F;
+import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_R_INDEX_MIDDLE;
+import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_R_LITTLE_F;
+import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_R_MIDDLE_F;
+import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_R_RING_F;
+import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_R_RING_LITTLE;
+import static ai.tech5.sdk.abis.T5AirSnap.NistPosCode.POS_CODE_R_THUMB;
+
+import android.content.res.Resources;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+import ai.tech5.finger.R;
+
+/**
+ * Everything the capture path knows about a NIST position code, in one immutable table indexed by
+ * the code: segmentation mode, expected finger count, hold orientation and which fingers it
+ * covers. {@link #getLabels} adds the display labels and status texts, formatted once per locale
+ * so per-frame status handling is array lookups only.
+ */
+public final class FingerPositionTable {
+
+    /**
+     * Finger counts up to this many detected rects have their texts preformatted.
+     */
+    private static final int MAX_PREFORMATTED_RECTS = 8;
+    private static final String MODE_NAME_PREFIX = "SEGMENTATION_MODE_";
+
+    public static final class Position {
+        public final int positionCode;
+        public final SegmentationMode segmentationMode;
+        // segmentation mode without its prefix, e.g. LEFT_SLAP, as used by JS configs
+        public final String name;
+        public final int expectedFingers;
+        // single fingers and thumbs are held vertically, slaps and pairs horizontally
+        public final boolean vertical;
+        // bit 1 << code for every single-finger NIST code the position covers
+        public final int fingerMask;
+        final int labelResId;
+        // slap labels include the detected finger count
+        final boolean slap;
+
+        private Position(int positionCode, SegmentationMode segmentationMode, int expectedFingers, boolean vertical,
+                         int fingerMask, int labelResId, boolean slap) {
+            this.positionCode = positionCode;
+            this.segmentationMode = segmentationMode;
+            this.name = segmentationMode.name().substring(MODE_NAME_PREFIX.length());
+            this.expectedFingers = expectedFingers;
+            this.vertical = vertical;
+            this.fingerMask = fingerMask;
+            this.labelResId = labelResId;
+            this.slap = slap;
+        }
+    }
+
+    private static final Position[] BY_CODE;
+    private static final Position[] BY_MODE = new Position[SegmentationMode.values().length];
+    private static final HashMap<String, Position> BY_NAME = new HashMap<>();
+
+    private static volatile Labels s_labels = null;
+
+    static {
+        Position[] positions = {
+                slap(POS_CODE_PL_L_4F, SegmentationMode.SEGMENTATION_MODE_LEFT_SLAP, R.string.label_left_slap_num_fingers,
+                        POS_CODE_L_INDEX_F, POS_CODE_L_MIDDLE_F, POS_CODE_L_RING_F, POS_CODE_L_LITTLE_F),
+                slap(POS_CODE_PL_R_4F, SegmentationMode.SEGMENTATION_MODE_RIGHT_SLAP, R.string.label_right_slap_num_fingers,
+                        POS_CODE_R_INDEX_F, POS_CODE_R_MIDDLE_F, POS_CODE_R_RING_F, POS_CODE_R_LITTLE_F),
+                position(POS_CODE_L_AND_R_THUMBS, SegmentationMode.SEGMENTATION_MODE_LEFT_AND_RIGHT_THUMBS, true, R.string.label_thumbs,
+                        POS_CODE_L_THUMB, POS_CODE_R_THUMB),
+                position(POS_CODE_R_THUMB, SegmentationMode.SEGMENTATION_MODE_RIGHT_THUMB, true, R.string.label_right_thumb, POS_CODE_R_THUMB),
+                position(POS_CODE_L_THUMB, SegmentationMode.SEGMENTATION_MODE_LEFT_THUMB, true, R.string.label_left_thumb, POS_CODE_L_THUMB),
+                position(POS_CODE_R_INDEX_F, SegmentationMode.SEGMENTATION_MODE_RIGHT_INDEX, true, R.string.label_right_index_finger, POS_CODE_R_INDEX_F),
+                position(POS_CODE_R_MIDDLE_F, SegmentationMode.SEGMENTATION_MODE_RIGHT_MIDDLE, true, R.string.label_right_middle_finger, POS_CODE_R_MIDDLE_F),
+                position(POS_CODE_R_RING_F, SegmentationMode.SEGMENTATION_MODE_RIGHT_RING, true, R.string.label_right_ring_finger, POS_CODE_R_RING_F),
+                position(POS_CODE_R_LITTLE_F, SegmentationMode.SEGMENTATION_MODE_RIGHT_LITTLE, true, R.string.label_right_little_finger, POS_CODE_R_LITTLE_F),
+                position(POS_CODE_L_INDEX_F, SegmentationMode.SEGMENTATION_MODE_LEFT_INDEX, true, R.string.label_left_index_finger, POS_CODE_L_INDEX_F),
+                position(POS_CODE_L_MIDDLE_F, SegmentationMode.SEGMENTATION_MODE_LEFT_MIDDLE, true, R.string.label_left_middle_finger, POS_CODE_L_MIDDLE_F),
+                position(POS_CODE_L_RING_F, SegmentationMode.SEGMENTATION_MODE_LEFT_RING, true, R.string.label_left_ring_finger, POS_CODE_L_RING_F),
+                position(POS_CODE_L_LITTLE_F, SegmentationMode.SEGMENTATION_MODE_LEFT_LITTLE, true, R.string.label_left_little_finger, POS_CODE_L_LITTLE_F),
+                position(POS_CODE_R_INDEX_MIDDLE, SegmentationMode.SEGMENTATION_MODE_RIGHT_INDEX_MIDDLE, false, R.string.label_right_index_n_middle_fingers,
+                        POS_CODE_R_INDEX_F, POS_CODE_R_MIDDLE_F),
+                position(POS_CODE_L_INDEX_MIDDLE, SegmentationMode.SEGMENTATION_MODE_LEFT_INDEX_MIDDLE, false, R.string.label_left_index_n_middle_fingers,
+                        POS_CODE_L_INDEX_F, POS_CODE_L_MIDDLE_F),
+                position(POS_CODE_R_RING_LITTLE, SegmentationMode.SEGMENTATION_MODE_RIGHT_RING_LITTLE, false, R.string.label_right_ring_n_little_fingers,
+                        POS_CODE_R_RING_F, POS_CODE_R_LITTLE_F),
+                position(POS_CODE_L_RING_LITTLE, SegmentationMode.SEGMENTATION_MODE_LEFT_RING_LITTLE, false, R.string.label_left_ring_n_little_fingers,
+                        POS_CODE_L_RING_F, POS_CODE_L_LITTLE_F),
+        };
+
+        int maxCode = 0;
+        for (Position position : positions) {
+            maxCode = Math.max(maxCode, position.positionCode);
+        }
+
+        BY_CODE = new Position[maxCode + 1];
+        for (Position position : positions) {
+            BY_CODE[position.positionCode] = position;
+            BY_MODE[position.segmentationMode.ordinal()] = position;
+            BY_NAME.put(position.name, position);
+        }
+    }
+
+    private FingerPositionTable() {
+    }
+
+    private static Position slap(int positionCode, SegmentationMode segmentationMode, int labelResId, int... fingers) {
+        return new Position(positionCode, segmentationMode, fingers.length, false, getFingerMask(fingers), labelResId, true);
+    }
+
+    private static Position position(int positionCode, SegmentationMode segmentationMode, boolean vertical, int labelResId, int... fingers) {
+        return new Position(positionCode, segmentationMode, fingers.length, vertical, getFingerMask(fingers), labelResId, false);
+    }
+
+    private static int getFingerMask(int... fingers) {
+        int mask = 0;
+        for (int finger : fingers) {
+            mask |= 1 << finger;
+        }
+        return mask;
+    }
+
+    /**
+     * @return null for codes the capture path doesn't support
+     */
+    public static Position get(int positionCode) {
+        return positionCode >= 0 && positionCode < BY_CODE.length ? BY_CODE[positionCode] : null;
+    }
+
+    public static Position get(SegmentationMode segmentationMode) {
+        return BY_MODE[segmentationMode.ordinal()];
+    }
+
+    /**
+     * @param name segmentation mode name without prefix, in any case, e.g. {@code left_slap}
+     * @return null for unknown names
+     */
+    public static Position parse(String name) {
+        return name != null ? BY_NAME.get(name.toUpperCase(Locale.ROOT)) : null;
+    }
+
+    /**
+     * Labels and status texts for the current locale of {@code resources}, built on first use
+     * and again only when the locale changes.
+     */
+    public static Labels getLabels(Resources resources) {
+        Locale locale = resources.getConfiguration().getLocales().get(0);
+
+        Labels labels = s_labels;
+        if (labels == null || !labels.m_locale.equals(locale)) {
+            labels = new Labels(resources, locale);
+            s_labels = labels;
+        }
+        return labels;
+    }
+
+    public static final class Labels {
+
+        private final Resources m_resources;
+        private final Locale m_locale;
+        // [position code][detected rects], slaps differ per count, other positions share one array
+        private final String[][] m_captureObjectNames = new String[BY_CODE.length][];
+        private final String[][] m_frameHandStatuses = new String[BY_CODE.length][];
+        private final String[][] m_holdStatuses = new String[BY_CODE.length][];
+        private final String[] m_tooManyFingersStatuses = new String[MAX_PREFORMATTED_RECTS + 1];
+        private final String m_fingerLabel;
+        private final String m_tooFarStatus;
+        private final String m_tooCloseStatus;
+        private final String m_lowFocusStatus;
+        private final String m_goodFocusStatus;
+
+        private Labels(Resources resources, Locale locale) {
+            m_resources = resources;
+            m_locale = locale;
+            m_fingerLabel = resources.getString(R.string.label_finger);
+            m_tooFarStatus = resources.getString(R.string.label_too_far);
+            m_tooCloseStatus = resources.getString(R.string.label_too_close);
+            m_lowFocusStatus = resources.getString(R.string.label_low_focus);
+            m_goodFocusStatus = resources.getString(R.string.label_good_focus);
+
+            for (Position position : BY_CODE) {
+                if (position == null) {
+                    continue;
+                }
+
+                int code = position.positionCode;
+                m_captureObjectNames[code] = new String[MAX_PREFORMATTED_RECTS + 1];
+                m_frameHandStatuses[code] = new String[MAX_PREFORMATTED_RECTS + 1];
+                m_holdStatuses[code] = new String[MAX_PREFORMATTED_RECTS + 1];
+
+                for (int rects = 0; rects <= MAX_PREFORMATTED_RECTS; rects++) {
+                    String name = rects > 0 && !position.slap
+                            ? m_captureObjectNames[code][0] : formatCaptureObjectName(position, rects);
+
+                    m_captureObjectNames[code][rects] = name;
+                    m_frameHandStatuses[code][rects] = resources.getString(R.string.label_frame_hand, name);
+                    m_holdStatuses[code][rects] = resources.getString(
+                            position.vertical ? R.string.hold_vertically : R.string.hold_horizontally, name);
+                }
+            }
+
+            for (int count = 0; count <= MAX_PREFORMATTED_RECTS; count++) {
+                m_tooManyFingersStatuses[count] = count == 1
+                        ? resources.getString(R.string.label_more_than_one_finger_detected)
+                        : resources.getString(R.string.label_more_than_n_fingers_detected, count);
+            }
+        }
+
+        private String formatCaptureObjectName(Position position, int rects) {
+            return position.slap ? m_resources.getString(position.labelResId, rects) : m_resources.getString(position.labelResId);
+        }
+
+        public String getCaptureObjectName(int positionCode, int rects) {
+            Position position = get(positionCode);
+            if (position == null) {
+                return m_fingerLabel;
+            }
+            if (rects < 0 || rects > MAX_PREFORMATTED_RECTS) {
+                return formatCaptureObjectName(position, rects);
+            }
+            return m_captureObjectNames[positionCode][rects];
+        }
+
+        public String getFrameHandStatus(int positionCode, int rects) {
+            Position position = get(positionCode);
+            if (position == null || rects < 0 || rects > MAX_PREFORMATTED_RECTS) {
+                return m_resources.getString(R.string.label_frame_hand, getCaptureObjectName(positionCode, rects));
+            }
+            return m_frameHandStatuses[positionCode][rects];
+        }
+
+        public String getHoldStatus(int positionCode, int rects) {
+            Position position = get(positionCode);
+            if (position == null || rects < 0 || rects > MAX_PREFORMATTED_RECTS) {
+                boolean vertical = position == null || position.vertical;
+                return m_resources.getString(vertical ? R.string.hold_vertically : R.string.hold_horizontally,
+                        getCaptureObjectName(positionCode, rects));
+            }
+            return m_holdStatuses[positionCode][rects];
+        }
+
+        public String getTooFarStatus() {
+            return m_tooFarStatus;
+        }
+
+        public String getTooCloseStatus() {
+            return m_tooCloseStatus;
+        }
+
+        public String getLowFocusStatus() {
+            return m_lowFocusStatus;
+        }
+
+        public String getGoodFocusStatus() {
+            return m_goodFocusStatus;
+        }
+
+        /**
+         * Slaps report the detected count as expected, like the capture UI always did.
+         */
+        public String getTooManyFingersStatus(int positionCode, int rects) {
+            Position position = get(positionCode);
+            int expectedFingers = position == null ? 1 : position.slap ? rects : position.expectedFingers;
+
+            if (expectedFingers >= 0 && expectedFingers <= MAX_PREFORMATTED_RECTS) {
+                return m_tooManyFingersStatuses[expectedFingers];
+            }
+            return m_resources.getString(R.string.label_more_than_n_fingers_detected, expectedFingers);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ai.tech5.finger.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Compact binary container for the minutiae templates of a capture, so the backend can use the
+ * on-device templates instead of re-extracting them from the uploaded images.
+ * <p>
+ * Layout (little endian): magic "T5FT", version(1), count(1), then per finger:
+ * position(1), nistQuality(1), nist2Quality(1), quality(1), minutiaeCount(2), templateLength(4), template.
+ */
+public class FingerTemplateContainer {
+
+    private static final int MAGIC = 0x54463554; // "T5FT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 6;
+    private static final int RECORD_HEADER_SIZE = 10;
+
+    private FingerTemplateContainer() {
+    }
+
+    public static byte[] pack(List<Finger> fingers) {
+        int count = 0;
+        int size = HEADER_SIZE;
+        for (Finger finger : fingers) {
+            if (finger.template != null && finger.template.length > 0) {
+                size += RECORD_HEADER_SIZE + finger.template.length;
+                count++;
+            }
+        }
+
+        if (count == 0) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) count);
+
+        for (Finger finger : fingers) {
+            if (finger.template == null || finger.template.length == 0) {
+                continue;
+            }
+
+            buffer.put((byte) finger.pos);
+            buffer.put((byte) finger.nistQuality);
+            buffer.put((byte) finger.nist2Quality);
+            buffer.put((byte) finger.quality);
+            buffer.putShort((short) finger.minutiaesNumber);
+            buffer.putInt(finger.template.length);
+            buffer.put(finger.template);
+        }
+
+        return buffer.array();
+    }
+}
@@ -0,0 +1,168 @@
+package ai.tech5.finger.utils;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Pure-Java replacements for the trivial 8-bit grayscale conversions of the native SDK
+ * (raw to BMP and centre crop/pad), so these formats don't pay a JNI round trip per finger.
+ */
+public class GrayscaleImageKernel {
+
+    private static final int BMP_FILE_HEADER_SIZE = 14;
+    private static final int BMP_INFO_HEADER_SIZE = 40;
+    private static final int BMP_PALETTE_SIZE = 256 * 4;
+    private static final int BMP_PIXEL_DATA_OFFSET = BMP_FILE_HEADER_SIZE + BMP_INFO_HEADER_SIZE + BMP_PALETTE_SIZE;
+
+    // 500 ppi expressed in pixels per metre, the resolution every capture is templated at
+    private static final int BMP_PIXELS_PER_METRE = 19685;
+
+    private static final byte[] BMP_HEADER_TEMPLATE = createBmpHeaderTemplate();
+
+    private static final ThreadLocal<byte[]> m_cropBuffer = new ThreadLocal<>();
+
+    private GrayscaleImageKernel() {
+    }
+
+    public static byte[] convertRawToBmp(byte[] rawImage, int width, int height) {
+        return convertRawToBmp(rawImage, width, height, null);
+    }
+
+    /**
+     * Same as {@link #convertRawToBmp(byte[], int, int)}, feeding every row to {@code digest}
+     * right after it is written so the output is hashed without a second pass.
+     */
+    public static byte[] convertRawToBmp(byte[] rawImage, int width, int height, MessageDigest digest) {
+        if (rawImage == null || width <= 0 || height <= 0 || rawImage.length < width * height) {
+            return null;
+        }
+
+        int stride = (width + 3) & ~3;
+        int imageSize = stride * height;
+        byte[] bmp = new byte[BMP_PIXEL_DATA_OFFSET + imageSize];
+
+        System.arraycopy(BMP_HEADER_TEMPLATE, 0, bmp, 0, BMP_PIXEL_DATA_OFFSET);
+        putInt(bmp, 2, bmp.length);
+        putInt(bmp, 18, width);
+        putInt(bmp, 22, height);
+        putInt(bmp, 34, imageSize);
+
+        if (digest != null) {
+            digest.update(bmp, 0, BMP_PIXEL_DATA_OFFSET);
+        }
+
+        // BMP rows are stored bottom-up; row padding is already zero in the fresh array
+        int dstOffset = BMP_PIXEL_DATA_OFFSET;
+        for (int srcOffset = (height - 1) * width; srcOffset >= 0; srcOffset -= width) {
+            System.arraycopy(rawImage, srcOffset, bmp, dstOffset, width);
+            if (digest != null) {
+                digest.update(bmp, dstOffset, stride);
+            }
+            dstOffset += stride;
+        }
+
+        return bmp;
+    }
+
+    /**
+     * Centre-crops and/or pads {@code srcImage} into {@code dstImage}, filling uncovered
+     * pixels with {@code paddingColor}. Returns 0 on success, matching the native cropImage.
+     */
+    public static int cropImage(byte[] srcImage, int srcWidth, int srcHeight,
+                                byte[] dstImage, int dstWidth, int dstHeight, int paddingColor) {
+        if (srcImage == null || dstImage == null || srcWidth <= 0 || srcHeight <= 0 || dstWidth <= 0 || dstHeight <= 0
+                || srcImage.length < srcWidth * srcHeight || dstImage.length < dstWidth * dstHeight) {
+            return -1;
+        }
+
+        byte padding = (byte) paddingColor;
+
+        int copyWidth = Math.min(srcWidth, dstWidth);
+        int copyHeight = Math.min(srcHeight, dstHeight);
+        int srcX = (srcWidth - copyWidth) / 2;
+        int srcY = (srcHeight - copyHeight) / 2;
+        int dstX = (dstWidth - copyWidth) / 2;
+        int dstY = (dstHeight - copyHeight) / 2;
+        int rightPadding = dstWidth - dstX - copyWidth;
+
+        // top and bottom bands are contiguous, fill them in one go each
+        Arrays.fill(dstImage, 0, dstY * dstWidth, padding);
+        Arrays.fill(dstImage, (dstY + copyHeight) * dstWidth, dstWidth * dstHeight, padding);
+
+        int srcOffset = srcY * srcWidth + srcX;
+        int dstOffset = dstY * dstWidth;
+        for (int row = 0; row < copyHeight; row++) {
+            if (dstX > 0) {
+                Arrays.fill(dstImage, dstOffset, dstOffset + dstX, padding);
+            }
+            System.arraycopy(srcImage, srcOffset, dstImage, dstOffset + dstX, copyWidth);
+            if (rightPadding > 0) {
+                Arrays.fill(dstImage, dstOffset + dstX + copyWidth, dstOffset + dstWidth, padding);
+            }
+            srcOffset += srcWidth;
+            dstOffset += dstWidth;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Returns a per-thread scratch buffer of at least {@code size} bytes; it only grows, so
+     * callers pass the image dimensions along instead of relying on its length. The buffer is
+     * reused by the next call on the same thread, so it must not escape the caller.
+     */
+    public static byte[] obtainScratchBuffer(int size) {
+        byte[] buffer = m_cropBuffer.get();
+        if (buffer == null || buffer.length < size) {
+            buffer = new byte[size];
+            m_cropBuffer.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Leaves the current scratch buffer to tasks that still read it, e.g. abandoned encodes; the
+     * next {@link #obtainScratchBuffer} on this thread allocates a new one.
+     */
+    public static void detachScratchBuffer() {
+        m_cropBuffer.remove();
+    }
+
+    private static byte[] createBmpHeaderTemplate() {
+        byte[] header = new byte[BMP_PIXEL_DATA_OFFSET];
+
+        header[0] = 'B';
+        header[1] = 'M';
+        putInt(header, 10, BMP_PIXEL_DATA_OFFSET);
+
+        putInt(header, 14, BMP_INFO_HEADER_SIZE);
+        putShort(header, 26, 1);
+        putShort(header, 28, 8);
+        putInt(header, 38, BMP_PIXELS_PER_METRE);
+        putInt(header, 42, BMP_PIXELS_PER_METRE);
+        putInt(header, 46, 256);
+        putInt(header, 50, 256);
+
+        int paletteOffset = BMP_FILE_HEADER_SIZE + BMP_INFO_HEADER_SIZE;
+        for (int i = 0; i < 256; i++) {
+            header[paletteOffset++] = (byte) i;
+            header[paletteOffset++] = (byte) i;
+            header[paletteOffset++] = (byte) i;
+            header[paletteOffset++] = 0;
+        }
+
+        return header;
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static void putShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+    }
+}
@@ -20,6 +20,7 @@
    private int       croppedImageWidth   = 512;
    private int       croppedImageHeight  = 512;
    private int       paddingColor       = 255;
+   private int       targetSizeInBytes  = 0;
 
 
    public float getCompressionRatio() {
@@ -46,6 +47,18 @@
      this.croppedImageHeight = croppedImageHeight;
    }
 
+   public int getTargetSizeInBytes() {
+     return this.targetSizeInBytes;
+   }
+
+   /**
+    * When greater than zero and the image type is WSQ, the compression ratio is searched upwards
+    * from {@link #getCompressionRatio()} until the encoded image fits into this many bytes.
+    */
+   public void setTargetSizeInBytes(int targetSizeInBytes) {
+     this.targetSizeInBytes = targetSizeInBytes;
+   }
+
    public int getPaddingColor() {
      return this.paddingColor;
    }
@@ -108,6 +121,7 @@
      dest.writeInt(this.paddingColor);
      dest.writeInt(this.displayImageType == null ? -1 : this.displayImageType.ordinal());
      dest.writeByte(this.requireDisplayImage ? (byte) 1 : (byte) 0);
+     dest.writeInt(this.targetSizeInBytes);
    }
 
    public void readFromParcel(Parcel source) {
@@ -121,11 +135,26 @@
      int tmpDisplayImageType = source.readInt();
      this.displayImageType = tmpDisplayImageType == -1 ? null : ImageType.values()[tmpDisplayImageType];
      this.requireDisplayImage = source.readByte() != 0;
+     this.targetSizeInBytes = source.readInt();
    }
 
    public ImageConfiguration() {
    }
 
+   public ImageConfiguration copy() {
+     ImageConfiguration copy = new ImageConfiguration();
+     copy.primaryImageType = this.primaryImageType;
+     copy.displayImageType = this.displayImageType;
+     copy.requireDisplayImage = this.requireDisplayImage;
+     copy.compressionRatio = this.compressionRatio;
+     copy.cropImage = this.cropImage;
+     copy.croppedImageWidth = this.croppedImageWidth;
+     copy.croppedImageHeight = this.croppedImageHeight;
+     copy.paddingColor = this.paddingColor;
+     copy.targetSizeInBytes = this.targetSizeInBytes;
+     return copy;
+   }
+
    protected ImageConfiguration(Parcel in) {
      int tmpPrimaryImageType = in.readInt();
      this.primaryImageType = tmpPrimaryImageType == -1 ? null : ImageType.values()[tmpPrimaryImageType];
@@ -137,6 +166,7 @@
      int tmpDisplayImageType = in.readInt();
      this.displayImageType = tmpDisplayImageType == -1 ? null : ImageType.values()[tmpDisplayImageType];
      this.requireDisplayImage = in.readByte() != 0;
+     this.targetSizeInBytes = in.readInt();
    }
 
    public static final Creator<ImageConfiguration> CREATOR = new Creator<ImageConfiguration>() {
@@ -0,0 +1,11 @@
+package ai.tech5.finger.utils;
+
+/**
+ * A capture surface that stays alive between subjects in kiosk mode.
+ */
+public interface KioskCaptureHost {
+
+    void startSubject(FingerCaptureProfile subject);
+
+    void endKiosk();
+}
@@ -1,11 +1,16 @@
 package ai.tech5.finger.utils;
 
+import java.nio.ByteBuffer;
+
 public class RawSlap {
 
     public int pos;
 
     public byte[] rawData;
 
+    // set instead of rawData once the slap is spilled, see RawSlapSpillFile
+    public ByteBuffer spilledData;
+
     public int imageWidth;
 
     public int imageHeight;
@@ -0,0 +1,85 @@
+package ai.tech5.finger.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory-mapped scratch file that holds raw slaps of completed positions off the Java heap until
+ * the subject is encoded. A spilled slap keeps a mapped view of its region; the pages belong to
+ * the page cache, which the kernel can write back and drop under memory pressure.
+ */
+public class RawSlapSpillFile implements Closeable {
+
+    private final File m_file;
+    private final RandomAccessFile m_randomAccessFile;
+    private final FileChannel m_channel;
+    private long m_writeOffset = 0;
+
+    public RawSlapSpillFile(File file) throws IOException {
+        m_file = file;
+        m_randomAccessFile = new RandomAccessFile(file, "rw");
+        m_channel = m_randomAccessFile.getChannel();
+    }
+
+    /**
+     * Moves the pixels of {@code slap} into the file and drops its heap array.
+     */
+    public synchronized void spill(RawSlap slap) throws IOException {
+        if (slap.rawData == null) {
+            return;
+        }
+
+        int length = slap.imageWidth * slap.imageHeight;
+        ByteBuffer region = m_channel.map(FileChannel.MapMode.READ_WRITE, m_writeOffset, length);
+        region.put(slap.rawData, 0, length);
+        region.flip();
+
+        m_writeOffset += length;
+        slap.spilledData = region;
+        slap.rawData = null;
+    }
+
+    /**
+     * The pixels of {@code slap}: its heap array, or the spilled region copied into
+     * {@code buffer}, which is reallocated when it doesn't fit. Null once the slap is released.
+     */
+    public static byte[] read(RawSlap slap, byte[] buffer) {
+        if (slap.rawData != null) {
+            return slap.rawData;
+        }
+        if (slap.spilledData == null) {
+            return null;
+        }
+
+        int length = slap.imageWidth * slap.imageHeight;
+        if (buffer == null || buffer.length != length) {
+            buffer = new byte[length];
+        }
+        slap.spilledData.duplicate().get(buffer, 0, length);
+        return buffer;
+    }
+
+    /**
+     * Starts the next subject at the beginning of the file. Slaps spilled before must not be
+     * read anymore.
+     */
+    public synchronized void reset() {
+        m_writeOffset = 0;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            m_channel.close();
+            m_randomAccessFile.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        // mapped regions stay valid until collected, the directory entry can go now
+        m_file.delete();
+    }
+}
@@ -4,5 +4,6 @@ public class Slap {
   public int pos;
   public ImageType imageType;
   public byte[] image;
+  public String imageSha256;
 }
 
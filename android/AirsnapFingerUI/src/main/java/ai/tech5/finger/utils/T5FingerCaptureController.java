@@ -11,11 +11,14 @@ import androidx.core.content.ContextCompat;
 
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import javax.crypto.SecretKey;
+
 import ai.tech5.finger.FingerCaptureActivity;
-import ai.tech5.sdk.abis.T5AirSnap.NistPosCode;
 import ai.tech5.sdk.abis.T5AirSnap.T5AirSnap;
 
 
@@ -31,6 +34,16 @@ public class T5FingerCaptureController {
     private boolean getNist2Quality = false;
     private boolean outsideCapture = false;
 
+    private FingerCaptureSession captureSession = null;
+
+    private boolean kioskModeActive = false;
+    private KioskCaptureHost kioskHost = null;
+    private FingerCaptureProfile pendingKioskSubject = null;
+
+    private final ConcurrentHashMap<String, FingerCaptureProfile> captureProfiles = new ConcurrentHashMap<>();
+    private volatile FingerCaptureProfile launchProfile = null;
+    private volatile SecretKey checkpointKey = null;
+
     public void setIsGetNist2Quality(boolean getNist2Quality) {
         this.getNist2Quality = getNist2Quality;
     }
@@ -181,56 +194,268 @@ public class T5FingerCaptureController {
     }
 
 
-    public void captureFingers(Context context, T5FingerCapturedListener t5FingerCapturedListener) {
+    public FingerCaptureSession startCaptureSession() {
+        captureSession = new FingerCaptureSession();
+        return captureSession;
+    }
+
+    public FingerCaptureSession getCaptureSession() {
+        return captureSession;
+    }
+
+    public void endCaptureSession() {
+        captureSession = null;
+    }
+
+
+    /**
+     * Validates {@code profile} once and keeps it under {@code name} for
+     * {@link #captureFingers(Context, String, T5FingerCapturedListener)}.
+     */
+    public void registerCaptureProfile(String name, FingerCaptureProfile profile) {
+        captureProfiles.put(name, profile);
+    }
+
+    public FingerCaptureProfile getCaptureProfile(String name) {
+        return captureProfiles.get(name);
+    }
+
+    public void removeCaptureProfile(String name) {
+        captureProfiles.remove(name);
+    }
+
+    /**
+     * Snapshot of the configuration set through the setters of this controller.
+     *
+     * @throws IllegalArgumentException when the configuration can't be captured
+     */
+    public FingerCaptureProfile createCaptureProfile() {
+        return new FingerCaptureProfile.Builder()
+                .setProjectToken(projectToken)
+                .setSegmentationModes(segmentationModes)
+                .setCaptureMode(captureMode)
+                .setShowBoundingBoxes(showElipses)
+                .setSegmentedFingerImageConfiguration(segmentedFingerImagesConfig)
+                .setSlapImageConfiguration(slapImagesConfig)
+                .setLivenessCheck(livenessCheck)
+                .setGetNistQuality(getNistQuality)
+                .setGetNist2Quality(getNist2Quality)
+                .setCaptureSpeed(captureSpeed)
+                .setPropDenoise(propDenoise)
+                .setCleanFingerPrints(cleanFingerPrints)
+                .setMissingFingers(missingFingers)
+                .setTitle(title)
+                .setShowBackButton(showBackButton)
+                .setTimeoutInSecs(timeoutInSecs)
+                .setDetectorThreshold(detectorThreshold)
+                .setOutsideCapture(outsideCapture)
+                .build();
+    }
+
+    /**
+     * Profile of the capture activity being launched or running; read by the activity instead of
+     * Intent extras.
+     */
+    /**
+     * Key the capture checkpoint is sealed with. Without one no checkpoint is written and a
+     * killed capture starts over.
+     */
+    public void setCheckpointKey(SecretKey checkpointKey) {
+        this.checkpointKey = checkpointKey;
+    }
+
+    public SecretKey getCheckpointKey() {
+        return checkpointKey;
+    }
+
+    public FingerCaptureProfile getLaunchProfile() {
+        return launchProfile;
+    }
+
+
+    /**
+     * Captures only the segmentation modes covering {@code positionCodes} (finger or slap NIST codes)
+     * with the configuration of the last capture. Requires an active capture session; the listener
+     * receives the session result where every finger is the best sample across all attempts.
+     */
+    public void recapturePositions(Context context, List<Integer> positionCodes, T5FingerCapturedListener t5FingerCapturedListener) {
+        if (captureSession == null) {
+            t5FingerCapturedListener.onFailure("Recapture failed: no active capture session");
+            return;
+        }
+
+        LinkedHashSet<Integer> recapturePositionCodes = new LinkedHashSet<>();
+        for (int positionCode : positionCodes) {
+            if (getSegmentationMode(positionCode) != null) {
+                recapturePositionCodes.add(positionCode);
+            }
+        }
+
+        if (recapturePositionCodes.isEmpty()) {
+            t5FingerCapturedListener.onFailure("Recapture failed: no valid position codes");
+            return;
+        }
+
+        FingerCaptureProfile recaptureProfile;
+        try {
+            FingerCaptureProfile baseProfile = launchProfile != null ? launchProfile : createCaptureProfile();
+            recaptureProfile = baseProfile.toBuilder().setPositionCodes(recapturePositionCodes).build();
+        } catch (IllegalArgumentException e) {
+            t5FingerCapturedListener.onFailure("Recapture failed: " + e.getMessage());
+            return;
+        }
+
+        captureFingers(context, recaptureProfile, t5FingerCapturedListener);
+    }
+
+
+    /**
+     * Opens a capture surface that keeps the SDK and camera alive between subjects. Nothing is
+     * captured until {@link #nextKioskSubject(FingerCaptureProfile, T5FingerCapturedListener)} is
+     * called; SDK level settings (detector threshold, capture speed, denoise) come from {@code profile}.
+     * The listener only receives failures of the surface itself, and is left alone when the
+     * surface is already running.
+     *
+     * @return false when the surface could not be launched
+     */
+    public boolean startKioskMode(Context context, FingerCaptureProfile profile, T5FingerCapturedListener t5FingerCapturedListener) {
+        synchronized (this) {
+            if (kioskModeActive) {
+                return true;
+            }
+            kioskModeActive = true;
+        }
+
         fingerCapturedListener = t5FingerCapturedListener;
 
+        if (!launchCaptureActivity(context, profile, true)) {
+            synchronized (this) {
+                kioskModeActive = false;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized boolean isKioskModeActive() {
+        return kioskModeActive;
+    }
+
+    /**
+     * Captures the next subject on the kiosk surface with {@code profile}.
+     */
+    public void nextKioskSubject(FingerCaptureProfile profile, T5FingerCapturedListener t5FingerCapturedListener) {
+        fingerCapturedListener = t5FingerCapturedListener;
+
+        if (captureSession != null) {
+            fingerCapturedListener = new SessionMergingListener(captureSession, t5FingerCapturedListener);
+        }
 
+        KioskCaptureHost host;
+        synchronized (this) {
+            if (!kioskModeActive) {
+                fingerCapturedListener.onFailure("Kiosk capture failed: kiosk mode is not started");
+                return;
+            }
+
+            host = kioskHost;
+            if (host == null) {
+                // the surface is still starting, it picks the subject up when it registers
+                pendingKioskSubject = profile;
+                return;
+            }
+        }
+
+        handler.post(() -> host.startSubject(profile));
+    }
+
+    public void endKioskMode() {
+        KioskCaptureHost host;
+        synchronized (this) {
+            kioskModeActive = false;
+            pendingKioskSubject = null;
+            host = kioskHost;
+        }
+
+        if (host != null) {
+            handler.post(host::endKiosk);
+        }
+    }
+
+    /**
+     * Called by the kiosk surface once it is ready; returns a subject requested while it was starting.
+     */
+    public synchronized FingerCaptureProfile registerKioskHost(KioskCaptureHost host) {
+        kioskHost = host;
+        FingerCaptureProfile subject = pendingKioskSubject;
+        pendingKioskSubject = null;
+        return subject;
+    }
+
+    public void unregisterKioskHost(KioskCaptureHost host) {
+        boolean subjectDropped;
+        synchronized (this) {
+            if (kioskHost != null && kioskHost != host) {
+                return;
+            }
+            kioskHost = null;
+            kioskModeActive = false;
+            subjectDropped = pendingKioskSubject != null;
+            pendingKioskSubject = null;
+        }
+
+        if (subjectDropped && fingerCapturedListener != null) {
+            fingerCapturedListener.onFailure("Kiosk capture failed: capture surface closed");
+        }
+    }
+
+
+    public void captureFingers(Context context, T5FingerCapturedListener t5FingerCapturedListener) {
         if (segmentationModes == null || segmentationModes.isEmpty()) {
+            fingerCapturedListener = t5FingerCapturedListener;
             fingerCapturedListener.onFailure("SDK initialization failed: segmentation modes is empty");
             return;
         }
 
-        float captureSpeedVal = 0.0f;
+        captureFingers(context, createCaptureProfile(), t5FingerCapturedListener);
+    }
+
+    public void captureFingers(Context context, String profileName, T5FingerCapturedListener t5FingerCapturedListener) {
+        FingerCaptureProfile profile = captureProfiles.get(profileName);
 
-        if (captureSpeed == CaptureSpeed.CAPTURE_SPEED_LOW) {
-            captureSpeedVal = 0.0f;
-        } else if (captureSpeed == CaptureSpeed.CAPTURE_SPEED_NORMAL) {
-            captureSpeedVal = 0.5f;
-        } else if (captureSpeed == CaptureSpeed.CAPTURE_SPEED_HIGH) {
-            captureSpeedVal = 1.0f;
+        if (profile == null) {
+            fingerCapturedListener = t5FingerCapturedListener;
+            fingerCapturedListener.onFailure("SDK initialization failed: unknown capture profile " + profileName);
+            return;
         }
 
+        captureFingers(context, profile, t5FingerCapturedListener);
+    }
 
-        if (Build.VERSION.SDK_INT < 23 || ContextCompat.checkSelfPermission(context, "android.permission.CAMERA") == 0) {
+    public void captureFingers(Context context, FingerCaptureProfile profile, T5FingerCapturedListener t5FingerCapturedListener) {
+        fingerCapturedListener = t5FingerCapturedListener;
 
+        if (captureSession != null) {
+            fingerCapturedListener = new SessionMergingListener(captureSession, t5FingerCapturedListener);
+        }
 
-            ArrayList<Integer> nistPosCodes = new ArrayList<>();
+        launchCaptureActivity(context, profile, false);
+    }
 
-            for (SegmentationMode mode : segmentationModes) {
-                nistPosCodes.add(getNistPoscode(mode));
 
-            }
+    private boolean launchCaptureActivity(Context context, FingerCaptureProfile profile, boolean kioskMode) {
+        if (Build.VERSION.SDK_INT < 23 || ContextCompat.checkSelfPermission(context, "android.permission.CAMERA") == 0) {
+
+            launchProfile = profile;
+            FingerCaptureActivity.start(context, kioskMode);
 
-            FingerCaptureActivity.start(context, this.projectToken, nistPosCodes,
-                    (this.captureMode == CaptureMode.CAPTURE_MODE_SELF), this.showElipses,
-                    this.segmentedFingerImagesConfig, this.slapImagesConfig, livenessCheck,
-                    getNist2Quality, getNistQuality,
-                    captureSpeedVal,
-                    propDenoise,
-                    cleanFingerPrints,
-                    missingFingers,
-                    this.title,
-                    this.showBackButton,
-                    this.timeoutInSecs,
-                    this.detectorThreshold,
-                    outsideCapture);
+            return true;
 
         } else {
 
             fingerCapturedListener.onFailure("SDK initialization failed: Camera permission required");
+            return false;
         }
-
-
     }
 
 
@@ -240,70 +465,13 @@ public class T5FingerCaptureController {
 
 
     public int getNistPoscode(SegmentationMode segmentationMode) {
-        int posCode = NistPosCode.POS_CODE_PL_L_4F;
-
-        switch (segmentationMode) {
-            case SEGMENTATION_MODE_LEFT_SLAP:
-                posCode = NistPosCode.POS_CODE_PL_L_4F;
-                break;
-            case SEGMENTATION_MODE_RIGHT_SLAP:
-                posCode = NistPosCode.POS_CODE_PL_R_4F;
-                break;
-            case SEGMENTATION_MODE_LEFT_THUMB:
-                posCode = NistPosCode.POS_CODE_L_THUMB;
-                break;
-            case SEGMENTATION_MODE_RIGHT_THUMB:
-                posCode = NistPosCode.POS_CODE_R_THUMB;
-                break;
-            case SEGMENTATION_MODE_LEFT_AND_RIGHT_THUMBS:
-                posCode = NistPosCode.POS_CODE_L_AND_R_THUMBS;
-                break;
-            case SEGMENTATION_MODE_LEFT_INDEX:
-                posCode = NistPosCode.POS_CODE_L_INDEX_F;
-                break;
-            case SEGMENTATION_MODE_LEFT_MIDDLE:
-                posCode = NistPosCode.POS_CODE_L_MIDDLE_F;
-                break;
-            case SEGMENTATION_MODE_LEFT_RING:
-                posCode = NistPosCode.POS_CODE_L_RING_F;
-                break;
-            case SEGMENTATION_MODE_LEFT_LITTLE:
-                posCode = NistPosCode.POS_CODE_L_LITTLE_F;
-                break;
-            case SEGMENTATION_MODE_RIGHT_INDEX:
-                posCode = NistPosCode.POS_CODE_R_INDEX_F;
-                break;
-            case SEGMENTATION_MODE_RIGHT_MIDDLE:
-                posCode = NistPosCode.POS_CODE_R_MIDDLE_F;
-                break;
-            case SEGMENTATION_MODE_RIGHT_RING:
-                posCode = NistPosCode.POS_CODE_R_RING_F;
-                break;
-            case SEGMENTATION_MODE_RIGHT_LITTLE:
-                posCode = NistPosCode.POS_CODE_R_LITTLE_F;
-                break;
-
-            case SEGMENTATION_MODE_RIGHT_INDEX_MIDDLE:
-                posCode = NistPosCode.POS_CODE_R_INDEX_MIDDLE;
-                break;
-
-            case SEGMENTATION_MODE_RIGHT_RING_LITTLE:
-                posCode = NistPosCode.POS_CODE_R_RING_LITTLE;
-                break;
-
-            case SEGMENTATION_MODE_LEFT_INDEX_MIDDLE:
-                posCode = NistPosCode.POS_CODE_L_INDEX_MIDDLE;
-                break;
-
-            case SEGMENTATION_MODE_LEFT_RING_LITTLE:
-                posCode = NistPosCode.POS_CODE_L_RING_LITTLE;
-                break;
-
-            default:
-                break;
-        }
+        return FingerPositionTable.get(segmentationMode).positionCode;
+    }
 
-        return posCode;
+
+    public SegmentationMode getSegmentationMode(int positionCode) {
+        FingerPositionTable.Position position = FingerPositionTable.get(positionCode);
+        return position != null ? position.segmentationMode : null;
     }
 
 
@@ -379,6 +547,41 @@ public class T5FingerCaptureController {
 //        if (this.m_cellSdk != null)
 //            this.m_cellSdk.closeSdk();
 //    }
-}
 
 
+    private static class SessionMergingListener implements T5FingerCapturedListener {
+
+        private final FingerCaptureSession session;
+        private final T5FingerCapturedListener listener;
+
+        SessionMergingListener(FingerCaptureSession session, T5FingerCapturedListener listener) {
+            this.session = session;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onSuccess(FingerCaptureResult result) {
+            listener.onSuccess(session.merge(result));
+        }
+
+        @Override
+        public void onFailure(String message) {
+            listener.onFailure(message);
+        }
+
+        @Override
+        public void onCancelled() {
+            listener.onCancelled();
+        }
+
+        @Override
+        public void onTimedout(FingerCaptureResult partialResult) {
+            if (partialResult != null) {
+                listener.onTimedout(session.merge(partialResult));
+            } else {
+                // nothing new, the earlier attempts are still worth returning
+                listener.onTimedout(session.getAttempts() > 0 ? session.getResult() : null);
+            }
+        }
+    }
+}
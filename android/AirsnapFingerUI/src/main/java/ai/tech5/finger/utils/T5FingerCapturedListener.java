@@ -7,7 +7,11 @@ public interface T5FingerCapturedListener {
   
   void onCancelled();
   
-  void onTimedout();
+  /**
+   * @param partialResult positions completed before the timeout plus the best candidate frame of
+   *                      the position in progress (flagged as partial), or null if nothing was captured
+   */
+  void onTimedout(FingerCaptureResult partialResult);
   
   //void onReset();
 }
@@ -10,6 +10,9 @@ import com.facebook.react.soloader.OpenSourceMergedSoMapping
 import com.facebook.soloader.SoLoader
 import com.enrollmentsystem.tech5finger.Tech5FingerPackage
 import com.enrollmentsystem.tech5face.Tech5FacePackage
+import com.enrollmentsystem.biometricstore.BiometricStorePackage
+import com.enrollmentsystem.upload.UploadManager
+import com.enrollmentsystem.upload.UploadQueuePackage
 
 class MainApplication : Application(), ReactApplication {
 
@@ -20,6 +23,8 @@ class MainApplication : Application(), ReactApplication {
       val packages = PackageList(this@MainApplication).packages.toMutableList()
       packages.add(Tech5FingerPackage())
       packages.add(Tech5FacePackage())
+      packages.add(BiometricStorePackage())
+      packages.add(UploadQueuePackage())
       return packages
     }
 
@@ -32,5 +37,7 @@ class MainApplication : Application(), ReactApplication {
   override fun onCreate() {
     super.onCreate()
     SoLoader.init(this, OpenSourceMergedSoMapping)
+    // resume uploads queued before the process was killed
+    UploadManager.getInstance(this)
   }
 }
@@ -0,0 +1,64 @@
+package com.enrollmentsystem.biometricstore;
+
+/**
+ * One image or template of a stored capture. {@code data} is only set on records being written
+ * or read back explicitly; listings carry metadata only.
+ */
+public class BiometricRecord {
+
+    public static final String KIND_FINGER = "FINGER";
+    public static final String KIND_FINGER_DISPLAY = "FINGER_DISPLAY";
+    public static final String KIND_FINGER_TEMPLATE = "FINGER_TEMPLATE";
+    public static final String KIND_TEMPLATE_CONTAINER = "TEMPLATE_CONTAINER";
+    public static final String KIND_SLAP = "SLAP";
+    public static final String KIND_FACE = "FACE";
+    public static final String KIND_FACE_ORIGINAL = "FACE_ORIGINAL";
+    public static final String KIND_FACE_PORTAL = "FACE_PORTAL";
+
+    public long id = 0;
+    public long captureId = 0;
+    public String kind;
+    public int position = 0;
+    public String imageType;
+    public int quality = 0;
+    public int nistQuality = 0;
+    public int nist2Quality = 0;
+    public int size = 0;
+    /**
+     * Hex SHA-256 of the data. Set by encoders that hash while encoding, otherwise filled in by
+     * the store.
+     */
+    public String sha256;
+    public byte[] data;
+
+    public static BiometricRecord of(String kind, int position, String imageType, byte[] data) {
+        return of(kind, position, imageType, data, null);
+    }
+
+    public static BiometricRecord of(String kind, int position, String imageType, byte[] data, String sha256) {
+        BiometricRecord record = new BiometricRecord();
+        record.kind = kind;
+        record.position = position;
+        record.imageType = imageType;
+        record.data = data;
+        record.size = data.length;
+        record.sha256 = sha256;
+        return record;
+    }
+
+    /**
+     * Image type from the file signature, for encoders that don't report what they produced.
+     */
+    public static String detectImageType(byte[] data) {
+        if (data.length >= 2 && (data[0] & 0xFF) == 0xFF && (data[1] & 0xFF) == 0xD8) {
+            return "JPG";
+        }
+        if (data.length >= 4 && (data[0] & 0xFF) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G') {
+            return "PNG";
+        }
+        if (data.length >= 2 && data[0] == 'B' && data[1] == 'M') {
+            return "BMP";
+        }
+        return null;
+    }
+}
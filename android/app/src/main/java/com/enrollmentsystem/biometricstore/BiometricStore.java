@@ -0,0 +1,442 @@
+package com.enrollmentsystem.biometricstore;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Native store for captured biometric images and templates. Images are written straight from the
+ * capture modules, one transaction per capture, so they never cross the JS bridge on the way to
+ * disk. Listings return metadata only; image bytes are read on demand per record.
+ * <p>
+ * Image bytes are encrypted into the {@link BiometricVault}, rows only reference them by vault id.
+ * Rows written before the vault existed keep their plaintext BLOB.
+ * <p>
+ * Storage is content addressed: records carry the SHA-256 of their data and records with equal
+ * hashes share one vault entry, so recaptures and retried stores of identical bytes cost a row
+ * instead of another encrypted copy. A vault entry is dropped with its last referencing row.
+ * <p>
+ * Kept in its own database file rather than the JS {@code enrollment.db}, so two SQLite
+ * connections from different libraries never contend for the same file lock.
+ */
+public class BiometricStore extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "biometric_store.db";
+    private static final int DATABASE_VERSION = 3;
+    private static final String VAULT_DIRECTORY_NAME = "biometric_vault";
+    private static final String VAULT_KEY_FILE_NAME = "biometric_vault.key";
+    private static final byte[] NO_DATA = new byte[0];
+
+    // CursorWindow holds about 2MB per row, larger blobs are read back in slices
+    private static final int READ_CHUNK_SIZE = 1024 * 1024;
+
+    private static final String RECORD_COLUMNS =
+            "id, capture_id, kind, position, image_type, quality, nist_quality, nist2_quality, size, sha256";
+
+    private static BiometricStore instance;
+
+    private final File filesDir;
+    private SecretKey dataKey;
+    private BiometricVault vault;
+
+    public static synchronized BiometricStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new BiometricStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private BiometricStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+        this.filesDir = context.getFilesDir();
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.setForeignKeyConstraintsEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE capture ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "subject_id TEXT NOT NULL, "
+                + "modality TEXT NOT NULL, "
+                + "created_at INTEGER NOT NULL)");
+
+        db.execSQL("CREATE TABLE record ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "capture_id INTEGER NOT NULL REFERENCES capture(id) ON DELETE CASCADE, "
+                + "kind TEXT NOT NULL, "
+                + "position INTEGER NOT NULL, "
+                + "image_type TEXT, "
+                + "quality INTEGER NOT NULL, "
+                + "nist_quality INTEGER NOT NULL, "
+                + "nist2_quality INTEGER NOT NULL, "
+                + "size INTEGER NOT NULL, "
+                + "data BLOB NOT NULL, "
+                + "vault_id INTEGER, "
+                + "sha256 TEXT)");
+
+        db.execSQL("CREATE INDEX capture_subject ON capture(subject_id, id)");
+        db.execSQL("CREATE INDEX record_capture ON record(capture_id)");
+        db.execSQL("CREATE INDEX record_sha256 ON record(sha256)");
+        db.execSQL("CREATE INDEX record_vault ON record(vault_id)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE record ADD COLUMN vault_id INTEGER");
+        }
+        if (oldVersion < 3) {
+            // rows stored before keep a null hash and are simply never deduplicated against
+            db.execSQL("ALTER TABLE record ADD COLUMN sha256 TEXT");
+            db.execSQL("CREATE INDEX record_sha256 ON record(sha256)");
+            db.execSQL("CREATE INDEX record_vault ON record(vault_id)");
+        }
+    }
+
+    public synchronized BiometricVault getVault() throws IOException {
+        if (vault == null) {
+            vault = new BiometricVault(new File(filesDir, VAULT_DIRECTORY_NAME), getDataKey());
+        }
+        return vault;
+    }
+
+    /**
+     * The vault data key, also used for capture state that must not sit on disk in plaintext.
+     */
+    public synchronized SecretKey getDataKey() throws IOException {
+        if (dataKey == null) {
+            try {
+                dataKey = VaultKeys.loadOrCreateDataKey(new File(filesDir, VAULT_KEY_FILE_NAME));
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Can't unlock biometric vault", e);
+            }
+        }
+        return dataKey;
+    }
+
+    /**
+     * Encrypts the data of all records into the vault, then writes the capture and its records in
+     * a single transaction and returns it with the metadata and generated ids of the stored records.
+     * Data already in the vault under the same hash is referenced instead of written again.
+     */
+    public synchronized StoredCapture insertCapture(String subjectId, String modality, List<BiometricRecord> records) throws IOException {
+        BiometricVault vault = getVault();
+        SQLiteDatabase db = getReadableDatabase();
+
+        String[] hashes = new String[records.size()];
+        long[] vaultIds = new long[records.size()];
+        HashMap<String, Long> vaultIdsByHash = new HashMap<>();
+        ArrayList<Long> newVaultIds = new ArrayList<>();
+
+        for (int i = 0; i < records.size(); i++) {
+            BiometricRecord record = records.get(i);
+            hashes[i] = record.sha256 != null ? record.sha256 : ContentHash.sha256Hex(record.data);
+
+            Long vaultId = vaultIdsByHash.get(hashes[i]);
+            if (vaultId == null) {
+                vaultId = findVaultId(db, hashes[i]);
+            }
+            if (vaultId == null) {
+                vaultId = vault.put(record.data);
+                newVaultIds.add(vaultId);
+            }
+
+            vaultIds[i] = vaultId;
+            vaultIdsByHash.put(hashes[i], vaultId);
+        }
+        if (!newVaultIds.isEmpty()) {
+            vault.sync();
+        }
+
+        try {
+            return insertRows(subjectId, modality, records, hashes, vaultIds);
+        } catch (RuntimeException e) {
+            for (long vaultId : newVaultIds) {
+                vault.delete(vaultId);
+            }
+            vault.sync();
+            throw e;
+        }
+    }
+
+    private static Long findVaultId(SQLiteDatabase db, String sha256) {
+        try (Cursor cursor = db.rawQuery("SELECT vault_id FROM record WHERE sha256 = ? AND vault_id IS NOT NULL LIMIT 1",
+                new String[]{sha256})) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : null;
+        }
+    }
+
+    private StoredCapture insertRows(String subjectId, String modality, List<BiometricRecord> records, String[] hashes, long[] vaultIds) {
+        SQLiteDatabase db = getWritableDatabase();
+
+        StoredCapture capture = new StoredCapture();
+        capture.subjectId = subjectId;
+        capture.modality = modality;
+        capture.createdAt = System.currentTimeMillis();
+
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            values.put("subject_id", subjectId);
+            values.put("modality", modality);
+            values.put("created_at", capture.createdAt);
+            capture.id = db.insertOrThrow("capture", null, values);
+
+            SQLiteStatement insert = db.compileStatement("INSERT INTO record "
+                    + "(capture_id, kind, position, image_type, quality, nist_quality, nist2_quality, size, data, vault_id, sha256) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            try {
+                for (int i = 0; i < records.size(); i++) {
+                    BiometricRecord record = records.get(i);
+                    insert.clearBindings();
+                    insert.bindLong(1, capture.id);
+                    insert.bindString(2, record.kind);
+                    insert.bindLong(3, record.position);
+                    if (record.imageType != null) {
+                        insert.bindString(4, record.imageType);
+                    } else {
+                        insert.bindNull(4);
+                    }
+                    insert.bindLong(5, record.quality);
+                    insert.bindLong(6, record.nistQuality);
+                    insert.bindLong(7, record.nist2Quality);
+                    insert.bindLong(8, record.data.length);
+                    insert.bindBlob(9, NO_DATA);
+                    insert.bindLong(10, vaultIds[i]);
+                    insert.bindString(11, hashes[i]);
+
+                    BiometricRecord stored = new BiometricRecord();
+                    stored.id = insert.executeInsert();
+                    stored.captureId = capture.id;
+                    stored.kind = record.kind;
+                    stored.position = record.position;
+                    stored.imageType = record.imageType;
+                    stored.quality = record.quality;
+                    stored.nistQuality = record.nistQuality;
+                    stored.nist2Quality = record.nist2Quality;
+                    stored.size = record.data.length;
+                    stored.sha256 = hashes[i];
+                    capture.records.add(stored);
+                }
+            } finally {
+                insert.close();
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return capture;
+    }
+
+    /**
+     * Returns up to {@code limit} captures older than {@code beforeId} (newest first, 0 for the
+     * first page) with the metadata of their records and without any image data.
+     *
+     * @param subjectId only captures of this subject, or null for all
+     * @param modality  only captures of this modality, or null for all
+     */
+    public List<StoredCapture> listCaptures(String subjectId, String modality, long beforeId, int limit) {
+        SQLiteDatabase db = getReadableDatabase();
+
+        StringBuilder where = new StringBuilder("1 = 1");
+        ArrayList<String> args = new ArrayList<>();
+        if (beforeId > 0) {
+            where.append(" AND id < ?");
+            args.add(String.valueOf(beforeId));
+        }
+        if (subjectId != null) {
+            where.append(" AND subject_id = ?");
+            args.add(subjectId);
+        }
+        if (modality != null) {
+            where.append(" AND modality = ?");
+            args.add(modality);
+        }
+
+        LinkedHashMap<Long, StoredCapture> captures = new LinkedHashMap<>();
+        try (Cursor cursor = db.query("capture", new String[]{"id", "subject_id", "modality", "created_at"},
+                where.toString(), args.toArray(new String[0]), null, null, "id DESC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                StoredCapture capture = new StoredCapture();
+                capture.id = cursor.getLong(0);
+                capture.subjectId = cursor.getString(1);
+                capture.modality = cursor.getString(2);
+                capture.createdAt = cursor.getLong(3);
+                captures.put(capture.id, capture);
+            }
+        }
+
+        loadRecordMetadata(db, captures);
+        return new ArrayList<>(captures.values());
+    }
+
+    /**
+     * Returns the capture with the metadata of its records, or null when there is none with
+     * {@code captureId}.
+     */
+    public StoredCapture getCapture(long captureId) {
+        SQLiteDatabase db = getReadableDatabase();
+
+        LinkedHashMap<Long, StoredCapture> captures = new LinkedHashMap<>();
+        try (Cursor cursor = db.rawQuery("SELECT id, subject_id, modality, created_at FROM capture WHERE id = ?",
+                new String[]{String.valueOf(captureId)})) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+
+            StoredCapture capture = new StoredCapture();
+            capture.id = cursor.getLong(0);
+            capture.subjectId = cursor.getString(1);
+            capture.modality = cursor.getString(2);
+            capture.createdAt = cursor.getLong(3);
+            captures.put(capture.id, capture);
+        }
+
+        loadRecordMetadata(db, captures);
+        return captures.get(captureId);
+    }
+
+    private static void loadRecordMetadata(SQLiteDatabase db, LinkedHashMap<Long, StoredCapture> captures) {
+        if (captures.isEmpty()) {
+            return;
+        }
+
+        StringBuilder captureIds = new StringBuilder();
+        for (long id : captures.keySet()) {
+            if (captureIds.length() > 0) {
+                captureIds.append(',');
+            }
+            captureIds.append(id);
+        }
+
+        try (Cursor cursor = db.rawQuery("SELECT " + RECORD_COLUMNS + " FROM record WHERE capture_id IN ("
+                + captureIds + ") ORDER BY id", null)) {
+            while (cursor.moveToNext()) {
+                BiometricRecord record = readRecordMetadata(cursor);
+                captures.get(record.captureId).records.add(record);
+            }
+        }
+    }
+
+    /**
+     * Returns the record with its data, or null when there is none with {@code recordId}.
+     */
+    public BiometricRecord readRecord(long recordId) throws IOException {
+        SQLiteDatabase db = getReadableDatabase();
+        String[] idArg = {String.valueOf(recordId)};
+
+        BiometricRecord record;
+        try (Cursor cursor = db.rawQuery("SELECT " + RECORD_COLUMNS + ", vault_id FROM record WHERE id = ?", idArg)) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            record = readRecordMetadata(cursor);
+
+            if (!cursor.isNull(10)) {
+                record.data = getVault().get(cursor.getLong(10));
+                return record;
+            }
+        }
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream(record.size);
+        for (int offset = 0; offset < record.size; offset += READ_CHUNK_SIZE) {
+            // substr is 1-based and works on bytes for BLOBs
+            try (Cursor cursor = db.rawQuery("SELECT substr(data, ?, ?) FROM record WHERE id = ?",
+                    new String[]{String.valueOf(offset + 1), String.valueOf(READ_CHUNK_SIZE), idArg[0]})) {
+                if (!cursor.moveToFirst()) {
+                    return null;
+                }
+                byte[] chunk = cursor.getBlob(0);
+                data.write(chunk, 0, chunk.length);
+            }
+        }
+
+        record.data = data.toByteArray();
+        return record;
+    }
+
+    /**
+     * Deletes a capture with all of its records and returns whether it existed. Encrypted data no
+     * other record shares is dropped from the vault after the rows are gone.
+     */
+    public synchronized boolean deleteCapture(long captureId) throws IOException {
+        SQLiteDatabase db = getWritableDatabase();
+        String[] idArg = {String.valueOf(captureId)};
+
+        HashSet<Long> vaultIds = new HashSet<>();
+        boolean deleted;
+
+        db.beginTransaction();
+        try {
+            try (Cursor cursor = db.rawQuery("SELECT vault_id FROM record WHERE capture_id = ? AND vault_id IS NOT NULL", idArg)) {
+                while (cursor.moveToNext()) {
+                    vaultIds.add(cursor.getLong(0));
+                }
+            }
+
+            deleted = db.delete("capture", "id = ?", idArg) > 0;
+
+            Iterator<Long> iterator = vaultIds.iterator();
+            while (iterator.hasNext()) {
+                try (Cursor cursor = db.rawQuery("SELECT 1 FROM record WHERE vault_id = ? LIMIT 1",
+                        new String[]{String.valueOf(iterator.next())})) {
+                    if (cursor.moveToFirst()) {
+                        // still referenced by a record of another capture
+                        iterator.remove();
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (!vaultIds.isEmpty()) {
+            BiometricVault vault = getVault();
+            for (long vaultId : vaultIds) {
+                vault.delete(vaultId);
+            }
+            vault.sync();
+        }
+
+        return deleted;
+    }
+
+    private static BiometricRecord readRecordMetadata(Cursor cursor) {
+        BiometricRecord record = new BiometricRecord();
+        record.id = cursor.getLong(0);
+        record.captureId = cursor.getLong(1);
+        record.kind = cursor.getString(2);
+        record.position = cursor.getInt(3);
+        record.imageType = cursor.isNull(4) ? null : cursor.getString(4);
+        record.quality = cursor.getInt(5);
+        record.nistQuality = cursor.getInt(6);
+        record.nist2Quality = cursor.getInt(7);
+        record.size = cursor.getInt(8);
+        record.sha256 = cursor.isNull(9) ? null : cursor.getString(9);
+        return record;
+    }
+}
@@ -0,0 +1,166 @@
+package com.enrollmentsystem.biometricstore;
+
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.enrollmentsystem.nist.NistExport;
+import com.enrollmentsystem.nist.NistTransaction;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BiometricStoreModule extends ReactContextBaseJavaModule {
+
+    private static final String TAG = "BiometricStoreModule";
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    private final ReactApplicationContext reactContext;
+    private final ExecutorService storeExecutor = Executors.newSingleThreadExecutor();
+
+    public BiometricStoreModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        this.reactContext = reactContext;
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "BiometricStoreModule";
+    }
+
+    /**
+     * Pages through stored captures newest first. Records carry metadata only, pass the returned
+     * {@code nextBeforeId} as {@code beforeId} to get the next page.
+     */
+    @ReactMethod
+    public void listCaptures(ReadableMap options, Promise promise) {
+        String subjectId = options != null && options.hasKey("subjectId") ? options.getString("subjectId") : null;
+        String modality = options != null && options.hasKey("modality") ? options.getString("modality") : null;
+        long beforeId = options != null && options.hasKey("beforeId") ? (long) options.getDouble("beforeId") : 0;
+        int limit = options != null && options.hasKey("limit") ? options.getInt("limit") : DEFAULT_PAGE_SIZE;
+
+        storeExecutor.execute(() -> {
+            try {
+                List<StoredCapture> captures = BiometricStore.getInstance(reactContext)
+                        .listCaptures(subjectId, modality, beforeId, Math.max(1, limit));
+
+                WritableArray capturesArray = Arguments.createArray();
+                for (StoredCapture capture : captures) {
+                    capturesArray.pushMap(createCaptureMap(capture));
+                }
+
+                WritableMap response = Arguments.createMap();
+                response.putArray("captures", capturesArray);
+                if (captures.size() >= limit) {
+                    response.putDouble("nextBeforeId", captures.get(captures.size() - 1).id);
+                }
+                promise.resolve(response);
+            } catch (Exception e) {
+                Log.e(TAG, "Error listing captures: " + e.getMessage(), e);
+                promise.reject("STORE_ERROR", "Error listing captures: " + e.getMessage());
+            }
+        });
+    }
+
+    @ReactMethod
+    public void readRecord(double recordId, Promise promise) {
+        storeExecutor.execute(() -> {
+            try {
+                BiometricRecord record = BiometricStore.getInstance(reactContext).readRecord((long) recordId);
+                if (record == null) {
+                    promise.reject("NOT_FOUND", "No stored record " + (long) recordId);
+                    return;
+                }
+
+                WritableMap response = createRecordMap(record);
+                response.putString("dataBase64", Base64.encodeToString(record.data, Base64.NO_WRAP));
+                promise.resolve(response);
+            } catch (Exception e) {
+                Log.e(TAG, "Error reading record: " + e.getMessage(), e);
+                promise.reject("STORE_ERROR", "Error reading record: " + e.getMessage());
+            }
+        });
+    }
+
+    @ReactMethod
+    public void deleteCapture(double captureId, Promise promise) {
+        storeExecutor.execute(() -> {
+            try {
+                promise.resolve(BiometricStore.getInstance(reactContext).deleteCapture((long) captureId));
+            } catch (Exception e) {
+                Log.e(TAG, "Error deleting capture: " + e.getMessage(), e);
+                promise.reject("STORE_ERROR", "Error deleting capture: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Writes the finger, slap and face images of the captures into one NIST transaction file and
+     * resolves with its path and size.
+     */
+    @ReactMethod
+    public void exportNist(ReadableArray captureIds, ReadableMap options, Promise promise) {
+        long[] ids = new long[captureIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (long) captureIds.getDouble(i);
+        }
+        NistTransaction transaction = NistExport.createTransaction(options);
+
+        storeExecutor.execute(() -> {
+            try {
+                File file = NistExport.exportCaptures(reactContext, ids, transaction);
+                promise.resolve(NistExport.createResultMap(file));
+            } catch (Exception e) {
+                Log.e(TAG, "Error exporting NIST transaction: " + e.getMessage(), e);
+                promise.reject("EXPORT_ERROR", "Error exporting NIST transaction: " + e.getMessage());
+            }
+        });
+    }
+
+    public static WritableMap createCaptureMap(StoredCapture capture) {
+        WritableMap captureMap = Arguments.createMap();
+        captureMap.putDouble("captureId", capture.id);
+        captureMap.putString("subjectId", capture.subjectId);
+        captureMap.putString("modality", capture.modality);
+        captureMap.putDouble("createdAt", capture.createdAt);
+
+        WritableArray recordsArray = Arguments.createArray();
+        for (BiometricRecord record : capture.records) {
+            recordsArray.pushMap(createRecordMap(record));
+        }
+        captureMap.putArray("records", recordsArray);
+        return captureMap;
+    }
+
+    private static WritableMap createRecordMap(BiometricRecord record) {
+        WritableMap recordMap = Arguments.createMap();
+        recordMap.putDouble("recordId", record.id);
+        recordMap.putDouble("captureId", record.captureId);
+        recordMap.putString("kind", record.kind);
+        recordMap.putInt("position", record.position);
+        if (record.imageType != null) {
+            recordMap.putString("imageType", record.imageType);
+        }
+        recordMap.putInt("quality", record.quality);
+        recordMap.putInt("nistQuality", record.nistQuality);
+        recordMap.putInt("nist2Quality", record.nist2Quality);
+        recordMap.putInt("size", record.size);
+        if (record.sha256 != null) {
+            recordMap.putString("sha256", record.sha256);
+        }
+        return recordMap;
+    }
+}
@@ -0,0 +1,578 @@
+package com.enrollmentsystem.biometricstore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Encrypted, append-only store for biometric images and templates. Every record is encrypted
+ * chunk by chunk with AES-GCM while it is written, so no full plaintext copy is held, and is
+ * appended to the active segment file. Segments are rotated at a fixed size; deleted records
+ * leave a tombstone and segments that are mostly dead are compacted in the background by copying
+ * the live ciphertext forward without decrypting it.
+ * <p>
+ * Segment layout (little endian): magic "T5VS", version(4), baseRecordId(8), then records of
+ * recordLength(4), type(1), recordId(8), plaintextLength(8) followed for data records by chunks of
+ * cipherLength(4), iv(12), ciphertext+tag. Each chunk authenticates its record id, chunk index and
+ * whether it is the last one, so chunks can't be reordered, swapped between records or dropped.
+ * <p>
+ * Records are in memory indexed by id, the index is rebuilt from the record headers on open.
+ */
+public class BiometricVault implements Closeable {
+
+    private static final int SEGMENT_MAGIC = 0x53563554; // "T5VS"
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 21;
+    private static final byte TYPE_DATA = 1;
+    private static final byte TYPE_TOMBSTONE = 2;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int IV_SIZE = 12;
+    private static final int TAG_SIZE = 16;
+    private static final int CHUNK_HEADER_SIZE = 4 + IV_SIZE;
+    private static final int AAD_SIZE = 13;
+
+    private static final long MAX_SEGMENT_SIZE = 32L * 1024 * 1024;
+    private static final float COMPACTION_DEAD_RATIO = 0.5f;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".vlt";
+
+    private final File m_directory;
+    private final SecretKey m_dataKey;
+    private final long m_maxSegmentSize;
+    private final Cipher m_cipher;
+    private final SecureRandom m_random = new SecureRandom();
+    private final ExecutorService m_compactor = Executors.newSingleThreadExecutor();
+
+    private final TreeMap<Integer, Segment> m_segments = new TreeMap<>();
+    private final HashMap<Long, Entry> m_index = new HashMap<>();
+    private Segment m_activeSegment;
+    private long m_nextRecordId = 1;
+    private boolean m_closed = false;
+
+    // reused for every chunk, only touched while holding the vault lock
+    private byte[] m_plainChunk = new byte[CHUNK_SIZE];
+    private byte[] m_nextPlainChunk = new byte[CHUNK_SIZE];
+    private final byte[] m_cipherChunk = new byte[CHUNK_HEADER_SIZE + CHUNK_SIZE + TAG_SIZE];
+    private final byte[] m_iv = new byte[IV_SIZE];
+    private final byte[] m_aad = new byte[AAD_SIZE];
+    private final ByteBuffer m_recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer m_copyBuffer = ByteBuffer.allocate(CHUNK_SIZE);
+
+    /**
+     * @param dataKey AES key used for all records, see {@link VaultKeys}
+     */
+    public BiometricVault(File directory, SecretKey dataKey) throws IOException {
+        this(directory, dataKey, MAX_SEGMENT_SIZE);
+    }
+
+    BiometricVault(File directory, SecretKey dataKey, long maxSegmentSize) throws IOException {
+        m_directory = directory;
+        m_dataKey = dataKey;
+        m_maxSegmentSize = maxSegmentSize;
+
+        try {
+            m_cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IOException("AES-GCM not available", e);
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create vault directory " + directory);
+        }
+
+        try {
+            loadSegments();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+
+        for (Segment segment : m_segments.values()) {
+            scheduleCompaction(segment);
+        }
+    }
+
+    public synchronized int getRecordCount() {
+        return m_index.size();
+    }
+
+    public long put(byte[] data) throws IOException {
+        return put(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Encrypts {@code in} chunk by chunk into the active segment and returns the new record id.
+     * The record is durable once {@link #sync()} returns.
+     */
+    public synchronized long put(InputStream in) throws IOException {
+        ensureOpen();
+        rotateIfFull();
+
+        Segment segment = m_activeSegment;
+        long recordId = m_nextRecordId++;
+        long start = segment.size;
+        long position = start + RECORD_HEADER_SIZE;
+        long plaintextLength = 0;
+
+        try {
+            int length = readChunk(in, m_plainChunk);
+            int chunkIndex = 0;
+            while (true) {
+                // read ahead one chunk, the last chunk is marked in its authenticated data
+                int nextLength = length == CHUNK_SIZE ? readChunk(in, m_nextPlainChunk) : 0;
+                boolean last = nextLength == 0;
+
+                position += writeChunk(segment, position, recordId, chunkIndex++, m_plainChunk, length, last);
+                plaintextLength += length;
+
+                if (last) {
+                    break;
+                }
+
+                byte[] swap = m_plainChunk;
+                m_plainChunk = m_nextPlainChunk;
+                m_nextPlainChunk = swap;
+                length = nextLength;
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            segment.channel.truncate(start);
+            throw e instanceof IOException ? (IOException) e : new IOException("Encryption failed", e);
+        }
+
+        // the header goes last, a record without it is a torn write and cut off on open
+        writeRecordHeader(segment, start, (int) (position - start - 4), TYPE_DATA, recordId, plaintextLength);
+        segment.size = position;
+        m_index.put(recordId, new Entry(segment, start, position - start, plaintextLength));
+        return recordId;
+    }
+
+    public byte[] get(long recordId) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(getPlaintextLength(recordId), Integer.MAX_VALUE));
+        get(recordId, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decrypts the record chunk by chunk into {@code out}.
+     *
+     * @throws IOException when there is no such record or it fails authentication
+     */
+    public synchronized void get(long recordId, OutputStream out) throws IOException {
+        ensureOpen();
+
+        Entry entry = m_index.get(recordId);
+        if (entry == null) {
+            throw new FileNotFoundException("No vault record " + recordId);
+        }
+
+        FileChannel channel = entry.segment.channel;
+        long position = entry.offset + RECORD_HEADER_SIZE;
+        long end = entry.offset + entry.length;
+        int chunkIndex = 0;
+
+        try {
+            while (position < end) {
+                readFully(channel, ByteBuffer.wrap(m_cipherChunk, 0, CHUNK_HEADER_SIZE), position);
+                int cipherLength = ByteBuffer.wrap(m_cipherChunk, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+                if (cipherLength < TAG_SIZE || cipherLength > CHUNK_SIZE + TAG_SIZE
+                        || position + CHUNK_HEADER_SIZE + cipherLength > end) {
+                    throw new IOException("Corrupt vault record " + recordId);
+                }
+
+                readFully(channel, ByteBuffer.wrap(m_cipherChunk, CHUNK_HEADER_SIZE, cipherLength), position + CHUNK_HEADER_SIZE);
+                position += CHUNK_HEADER_SIZE + cipherLength;
+
+                System.arraycopy(m_cipherChunk, 4, m_iv, 0, IV_SIZE);
+                m_cipher.init(Cipher.DECRYPT_MODE, m_dataKey, new GCMParameterSpec(TAG_SIZE * 8, m_iv));
+                m_cipher.updateAAD(chunkAad(recordId, chunkIndex++, position >= end));
+                int length = m_cipher.doFinal(m_cipherChunk, CHUNK_HEADER_SIZE, cipherLength, m_plainChunk, 0);
+                out.write(m_plainChunk, 0, length);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Vault record " + recordId + " failed authentication", e);
+        }
+    }
+
+    public synchronized long getPlaintextLength(long recordId) throws IOException {
+        Entry entry = m_index.get(recordId);
+        if (entry == null) {
+            throw new FileNotFoundException("No vault record " + recordId);
+        }
+        return entry.plaintextLength;
+    }
+
+    /**
+     * Marks the record deleted and returns whether it existed. Its ciphertext stays on disk until
+     * the segment holding it is compacted.
+     */
+    public synchronized boolean delete(long recordId) throws IOException {
+        ensureOpen();
+
+        Entry entry = m_index.remove(recordId);
+        if (entry == null) {
+            return false;
+        }
+
+        appendTombstone(recordId);
+        entry.segment.deadBytes += entry.length;
+        scheduleCompaction(entry.segment);
+        return true;
+    }
+
+    /**
+     * Flushes every record and tombstone written so far to disk.
+     */
+    public synchronized void sync() throws IOException {
+        ensureOpen();
+        m_activeSegment.channel.force(false);
+    }
+
+    /**
+     * Waits for the compactions scheduled so far.
+     */
+    void awaitCompactions() throws IOException {
+        try {
+            m_compactor.submit(() -> {
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException("Compaction wait failed", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        m_compactor.shutdown();
+
+        synchronized (this) {
+            m_closed = true;
+            for (Segment segment : m_segments.values()) {
+                segment.file.close();
+            }
+            m_segments.clear();
+            m_index.clear();
+        }
+    }
+
+    private void loadSegments() throws IOException {
+        File[] files = m_directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+                    continue;
+                }
+
+                try {
+                    int number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    m_segments.put(number, new Segment(number, file));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+
+        // oldest first, so later copies of a record and tombstones override earlier ones
+        for (Segment segment : m_segments.values()) {
+            scanSegment(segment);
+        }
+
+        m_activeSegment = m_segments.isEmpty() ? createSegment(1) : m_segments.lastEntry().getValue();
+    }
+
+    private void scanSegment(Segment segment) throws IOException {
+        FileChannel channel = segment.channel;
+        long size = channel.size();
+
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (size < SEGMENT_HEADER_SIZE) {
+            throw new IOException("Truncated vault segment " + segment.number);
+        }
+        readFully(channel, header, 0);
+        header.flip();
+        if (header.getInt() != SEGMENT_MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not a vault segment " + segment.number);
+        }
+        m_nextRecordId = Math.max(m_nextRecordId, header.getLong());
+
+        long offset = SEGMENT_HEADER_SIZE;
+        while (offset + RECORD_HEADER_SIZE <= size) {
+            m_recordHeader.clear();
+            readFully(channel, m_recordHeader, offset);
+            m_recordHeader.flip();
+
+            int recordLength = m_recordHeader.getInt();
+            byte type = m_recordHeader.get();
+            long recordId = m_recordHeader.getLong();
+            long plaintextLength = m_recordHeader.getLong();
+
+            if (recordLength < RECORD_HEADER_SIZE - 4 || offset + 4L + recordLength > size
+                    || (type != TYPE_DATA && type != TYPE_TOMBSTONE)) {
+                break;
+            }
+
+            long length = 4L + recordLength;
+            if (type == TYPE_DATA) {
+                Entry previous = m_index.put(recordId, new Entry(segment, offset, length, plaintextLength));
+                if (previous != null) {
+                    // left behind by a compaction interrupted before the old segment was removed
+                    previous.segment.deadBytes += previous.length;
+                }
+            } else {
+                Entry deleted = m_index.remove(recordId);
+                if (deleted != null) {
+                    deleted.segment.deadBytes += deleted.length;
+                }
+                segment.tombstones.add(recordId);
+            }
+
+            m_nextRecordId = Math.max(m_nextRecordId, recordId + 1);
+            offset += length;
+        }
+
+        if (offset < size) {
+            channel.truncate(offset);
+        }
+        segment.size = offset;
+    }
+
+    private Segment createSegment(int number) throws IOException {
+        Segment segment = new Segment(number, new File(m_directory, String.format(Locale.US,
+                "%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX)));
+
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(SEGMENT_MAGIC).putInt(VERSION).putLong(m_nextRecordId).flip();
+        segment.channel.truncate(0);
+        writeFully(segment.channel, header, 0);
+        segment.channel.force(true);
+        segment.size = SEGMENT_HEADER_SIZE;
+
+        m_segments.put(number, segment);
+        return segment;
+    }
+
+    private void rotateIfFull() throws IOException {
+        if (m_activeSegment.size >= m_maxSegmentSize) {
+            m_activeSegment.channel.force(false);
+            m_activeSegment = createSegment(m_activeSegment.number + 1);
+        }
+    }
+
+    private int writeChunk(Segment segment, long position, long recordId, int chunkIndex,
+                           byte[] plain, int length, boolean last) throws IOException, GeneralSecurityException {
+        m_random.nextBytes(m_iv);
+        m_cipher.init(Cipher.ENCRYPT_MODE, m_dataKey, new GCMParameterSpec(TAG_SIZE * 8, m_iv));
+        m_cipher.updateAAD(chunkAad(recordId, chunkIndex, last));
+        int cipherLength = m_cipher.doFinal(plain, 0, length, m_cipherChunk, CHUNK_HEADER_SIZE);
+
+        ByteBuffer.wrap(m_cipherChunk, 0, 4).order(ByteOrder.LITTLE_ENDIAN).putInt(cipherLength);
+        System.arraycopy(m_iv, 0, m_cipherChunk, 4, IV_SIZE);
+
+        int chunkLength = CHUNK_HEADER_SIZE + cipherLength;
+        writeFully(segment.channel, ByteBuffer.wrap(m_cipherChunk, 0, chunkLength), position);
+        return chunkLength;
+    }
+
+    private byte[] chunkAad(long recordId, int chunkIndex, boolean last) {
+        ByteBuffer.wrap(m_aad).order(ByteOrder.LITTLE_ENDIAN)
+                .putLong(recordId)
+                .putInt(chunkIndex)
+                .put((byte) (last ? 1 : 0));
+        return m_aad;
+    }
+
+    private void writeRecordHeader(Segment segment, long offset, int recordLength, byte type,
+                                   long recordId, long plaintextLength) throws IOException {
+        m_recordHeader.clear();
+        m_recordHeader.putInt(recordLength).put(type).putLong(recordId).putLong(plaintextLength).flip();
+        writeFully(segment.channel, m_recordHeader, offset);
+    }
+
+    private void appendTombstone(long recordId) throws IOException {
+        rotateIfFull();
+        Segment segment = m_activeSegment;
+        writeRecordHeader(segment, segment.size, RECORD_HEADER_SIZE - 4, TYPE_TOMBSTONE, recordId, 0);
+        segment.size += RECORD_HEADER_SIZE;
+        segment.tombstones.add(recordId);
+    }
+
+    private void scheduleCompaction(Segment segment) {
+        if (segment == m_activeSegment || segment.compacting) {
+            return;
+        }
+
+        if (segment.deadBytes > (segment.size - SEGMENT_HEADER_SIZE) * COMPACTION_DEAD_RATIO) {
+            segment.compacting = true;
+            m_compactor.execute(() -> compact(segment));
+        }
+    }
+
+    /**
+     * Copies the live records of {@code segment} to the active segment one at a time, so writers
+     * are only held up for a single record copy, then removes the segment file.
+     */
+    private void compact(Segment segment) {
+        try {
+            ArrayList<Long> liveRecords = new ArrayList<>();
+            synchronized (this) {
+                if (m_closed) {
+                    return;
+                }
+                for (Map.Entry<Long, Entry> entry : m_index.entrySet()) {
+                    if (entry.getValue().segment == segment) {
+                        liveRecords.add(entry.getKey());
+                    }
+                }
+            }
+
+            for (long recordId : liveRecords) {
+                synchronized (this) {
+                    if (m_closed) {
+                        return;
+                    }
+
+                    Entry entry = m_index.get(recordId);
+                    if (entry != null && entry.segment == segment) {
+                        m_index.put(recordId, copyRecord(entry));
+                    }
+                }
+            }
+
+            synchronized (this) {
+                if (m_closed) {
+                    return;
+                }
+
+                // copies of a deleted record are only ever in segments up to the one its tombstone
+                // was written to, the tombstone has to survive while any older segment does
+                if (m_segments.firstKey() < segment.number) {
+                    for (long recordId : segment.tombstones) {
+                        appendTombstone(recordId);
+                    }
+                }
+
+                m_activeSegment.channel.force(false);
+
+                m_segments.remove(segment.number);
+                segment.file.close();
+                if (!segment.path.delete()) {
+                    throw new IOException("Can't delete vault segment " + segment.number);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            synchronized (this) {
+                segment.compacting = false;
+            }
+        }
+    }
+
+    private Entry copyRecord(Entry entry) throws IOException {
+        rotateIfFull();
+        Segment target = m_activeSegment;
+        long targetOffset = target.size;
+
+        long copied = 0;
+        while (copied < entry.length) {
+            m_copyBuffer.clear();
+            m_copyBuffer.limit((int) Math.min(m_copyBuffer.capacity(), entry.length - copied));
+            readFully(entry.segment.channel, m_copyBuffer, entry.offset + copied);
+            m_copyBuffer.flip();
+            writeFully(target.channel, m_copyBuffer, targetOffset + copied);
+            copied += m_copyBuffer.limit();
+        }
+
+        target.size += entry.length;
+        return new Entry(target, targetOffset, entry.length, entry.plaintextLength);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (m_closed) {
+            throw new IOException("Vault is closed");
+        }
+    }
+
+    private static int readChunk(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of vault segment");
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static class Segment {
+        final int number;
+        final File path;
+        final RandomAccessFile file;
+        final FileChannel channel;
+        final ArrayList<Long> tombstones = new ArrayList<>();
+        long size = 0;
+        long deadBytes = 0;
+        boolean compacting = false;
+
+        Segment(int number, File path) throws IOException {
+            this.number = number;
+            this.path = path;
+            this.file = new RandomAccessFile(path, "rw");
+            this.channel = file.getChannel();
+        }
+    }
+
+    private static class Entry {
+        final Segment segment;
+        final long offset;
+        final long length;
+        final long plaintextLength;
+
+        Entry(Segment segment, long offset, long length, long plaintextLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.plaintextLength = plaintextLength;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.enrollmentsystem.biometricstore;
+
+import java.util.ArrayList;
+
+public class StoredCapture {
+    public long id;
+    public String subjectId;
+    public String modality;
+    public long createdAt;
+    public ArrayList<BiometricRecord> records = new ArrayList<>();
+}
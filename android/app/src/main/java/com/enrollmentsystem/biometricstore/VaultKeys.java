@@ -0,0 +1,101 @@
+package com.enrollmentsystem.biometricstore;
+
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Vault data key wrapped by a non-exportable Android Keystore key. Records are encrypted in
+ * process with the unwrapped data key, a Keystore round trip per chunk would cap throughput far
+ * below disk speed.
+ */
+final class VaultKeys {
+
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String MASTER_KEY_ALIAS = "biometric_vault_master";
+    private static final int DATA_KEY_SIZE = 32;
+    private static final int IV_SIZE = 12;
+
+    private VaultKeys() {
+    }
+
+    /**
+     * Unwraps the data key stored in {@code keyFile}, generating and storing a new one on first use.
+     */
+    static SecretKey loadOrCreateDataKey(File keyFile) throws IOException, GeneralSecurityException {
+        SecretKey masterKey = getMasterKey();
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+
+        if (keyFile.exists()) {
+            byte[] stored = new byte[(int) keyFile.length()];
+            try (DataInputStream in = new DataInputStream(new FileInputStream(keyFile))) {
+                in.readFully(stored);
+            }
+
+            cipher.init(Cipher.DECRYPT_MODE, masterKey, new GCMParameterSpec(128, stored, 0, IV_SIZE));
+            byte[] dataKey = cipher.doFinal(stored, IV_SIZE, stored.length - IV_SIZE);
+            try {
+                return new SecretKeySpec(dataKey, "AES");
+            } finally {
+                Arrays.fill(dataKey, (byte) 0);
+            }
+        }
+
+        byte[] dataKey = new byte[DATA_KEY_SIZE];
+        new SecureRandom().nextBytes(dataKey);
+
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, masterKey);
+            byte[] iv = cipher.getIV();
+            byte[] wrapped = cipher.doFinal(dataKey);
+
+            // written aside and renamed, a torn key file would make the whole vault unreadable
+            File tempFile = new File(keyFile.getPath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                out.write(iv);
+                out.write(wrapped);
+                out.getFD().sync();
+            }
+            if (!tempFile.renameTo(keyFile)) {
+                throw new IOException("Can't store vault key");
+            }
+
+            return new SecretKeySpec(dataKey, "AES");
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+        }
+    }
+
+    private static SecretKey getMasterKey() throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+        keyStore.load(null);
+
+        if (keyStore.containsAlias(MASTER_KEY_ALIAS)) {
+            return (SecretKey) keyStore.getKey(MASTER_KEY_ALIAS, null);
+        }
+
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(MASTER_KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return generator.generateKey();
+    }
+}
@@ -0,0 +1,52 @@
+package com.enrollmentsystem.capture;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.pm.PackageManager;
+
+import androidx.core.content.ContextCompat;
+
+import com.facebook.react.modules.core.PermissionAwareActivity;
+
+/**
+ * Asks for the camera permission through the React activity, so the caller gets the user's answer
+ * instead of having to retry the capture.
+ */
+public final class CameraPermission {
+
+    public interface Callback {
+        void onResult(boolean granted);
+    }
+
+    private CameraPermission() {
+    }
+
+    public static boolean isGranted(Activity activity) {
+        return ContextCompat.checkSelfPermission(activity, Manifest.permission.CAMERA)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * Calls back right away when the permission is already granted, or when the activity can't
+     * report the outcome of a request.
+     */
+    public static void request(Activity activity, int requestCode, Callback callback) {
+        if (isGranted(activity)) {
+            callback.onResult(true);
+            return;
+        }
+        if (!(activity instanceof PermissionAwareActivity)) {
+            callback.onResult(false);
+            return;
+        }
+
+        ((PermissionAwareActivity) activity).requestPermissions(new String[]{Manifest.permission.CAMERA}, requestCode,
+                (code, permissions, grantResults) -> {
+                    if (code != requestCode) {
+                        return false;
+                    }
+                    callback.onResult(grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED);
+                    return true;
+                });
+    }
+}
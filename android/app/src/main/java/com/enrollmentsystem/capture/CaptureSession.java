@@ -0,0 +1,79 @@
+package com.enrollmentsystem.capture;
+
+import com.facebook.react.bridge.Promise;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One capture request. The state only moves forward, pending -> running -> resolved or cancelled,
+ * and the promise is settled by whichever transition into a final state wins, so late or
+ * duplicate SDK callbacks can't settle it twice.
+ */
+public final class CaptureSession {
+
+    public enum State {
+        PENDING,
+        RUNNING,
+        RESOLVED,
+        CANCELLED
+    }
+
+    public interface Starter {
+        /**
+         * Launches the capture, or waits for the camera permission first. Called once, when the
+         * session becomes the active one.
+         */
+        void start(CaptureSession session);
+    }
+
+    private final String id;
+    private final Promise promise;
+    private final Starter starter;
+    private final AtomicReference<State> state = new AtomicReference<>(State.PENDING);
+
+    CaptureSession(String id, Promise promise, Starter starter) {
+        this.id = id;
+        this.promise = promise;
+        this.starter = starter;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public boolean isFinished() {
+        State current = state.get();
+        return current == State.RESOLVED || current == State.CANCELLED;
+    }
+
+    void start() {
+        starter.start(this);
+    }
+
+    boolean markRunning() {
+        return state.compareAndSet(State.PENDING, State.RUNNING);
+    }
+
+    /**
+     * @return the state the session left, or null when it had already finished
+     */
+    State finish(State finalState) {
+        while (true) {
+            State current = state.get();
+            if (current == State.RESOLVED || current == State.CANCELLED) {
+                return null;
+            }
+            if (state.compareAndSet(current, finalState)) {
+                return current;
+            }
+        }
+    }
+
+    Promise getPromise() {
+        return promise;
+    }
+}
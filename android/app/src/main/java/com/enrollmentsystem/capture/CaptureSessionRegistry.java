@@ -0,0 +1,174 @@
+package com.enrollmentsystem.capture;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Capture sessions of the finger and face modules keyed by session id. At most one session is
+ * active, since the camera can only serve one capture; overlapping requests are either rejected
+ * with {@code BUSY} or queued and started as soon as the active session finishes. Without locks:
+ * the active slot is claimed by compare-and-set and every session settles its promise exactly once.
+ */
+public class CaptureSessionRegistry {
+
+    private static final CaptureSessionRegistry instance = new CaptureSessionRegistry();
+
+    private final ConcurrentHashMap<String, CaptureSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicReference<CaptureSession> active = new AtomicReference<>();
+    private final ConcurrentLinkedQueue<CaptureSession> queue = new ConcurrentLinkedQueue<>();
+    private volatile boolean queueOverlapping = false;
+
+    private CaptureSessionRegistry() {
+    }
+
+    /**
+     * The registry shared by every capture module of the process, there is only one camera.
+     */
+    public static CaptureSessionRegistry getInstance() {
+        return instance;
+    }
+
+    public void setQueueOverlapping(boolean queueOverlapping) {
+        this.queueOverlapping = queueOverlapping;
+    }
+
+    /**
+     * Registers a capture request and starts it right away when no other session is active.
+     *
+     * @param sessionId id chosen by the caller, or null to generate one
+     * @return the session, or null when it was rejected and {@code promise} already settled
+     */
+    public CaptureSession submit(String sessionId, Promise promise, CaptureSession.Starter starter) {
+        String id = sessionId != null && !sessionId.isEmpty() ? sessionId : UUID.randomUUID().toString();
+        CaptureSession session = new CaptureSession(id, promise, starter);
+
+        if (sessions.putIfAbsent(id, session) != null) {
+            promise.reject("DUPLICATE_SESSION", "A capture session " + id + " is already in progress");
+            return null;
+        }
+
+        while (true) {
+            if (active.compareAndSet(null, session)) {
+                session.start();
+                return session;
+            }
+            if (queueOverlapping) {
+                break;
+            }
+
+            CaptureSession current = active.get();
+            if (current != null) {
+                sessions.remove(id, session);
+                promise.reject("BUSY", "Capture session " + current.getId() + " is still in progress");
+                return null;
+            }
+            // the active session finished after the failed claim, claim again
+        }
+
+        queue.offer(session);
+        // the active session may have finished between the failed claim and the offer
+        startNext();
+        return session;
+    }
+
+    /**
+     * @return false when the session was cancelled meanwhile and must not launch the camera
+     */
+    public boolean markRunning(CaptureSession session) {
+        return session.markRunning();
+    }
+
+    /**
+     * Settles the session unless it already finished. Either way the SDK is done with it, so a
+     * cancelled session that was still running frees the camera for the next one here.
+     */
+    public boolean resolve(CaptureSession session, Object value) {
+        if (session.finish(CaptureSession.State.RESOLVED) == null) {
+            release(session);
+            return false;
+        }
+        release(session);
+        session.getPromise().resolve(value);
+        return true;
+    }
+
+    public boolean reject(CaptureSession session, String code, String message) {
+        if (session.finish(CaptureSession.State.RESOLVED) == null) {
+            release(session);
+            return false;
+        }
+        release(session);
+        session.getPromise().reject(code, message);
+        return true;
+    }
+
+    /**
+     * Cancels a queued or active session. Its promise rejects with {@code CANCELLED} right away and
+     * results the SDK still delivers for it are dropped. A session whose capture is already running
+     * keeps the camera until the SDK reports back, so the next session can't launch over it.
+     */
+    public boolean cancel(String sessionId) {
+        CaptureSession session = sessions.get(sessionId);
+        CaptureSession.State previousState = session != null ? session.finish(CaptureSession.State.CANCELLED) : null;
+        if (previousState == null) {
+            return false;
+        }
+
+        queue.remove(session);
+        if (previousState == CaptureSession.State.RUNNING) {
+            sessions.remove(sessionId, session);
+        } else {
+            release(session);
+        }
+        session.getPromise().reject("CANCELLED", "Capture session " + sessionId + " was cancelled");
+        return true;
+    }
+
+    public CaptureSession getActive() {
+        return active.get();
+    }
+
+    public WritableArray describeSessions() {
+        WritableArray sessionsArray = Arguments.createArray();
+        for (CaptureSession session : sessions.values()) {
+            WritableMap sessionMap = Arguments.createMap();
+            sessionMap.putString("sessionId", session.getId());
+            sessionMap.putString("state", session.getState().name().toLowerCase());
+            sessionMap.putBoolean("active", session == active.get());
+            sessionsArray.pushMap(sessionMap);
+        }
+        return sessionsArray;
+    }
+
+    private void release(CaptureSession session) {
+        sessions.remove(session.getId(), session);
+        if (active.compareAndSet(session, null)) {
+            startNext();
+        }
+    }
+
+    private void startNext() {
+        while (active.get() == null) {
+            CaptureSession next = queue.peek();
+            if (next == null) {
+                return;
+            }
+            if (next.isFinished()) {
+                queue.remove(next);
+                continue;
+            }
+            if (active.compareAndSet(null, next)) {
+                queue.remove(next);
+                next.start();
+                return;
+            }
+        }
+    }
+}
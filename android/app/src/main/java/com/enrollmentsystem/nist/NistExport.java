@@ -0,0 +1,154 @@
+package com.enrollmentsystem.nist;
+
+import android.content.Context;
+
+import com.enrollmentsystem.biometricstore.BiometricRecord;
+import com.enrollmentsystem.biometricstore.BiometricStore;
+import com.enrollmentsystem.biometricstore.StoredCapture;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds NIST transaction files in the app cache for the capture modules and the biometric store.
+ */
+public final class NistExport {
+
+    private static final String EXPORT_DIRECTORY_NAME = "nist";
+    private static final String FILE_EXTENSION = ".eft";
+
+    private NistExport() {
+    }
+
+    /**
+     * Reads the transaction fields passed from JS. Type-2 fields are keyed by field number,
+     * either {@code "18"} or {@code "2.018"}.
+     */
+    public static NistTransaction createTransaction(ReadableMap options) {
+        NistTransaction transaction = new NistTransaction();
+        transaction.controlNumber = String.valueOf(System.currentTimeMillis());
+        if (options == null) {
+            return transaction;
+        }
+
+        if (options.hasKey("type")) transaction.type = options.getString("type");
+        if (options.hasKey("destinationAgency")) transaction.destinationAgency = options.getString("destinationAgency");
+        if (options.hasKey("originatingAgency")) transaction.originatingAgency = options.getString("originatingAgency");
+        if (options.hasKey("controlNumber")) transaction.controlNumber = options.getString("controlNumber");
+        if (options.hasKey("domainName")) transaction.domainName = options.getString("domainName");
+        if (options.hasKey("domainVersion")) transaction.domainVersion = options.getString("domainVersion");
+        if (options.hasKey("priority")) transaction.priority = options.getInt("priority");
+        if (options.hasKey("impressionType")) transaction.impressionType = options.getInt("impressionType");
+
+        ReadableMap type2Fields = options.hasKey("type2Fields") ? options.getMap("type2Fields") : null;
+        if (type2Fields != null) {
+            ReadableMapKeySetIterator iterator = type2Fields.keySetIterator();
+            while (iterator.hasNextKey()) {
+                String key = iterator.nextKey();
+                String number = key.startsWith("2.") ? key.substring(2) : key;
+                transaction.type2Fields.put(Integer.parseInt(number), type2Fields.getString(key));
+            }
+        }
+        return transaction;
+    }
+
+    /**
+     * Writes the finger, slap and face images of the stored captures, reading and releasing them
+     * one record at a time.
+     */
+    public static File exportCaptures(Context context, long[] captureIds, NistTransaction transaction) throws IOException {
+        BiometricStore store = BiometricStore.getInstance(context);
+
+        ArrayList<NistImage> images = new ArrayList<>();
+        ArrayList<Long> recordIds = new ArrayList<>();
+        for (long captureId : captureIds) {
+            StoredCapture capture = store.getCapture(captureId);
+            if (capture == null) {
+                throw new FileNotFoundException("No stored capture " + captureId);
+            }
+
+            for (BiometricRecord record : capture.records) {
+                NistImage image = null;
+                if (BiometricRecord.KIND_FINGER.equals(record.kind)) {
+                    image = NistImage.finger(record.position, record.imageType);
+                } else if (BiometricRecord.KIND_SLAP.equals(record.kind)) {
+                    image = NistImage.slap(record.position, record.imageType);
+                } else if (BiometricRecord.KIND_FACE.equals(record.kind) && record.imageType != null) {
+                    image = NistImage.face(record.imageType);
+                }
+
+                if (image != null) {
+                    images.add(image);
+                    recordIds.add(record.id);
+                }
+            }
+        }
+
+        return write(context, transaction, images, (writer, index, image) -> {
+            BiometricRecord record = store.readRecord(recordIds.get(index));
+            if (record == null) {
+                throw new FileNotFoundException("Stored record " + recordIds.get(index) + " was deleted");
+            }
+            image.data = record.data;
+            writer.writeImage(image);
+            image.data = null;
+        });
+    }
+
+    /**
+     * Writes images whose data is already in memory, e.g. straight from a capture result.
+     */
+    public static File exportImages(Context context, List<NistImage> images, NistTransaction transaction) throws IOException {
+        return write(context, transaction, images, (writer, index, image) -> writer.writeImage(image));
+    }
+
+    public static WritableMap createResultMap(File file) {
+        WritableMap result = Arguments.createMap();
+        result.putString("path", file.getAbsolutePath());
+        result.putDouble("size", file.length());
+        return result;
+    }
+
+    private interface ImageWriter {
+        void write(NistTransactionWriter writer, int index, NistImage image) throws IOException;
+    }
+
+    private static File write(Context context, NistTransaction transaction, List<NistImage> images,
+                              ImageWriter imageWriter) throws IOException {
+        File directory = new File(context.getCacheDir(), EXPORT_DIRECTORY_NAME);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+
+        String fileName = transaction.controlNumber.replaceAll("[^A-Za-z0-9_-]", "_") + FILE_EXTENSION;
+        File file = new File(directory, fileName);
+        File tmpFile = new File(directory, fileName + ".tmp");
+
+        try (FileOutputStream out = new FileOutputStream(tmpFile); FileChannel channel = out.getChannel()) {
+            NistTransactionWriter writer = new NistTransactionWriter(channel, transaction);
+            writer.writeHeader(images);
+            for (int i = 0; i < images.size(); i++) {
+                imageWriter.write(writer, i, images.get(i));
+            }
+            writer.finish();
+        } catch (IOException | RuntimeException e) {
+            tmpFile.delete();
+            throw e;
+        }
+
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("Can't write " + file);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,134 @@
+package com.enrollmentsystem.nist;
+
+import java.io.IOException;
+
+import ai.tech5.finger.utils.Finger;
+import ai.tech5.finger.utils.ImageType;
+import ai.tech5.finger.utils.Slap;
+
+/**
+ * One image record of a NIST transaction. {@code data} may be left null while the transaction is
+ * planned and only be loaded right before the record is written, so a transaction never needs
+ * more than one image in memory.
+ */
+public class NistImage {
+
+    public static final int RECORD_TYPE_FINGER = 4;
+    public static final int RECORD_TYPE_FACE = 10;
+    public static final int RECORD_TYPE_VARIABLE_FINGER = 14;
+
+    public int recordType;
+    public int position;
+    public String imageType;
+    public byte[] data;
+
+    public static NistImage finger(int position, String imageType) {
+        NistImage image = new NistImage();
+        // Type-4 only holds WSQ or uncompressed 500 ppi images
+        image.recordType = "WSQ".equals(imageType) || "BMP".equals(imageType)
+                ? RECORD_TYPE_FINGER : RECORD_TYPE_VARIABLE_FINGER;
+        image.position = position;
+        image.imageType = imageType;
+        return image;
+    }
+
+    public static NistImage slap(int position, String imageType) {
+        NistImage image = new NistImage();
+        image.recordType = RECORD_TYPE_VARIABLE_FINGER;
+        image.position = position;
+        image.imageType = imageType;
+        return image;
+    }
+
+    public static NistImage face(String imageType) {
+        NistImage image = new NistImage();
+        image.recordType = RECORD_TYPE_FACE;
+        image.imageType = imageType;
+        return image;
+    }
+
+    public static NistImage of(Finger finger) {
+        NistImage image = finger(finger.pos, toImageType(finger.primaryImageType));
+        image.data = finger.primaryImage;
+        return image;
+    }
+
+    public static NistImage of(Slap slap) {
+        NistImage image = slap(slap.pos, toImageType(slap.imageType));
+        image.data = slap.image;
+        return image;
+    }
+
+    static String toImageType(ImageType type) {
+        if (type == ImageType.IMAGE_TYPE_WSQ) {
+            return "WSQ";
+        }
+        if (type == ImageType.IMAGE_TYPE_BMP) {
+            return "BMP";
+        }
+        return "PNG";
+    }
+
+    /**
+     * Reads width and height from the encoded image header.
+     */
+    int[] readDimensions() throws IOException {
+        if ("WSQ".equals(imageType)) {
+            return readWsqDimensions(data);
+        }
+        if ("PNG".equals(imageType) && data.length >= 24) {
+            return new int[]{readIntBigEndian(data, 16), readIntBigEndian(data, 20)};
+        }
+        if ("BMP".equals(imageType) && data.length >= 26) {
+            return new int[]{readIntLittleEndian(data, 18), Math.abs(readIntLittleEndian(data, 22))};
+        }
+        if ("JPG".equals(imageType)) {
+            return readJpegDimensions(data);
+        }
+        throw new IOException("Can't read dimensions of " + imageType + " image");
+    }
+
+    private static int[] readWsqDimensions(byte[] data) throws IOException {
+        // SOI, then length-prefixed segments up to the SOF marker (FFA2)
+        int offset = 2;
+        while (offset + 4 <= data.length && (data[offset] & 0xFF) == 0xFF) {
+            int marker = data[offset + 1] & 0xFF;
+            int length = readShortBigEndian(data, offset + 2);
+            // Lsof, black, white, height, width
+            if (marker == 0xA2 && offset + 10 <= data.length) {
+                return new int[]{readShortBigEndian(data, offset + 8), readShortBigEndian(data, offset + 6)};
+            }
+            offset += 2 + length;
+        }
+        throw new IOException("WSQ frame header not found");
+    }
+
+    private static int[] readJpegDimensions(byte[] data) throws IOException {
+        int offset = 2;
+        while (offset + 4 <= data.length && (data[offset] & 0xFF) == 0xFF) {
+            int marker = data[offset + 1] & 0xFF;
+            int length = readShortBigEndian(data, offset + 2);
+            // SOF0..SOF15 except DHT, JPG and DAC
+            boolean frameHeader = marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+            if (frameHeader && offset + 9 <= data.length) {
+                return new int[]{readShortBigEndian(data, offset + 7), readShortBigEndian(data, offset + 5)};
+            }
+            offset += 2 + length;
+        }
+        throw new IOException("JPEG frame header not found");
+    }
+
+    static int readShortBigEndian(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    static int readIntBigEndian(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    static int readIntLittleEndian(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8)
+                | ((data[offset + 2] & 0xFF) << 16) | ((data[offset + 3] & 0xFF) << 24);
+    }
+}
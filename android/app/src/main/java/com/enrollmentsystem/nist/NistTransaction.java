@@ -0,0 +1,28 @@
+package com.enrollmentsystem.nist;
+
+import java.util.TreeMap;
+
+/**
+ * Transaction level fields of an ANSI/NIST-ITL file: the Type-1 header and the user-defined
+ * Type-2 fields, keyed by field number.
+ */
+public class NistTransaction {
+
+    public static final String VERSION = "0500";
+    // 500 ppi expressed in pixels per millimetre, as Type-1 expects it
+    public static final String NATIVE_RESOLUTION = "19.69";
+
+    public String type = "CAR";
+    public String destinationAgency = "";
+    public String originatingAgency = "";
+    public String controlNumber = "";
+    public String domainName;
+    public String domainVersion;
+    public int priority = 0;
+    public long date = System.currentTimeMillis();
+    /**
+     * IMP code of the finger records, 24 is an optical contactless plain impression.
+     */
+    public int impressionType = 24;
+    public TreeMap<Integer, String> type2Fields = new TreeMap<>();
+}
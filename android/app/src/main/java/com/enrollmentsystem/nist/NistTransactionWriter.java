@@ -0,0 +1,322 @@
+package com.enrollmentsystem.nist;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streams an ANSI/NIST-ITL transaction into a {@link FileChannel}: a Type-1 header, a Type-2
+ * record and then one Type-4, Type-14 or Type-10 record per image. Every record length is
+ * computed from its field sizes before the record is written, so the file is produced in one pass
+ * and only a small staging buffer plus the image currently being written are held in memory.
+ * <p>
+ * {@link #writeHeader} takes the planned images because the Type-1 content field lists every
+ * record up front; the images then have to be written in the same order with their data set.
+ */
+public class NistTransactionWriter {
+
+    private static final byte FS = 0x1C;
+    private static final byte GS = 0x1D;
+    private static final byte RS = 0x1E;
+    private static final byte US = 0x1F;
+
+    private static final int TYPE4_HEADER_SIZE = 18;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PIXELS_PER_INCH = 500;
+
+    private final FileChannel channel;
+    private final NistTransaction transaction;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final String date;
+
+    private List<NistImage> plannedImages;
+    private int nextImage = 0;
+
+    public NistTransactionWriter(FileChannel channel, NistTransaction transaction) {
+        this.channel = channel;
+        this.transaction = transaction;
+        this.date = new SimpleDateFormat("yyyyMMdd", Locale.US).format(new Date(transaction.date));
+    }
+
+    public void writeHeader(List<NistImage> images) throws IOException {
+        if (plannedImages != null) {
+            throw new IllegalStateException("Header already written");
+        }
+        plannedImages = new ArrayList<>(images);
+
+        boolean utf8 = false;
+        for (String value : transaction.type2Fields.values()) {
+            utf8 |= !StandardCharsets.US_ASCII.newEncoder().canEncode(value);
+        }
+
+        StringBuilder content = new StringBuilder();
+        content.append('1').append((char) US).append(images.size() + 1);
+        content.append((char) RS).append('2').append((char) US).append("00");
+        for (int i = 0; i < images.size(); i++) {
+            content.append((char) RS).append(images.get(i).recordType).append((char) US).append(formatIdc(i + 1));
+        }
+
+        ArrayList<Field> fields = new ArrayList<>();
+        fields.add(new Field(2, NistTransaction.VERSION));
+        fields.add(new Field(3, content.toString()));
+        fields.add(new Field(4, transaction.type));
+        fields.add(new Field(5, date));
+        if (transaction.priority > 0) {
+            fields.add(new Field(6, String.valueOf(transaction.priority)));
+        }
+        fields.add(new Field(7, transaction.destinationAgency));
+        fields.add(new Field(8, transaction.originatingAgency));
+        fields.add(new Field(9, transaction.controlNumber));
+        fields.add(new Field(11, NistTransaction.NATIVE_RESOLUTION));
+        fields.add(new Field(12, NistTransaction.NATIVE_RESOLUTION));
+        if (transaction.domainName != null) {
+            fields.add(new Field(13, transaction.domainName
+                    + (transaction.domainVersion != null ? (char) US + transaction.domainVersion : "")));
+        }
+        if (utf8) {
+            // character encoding index 3 is UTF-8, only needed when Type-2 leaves ASCII
+            fields.add(new Field(15, "3" + (char) US + "UTF-8"));
+        }
+        writeTaggedRecord(1, fields, null, 0);
+
+        fields.clear();
+        fields.add(new Field(2, "00"));
+        for (Map.Entry<Integer, String> field : transaction.type2Fields.entrySet()) {
+            if (field.getKey() > 2) {
+                fields.add(new Field(field.getKey(), field.getValue()));
+            }
+        }
+        writeTaggedRecord(2, fields, null, 0);
+    }
+
+    /**
+     * Writes the next planned image. Its {@code data} may be released once this returns.
+     */
+    public void writeImage(NistImage image) throws IOException {
+        if (plannedImages == null) {
+            throw new IllegalStateException("Header not written");
+        }
+        if (nextImage >= plannedImages.size() || plannedImages.get(nextImage).recordType != image.recordType) {
+            throw new IllegalStateException("Image " + nextImage + " doesn't match the planned records");
+        }
+        if (image.data == null || image.data.length == 0) {
+            throw new IOException("Image " + nextImage + " has no data");
+        }
+
+        int idc = ++nextImage;
+        int[] dimensions = image.readDimensions();
+
+        if (image.recordType == NistImage.RECORD_TYPE_FINGER) {
+            writeType4(image, idc, dimensions[0], dimensions[1]);
+        } else if (image.recordType == NistImage.RECORD_TYPE_VARIABLE_FINGER) {
+            writeType14(image, idc, dimensions[0], dimensions[1]);
+        } else {
+            writeType10(image, idc, dimensions[0], dimensions[1]);
+        }
+    }
+
+    /**
+     * Flushes the staging buffer and checks every planned image was written. Doesn't close the
+     * channel.
+     */
+    public void finish() throws IOException {
+        if (plannedImages == null || nextImage != plannedImages.size()) {
+            throw new IllegalStateException("Transaction incomplete, " + nextImage + " images written");
+        }
+        flush();
+    }
+
+    private void writeType4(NistImage image, int idc, int width, int height) throws IOException {
+        boolean raw = "BMP".equals(image.imageType);
+        long dataLength = raw ? (long) width * height : image.data.length;
+
+        ensureCapacity(TYPE4_HEADER_SIZE);
+        buffer.putInt((int) (TYPE4_HEADER_SIZE + dataLength));
+        buffer.put((byte) idc);
+        buffer.put((byte) transaction.impressionType);
+        buffer.put((byte) image.position);
+        for (int i = 0; i < 5; i++) {
+            buffer.put((byte) 0xFF);
+        }
+        // ISR 0: minimum scanning resolution
+        buffer.put((byte) 0);
+        buffer.putShort((short) width);
+        buffer.putShort((short) height);
+        // GCA 1 is WSQ, 0 uncompressed
+        buffer.put((byte) (raw ? 0 : 1));
+
+        writeImageData(image);
+    }
+
+    private void writeType14(NistImage image, int idc, int width, int height) throws IOException {
+        ArrayList<Field> fields = new ArrayList<>();
+        fields.add(new Field(2, formatIdc(idc)));
+        fields.add(new Field(3, String.valueOf(transaction.impressionType)));
+        fields.add(new Field(4, transaction.originatingAgency));
+        fields.add(new Field(5, date));
+        fields.add(new Field(6, String.valueOf(width)));
+        fields.add(new Field(7, String.valueOf(height)));
+        fields.add(new Field(8, "1"));
+        fields.add(new Field(9, String.valueOf(PIXELS_PER_INCH)));
+        fields.add(new Field(10, String.valueOf(PIXELS_PER_INCH)));
+        fields.add(new Field(11, "WSQ".equals(image.imageType) ? "WSQ20" : "BMP".equals(image.imageType) ? "NONE" : "PNG"));
+        fields.add(new Field(12, "8"));
+        fields.add(new Field(13, String.valueOf(image.position)));
+
+        writeTaggedRecord(14, fields, image, getDataLength(image, width, height));
+    }
+
+    private void writeType10(NistImage image, int idc, int width, int height) throws IOException {
+        boolean jpeg = "JPG".equals(image.imageType);
+
+        ArrayList<Field> fields = new ArrayList<>();
+        fields.add(new Field(2, formatIdc(idc)));
+        fields.add(new Field(3, "FACE"));
+        fields.add(new Field(4, transaction.originatingAgency));
+        fields.add(new Field(5, date));
+        fields.add(new Field(6, String.valueOf(width)));
+        fields.add(new Field(7, String.valueOf(height)));
+        // no scale known, square pixels
+        fields.add(new Field(8, "0"));
+        fields.add(new Field(9, "1"));
+        fields.add(new Field(10, "1"));
+        fields.add(new Field(11, jpeg ? "JPEGB" : "PNG"));
+        fields.add(new Field(12, jpeg ? "YCC" : "SRGB"));
+        // subject acquisition profile 1: unknown
+        fields.add(new Field(13, "1"));
+
+        writeTaggedRecord(10, fields, image, getDataLength(image, width, height));
+    }
+
+    /**
+     * Writes a tagged record whose LEN field counts itself, computed before anything is written.
+     * The image data, when there is one, goes last as field 999.
+     */
+    private void writeTaggedRecord(int recordType, List<Field> fields, NistImage image, long dataLength) throws IOException {
+        long length = 0;
+        for (Field field : fields) {
+            length += getTag(recordType, field.number).length() + field.value.length + 1;
+        }
+        if (image != null) {
+            length += getTag(recordType, 999).length() + dataLength + 1;
+        }
+        length += getTag(recordType, 1).length() + 1;
+
+        // the length field includes its own digits
+        int digits = 1;
+        while (String.valueOf(length + digits).length() != digits) {
+            digits++;
+        }
+        length += digits;
+
+        writeAscii(getTag(recordType, 1) + length);
+        for (Field field : fields) {
+            writeByte(GS);
+            writeAscii(getTag(recordType, field.number));
+            writeBytes(field.value, 0, field.value.length);
+        }
+
+        if (image != null) {
+            writeByte(GS);
+            writeAscii(getTag(recordType, 999));
+            writeImageData(image);
+        }
+        writeByte(FS);
+    }
+
+    private static long getDataLength(NistImage image, int width, int height) {
+        return "BMP".equals(image.imageType) ? (long) width * height : image.data.length;
+    }
+
+    /**
+     * BMPs are written as raw top-down pixels, straight from the bottom-up rows of the file.
+     */
+    private void writeImageData(NistImage image) throws IOException {
+        if (!"BMP".equals(image.imageType)) {
+            writeBytes(image.data, 0, image.data.length);
+            return;
+        }
+
+        byte[] bmp = image.data;
+        int width = NistImage.readIntLittleEndian(bmp, 18);
+        int height = Math.abs(NistImage.readIntLittleEndian(bmp, 22));
+        if ((bmp[28] & 0xFF) != 8) {
+            throw new IOException("Only 8-bit grayscale BMPs can be written uncompressed");
+        }
+
+        int pixelOffset = NistImage.readIntLittleEndian(bmp, 10);
+        boolean bottomUp = NistImage.readIntLittleEndian(bmp, 22) > 0;
+        int stride = (width + 3) & ~3;
+        for (int y = 0; y < height; y++) {
+            int row = bottomUp ? height - 1 - y : y;
+            writeBytes(bmp, pixelOffset + row * stride, width);
+        }
+    }
+
+    private static String getTag(int recordType, int fieldNumber) {
+        return recordType + "." + String.format(Locale.US, "%03d", fieldNumber) + ":";
+    }
+
+    private static String formatIdc(int idc) {
+        return String.format(Locale.US, "%02d", idc);
+    }
+
+    private void writeAscii(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    private void writeByte(byte value) throws IOException {
+        ensureCapacity(1);
+        buffer.put(value);
+    }
+
+    private void writeBytes(byte[] data, int offset, int length) throws IOException {
+        if (length <= buffer.remaining()) {
+            buffer.put(data, offset, length);
+            return;
+        }
+
+        // large image payloads go to the channel without another copy
+        flush();
+        if (length >= BUFFER_SIZE) {
+            ByteBuffer wrapped = ByteBuffer.wrap(data, offset, length);
+            while (wrapped.hasRemaining()) {
+                channel.write(wrapped);
+            }
+        } else {
+            buffer.put(data, offset, length);
+        }
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (buffer.remaining() < length) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static class Field {
+        final int number;
+        final byte[] value;
+
+        Field(int number, String value) {
+            this.number = number;
+            this.value = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
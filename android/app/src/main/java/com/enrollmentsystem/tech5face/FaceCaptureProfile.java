@@ -0,0 +1,253 @@
+package com.enrollmentsystem.tech5face;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import ai.tech5.pheonix.capture.controller.AirsnapFaceThresholds;
+import ai.tech5.pheonix.capture.controller.CompressBy;
+import ai.tech5.pheonix.capture.controller.CompressionConfig;
+import ai.tech5.pheonix.capture.controller.FaceCaptureController;
+import ai.tech5.pheonix.capture.controller.FullFrontalCropConfig;
+import ai.tech5.pheonix.capture.controller.GlassDetection;
+import ai.tech5.pheonix.capture.controller.ImageType;
+
+/**
+ * Face capture configuration parsed and validated once from a JS config. A registered profile is
+ * applied to the face controller with plain setters on every capture, without re-reading the map.
+ * The SDK config objects it holds are never modified after parsing.
+ */
+final class FaceCaptureProfile {
+
+    private String license;
+    private boolean useBackCamera;
+    private boolean autoCapture;
+    private boolean occlusionEnabled;
+    private boolean eyeClosedEnabled;
+    private GlassDetection glassDetection;
+    private int timeoutInSecs;
+    private boolean compression;
+    private boolean isISOEnabled;
+    private boolean enableCameraSwitching;
+    private boolean frameCapture;
+    private int messagesFrequency;
+    private int fontSize;
+    private AirsnapFaceThresholds thresholds;
+    private CompressionConfig compressionConfig;
+    private FullFrontalCropConfig fullFrontalCropConfig;
+    private boolean returnImages;
+    private FaceOutputPolicy outputPolicy;
+
+    private FaceCaptureProfile() {
+    }
+
+    String getLicense() {
+        return license;
+    }
+
+    /**
+     * When false results carry the face data only, the images stay native until they are stored.
+     */
+    boolean isReturnImages() {
+        return returnImages;
+    }
+
+    FaceOutputPolicy getOutputPolicy() {
+        return outputPolicy;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the config can't be captured
+     */
+    static FaceCaptureProfile fromConfig(ReadableMap config) {
+        FaceCaptureProfile profile = new FaceCaptureProfile();
+
+        // Set license
+        profile.license = config.hasKey("license") ? config.getString("license") : "";
+
+        // Set camera settings
+        boolean useBackCamera = config.hasKey("useBackCamera") && config.getBoolean("useBackCamera");
+        profile.useBackCamera = useBackCamera;
+
+        // Set auto capture
+        boolean autoCapture = !config.hasKey("autoCapture") || config.getBoolean("autoCapture");
+        profile.autoCapture = autoCapture;
+
+        // Set occlusion detection
+        boolean occlusionEnabled = !config.hasKey("occlusionEnabled") || config.getBoolean("occlusionEnabled");
+        profile.occlusionEnabled = occlusionEnabled;
+
+        // Set eye closed detection
+        boolean eyeClosedEnabled = !config.hasKey("eyeClosedEnabled") || config.getBoolean("eyeClosedEnabled");
+        profile.eyeClosedEnabled = eyeClosedEnabled;
+
+        // Set glass detection
+        String glassDetectionStr = config.hasKey("glassDetection")
+                ? config.getString("glassDetection") : "SUN_GLASSES";
+        GlassDetection glassDetection = "ANY_GLASSES".equalsIgnoreCase(glassDetectionStr)
+                ? GlassDetection.ANY_GLASSES : GlassDetection.SUN_GLASSES;
+        profile.glassDetection = glassDetection;
+
+        // Set timeout
+        int timeout = config.hasKey("timeoutInSecs")
+                ? config.getInt("timeoutInSecs") : 60;
+        profile.timeoutInSecs = timeout;
+
+        // Set compression
+        boolean compression = config.hasKey("compression") && config.getBoolean("compression");
+        profile.compression = compression;
+
+        // Set ISO/ICAO checks
+        boolean isISOEnabled = config.hasKey("isISOEnabled") && config.getBoolean("isISOEnabled");
+        profile.isISOEnabled = isISOEnabled;
+
+        // Set camera switching
+        boolean enableCameraSwitching = config.hasKey("enableCameraSwitching") && config.getBoolean("enableCameraSwitching");
+        profile.enableCameraSwitching = enableCameraSwitching;
+
+        // Set frame capture (fast capture mode)
+        boolean frameCapture = config.hasKey("fastCapture") && config.getBoolean("fastCapture");
+        profile.frameCapture = frameCapture;
+
+        // Set message frequency
+        int messagesFrequency = config.hasKey("messagesFrequency")
+                ? config.getInt("messagesFrequency") : 3;
+        profile.messagesFrequency = messagesFrequency;
+
+        // Set font size
+        int fontSize = config.hasKey("fontSize")
+                ? config.getInt("fontSize") : 16;
+        profile.fontSize = fontSize;
+
+        // Set result images
+        profile.returnImages = !config.hasKey("returnImages") || config.getBoolean("returnImages");
+
+        // Set output renditions
+        profile.outputPolicy = FaceOutputPolicy.fromConfig(config.hasKey("output") ? config.getMap("output") : null);
+
+        // Set thresholds
+        if (config.hasKey("thresholds")) {
+            ReadableMap thresholdsMap = config.getMap("thresholds");
+            if (thresholdsMap != null) {
+                AirsnapFaceThresholds thresholds = new AirsnapFaceThresholds();
+
+                if (thresholdsMap.hasKey("pitchThreshold")) {
+                    thresholds.setPITCH_THRESHOLD(thresholdsMap.getInt("pitchThreshold"));
+                }
+                if (thresholdsMap.hasKey("yawThreshold")) {
+                    thresholds.setYAW_THRESHOLD(thresholdsMap.getInt("yawThreshold"));
+                }
+                if (thresholdsMap.hasKey("rollThreshold")) {
+                    thresholds.setRollThreshold(thresholdsMap.getInt("rollThreshold"));
+                }
+                if (thresholdsMap.hasKey("maskThreshold")) {
+                    thresholds.setMASK_THRESHOLD((float) thresholdsMap.getDouble("maskThreshold"));
+                }
+                if (thresholdsMap.hasKey("anyGlassThreshold")) {
+                    thresholds.setANYGLASS_THRESHOLD((float) thresholdsMap.getDouble("anyGlassThreshold"));
+                }
+                if (thresholdsMap.hasKey("sunGlassThreshold")) {
+                    thresholds.setSUNGLASS_THRESHOLD((float) thresholdsMap.getDouble("sunGlassThreshold"));
+                }
+                if (thresholdsMap.hasKey("brisqueThreshold")) {
+                    thresholds.setBRISQUE_THRESHOLD((int) thresholdsMap.getDouble("brisqueThreshold"));
+                }
+                if (thresholdsMap.hasKey("livenessThreshold")) {
+                    thresholds.setLIVENESS_THRESHOLD((float) thresholdsMap.getDouble("livenessThreshold"));
+                }
+                if (thresholdsMap.hasKey("eyeCloseThreshold")) {
+                    thresholds.setEYE_CLOSE_THRESHOLD((float) thresholdsMap.getDouble("eyeCloseThreshold"));
+                }
+
+                profile.thresholds = thresholds;
+            }
+        }
+
+        // Set compression config
+        if (config.hasKey("compressionConfig")) {
+            ReadableMap compConfigMap = config.getMap("compressionConfig");
+            if (compConfigMap != null) {
+                CompressionConfig compressionConfig = new CompressionConfig();
+
+                String compressBy = compConfigMap.hasKey("compressBy")
+                        ? compConfigMap.getString("compressBy") : "COMPRESSION_RATE";
+                compressionConfig.setCompressBy("TARGET_SIZE".equalsIgnoreCase(compressBy)
+                        ? CompressBy.COMPRESS_BY_TARGET_SIZE : CompressBy.COMPRESS_BY_COMPRESSION_RATE);
+
+                if (compConfigMap.hasKey("compressionRate")) {
+                    compressionConfig.setCompressionRate(compConfigMap.getInt("compressionRate"));
+                }
+                if (compConfigMap.hasKey("targetSizeInKbs")) {
+                    compressionConfig.setTargetSizeInKbs(compConfigMap.getInt("targetSizeInKbs"));
+                }
+
+                profile.compressionConfig = compressionConfig;
+            }
+        }
+
+        // Set full frontal crop config (portal image)
+        if (config.hasKey("fullFrontalCropConfig")) {
+            ReadableMap cropConfigMap = config.getMap("fullFrontalCropConfig");
+            if (cropConfigMap != null) {
+                FullFrontalCropConfig cropConfig = new FullFrontalCropConfig();
+
+                if (cropConfigMap.hasKey("portalWidth")) {
+                    cropConfig.setPortalWidth(cropConfigMap.getDouble("portalWidth"));
+                }
+                if (cropConfigMap.hasKey("imageType")) {
+                    String imageTypeStr = cropConfigMap.getString("imageType");
+                    cropConfig.setImageType("BMP".equalsIgnoreCase(imageTypeStr)
+                            ? ImageType.IMAGE_TYPE_BMP : ImageType.IMAGE_TYPE_JPG);
+                }
+                if (cropConfigMap.hasKey("compression")) {
+                    cropConfig.setCompression(cropConfigMap.getDouble("compression"));
+                }
+                if (cropConfigMap.hasKey("getSegmentedImage")) {
+                    cropConfig.getSegmentedImage(cropConfigMap.getBoolean("getSegmentedImage"));
+                }
+                if (cropConfigMap.hasKey("segmentedImageBackgroundColor")) {
+                    ReadableArray colorArray = cropConfigMap.getArray("segmentedImageBackgroundColor");
+                    if (colorArray != null && colorArray.size() >= 3) {
+                        cropConfig.setSegmentedImageBackgroundColor(
+                                colorArray.getInt(0),
+                                colorArray.getInt(1),
+                                colorArray.getInt(2)
+                        );
+                    }
+                }
+
+                profile.fullFrontalCropConfig = cropConfig;
+            }
+        }
+
+        if (profile.timeoutInSecs <= 0) {
+            throw new IllegalArgumentException("timeout must be positive");
+        }
+
+        return profile;
+    }
+
+    void applyTo(FaceCaptureController controller) {
+        controller.setUseBackCamera(useBackCamera);
+        controller.setAutoCapture(autoCapture);
+        controller.setOcclusionEnabled(occlusionEnabled);
+        controller.setEyeClosedEnabled(eyeClosedEnabled);
+        controller.setGlassDetection(glassDetection);
+        controller.setCaptureTimeoutInSecs(timeoutInSecs);
+        controller.setCompression(compression);
+        controller.setIsISOEnabled(isISOEnabled);
+        controller.setEnableCameraSwitching(enableCameraSwitching);
+        controller.setFrameCapture(frameCapture);
+        controller.setMessagesFrequency(messagesFrequency);
+        controller.setFontSize(fontSize);
+
+        if (thresholds != null) {
+            controller.setAirsnapFaceThresholds(thresholds);
+        }
+        if (compressionConfig != null) {
+            controller.setCompressionConfig(compressionConfig);
+        }
+        if (fullFrontalCropConfig != null) {
+            controller.setFullFrontalCropConfig(fullFrontalCropConfig);
+        }
+    }
+}
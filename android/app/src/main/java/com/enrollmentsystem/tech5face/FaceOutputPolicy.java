@@ -0,0 +1,112 @@
+package com.enrollmentsystem.tech5face;
+
+import android.graphics.Bitmap;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+/**
+ * Which face renditions a capture produces and how the portal image is encoded. Renditions that
+ * are not requested are neither encoded, returned to JS nor kept for storing.
+ */
+final class FaceOutputPolicy {
+
+    static final String RENDITION_IMAGE = "image";
+    static final String RENDITION_ORIGINAL = "original";
+    static final String RENDITION_PORTAL = "portal";
+
+    static final FaceOutputPolicy DEFAULT = new FaceOutputPolicy();
+
+    private boolean image = true;
+    private boolean original = true;
+    private boolean portal = true;
+    private Bitmap.CompressFormat portalFormat = Bitmap.CompressFormat.JPEG;
+    private int portalQuality = 90;
+    private int portalMaxWidth = 0;
+
+    private FaceOutputPolicy() {
+    }
+
+    boolean isImage() {
+        return image;
+    }
+
+    boolean isOriginal() {
+        return original;
+    }
+
+    boolean isPortal() {
+        return portal;
+    }
+
+    Bitmap.CompressFormat getPortalFormat() {
+        return portalFormat;
+    }
+
+    String getPortalImageType() {
+        return portalFormat == Bitmap.CompressFormat.PNG ? "PNG" : "JPG";
+    }
+
+    int getPortalQuality() {
+        return portalQuality;
+    }
+
+    /**
+     * Portal images wider than this are downscaled before encoding, 0 keeps the captured size.
+     */
+    int getPortalMaxWidth() {
+        return portalMaxWidth;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the policy can't be applied
+     */
+    static FaceOutputPolicy fromConfig(ReadableMap config) {
+        if (config == null) {
+            return DEFAULT;
+        }
+
+        FaceOutputPolicy policy = new FaceOutputPolicy();
+
+        if (config.hasKey("renditions")) {
+            ReadableArray renditions = config.getArray("renditions");
+            policy.image = false;
+            policy.original = false;
+            policy.portal = false;
+            for (int i = 0; renditions != null && i < renditions.size(); i++) {
+                String rendition = renditions.getString(i);
+                if (RENDITION_IMAGE.equals(rendition)) {
+                    policy.image = true;
+                } else if (RENDITION_ORIGINAL.equals(rendition)) {
+                    policy.original = true;
+                } else if (RENDITION_PORTAL.equals(rendition)) {
+                    policy.portal = true;
+                } else {
+                    throw new IllegalArgumentException("unknown rendition " + rendition);
+                }
+            }
+        }
+
+        if (config.hasKey("portalFormat")) {
+            String format = config.getString("portalFormat");
+            if ("PNG".equalsIgnoreCase(format)) {
+                policy.portalFormat = Bitmap.CompressFormat.PNG;
+            } else if (!"JPG".equalsIgnoreCase(format) && !"JPEG".equalsIgnoreCase(format)) {
+                throw new IllegalArgumentException("unsupported portal format " + format);
+            }
+        }
+
+        if (config.hasKey("portalQuality")) {
+            policy.portalQuality = config.getInt("portalQuality");
+            if (policy.portalQuality < 1 || policy.portalQuality > 100) {
+                throw new IllegalArgumentException("portal quality must be between 1 and 100");
+            }
+        }
+
+        if (config.hasKey("portalMaxWidth")) {
+            policy.portalMaxWidth = Math.max(0, config.getInt("portalMaxWidth"));
+        }
+
+        return policy;
+    }
+}
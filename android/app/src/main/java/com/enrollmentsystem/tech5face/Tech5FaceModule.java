@@ -7,7 +7,6 @@ import android.util.Base64;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
-import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import com.facebook.react.bridge.Arguments;
@@ -15,31 +14,46 @@ import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
-import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableMap;
-
-import ai.tech5.pheonix.capture.controller.AirsnapFaceThresholds;
-import ai.tech5.pheonix.capture.controller.CompressBy;
-import ai.tech5.pheonix.capture.controller.CompressionConfig;
+import com.enrollmentsystem.biometricstore.BiometricRecord;
+import com.enrollmentsystem.biometricstore.BiometricStore;
+import com.enrollmentsystem.biometricstore.BiometricStoreModule;
+import com.enrollmentsystem.biometricstore.ContentHash;
+import com.enrollmentsystem.biometricstore.StoredCapture;
+import com.enrollmentsystem.capture.CameraPermission;
+import com.enrollmentsystem.capture.CaptureSession;
+import com.enrollmentsystem.capture.CaptureSessionRegistry;
+
+import ai.tech5.finger.utils.T5FingerCaptureController;
 import ai.tech5.pheonix.capture.controller.FaceCaptureController;
 import ai.tech5.pheonix.capture.controller.FaceCaptureListener;
-import ai.tech5.pheonix.capture.controller.FullFrontalCropConfig;
-import ai.tech5.pheonix.capture.controller.GlassDetection;
-import ai.tech5.pheonix.capture.controller.ImageType;
 import com.phoenixcapture.camerakit.FaceBox;
 
 import android.graphics.Bitmap;
 import java.io.ByteArrayOutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class Tech5FaceModule extends ReactContextBaseJavaModule implements FaceCaptureListener {
+public class Tech5FaceModule extends ReactContextBaseJavaModule {
 
     private static final String TAG = "Tech5FaceModule";
     private static final int CAMERA_PERMISSION_REQUEST_CODE = 1002;
 
     private final ReactApplicationContext reactContext;
-    private Promise capturePromise;
-    private ReadableMap captureConfig;
+    private final CaptureSessionRegistry sessions = CaptureSessionRegistry.getInstance();
+
+    private final ConcurrentHashMap<String, FaceCaptureProfile> captureProfiles = new ConcurrentHashMap<>();
+
+    private final ExecutorService storeExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService encodeExecutor = Executors.newSingleThreadExecutor();
+    // only touched on the encode thread, keeps its capacity between captures
+    private final ByteArrayOutputStream portalBuffer = new ByteArrayOutputStream(256 * 1024);
+    private volatile ArrayList<BiometricRecord> lastCaptureRecords;
 
     public Tech5FaceModule(ReactApplicationContext reactContext) {
         super(reactContext);
@@ -54,312 +68,358 @@ public class Tech5FaceModule extends ReactContextBaseJavaModule implements FaceC
 
     @ReactMethod
     public void captureFace(ReadableMap config, Promise promise) {
-        this.capturePromise = promise;
-        this.captureConfig = config;
-
-        Activity activity = getCurrentActivity();
-        if (activity == null) {
-            promise.reject("ACTIVITY_NULL", "Activity is null");
+        FaceCaptureProfile profile;
+        try {
+            profile = FaceCaptureProfile.fromConfig(config);
+        } catch (IllegalArgumentException e) {
+            promise.reject("INVALID_CONFIG", "Invalid capture config: " + e.getMessage());
             return;
         }
 
-        // Check camera permission
-        if (ContextCompat.checkSelfPermission(activity, Manifest.permission.CAMERA)
-                != PackageManager.PERMISSION_GRANTED) {
-            ActivityCompat.requestPermissions(activity,
-                    new String[]{Manifest.permission.CAMERA},
-                    CAMERA_PERMISSION_REQUEST_CODE);
+        captureWithProfile(profile, config.hasKey("sessionId") ? config.getString("sessionId") : null, promise);
+    }
+
+    /**
+     * Validates {@code config} once and keeps it natively under {@code name}, so later captures
+     * skip config parsing entirely.
+     */
+    @ReactMethod
+    public void registerCaptureProfile(String name, ReadableMap config, Promise promise) {
+        try {
+            captureProfiles.put(name, FaceCaptureProfile.fromConfig(config));
+            promise.resolve(true);
+        } catch (IllegalArgumentException e) {
+            promise.reject("INVALID_PROFILE", "Invalid capture profile: " + e.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void removeCaptureProfile(String name, Promise promise) {
+        captureProfiles.remove(name);
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void captureFaceWithProfile(String profileName, Promise promise) {
+        FaceCaptureProfile profile = captureProfiles.get(profileName);
+        if (profile == null) {
+            promise.reject("UNKNOWN_PROFILE", "No capture profile registered as " + profileName);
             return;
         }
 
-        startFaceCapture(activity);
+        captureWithProfile(profile, null, promise);
     }
 
-    private void startFaceCapture(Activity activity) {
-        try {
-            FaceCaptureController controller = FaceCaptureController.getInstance();
-
-            // Set license
-            String license = captureConfig.hasKey("license") ? captureConfig.getString("license") : "";
-
-            // Set camera settings
-            boolean useBackCamera = captureConfig.hasKey("useBackCamera") && captureConfig.getBoolean("useBackCamera");
-            controller.setUseBackCamera(useBackCamera);
-
-            // Set auto capture
-            boolean autoCapture = !captureConfig.hasKey("autoCapture") || captureConfig.getBoolean("autoCapture");
-            controller.setAutoCapture(autoCapture);
-
-            // Set occlusion detection
-            boolean occlusionEnabled = !captureConfig.hasKey("occlusionEnabled") || captureConfig.getBoolean("occlusionEnabled");
-            controller.setOcclusionEnabled(occlusionEnabled);
-
-            // Set eye closed detection
-            boolean eyeClosedEnabled = !captureConfig.hasKey("eyeClosedEnabled") || captureConfig.getBoolean("eyeClosedEnabled");
-            controller.setEyeClosedEnabled(eyeClosedEnabled);
-
-            // Set glass detection
-            String glassDetectionStr = captureConfig.hasKey("glassDetection")
-                    ? captureConfig.getString("glassDetection") : "SUN_GLASSES";
-            GlassDetection glassDetection = "ANY_GLASSES".equalsIgnoreCase(glassDetectionStr)
-                    ? GlassDetection.ANY_GLASSES : GlassDetection.SUN_GLASSES;
-            controller.setGlassDetection(glassDetection);
-
-            // Set timeout
-            int timeout = captureConfig.hasKey("timeoutInSecs")
-                    ? captureConfig.getInt("timeoutInSecs") : 60;
-            controller.setCaptureTimeoutInSecs(timeout);
-
-            // Set compression
-            boolean compression = captureConfig.hasKey("compression") && captureConfig.getBoolean("compression");
-            controller.setCompression(compression);
-
-            // Set ISO/ICAO checks
-            boolean isISOEnabled = captureConfig.hasKey("isISOEnabled") && captureConfig.getBoolean("isISOEnabled");
-            controller.setIsISOEnabled(isISOEnabled);
-
-            // Set camera switching
-            boolean enableCameraSwitching = captureConfig.hasKey("enableCameraSwitching") && captureConfig.getBoolean("enableCameraSwitching");
-            controller.setEnableCameraSwitching(enableCameraSwitching);
-
-            // Set frame capture (fast capture mode)
-            boolean frameCapture = captureConfig.hasKey("fastCapture") && captureConfig.getBoolean("fastCapture");
-            controller.setFrameCapture(frameCapture);
-
-            // Set message frequency
-            int messagesFrequency = captureConfig.hasKey("messagesFrequency")
-                    ? captureConfig.getInt("messagesFrequency") : 3;
-            controller.setMessagesFrequency(messagesFrequency);
-
-            // Set font size
-            int fontSize = captureConfig.hasKey("fontSize")
-                    ? captureConfig.getInt("fontSize") : 16;
-            controller.setFontSize(fontSize);
-
-            // Set thresholds
-            if (captureConfig.hasKey("thresholds")) {
-                ReadableMap thresholdsMap = captureConfig.getMap("thresholds");
-                if (thresholdsMap != null) {
-                    AirsnapFaceThresholds thresholds = new AirsnapFaceThresholds();
-
-                    if (thresholdsMap.hasKey("pitchThreshold")) {
-                        thresholds.setPITCH_THRESHOLD(thresholdsMap.getInt("pitchThreshold"));
-                    }
-                    if (thresholdsMap.hasKey("yawThreshold")) {
-                        thresholds.setYAW_THRESHOLD(thresholdsMap.getInt("yawThreshold"));
-                    }
-                    if (thresholdsMap.hasKey("rollThreshold")) {
-                        thresholds.setRollThreshold(thresholdsMap.getInt("rollThreshold"));
-                    }
-                    if (thresholdsMap.hasKey("maskThreshold")) {
-                        thresholds.setMASK_THRESHOLD((float) thresholdsMap.getDouble("maskThreshold"));
-                    }
-                    if (thresholdsMap.hasKey("anyGlassThreshold")) {
-                        thresholds.setANYGLASS_THRESHOLD((float) thresholdsMap.getDouble("anyGlassThreshold"));
-                    }
-                    if (thresholdsMap.hasKey("sunGlassThreshold")) {
-                        thresholds.setSUNGLASS_THRESHOLD((float) thresholdsMap.getDouble("sunGlassThreshold"));
-                    }
-                    if (thresholdsMap.hasKey("brisqueThreshold")) {
-                        thresholds.setBRISQUE_THRESHOLD((int) thresholdsMap.getDouble("brisqueThreshold"));
-                    }
-                    if (thresholdsMap.hasKey("livenessThreshold")) {
-                        thresholds.setLIVENESS_THRESHOLD((float) thresholdsMap.getDouble("livenessThreshold"));
-                    }
-                    if (thresholdsMap.hasKey("eyeCloseThreshold")) {
-                        thresholds.setEYE_CLOSE_THRESHOLD((float) thresholdsMap.getDouble("eyeCloseThreshold"));
-                    }
+    private void captureWithProfile(FaceCaptureProfile profile, String sessionId, Promise promise) {
+        sessions.submit(sessionId, promise, session -> startFaceCapture(session, profile));
+    }
 
-                    controller.setAirsnapFaceThresholds(thresholds);
-                }
+    /**
+     * Asks for the camera permission when needed and starts the capture once it is granted,
+     * unless the session was cancelled while the dialog was up.
+     */
+    private void startFaceCapture(CaptureSession session, FaceCaptureProfile profile) {
+        // the finger kiosk surface holds the camera outside the registry
+        if (T5FingerCaptureController.getInstance().isKioskModeActive()) {
+            sessions.reject(session, "BUSY", "Finger kiosk mode is running");
+            return;
+        }
+
+        Activity activity = getCurrentActivity();
+        if (activity == null) {
+            sessions.reject(session, "ACTIVITY_NULL", "Activity is null");
+            return;
+        }
+
+        CameraPermission.request(activity, CAMERA_PERMISSION_REQUEST_CODE, granted -> {
+            if (!granted) {
+                sessions.reject(session, "CAMERA_PERMISSION", "Camera permission required");
+                return;
+            }
+            if (!sessions.markRunning(session)) {
+                return;
             }
 
-            // Set compression config
-            if (captureConfig.hasKey("compressionConfig")) {
-                ReadableMap compConfigMap = captureConfig.getMap("compressionConfig");
-                if (compConfigMap != null) {
-                    CompressionConfig compressionConfig = new CompressionConfig();
+            try {
+                FaceCaptureController controller = FaceCaptureController.getInstance();
+                profile.applyTo(controller);
 
-                    String compressBy = compConfigMap.hasKey("compressBy")
-                            ? compConfigMap.getString("compressBy") : "COMPRESSION_RATE";
-                    compressionConfig.setCompressBy("TARGET_SIZE".equalsIgnoreCase(compressBy)
-                            ? CompressBy.COMPRESS_BY_TARGET_SIZE : CompressBy.COMPRESS_BY_COMPRESSION_RATE);
+                // Start face capture
+                controller.startFaceCapture(profile.getLicense(), activity, new SessionListener(session, profile));
 
-                    if (compConfigMap.hasKey("compressionRate")) {
-                        compressionConfig.setCompressionRate(compConfigMap.getInt("compressionRate"));
-                    }
-                    if (compConfigMap.hasKey("targetSizeInKbs")) {
-                        compressionConfig.setTargetSizeInKbs(compConfigMap.getInt("targetSizeInKbs"));
-                    }
+            } catch (Exception e) {
+                Log.e(TAG, "Error starting face capture: " + e.getMessage(), e);
+                sessions.reject(session, "CAPTURE_ERROR", "Error starting face capture: " + e.getMessage());
+            }
+        });
+    }
 
-                    controller.setCompressionConfig(compressionConfig);
-                }
+    /**
+     * Rejects a pending, queued or running capture session right away.
+     */
+    @ReactMethod
+    public void cancelCapture(String sessionId, Promise promise) {
+        promise.resolve(sessions.cancel(sessionId));
+    }
+
+    @ReactMethod
+    public void getCaptureSessions(Promise promise) {
+        promise.resolve(sessions.describeSessions());
+    }
+
+    /**
+     * @param policy {@code "queue"} starts overlapping capture requests one after another,
+     *               {@code "reject"} fails them with {@code BUSY}
+     */
+    @ReactMethod
+    public void setOverlapPolicy(String policy, Promise promise) {
+        sessions.setQueueOverlapping("queue".equals(policy));
+        promise.resolve(true);
+    }
+
+    /**
+     * Routes SDK callbacks to the session they were started for, so a late callback of a cancelled
+     * capture can never settle a newer one.
+     */
+    private class SessionListener implements FaceCaptureListener {
+
+        private final CaptureSession session;
+        private final FaceCaptureProfile profile;
+
+        SessionListener(CaptureSession session, FaceCaptureProfile profile) {
+            this.session = session;
+            this.profile = profile;
+        }
+
+        @Override
+        public void onFaceCaptured(byte[] image, byte[] originalImage, FaceBox faceBox) {
+            if (session.isFinished()) {
+                // cancelled while the camera was up, nothing is waiting for the images
+                recyclePortalImage(faceBox);
+                sessions.reject(session, "CANCELLED", "Face capture was cancelled");
+                return;
             }
 
-            // Set full frontal crop config (portal image)
-            if (captureConfig.hasKey("fullFrontalCropConfig")) {
-                ReadableMap cropConfigMap = captureConfig.getMap("fullFrontalCropConfig");
-                if (cropConfigMap != null) {
-                    FullFrontalCropConfig cropConfig = new FullFrontalCropConfig();
+            boolean returnImages = profile.isReturnImages();
+            FaceOutputPolicy outputPolicy = profile.getOutputPolicy();
+            ArrayList<BiometricRecord> records = new ArrayList<>();
 
-                    if (cropConfigMap.hasKey("portalWidth")) {
-                        cropConfig.setPortalWidth(cropConfigMap.getDouble("portalWidth"));
-                    }
-                    if (cropConfigMap.hasKey("imageType")) {
-                        String imageTypeStr = cropConfigMap.getString("imageType");
-                        cropConfig.setImageType("BMP".equalsIgnoreCase(imageTypeStr)
-                                ? ImageType.IMAGE_TYPE_BMP : ImageType.IMAGE_TYPE_JPG);
-                    }
-                    if (cropConfigMap.hasKey("compression")) {
-                        cropConfig.setCompression(cropConfigMap.getDouble("compression"));
-                    }
-                    if (cropConfigMap.hasKey("getSegmentedImage")) {
-                        cropConfig.getSegmentedImage(cropConfigMap.getBoolean("getSegmentedImage"));
+            try {
+                WritableMap response = Arguments.createMap();
+                response.putBoolean("success", true);
+                response.putString("sessionId", session.getId());
+
+                // Add captured image (compressed)
+                if (outputPolicy.isImage() && image != null) {
+                    records.add(BiometricRecord.of(BiometricRecord.KIND_FACE, 0, BiometricRecord.detectImageType(image), image));
+                    if (returnImages) {
+                        response.putString("imageBase64", Base64.encodeToString(image, Base64.NO_WRAP));
                     }
-                    if (cropConfigMap.hasKey("segmentedImageBackgroundColor")) {
-                        ReadableArray colorArray = cropConfigMap.getArray("segmentedImageBackgroundColor");
-                        if (colorArray != null && colorArray.size() >= 3) {
-                            cropConfig.setSegmentedImageBackgroundColor(
-                                    colorArray.getInt(0),
-                                    colorArray.getInt(1),
-                                    colorArray.getInt(2)
-                            );
-                        }
+                }
+
+                // Add original image (uncompressed)
+                if (outputPolicy.isOriginal() && originalImage != null) {
+                    records.add(BiometricRecord.of(BiometricRecord.KIND_FACE_ORIGINAL, 0,
+                            BiometricRecord.detectImageType(originalImage), originalImage));
+                    if (returnImages) {
+                        response.putString("originalImageBase64", Base64.encodeToString(originalImage, Base64.NO_WRAP));
                     }
+                }
 
-                    controller.setFullFrontalCropConfig(cropConfig);
+                if (faceBox == null) {
+                    lastCaptureRecords = records;
+                    sessions.resolve(session, response);
+                    return;
                 }
-            }
 
-            // Start face capture
-            controller.startFaceCapture(license, activity, this);
+                // Add face box data (quality metrics)
+                WritableMap faceData = createFaceDataMap(faceBox);
+                response.putMap("faceData", faceData);
 
-        } catch (Exception e) {
-            Log.e(TAG, "Error starting face capture: " + e.getMessage(), e);
-            if (capturePromise != null) {
-                capturePromise.reject("CAPTURE_ERROR", "Error starting face capture: " + e.getMessage());
-                capturePromise = null;
+                Bitmap portalImage = faceBox.mPortalImageSegmented;
+                faceBox.mPortalImageSegmented = null;
+                if (!outputPolicy.isPortal() || portalImage == null) {
+                    if (portalImage != null) {
+                        portalImage.recycle();
+                    }
+                    lastCaptureRecords = records;
+                    sessions.resolve(session, response);
+                    return;
+                }
+
+                // the camera callback thread must not wait for the encoder
+                encodeExecutor.execute(() -> {
+                    try {
+                        BiometricRecord portalRecord = encodePortalImage(portalImage, outputPolicy);
+                        records.add(portalRecord);
+                        if (returnImages) {
+                            faceData.putString("portalImageBase64", Base64.encodeToString(portalRecord.data, Base64.NO_WRAP));
+                        }
+
+                        lastCaptureRecords = records;
+                        sessions.resolve(session, response);
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error encoding portal image: " + e.getMessage(), e);
+                        sessions.reject(session, "RESULT_ERROR", "Error encoding portal image: " + e.getMessage());
+                    }
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Error processing capture result: " + e.getMessage(), e);
+                recyclePortalImage(faceBox);
+                sessions.reject(session, "RESULT_ERROR", "Error processing capture result: " + e.getMessage());
             }
         }
-    }
 
-    @Override
-    public void onFaceCaptured(byte[] image, byte[] originalImage, FaceBox faceBox) {
-        if (capturePromise == null) return;
+        @Override
+        public void OnFaceCaptureFailed(String errorMessage) {
+            sessions.reject(session, "CAPTURE_FAILED", errorMessage);
+        }
 
-        try {
-            WritableMap response = Arguments.createMap();
-            response.putBoolean("success", true);
+        @Override
+        public void onCancelled() {
+            sessions.reject(session, "CANCELLED", "Face capture was cancelled by user");
+        }
 
-            // Add captured image (compressed)
-            if (image != null) {
-                response.putString("imageBase64", Base64.encodeToString(image, Base64.NO_WRAP));
+        @Override
+        public void onTimedout(byte[] faceImage) {
+            if (session.isFinished()) {
+                sessions.reject(session, "TIMEOUT", "Face capture timed out");
+                return;
             }
 
-            // Add original image (uncompressed)
-            if (originalImage != null) {
-                response.putString("originalImageBase64", Base64.encodeToString(originalImage, Base64.NO_WRAP));
-            }
+            boolean imageRequested = profile.getOutputPolicy().isImage();
+            if (faceImage != null) {
+                // Return the best captured frame on timeout
+                ArrayList<BiometricRecord> records = new ArrayList<>();
+                if (imageRequested) {
+                    records.add(BiometricRecord.of(BiometricRecord.KIND_FACE, 0,
+                            BiometricRecord.detectImageType(faceImage), faceImage));
+                }
+                lastCaptureRecords = records;
 
-            // Add face box data (quality metrics)
-            if (faceBox != null) {
-                WritableMap faceData = Arguments.createMap();
-
-                // Pose angles
-                faceData.putDouble("pan", faceBox.mPan);
-                faceData.putDouble("pitch", faceBox.mPitch);
-                faceData.putDouble("roll", faceBox.mRoll);
-
-                // Eye distance
-                faceData.putDouble("eyeDistance", faceBox.mEyeDist);
-
-                // Gaze
-                faceData.putDouble("horizontalGaze", faceBox.mHorizontalGaze);
-                faceData.putDouble("verticalGaze", faceBox.mVerticalGaze);
-
-                // Quality scores
-                faceData.putDouble("blurScore", faceBox.mBlurScore);
-                faceData.putDouble("exposureScore", faceBox.mExposureScore);
-                faceData.putDouble("brightnessScore", faceBox.mBrightnessScore);
-                faceData.putDouble("skinToneScore", faceBox.mSkinToneScore);
-                faceData.putDouble("hotspotScore", faceBox.mHotspotScore);
-                faceData.putDouble("redEyesScore", faceBox.mRedEyesScore);
-
-                // Expression scores
-                faceData.putDouble("mouthOpenScore", faceBox.mMouthOpenScore);
-                faceData.putDouble("laughScore", faceBox.mLaughScore);
-
-                // Background scores
-                faceData.putDouble("uniformBackgroundScore", faceBox.mUniformBackgroundScore);
-                faceData.putDouble("uniformBackgroundColorScore", faceBox.mUniformBackgroundColorScore);
-                faceData.putDouble("uniformIlluminationScore", faceBox.mUniformIlluminationScore);
-                faceData.putDouble("faceBackDiffScore", faceBox.mFaceBackDiffScore);
-
-                // Occlusion scores
-                faceData.putDouble("maskScore", faceBox.mMask);
-                faceData.putDouble("anyGlassScore", faceBox.mAnyGlass);
-                faceData.putDouble("sunGlassScore", faceBox.mSunGlass);
-                faceData.putDouble("headphonesScore", faceBox.mHeadphonesScore);
-                faceData.putDouble("hatScore", faceBox.mHatScore);
-                faceData.putDouble("handOcclusion", faceBox.mHandOcclusion);
-
-                // Eye closure
-                faceData.putDouble("leftEyeCloseScore", faceBox.mLeftEyeClose);
-                faceData.putDouble("rightEyeCloseScore", faceBox.mRightEyeClose);
-
-                // Portal/segmented image
-                faceData.putBoolean("hasPortalImage", faceBox.mHasPortalImageSegmented == 1);
-                if (faceBox.mPortalImageSegmented != null) {
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    faceBox.mPortalImageSegmented.compress(Bitmap.CompressFormat.JPEG, 90, baos);
-                    byte[] portalBytes = baos.toByteArray();
-                    faceData.putString("portalImageBase64",
-                            Base64.encodeToString(portalBytes, Base64.NO_WRAP));
+                WritableMap response = Arguments.createMap();
+                response.putBoolean("success", false);
+                response.putBoolean("timedOut", true);
+                response.putString("sessionId", session.getId());
+                if (imageRequested && profile.isReturnImages()) {
+                    response.putString("imageBase64", Base64.encodeToString(faceImage, Base64.NO_WRAP));
                 }
+                sessions.resolve(session, response);
+            } else {
+                sessions.reject(session, "TIMEOUT", "Face capture timed out");
+            }
+        }
+    }
 
-                response.putMap("faceData", faceData);
+    private static WritableMap createFaceDataMap(FaceBox faceBox) {
+        WritableMap faceData = Arguments.createMap();
+
+        // Pose angles
+        faceData.putDouble("pan", faceBox.mPan);
+        faceData.putDouble("pitch", faceBox.mPitch);
+        faceData.putDouble("roll", faceBox.mRoll);
+
+        // Eye distance
+        faceData.putDouble("eyeDistance", faceBox.mEyeDist);
+
+        // Gaze
+        faceData.putDouble("horizontalGaze", faceBox.mHorizontalGaze);
+        faceData.putDouble("verticalGaze", faceBox.mVerticalGaze);
+
+        // Quality scores
+        faceData.putDouble("blurScore", faceBox.mBlurScore);
+        faceData.putDouble("exposureScore", faceBox.mExposureScore);
+        faceData.putDouble("brightnessScore", faceBox.mBrightnessScore);
+        faceData.putDouble("skinToneScore", faceBox.mSkinToneScore);
+        faceData.putDouble("hotspotScore", faceBox.mHotspotScore);
+        faceData.putDouble("redEyesScore", faceBox.mRedEyesScore);
+
+        // Expression scores
+        faceData.putDouble("mouthOpenScore", faceBox.mMouthOpenScore);
+        faceData.putDouble("laughScore", faceBox.mLaughScore);
+
+        // Background scores
+        faceData.putDouble("uniformBackgroundScore", faceBox.mUniformBackgroundScore);
+        faceData.putDouble("uniformBackgroundColorScore", faceBox.mUniformBackgroundColorScore);
+        faceData.putDouble("uniformIlluminationScore", faceBox.mUniformIlluminationScore);
+        faceData.putDouble("faceBackDiffScore", faceBox.mFaceBackDiffScore);
+
+        // Occlusion scores
+        faceData.putDouble("maskScore", faceBox.mMask);
+        faceData.putDouble("anyGlassScore", faceBox.mAnyGlass);
+        faceData.putDouble("sunGlassScore", faceBox.mSunGlass);
+        faceData.putDouble("headphonesScore", faceBox.mHeadphonesScore);
+        faceData.putDouble("hatScore", faceBox.mHatScore);
+        faceData.putDouble("handOcclusion", faceBox.mHandOcclusion);
+
+        // Eye closure
+        faceData.putDouble("leftEyeCloseScore", faceBox.mLeftEyeClose);
+        faceData.putDouble("rightEyeCloseScore", faceBox.mRightEyeClose);
+
+        // Portal/segmented image
+        faceData.putBoolean("hasPortalImage", faceBox.mHasPortalImageSegmented == 1);
+
+        return faceData;
+    }
+
+    /**
+     * Runs on the encode thread, which owns {@link #portalBuffer}. Recycles {@code portalImage}.
+     */
+    private BiometricRecord encodePortalImage(Bitmap portalImage, FaceOutputPolicy outputPolicy) {
+        Bitmap encodedImage = portalImage;
+        try {
+            int maxWidth = outputPolicy.getPortalMaxWidth();
+            if (maxWidth > 0 && portalImage.getWidth() > maxWidth) {
+                int height = Math.max(1, Math.round(portalImage.getHeight() * (float) maxWidth / portalImage.getWidth()));
+                encodedImage = Bitmap.createScaledBitmap(portalImage, maxWidth, height, true);
+                portalImage.recycle();
             }
 
-            capturePromise.resolve(response);
-        } catch (Exception e) {
-            Log.e(TAG, "Error processing capture result: " + e.getMessage(), e);
-            capturePromise.reject("RESULT_ERROR", "Error processing capture result: " + e.getMessage());
+            portalBuffer.reset();
+            // hashed as the encoder writes it, no second pass over the image
+            MessageDigest digest = ContentHash.newSha256();
+            encodedImage.compress(outputPolicy.getPortalFormat(), outputPolicy.getPortalQuality(),
+                    new DigestOutputStream(portalBuffer, digest));
+
+            return BiometricRecord.of(BiometricRecord.KIND_FACE_PORTAL, 0, outputPolicy.getPortalImageType(),
+                    portalBuffer.toByteArray(), ContentHash.toHex(digest.digest()));
         } finally {
-            capturePromise = null;
+            encodedImage.recycle();
+            if (!portalImage.isRecycled()) {
+                portalImage.recycle();
+            }
         }
     }
 
-    @Override
-    public void OnFaceCaptureFailed(String errorMessage) {
-        if (capturePromise != null) {
-            capturePromise.reject("CAPTURE_FAILED", errorMessage);
-            capturePromise = null;
+    private static void recyclePortalImage(FaceBox faceBox) {
+        if (faceBox != null && faceBox.mPortalImageSegmented != null) {
+            faceBox.mPortalImageSegmented.recycle();
+            faceBox.mPortalImageSegmented = null;
         }
     }
 
-    @Override
-    public void onCancelled() {
-        if (capturePromise != null) {
-            capturePromise.reject("CANCELLED", "Face capture was cancelled by user");
-            capturePromise = null;
+    /**
+     * Writes the images of the last capture to the native biometric store in one transaction and
+     * resolves with the stored capture and its record ids.
+     */
+    @ReactMethod
+    public void storeLastCapture(String subjectId, Promise promise) {
+        ArrayList<BiometricRecord> records = lastCaptureRecords;
+        if (records == null || records.isEmpty()) {
+            promise.reject("NO_CAPTURE", "Nothing captured to store");
+            return;
         }
-    }
 
-    @Override
-    public void onTimedout(byte[] faceImage) {
-        if (capturePromise != null) {
-            if (faceImage != null) {
-                // Return the best captured frame on timeout
-                WritableMap response = Arguments.createMap();
-                response.putBoolean("success", false);
-                response.putBoolean("timedOut", true);
-                response.putString("imageBase64", Base64.encodeToString(faceImage, Base64.NO_WRAP));
-                capturePromise.resolve(response);
-            } else {
-                capturePromise.reject("TIMEOUT", "Face capture timed out");
+        storeExecutor.execute(() -> {
+            try {
+                StoredCapture capture = BiometricStore.getInstance(reactContext)
+                        .insertCapture(subjectId, "FACE", records);
+                promise.resolve(BiometricStoreModule.createCaptureMap(capture));
+            } catch (Exception e) {
+                Log.e(TAG, "Error storing capture: " + e.getMessage(), e);
+                promise.reject("STORE_ERROR", "Error storing capture: " + e.getMessage());
             }
-            capturePromise = null;
-        }
+        });
     }
 
     @ReactMethod
@@ -432,18 +492,6 @@ public class Tech5FaceModule extends ReactContextBaseJavaModule implements FaceC
             return;
         }
 
-        if (ContextCompat.checkSelfPermission(activity, Manifest.permission.CAMERA)
-                == PackageManager.PERMISSION_GRANTED) {
-            promise.resolve(true);
-            return;
-        }
-
-        ActivityCompat.requestPermissions(activity,
-                new String[]{Manifest.permission.CAMERA},
-                CAMERA_PERMISSION_REQUEST_CODE);
-
-        // Note: The actual result will come through onRequestPermissionsResult
-        // For simplicity, we resolve immediately - the actual capture will check again
-        promise.resolve(false);
+        CameraPermission.request(activity, CAMERA_PERMISSION_REQUEST_CODE, promise::resolve);
     }
 }
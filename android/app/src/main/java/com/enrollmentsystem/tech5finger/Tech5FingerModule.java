@@ -9,7 +9,6 @@ import android.util.Base64;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
-import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import com.facebook.react.bridge.ActivityEventListener;
@@ -23,14 +22,31 @@ import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
+import com.enrollmentsystem.biometricstore.BiometricRecord;
+import com.enrollmentsystem.biometricstore.BiometricStore;
+import com.enrollmentsystem.biometricstore.BiometricStoreModule;
+import com.enrollmentsystem.biometricstore.StoredCapture;
+import com.enrollmentsystem.capture.CameraPermission;
+import com.enrollmentsystem.capture.CaptureSession;
+import com.enrollmentsystem.capture.CaptureSessionRegistry;
+import com.enrollmentsystem.nist.NistExport;
+import com.enrollmentsystem.nist.NistImage;
+import com.enrollmentsystem.nist.NistTransaction;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import ai.tech5.finger.utils.CaptureMode;
 import ai.tech5.finger.utils.CaptureSpeed;
+import ai.tech5.finger.utils.DeviceCalibration;
 import ai.tech5.finger.utils.Finger;
+import ai.tech5.finger.utils.FingerCaptureProfile;
+import ai.tech5.finger.utils.FingerPositionTable;
 import ai.tech5.finger.utils.FingerCaptureResult;
 import ai.tech5.finger.utils.ImageConfiguration;
 import ai.tech5.finger.utils.ImageType;
@@ -40,18 +56,34 @@ import ai.tech5.finger.utils.Slap;
 import ai.tech5.finger.utils.T5FingerCaptureController;
 import ai.tech5.finger.utils.T5FingerCapturedListener;
 
-public class Tech5FingerModule extends ReactContextBaseJavaModule implements T5FingerCapturedListener {
+public class Tech5FingerModule extends ReactContextBaseJavaModule {
 
     private static final String TAG = "Tech5FingerModule";
     private static final int CAMERA_PERMISSION_REQUEST_CODE = 1001;
 
     private final ReactApplicationContext reactContext;
-    private Promise capturePromise;
-    private ReadableMap captureConfig;
+    private final CaptureSessionRegistry sessions = CaptureSessionRegistry.getInstance();
+
+    private final ConcurrentHashMap<String, Boolean> profileReturnImages = new ConcurrentHashMap<>();
+
+    private final ExecutorService storeExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService calibrationExecutor = Executors.newSingleThreadExecutor();
+    private volatile FingerCaptureResult lastCaptureResult;
+    // set while startKioskMode checks the registry, so a session claimed meanwhile backs off
+    private volatile boolean kioskStarting = false;
 
     public Tech5FingerModule(ReactApplicationContext reactContext) {
         super(reactContext);
         this.reactContext = reactContext;
+
+        // the capture checkpoint is sealed with the vault key, unwrapping it needs the Keystore
+        storeExecutor.execute(() -> {
+            try {
+                T5FingerCaptureController.getInstance().setCheckpointKey(BiometricStore.getInstance(reactContext).getDataKey());
+            } catch (IOException e) {
+                Log.e(TAG, "Capture checkpoints disabled: " + e.getMessage(), e);
+            }
+        });
     }
 
     @NonNull
@@ -62,229 +94,491 @@ public class Tech5FingerModule extends ReactContextBaseJavaModule implements T5F
 
     @ReactMethod
     public void captureFingers(ReadableMap config, Promise promise) {
-        this.capturePromise = promise;
-        this.captureConfig = config;
+        FingerCaptureProfile profile;
+        try {
+            profile = parseCaptureProfile(config);
+        } catch (IllegalArgumentException e) {
+            promise.reject("INVALID_CONFIG", "Invalid capture config: " + e.getMessage());
+            return;
+        }
+
+        String sessionId = config.hasKey("sessionId") ? config.getString("sessionId") : null;
+        captureWithProfile(profile, parseReturnImages(config), sessionId, promise);
+    }
+
+    /**
+     * Validates {@code config} once and keeps it natively under {@code name}, so later captures
+     * skip config parsing entirely.
+     */
+    @ReactMethod
+    public void registerCaptureProfile(String name, ReadableMap config, Promise promise) {
+        try {
+            T5FingerCaptureController.getInstance().registerCaptureProfile(name, parseCaptureProfile(config));
+            profileReturnImages.put(name, parseReturnImages(config));
+            promise.resolve(true);
+        } catch (IllegalArgumentException e) {
+            promise.reject("INVALID_PROFILE", "Invalid capture profile: " + e.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void removeCaptureProfile(String name, Promise promise) {
+        T5FingerCaptureController.getInstance().removeCaptureProfile(name);
+        profileReturnImages.remove(name);
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void captureFingersWithProfile(String profileName, Promise promise) {
+        FingerCaptureProfile profile = T5FingerCaptureController.getInstance().getCaptureProfile(profileName);
+        if (profile == null) {
+            promise.reject("UNKNOWN_PROFILE", "No capture profile registered as " + profileName);
+            return;
+        }
+
+        captureWithProfile(profile, !Boolean.FALSE.equals(profileReturnImages.get(profileName)), null, promise);
+    }
+
+    private void captureWithProfile(FingerCaptureProfile profile, boolean returnImages, String sessionId, Promise promise) {
+        sessions.submit(sessionId, promise, session -> launchWithPermission(session, activity ->
+                T5FingerCaptureController.getInstance().captureFingers(activity, profile,
+                        new SessionListener(session, returnImages))));
+    }
+
+    private interface Launcher {
+        void launch(Activity activity) throws Exception;
+    }
+
+    /**
+     * Asks for the camera permission when needed and launches the capture once it is granted,
+     * unless the session was cancelled while the dialog was up.
+     */
+    private void launchWithPermission(CaptureSession session, Launcher launcher) {
+        // the kiosk surface holds the camera outside the registry
+        if (kioskStarting || T5FingerCaptureController.getInstance().isKioskModeActive()) {
+            sessions.reject(session, "BUSY", "Kiosk mode is running");
+            return;
+        }
 
         Activity activity = getCurrentActivity();
         if (activity == null) {
-            promise.reject("ACTIVITY_NULL", "Activity is null");
+            sessions.reject(session, "ACTIVITY_NULL", "Activity is null");
             return;
         }
 
-        // Check camera permission
-        if (ContextCompat.checkSelfPermission(activity, Manifest.permission.CAMERA)
-                != PackageManager.PERMISSION_GRANTED) {
-            ActivityCompat.requestPermissions(activity,
-                    new String[]{Manifest.permission.CAMERA},
-                    CAMERA_PERMISSION_REQUEST_CODE);
+        CameraPermission.request(activity, CAMERA_PERMISSION_REQUEST_CODE, granted -> {
+            if (!granted) {
+                sessions.reject(session, "CAMERA_PERMISSION", "Camera permission required");
+                return;
+            }
+            if (!sessions.markRunning(session)) {
+                return;
+            }
+
+            try {
+                launcher.launch(activity);
+            } catch (Exception e) {
+                Log.e(TAG, "Error starting finger capture: " + e.getMessage(), e);
+                sessions.reject(session, "CAPTURE_ERROR", "Error starting finger capture: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Rejects a pending, queued or running capture session right away.
+     */
+    @ReactMethod
+    public void cancelCapture(String sessionId, Promise promise) {
+        promise.resolve(sessions.cancel(sessionId));
+    }
+
+    @ReactMethod
+    public void getCaptureSessions(Promise promise) {
+        promise.resolve(sessions.describeSessions());
+    }
+
+    /**
+     * @param policy {@code "queue"} starts overlapping capture requests one after another,
+     *               {@code "reject"} fails them with {@code BUSY}
+     */
+    @ReactMethod
+    public void setOverlapPolicy(String policy, Promise promise) {
+        sessions.setQueueOverlapping("queue".equals(policy));
+        promise.resolve(true);
+    }
+
+    /**
+     * Benchmarks this device and stores the capture speed, analysis size and pool size picked
+     * from it; later captures use them as limits, and {@code captureSpeed: "auto"} picks the speed.
+     */
+    @ReactMethod
+    public void calibrateDevice(String license, Promise promise) {
+        calibrationExecutor.execute(() -> {
+            // the benchmark saturates the cores a running capture needs and would measure its load
+            if (sessions.getActive() != null || T5FingerCaptureController.getInstance().isKioskModeActive()) {
+                promise.reject("BUSY", "Can't calibrate while a capture is in progress");
+                return;
+            }
+
+            try {
+                DeviceCalibration.DeviceProfile profile = DeviceCalibration.calibrate(reactContext, license);
+                promise.resolve(createDeviceProfileMap(profile));
+            } catch (Exception e) {
+                Log.e(TAG, "Error calibrating device: " + e.getMessage(), e);
+                promise.reject("CALIBRATION_ERROR", "Error calibrating device: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Resolves with the stored calibration of this device, or null when it has none yet.
+     */
+    @ReactMethod
+    public void getDeviceProfile(Promise promise) {
+        calibrationExecutor.execute(() -> {
+            DeviceCalibration.DeviceProfile profile = DeviceCalibration.load(reactContext);
+            promise.resolve(profile != null ? createDeviceProfileMap(profile) : null);
+        });
+    }
+
+    private static WritableMap createDeviceProfileMap(DeviceCalibration.DeviceProfile profile) {
+        WritableArray throughput = Arguments.createArray();
+        for (int i = 0; i < profile.threadCounts.length; i++) {
+            WritableMap entry = Arguments.createMap();
+            entry.putInt("threads", profile.threadCounts[i]);
+            entry.putDouble("fingersPerSecond", profile.fingersPerSecond[i]);
+            throughput.pushMap(entry);
+        }
+
+        WritableMap profileMap = Arguments.createMap();
+        profileMap.putString("captureSpeed", formatCaptureSpeed(profile.captureSpeed));
+        profileMap.putInt("analysisWidth", profile.analysisWidth);
+        profileMap.putInt("analysisHeight", profile.analysisHeight);
+        profileMap.putInt("poolSize", profile.poolSize);
+        profileMap.putDouble("qualityMs", profile.qualityMs);
+        profileMap.putDouble("templateMs", profile.templateMs);
+        profileMap.putDouble("encodeMs", profile.encodeMs);
+        profileMap.putArray("throughput", throughput);
+        profileMap.putInt("cores", profile.cores);
+        profileMap.putDouble("calibratedAt", profile.calibratedAt);
+        profileMap.putString("device", profile.device);
+        profileMap.putString("sdkVersion", profile.sdkVersion);
+        return profileMap;
+    }
+
+    @ReactMethod
+    public void startCaptureSession(Promise promise) {
+        T5FingerCaptureController.getInstance().startCaptureSession();
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void endCaptureSession(Promise promise) {
+        T5FingerCaptureController.getInstance().endCaptureSession();
+        promise.resolve(true);
+    }
+
+    @ReactMethod
+    public void recaptureFingers(ReadableArray positions, Promise promise) {
+        T5FingerCaptureController controller = T5FingerCaptureController.getInstance();
+
+        if (controller.getLaunchProfile() == null || controller.getCaptureSession() == null) {
+            promise.reject("NO_SESSION", "Start a capture session and capture once before recapturing");
             return;
         }
 
-        startFingerCapture(activity);
+        ArrayList<Integer> positionCodes = new ArrayList<>();
+        for (int i = 0; i < positions.size(); i++) {
+            positionCodes.add(positions.getInt(i));
+        }
+
+        sessions.submit(null, promise, session -> launchWithPermission(session, activity ->
+                controller.recapturePositions(activity, positionCodes, new SessionListener(session, true))));
     }
 
-    private void startFingerCapture(Activity activity) {
+    /**
+     * Rejects with {@code BUSY} while a capture session is active; captures are rejected the same
+     * way until kiosk mode ends.
+     */
+    @ReactMethod
+    public void startKioskMode(ReadableMap config, Promise promise) {
+        FingerCaptureProfile profile;
         try {
-            T5FingerCaptureController controller = T5FingerCaptureController.getInstance();
-
-            // Set license
-            String license = captureConfig.hasKey("license") ? captureConfig.getString("license") : "";
-            controller.setLicense(license);
-
-            // Set liveness check
-            boolean livenessCheck = captureConfig.hasKey("livenessCheck") && captureConfig.getBoolean("livenessCheck");
-            controller.setLivenessCheck(livenessCheck);
-
-            // Set quality checks
-            boolean getQuality = captureConfig.hasKey("getQuality") && captureConfig.getBoolean("getQuality");
-            controller.setIsGetQuality(getQuality);
-
-            boolean getNfiq2Quality = captureConfig.hasKey("getNfiq2Quality") && captureConfig.getBoolean("getNfiq2Quality");
-            controller.setIsGetNist2Quality(getNfiq2Quality);
-
-            // Set detector threshold
-            float detectorThreshold = captureConfig.hasKey("detectorThreshold")
-                    ? (float) captureConfig.getDouble("detectorThreshold") : 0.9f;
-            controller.setDetectorThreshold(detectorThreshold);
-
-            // Set segmentation modes
-            LinkedHashSet<SegmentationMode> segmentationModes = new LinkedHashSet<>();
-            if (captureConfig.hasKey("segmentationModes")) {
-                ReadableArray modes = captureConfig.getArray("segmentationModes");
-                if (modes != null) {
-                    for (int i = 0; i < modes.size(); i++) {
-                        String mode = modes.getString(i);
-                        segmentationModes.add(parseSegmentationMode(mode));
-                    }
+            profile = parseCaptureProfile(config);
+        } catch (IllegalArgumentException e) {
+            promise.reject("INVALID_CONFIG", "Invalid capture config: " + e.getMessage());
+            return;
+        }
+
+        Activity activity = getCurrentActivity();
+        if (activity == null) {
+            promise.reject("ACTIVITY_NULL", "Activity is null");
+            return;
+        }
+
+        CameraPermission.request(activity, CAMERA_PERMISSION_REQUEST_CODE, granted -> {
+            if (!granted) {
+                promise.reject("CAMERA_PERMISSION", "Camera permission required");
+                return;
+            }
+
+            // claimed before the registry is read, so either this or a starting session sees the other
+            kioskStarting = true;
+            try {
+                CaptureSession active = sessions.getActive();
+                if (active != null) {
+                    promise.reject("BUSY", "Capture session " + active.getId() + " is still in progress");
+                    return;
+                }
+
+                if (T5FingerCaptureController.getInstance().startKioskMode(activity, profile, new KioskSurfaceListener())) {
+                    promise.resolve(true);
+                } else {
+                    promise.reject("CAPTURE_ERROR", "Error starting kiosk mode: capture surface could not be launched");
                 }
+            } catch (Exception e) {
+                Log.e(TAG, "Error starting kiosk mode: " + e.getMessage(), e);
+                promise.reject("CAPTURE_ERROR", "Error starting kiosk mode: " + e.getMessage());
+            } finally {
+                kioskStarting = false;
+            }
+        });
+    }
+
+    /**
+     * Captures the next subject on the running kiosk surface. Each call resolves with that
+     * subject's result, so results stream back one promise per subject.
+     */
+    @ReactMethod
+    public void nextKioskSubject(ReadableMap config, Promise promise) {
+        FingerCaptureProfile profile;
+        try {
+            profile = parseCaptureProfile(config);
+        } catch (IllegalArgumentException e) {
+            promise.reject("INVALID_CONFIG", "Invalid capture config: " + e.getMessage());
+            return;
+        }
+
+        nextKioskSubjectWithProfile(profile, parseReturnImages(config), promise);
+    }
+
+    @ReactMethod
+    public void nextKioskSubjectWithProfile(String profileName, Promise promise) {
+        FingerCaptureProfile profile = T5FingerCaptureController.getInstance().getCaptureProfile(profileName);
+        if (profile == null) {
+            promise.reject("UNKNOWN_PROFILE", "No capture profile registered as " + profileName);
+            return;
+        }
+
+        nextKioskSubjectWithProfile(profile, !Boolean.FALSE.equals(profileReturnImages.get(profileName)), promise);
+    }
+
+    private void nextKioskSubjectWithProfile(FingerCaptureProfile profile, boolean returnImages, Promise promise) {
+        T5FingerCaptureController controller = T5FingerCaptureController.getInstance();
+
+        if (!controller.isKioskModeActive()) {
+            promise.reject("NO_KIOSK", "Kiosk mode is not started");
+            return;
+        }
+
+        sessions.submit(null, promise, session -> {
+            if (!sessions.markRunning(session)) {
+                return;
             }
-            if (segmentationModes.isEmpty()) {
-                segmentationModes.add(SegmentationMode.SEGMENTATION_MODE_LEFT_SLAP);
+
+            try {
+                controller.nextKioskSubject(profile, new SessionListener(session, returnImages));
+            } catch (Exception e) {
+                Log.e(TAG, "Error starting kiosk subject: " + e.getMessage(), e);
+                sessions.reject(session, "CAPTURE_ERROR", "Error starting kiosk subject: " + e.getMessage());
             }
-            controller.setSegmentationModes(segmentationModes);
-
-            // Set capture mode
-            String captureModeStr = captureConfig.hasKey("captureMode")
-                    ? captureConfig.getString("captureMode") : "self";
-            CaptureMode captureMode = "operator".equalsIgnoreCase(captureModeStr)
-                    ? CaptureMode.CAPTURE_MODE_OPERATOR : CaptureMode.CAPTURE_MODE_SELF;
-            controller.setCaptureMode(captureMode);
-
-            // Set title
-            String title = captureConfig.hasKey("title")
-                    ? captureConfig.getString("title") : "Finger Capture";
-            controller.setTitle(title);
-
-            // Set show back button
-            boolean showBackButton = captureConfig.hasKey("showBackButton") && captureConfig.getBoolean("showBackButton");
-            controller.setShowBackButton(showBackButton);
-
-            // Set missing fingers
-            ArrayList<Integer> missingFingers = new ArrayList<>();
-            if (captureConfig.hasKey("missingFingers")) {
-                ReadableArray missing = captureConfig.getArray("missingFingers");
-                if (missing != null) {
-                    for (int i = 0; i < missing.size(); i++) {
-                        missingFingers.add(missing.getInt(i));
-                    }
+        });
+    }
+
+    @ReactMethod
+    public void endKioskMode(Promise promise) {
+        T5FingerCaptureController.getInstance().endKioskMode();
+        promise.resolve(true);
+    }
+
+    /**
+     * Parses and validates a JS capture config into an immutable profile.
+     *
+     * @throws IllegalArgumentException when the config can't be captured
+     */
+    private FingerCaptureProfile parseCaptureProfile(ReadableMap config) {
+        FingerCaptureProfile.Builder builder = new FingerCaptureProfile.Builder();
+
+        // Set license
+        String license = config.hasKey("license") ? config.getString("license") : "";
+        builder.setProjectToken(license);
+
+        // Set liveness check
+        boolean livenessCheck = config.hasKey("livenessCheck") && config.getBoolean("livenessCheck");
+        builder.setLivenessCheck(livenessCheck);
+
+        // Set quality checks
+        boolean getQuality = config.hasKey("getQuality") && config.getBoolean("getQuality");
+        builder.setGetNistQuality(getQuality);
+
+        boolean getNfiq2Quality = config.hasKey("getNfiq2Quality") && config.getBoolean("getNfiq2Quality");
+        builder.setGetNist2Quality(getNfiq2Quality);
+
+        // Set detector threshold
+        float detectorThreshold = config.hasKey("detectorThreshold")
+                ? (float) config.getDouble("detectorThreshold") : 0.9f;
+        builder.setDetectorThreshold(detectorThreshold);
+
+        // Set segmentation modes
+        LinkedHashSet<SegmentationMode> segmentationModes = new LinkedHashSet<>();
+        if (config.hasKey("segmentationModes")) {
+            ReadableArray modes = config.getArray("segmentationModes");
+            if (modes != null) {
+                for (int i = 0; i < modes.size(); i++) {
+                    String mode = modes.getString(i);
+                    segmentationModes.add(parseSegmentationMode(mode));
                 }
             }
-            controller.setMissingFingers(missingFingers);
-
-            // Set capture speed
-            String speedStr = captureConfig.hasKey("captureSpeed")
-                    ? captureConfig.getString("captureSpeed") : "normal";
-            CaptureSpeed captureSpeed = parseCaptureSpeed(speedStr);
-            controller.setCaptureSpeed(captureSpeed);
-
-            // Set prop denoise
-            boolean propDenoise = captureConfig.hasKey("propDenoise") && captureConfig.getBoolean("propDenoise");
-            controller.setPropDenoise(propDenoise);
-
-            // Set clean fingerprints
-            boolean cleanFingerPrints = captureConfig.hasKey("cleanFingerPrints") && captureConfig.getBoolean("cleanFingerPrints");
-            controller.setCleanFingerPrints(cleanFingerPrints);
-
-            // Set outside capture flag
-            boolean outsideCapture = captureConfig.hasKey("outsideCapture") && captureConfig.getBoolean("outsideCapture");
-            controller.setOutsideCaptureFlag(outsideCapture);
-
-            // Set image configuration for segmented fingers
-            ImageConfiguration segmentedConfig = new ImageConfiguration();
-            if (captureConfig.hasKey("segmentedImageConfig")) {
-                ReadableMap imgConfig = captureConfig.getMap("segmentedImageConfig");
-                if (imgConfig != null) {
-                    if (imgConfig.hasKey("imageType")) {
-                        segmentedConfig.setPrimaryImageType(parseImageType(imgConfig.getString("imageType")));
-                    }
-                    if (imgConfig.hasKey("cropImage")) {
-                        segmentedConfig.setIsCropImage(imgConfig.getBoolean("cropImage"));
-                    }
-                    if (imgConfig.hasKey("croppedImageWidth")) {
-                        segmentedConfig.setCroppedImageWidth(imgConfig.getInt("croppedImageWidth"));
-                    }
-                    if (imgConfig.hasKey("croppedImageHeight")) {
-                        segmentedConfig.setCroppedImageHeight(imgConfig.getInt("croppedImageHeight"));
-                    }
-                    if (imgConfig.hasKey("compressionRatio")) {
-                        segmentedConfig.setCompressionRatio((float) imgConfig.getDouble("compressionRatio"));
-                    }
-                    if (imgConfig.hasKey("paddingColor")) {
-                        segmentedConfig.setPaddingColor(imgConfig.getInt("paddingColor"));
-                    }
+        }
+        if (segmentationModes.isEmpty()) {
+            segmentationModes.add(SegmentationMode.SEGMENTATION_MODE_LEFT_SLAP);
+        }
+        builder.setSegmentationModes(segmentationModes);
+
+        // Set capture mode
+        String captureModeStr = config.hasKey("captureMode")
+                ? config.getString("captureMode") : "self";
+        CaptureMode captureMode = "operator".equalsIgnoreCase(captureModeStr)
+                ? CaptureMode.CAPTURE_MODE_OPERATOR : CaptureMode.CAPTURE_MODE_SELF;
+        builder.setCaptureMode(captureMode);
+
+        // Set title
+        String title = config.hasKey("title")
+                ? config.getString("title") : "Finger Capture";
+        builder.setTitle(title);
+
+        // Set show back button
+        boolean showBackButton = config.hasKey("showBackButton") && config.getBoolean("showBackButton");
+        builder.setShowBackButton(showBackButton);
+
+        // Set missing fingers
+        ArrayList<Integer> missingFingers = new ArrayList<>();
+        if (config.hasKey("missingFingers")) {
+            ReadableArray missing = config.getArray("missingFingers");
+            if (missing != null) {
+                for (int i = 0; i < missing.size(); i++) {
+                    missingFingers.add(missing.getInt(i));
                 }
-            } else {
-                segmentedConfig.setPrimaryImageType(ImageType.IMAGE_TYPE_PNG);
-                segmentedConfig.setIsCropImage(false);
             }
-            controller.setSegmentedFingerImagesConfig(segmentedConfig);
-
-            // Set image configuration for slap images
-            ImageConfiguration slapConfig = new ImageConfiguration();
-            if (captureConfig.hasKey("slapImageConfig")) {
-                ReadableMap imgConfig = captureConfig.getMap("slapImageConfig");
-                if (imgConfig != null) {
-                    if (imgConfig.hasKey("imageType")) {
-                        slapConfig.setPrimaryImageType(parseImageType(imgConfig.getString("imageType")));
-                    }
-                    if (imgConfig.hasKey("cropImage")) {
-                        slapConfig.setIsCropImage(imgConfig.getBoolean("cropImage"));
-                    }
+        }
+        builder.setMissingFingers(missingFingers);
+
+        // Set capture speed
+        String speedStr = config.hasKey("captureSpeed")
+                ? config.getString("captureSpeed") : "normal";
+        CaptureSpeed captureSpeed = parseCaptureSpeed(speedStr);
+        builder.setCaptureSpeed(captureSpeed);
+
+        // Set prop denoise
+        boolean propDenoise = config.hasKey("propDenoise") && config.getBoolean("propDenoise");
+        builder.setPropDenoise(propDenoise);
+
+        // Set clean fingerprints
+        boolean cleanFingerPrints = config.hasKey("cleanFingerPrints") && config.getBoolean("cleanFingerPrints");
+        builder.setCleanFingerPrints(cleanFingerPrints);
+
+        // Set outside capture flag
+        boolean outsideCapture = config.hasKey("outsideCapture") && config.getBoolean("outsideCapture");
+        builder.setOutsideCapture(outsideCapture);
+
+        // Set subject id, a capture without one can't be resumed after process death
+        String subjectId = config.hasKey("subjectId") ? config.getString("subjectId")
+                : config.hasKey("sessionId") ? config.getString("sessionId") : null;
+        builder.setSubjectId(subjectId);
+
+        // Set image configuration for segmented fingers
+        ImageConfiguration segmentedConfig = new ImageConfiguration();
+        if (config.hasKey("segmentedImageConfig")) {
+            ReadableMap imgConfig = config.getMap("segmentedImageConfig");
+            if (imgConfig != null) {
+                if (imgConfig.hasKey("imageType")) {
+                    segmentedConfig.setPrimaryImageType(parseImageType(imgConfig.getString("imageType")));
+                }
+                if (imgConfig.hasKey("cropImage")) {
+                    segmentedConfig.setIsCropImage(imgConfig.getBoolean("cropImage"));
+                }
+                if (imgConfig.hasKey("croppedImageWidth")) {
+                    segmentedConfig.setCroppedImageWidth(imgConfig.getInt("croppedImageWidth"));
+                }
+                if (imgConfig.hasKey("croppedImageHeight")) {
+                    segmentedConfig.setCroppedImageHeight(imgConfig.getInt("croppedImageHeight"));
+                }
+                if (imgConfig.hasKey("compressionRatio")) {
+                    segmentedConfig.setCompressionRatio((float) imgConfig.getDouble("compressionRatio"));
+                }
+                if (imgConfig.hasKey("paddingColor")) {
+                    segmentedConfig.setPaddingColor(imgConfig.getInt("paddingColor"));
+                }
+                if (imgConfig.hasKey("targetSizeInBytes")) {
+                    segmentedConfig.setTargetSizeInBytes(imgConfig.getInt("targetSizeInBytes"));
                 }
-            } else {
-                slapConfig.setPrimaryImageType(ImageType.IMAGE_TYPE_BMP);
-                slapConfig.setIsCropImage(false);
             }
-            controller.setSlapImagesConfig(slapConfig);
+        } else {
+            segmentedConfig.setPrimaryImageType(ImageType.IMAGE_TYPE_PNG);
+            segmentedConfig.setIsCropImage(false);
+        }
+        builder.setSegmentedFingerImageConfiguration(segmentedConfig);
+
+        // Set image configuration for slap images
+        ImageConfiguration slapConfig = new ImageConfiguration();
+        if (config.hasKey("slapImageConfig")) {
+            ReadableMap imgConfig = config.getMap("slapImageConfig");
+            if (imgConfig != null) {
+                if (imgConfig.hasKey("imageType")) {
+                    slapConfig.setPrimaryImageType(parseImageType(imgConfig.getString("imageType")));
+                }
+                if (imgConfig.hasKey("cropImage")) {
+                    slapConfig.setIsCropImage(imgConfig.getBoolean("cropImage"));
+                }
+            }
+        } else {
+            slapConfig.setPrimaryImageType(ImageType.IMAGE_TYPE_BMP);
+            slapConfig.setIsCropImage(false);
+        }
+        builder.setSlapImageConfiguration(slapConfig);
 
-            // Set timeout
-            int timeout = captureConfig.hasKey("timeoutInSecs")
-                    ? captureConfig.getInt("timeoutInSecs") : 60;
-            controller.setTimeoutInSecs(timeout);
+        // Set timeout
+        int timeout = config.hasKey("timeoutInSecs")
+                ? config.getInt("timeoutInSecs") : 60;
+        builder.setTimeoutInSecs(timeout);
 
-            // Set show ellipses
-            boolean showEllipses = !captureConfig.hasKey("showEllipses") || captureConfig.getBoolean("showEllipses");
-            controller.showElipses(showEllipses);
+        // Set show ellipses
+        boolean showEllipses = !config.hasKey("showEllipses") || config.getBoolean("showEllipses");
+        builder.setShowBoundingBoxes(showEllipses);
 
-            // Start capture
-            controller.captureFingers(activity, this);
+        return builder.build();
+    }
 
-        } catch (Exception e) {
-            Log.e(TAG, "Error starting finger capture: " + e.getMessage(), e);
-            if (capturePromise != null) {
-                capturePromise.reject("CAPTURE_ERROR", "Error starting finger capture: " + e.getMessage());
-                capturePromise = null;
-            }
-        }
+    /**
+     * With {@code returnImages: false} results carry metadata and templates only, the images stay
+     * native until they are written with {@link #storeLastCapture}.
+     */
+    private boolean parseReturnImages(ReadableMap config) {
+        return !config.hasKey("returnImages") || config.getBoolean("returnImages");
     }
 
     private SegmentationMode parseSegmentationMode(String mode) {
-        if (mode == null) return SegmentationMode.SEGMENTATION_MODE_LEFT_SLAP;
-
-        switch (mode.toUpperCase()) {
-            case "LEFT_SLAP":
-                return SegmentationMode.SEGMENTATION_MODE_LEFT_SLAP;
-            case "RIGHT_SLAP":
-                return SegmentationMode.SEGMENTATION_MODE_RIGHT_SLAP;
-            case "LEFT_THUMB":
-                return SegmentationMode.SEGMENTATION_MODE_LEFT_THUMB;
-            case "RIGHT_THUMB":
-                return SegmentationMode.SEGMENTATION_MODE_RIGHT_THUMB;
-            case "LEFT_AND_RIGHT_THUMBS":
-                return SegmentationMode.SEGMENTATION_MODE_LEFT_AND_RIGHT_THUMBS;
-            case "LEFT_INDEX":
-                return SegmentationMode.SEGMENTATION_MODE_LEFT_INDEX;
-            case "LEFT_MIDDLE":
-                return SegmentationMode.SEGMENTATION_MODE_LEFT_MIDDLE;
-            case "LEFT_RING":
-                return SegmentationMode.SEGMENTATION_MODE_LEFT_RING;
-            case "LEFT_LITTLE":
-                return SegmentationMode.SEGMENTATION_MODE_LEFT_LITTLE;
-            case "RIGHT_INDEX":
-                return SegmentationMode.SEGMENTATION_MODE_RIGHT_INDEX;
-            case "RIGHT_MIDDLE":
-                return SegmentationMode.SEGMENTATION_MODE_RIGHT_MIDDLE;
-            case "RIGHT_RING":
-                return SegmentationMode.SEGMENTATION_MODE_RIGHT_RING;
-            case "RIGHT_LITTLE":
-                return SegmentationMode.SEGMENTATION_MODE_RIGHT_LITTLE;
-            case "RIGHT_INDEX_MIDDLE":
-                return SegmentationMode.SEGMENTATION_MODE_RIGHT_INDEX_MIDDLE;
-            case "LEFT_INDEX_MIDDLE":
-                return SegmentationMode.SEGMENTATION_MODE_LEFT_INDEX_MIDDLE;
-            case "RIGHT_RING_LITTLE":
-                return SegmentationMode.SEGMENTATION_MODE_RIGHT_RING_LITTLE;
-            case "LEFT_RING_LITTLE":
-                return SegmentationMode.SEGMENTATION_MODE_LEFT_RING_LITTLE;
-            default:
-                return SegmentationMode.SEGMENTATION_MODE_LEFT_SLAP;
-        }
+        FingerPositionTable.Position position = FingerPositionTable.parse(mode);
+        return position != null ? position.segmentationMode : SegmentationMode.SEGMENTATION_MODE_LEFT_SLAP;
     }
 
     private CaptureSpeed parseCaptureSpeed(String speed) {
         if (speed == null) return CaptureSpeed.CAPTURE_SPEED_NORMAL;
 
         switch (speed.toLowerCase()) {
+            case "auto":
+                DeviceCalibration.DeviceProfile profile = DeviceCalibration.load(reactContext);
+                return profile != null ? profile.captureSpeed : CaptureSpeed.CAPTURE_SPEED_NORMAL;
             case "low":
                 return CaptureSpeed.CAPTURE_SPEED_LOW;
             case "high":
@@ -295,6 +589,17 @@ public class Tech5FingerModule extends ReactContextBaseJavaModule implements T5F
         }
     }
 
+    private static String formatCaptureSpeed(CaptureSpeed speed) {
+        switch (speed) {
+            case CAPTURE_SPEED_LOW:
+                return "low";
+            case CAPTURE_SPEED_HIGH:
+                return "high";
+            default:
+                return "normal";
+        }
+    }
+
     private ImageType parseImageType(String type) {
         if (type == null) return ImageType.IMAGE_TYPE_PNG;
 
@@ -322,96 +627,172 @@ public class Tech5FingerModule extends ReactContextBaseJavaModule implements T5F
         }
     }
 
-    @Override
-    public void onSuccess(FingerCaptureResult result) {
-        if (capturePromise == null) return;
-
-        try {
-            WritableMap response = Arguments.createMap();
-            response.putBoolean("success", true);
-
-            // Add fingers data
-            if (result.fingers != null && !result.fingers.isEmpty()) {
-                WritableArray fingersArray = Arguments.createArray();
-                for (Finger finger : result.fingers) {
-                    WritableMap fingerMap = Arguments.createMap();
-                    fingerMap.putInt("position", finger.pos);
-                    fingerMap.putInt("nistQuality", finger.nistQuality);
-                    fingerMap.putInt("nist2Quality", finger.nist2Quality);
-                    fingerMap.putInt("quality", finger.quality);
-                    fingerMap.putInt("minutiaesNumber", finger.minutiaesNumber);
-                    fingerMap.putString("primaryImageType", imageTypeToString(finger.primaryImageType));
-
-                    if (finger.primaryImage != null) {
-                        fingerMap.putString("primaryImageBase64", Base64.encodeToString(finger.primaryImage, Base64.NO_WRAP));
-                    }
-                    if (finger.displayImage != null) {
-                        fingerMap.putString("displayImageBase64", Base64.encodeToString(finger.displayImage, Base64.NO_WRAP));
-                        fingerMap.putString("displayImageType", imageTypeToString(finger.displayImageType));
-                    }
+    private WritableMap createResultMap(FingerCaptureResult result, boolean includeImages) {
+        WritableMap response = Arguments.createMap();
+
+        // Add fingers data
+        if (result.fingers != null && !result.fingers.isEmpty()) {
+            WritableArray fingersArray = Arguments.createArray();
+            for (Finger finger : result.fingers) {
+                WritableMap fingerMap = Arguments.createMap();
+                fingerMap.putInt("position", finger.pos);
+                fingerMap.putInt("nistQuality", finger.nistQuality);
+                fingerMap.putInt("nist2Quality", finger.nist2Quality);
+                fingerMap.putInt("quality", finger.quality);
+                fingerMap.putInt("minutiaesNumber", finger.minutiaesNumber);
+                fingerMap.putString("primaryImageType", imageTypeToString(finger.primaryImageType));
+                fingerMap.putInt("primaryImageSize", finger.primaryImageSize);
+                if (finger.primaryImageType == ImageType.IMAGE_TYPE_WSQ) {
+                    fingerMap.putDouble("compressionRatio", finger.compressionRatio);
+                }
 
-                    fingersArray.pushMap(fingerMap);
+                if (includeImages && finger.primaryImage != null) {
+                    fingerMap.putString("primaryImageBase64", Base64.encodeToString(finger.primaryImage, Base64.NO_WRAP));
                 }
-                response.putArray("fingers", fingersArray);
+                if (includeImages && finger.displayImage != null) {
+                    fingerMap.putString("displayImageBase64", Base64.encodeToString(finger.displayImage, Base64.NO_WRAP));
+                    fingerMap.putString("displayImageType", imageTypeToString(finger.displayImageType));
+                }
+                if (finger.incomplete) {
+                    fingerMap.putBoolean("incomplete", true);
+                }
+
+                fingersArray.pushMap(fingerMap);
             }
+            response.putArray("fingers", fingersArray);
+        }
 
-            // Add slap images
-            if (result.slapImages != null && !result.slapImages.isEmpty()) {
-                WritableArray slapsArray = Arguments.createArray();
-                for (Slap slap : result.slapImages) {
-                    WritableMap slapMap = Arguments.createMap();
-                    slapMap.putInt("position", slap.pos);
-                    slapMap.putString("imageType", imageTypeToString(slap.imageType));
-                    if (slap.image != null) {
-                        slapMap.putString("imageBase64", Base64.encodeToString(slap.image, Base64.NO_WRAP));
-                    }
-                    slapsArray.pushMap(slapMap);
+        if (result.incomplete) {
+            response.putBoolean("incomplete", true);
+        }
+        if (result.peakMemoryBytes > 0) {
+            response.putDouble("peakMemoryBytes", result.peakMemoryBytes);
+            response.putDouble("peakHeapBytes", result.peakHeapBytes);
+        }
+
+        // Templates only cross the bridge packed (position, qualities, minutiae count, template per finger)
+        if (result.templates != null) {
+            response.putString("templatesBase64", Base64.encodeToString(result.templates, Base64.NO_WRAP));
+        }
+
+        // Add slap images
+        if (result.slapImages != null && !result.slapImages.isEmpty()) {
+            WritableArray slapsArray = Arguments.createArray();
+            for (Slap slap : result.slapImages) {
+                WritableMap slapMap = Arguments.createMap();
+                slapMap.putInt("position", slap.pos);
+                slapMap.putString("imageType", imageTypeToString(slap.imageType));
+                if (includeImages && slap.image != null) {
+                    slapMap.putString("imageBase64", Base64.encodeToString(slap.image, Base64.NO_WRAP));
                 }
-                response.putArray("slapImages", slapsArray);
+                slapsArray.pushMap(slapMap);
             }
+            response.putArray("slapImages", slapsArray);
+        }
+
+        // Add liveness scores
+        if (result.livenessScores != null && !result.livenessScores.isEmpty()) {
+            WritableArray livenessArray = Arguments.createArray();
+            for (LivenessScore score : result.livenessScores) {
+                WritableMap scoreMap = Arguments.createMap();
+                scoreMap.putInt("positionCode", score.pos);
+                scoreMap.putDouble("score", score.score);
+                livenessArray.pushMap(scoreMap);
+            }
+            response.putArray("livenessScores", livenessArray);
+        }
 
-            // Add liveness scores
-            if (result.livenessScores != null && !result.livenessScores.isEmpty()) {
-                WritableArray livenessArray = Arguments.createArray();
-                for (LivenessScore score : result.livenessScores) {
-                    WritableMap scoreMap = Arguments.createMap();
-                    scoreMap.putInt("positionCode", score.pos);
-                    scoreMap.putDouble("score", score.score);
-                    livenessArray.pushMap(scoreMap);
+        return response;
+    }
+
+    /**
+     * Routes SDK callbacks to the session they were started for, so a late callback of a cancelled
+     * capture can never settle a newer one.
+     */
+    private class SessionListener implements T5FingerCapturedListener {
+
+        private final CaptureSession session;
+        private final boolean returnImages;
+
+        SessionListener(CaptureSession session, boolean returnImages) {
+            this.session = session;
+            this.returnImages = returnImages;
+        }
+
+        @Override
+        public void onSuccess(FingerCaptureResult result) {
+            retainLastCapture(result);
+
+            try {
+                WritableMap response = createResultMap(result, returnImages);
+                response.putBoolean("success", true);
+                response.putString("sessionId", session.getId());
+                sessions.resolve(session, response);
+            } catch (Exception e) {
+                Log.e(TAG, "Error processing capture result: " + e.getMessage(), e);
+                sessions.reject(session, "RESULT_ERROR", "Error processing capture result: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void onTimedout(FingerCaptureResult partialResult) {
+            try {
+                if (partialResult != null) {
+                    // Return the positions completed before the timeout
+                    retainLastCapture(partialResult);
+
+                    WritableMap response = createResultMap(partialResult, returnImages);
+                    response.putBoolean("success", false);
+                    response.putBoolean("timedOut", true);
+                    response.putBoolean("partial", partialResult.partial);
+                    response.putInt("inProgressPosition", partialResult.inProgressPosition);
+                    response.putString("sessionId", session.getId());
+                    sessions.resolve(session, response);
+                } else {
+                    sessions.reject(session, "TIMEOUT", "Finger capture timed out");
                 }
-                response.putArray("livenessScores", livenessArray);
+            } catch (Exception e) {
+                Log.e(TAG, "Error processing partial result: " + e.getMessage(), e);
+                sessions.reject(session, "TIMEOUT", "Finger capture timed out");
             }
+        }
 
-            capturePromise.resolve(response);
-        } catch (Exception e) {
-            Log.e(TAG, "Error processing capture result: " + e.getMessage(), e);
-            capturePromise.reject("RESULT_ERROR", "Error processing capture result: " + e.getMessage());
-        } finally {
-            capturePromise = null;
+        @Override
+        public void onFailure(String errorMessage) {
+            sessions.reject(session, "CAPTURE_FAILED", errorMessage);
         }
-    }
 
-    @Override
-    public void onTimedout() {
-        if (capturePromise != null) {
-            capturePromise.reject("TIMEOUT", "Finger capture timed out");
-            capturePromise = null;
+        @Override
+        public void onCancelled() {
+            sessions.reject(session, "CANCELLED", "Finger capture was cancelled by user");
         }
     }
 
-    @Override
-    public void onFailure(String errorMessage) {
-        if (capturePromise != null) {
-            capturePromise.reject("CAPTURE_FAILED", errorMessage);
-            capturePromise = null;
+    /**
+     * Callbacks of the kiosk surface while no subject is being captured. No session is waiting
+     * for them: a failed surface closes and ends kiosk mode, so the next nextKioskSubject rejects
+     * with {@code NO_KIOSK}.
+     */
+    private static class KioskSurfaceListener implements T5FingerCapturedListener {
+
+        @Override
+        public void onSuccess(FingerCaptureResult result) {
+            Log.w(TAG, "Kiosk surface reported a result without a subject");
         }
-    }
 
-    @Override
-    public void onCancelled() {
-        if (capturePromise != null) {
-            capturePromise.reject("CANCELLED", "Finger capture was cancelled by user");
-            capturePromise = null;
+        @Override
+        public void onTimedout(FingerCaptureResult partialResult) {
+            Log.w(TAG, "Kiosk surface timed out without a subject");
+        }
+
+        @Override
+        public void onFailure(String errorMessage) {
+            Log.e(TAG, "Kiosk surface failed: " + errorMessage);
+        }
+
+        @Override
+        public void onCancelled() {
+            Log.i(TAG, "Kiosk surface was closed");
         }
     }
 
@@ -453,18 +834,127 @@ public class Tech5FingerModule extends ReactContextBaseJavaModule implements T5F
             return;
         }
 
-        if (ContextCompat.checkSelfPermission(activity, Manifest.permission.CAMERA)
-                == PackageManager.PERMISSION_GRANTED) {
-            promise.resolve(true);
+        CameraPermission.request(activity, CAMERA_PERMISSION_REQUEST_CODE, promise::resolve);
+    }
+
+    /**
+     * Writes every image and template of the last capture to the native biometric store in one
+     * transaction and resolves with the stored capture and its record ids.
+     */
+    @ReactMethod
+    public void storeLastCapture(String subjectId, Promise promise) {
+        FingerCaptureResult result = lastCaptureResult;
+        if (result == null) {
+            promise.reject("NO_CAPTURE", "Nothing captured to store");
+            return;
+        }
+
+        storeExecutor.execute(() -> {
+            try {
+                StoredCapture capture = BiometricStore.getInstance(reactContext)
+                        .insertCapture(subjectId, "FINGER", createStoreRecords(result));
+                promise.resolve(BiometricStoreModule.createCaptureMap(capture));
+            } catch (Exception e) {
+                Log.e(TAG, "Error storing capture: " + e.getMessage(), e);
+                promise.reject("STORE_ERROR", "Error storing capture: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Writes the finger and slap images of the last capture straight into a NIST transaction
+     * file and resolves with its path and size.
+     */
+    @ReactMethod
+    public void exportLastCaptureNist(ReadableMap options, Promise promise) {
+        FingerCaptureResult result = lastCaptureResult;
+        if (result == null) {
+            promise.reject("NO_CAPTURE", "Nothing captured to export");
             return;
         }
+        NistTransaction transaction = NistExport.createTransaction(options);
+
+        storeExecutor.execute(() -> {
+            try {
+                ArrayList<NistImage> images = new ArrayList<>();
+                if (result.fingers != null) {
+                    for (Finger finger : result.fingers) {
+                        if (finger.primaryImage != null && finger.primaryImage.length > 0) {
+                            images.add(NistImage.of(finger));
+                        }
+                    }
+                }
+                if (result.slapImages != null) {
+                    for (Slap slap : result.slapImages) {
+                        if (slap.image != null && slap.image.length > 0) {
+                            images.add(NistImage.of(slap));
+                        }
+                    }
+                }
+
+                File file = NistExport.exportImages(reactContext, images, transaction);
+                promise.resolve(NistExport.createResultMap(file));
+            } catch (Exception e) {
+                Log.e(TAG, "Error exporting NIST transaction: " + e.getMessage(), e);
+                promise.reject("EXPORT_ERROR", "Error exporting NIST transaction: " + e.getMessage());
+            }
+        });
+    }
+
+    private ArrayList<BiometricRecord> createStoreRecords(FingerCaptureResult result) {
+        ArrayList<BiometricRecord> records = new ArrayList<>();
+
+        if (result.fingers != null) {
+            for (Finger finger : result.fingers) {
+                ArrayList<BiometricRecord> fingerRecords = new ArrayList<>();
+                if (finger.primaryImage != null) {
+                    fingerRecords.add(BiometricRecord.of(BiometricRecord.KIND_FINGER, finger.pos,
+                            imageTypeToString(finger.primaryImageType), finger.primaryImage, finger.primaryImageSha256));
+                }
+                if (finger.displayImage != null) {
+                    fingerRecords.add(BiometricRecord.of(BiometricRecord.KIND_FINGER_DISPLAY, finger.pos,
+                            imageTypeToString(finger.displayImageType), finger.displayImage, finger.displayImageSha256));
+                }
+                if (finger.template != null && finger.template.length > 0) {
+                    fingerRecords.add(BiometricRecord.of(BiometricRecord.KIND_FINGER_TEMPLATE, finger.pos,
+                            null, finger.template));
+                }
+
+                for (BiometricRecord record : fingerRecords) {
+                    record.quality = finger.quality;
+                    record.nistQuality = finger.nistQuality;
+                    record.nist2Quality = finger.nist2Quality;
+                }
+                records.addAll(fingerRecords);
+            }
+        }
 
-        ActivityCompat.requestPermissions(activity,
-                new String[]{Manifest.permission.CAMERA},
-                CAMERA_PERMISSION_REQUEST_CODE);
+        if (result.slapImages != null) {
+            for (Slap slap : result.slapImages) {
+                if (slap.image != null) {
+                    records.add(BiometricRecord.of(BiometricRecord.KIND_SLAP, slap.pos,
+                            imageTypeToString(slap.imageType), slap.image, slap.imageSha256));
+                }
+            }
+        }
+
+        if (result.templates != null) {
+            records.add(BiometricRecord.of(BiometricRecord.KIND_TEMPLATE_CONTAINER, 0, null, result.templates));
+        }
+
+        return records;
+    }
 
-        // Note: The actual result will come through onRequestPermissionsResult
-        // For simplicity, we resolve immediately - the actual capture will check again
-        promise.resolve(false);
+    /**
+     * Keeps what storeLastCapture and exportLastCaptureNist read from a result.
+     * The raw segmented images and liveness scores are left behind, so they are collected once
+     * the result has been marshalled.
+     */
+    private void retainLastCapture(FingerCaptureResult result) {
+        FingerCaptureResult retained = new FingerCaptureResult();
+        retained.fingers = result.fingers;
+        retained.slapImages = result.slapImages;
+        retained.templates = result.templates;
+        lastCaptureResult = retained;
     }
 }
@@ -0,0 +1,19 @@
+package com.enrollmentsystem.upload;
+
+public class UploadJob {
+
+    public static final String STATE_QUEUED = "QUEUED";
+    public static final String STATE_DONE = "DONE";
+    public static final String STATE_FAILED = "FAILED";
+
+    public long id;
+    // idempotency key sent to the server, stable across retries and process restarts
+    public String jobKey;
+    public String subjectId;
+    public long[] captureIds;
+    public String state = STATE_QUEUED;
+    public int attempts = 0;
+    public long nextAttemptAt = 0;
+    public String lastError;
+    public long createdAt;
+}
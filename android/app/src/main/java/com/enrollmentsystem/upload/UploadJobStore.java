@@ -0,0 +1,157 @@
+package com.enrollmentsystem.upload;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Persisted upload jobs, so queued enrollments survive process death. Transfer progress is not
+ * kept here, the server is asked for it when a job is resumed.
+ */
+class UploadJobStore extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "upload_queue.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String JOB_COLUMNS =
+            "id, job_key, subject_id, capture_ids, state, attempts, next_attempt_at, last_error, created_at";
+
+    UploadJobStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE upload_job ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "job_key TEXT NOT NULL UNIQUE, "
+                + "subject_id TEXT NOT NULL, "
+                + "capture_ids TEXT NOT NULL, "
+                + "state TEXT NOT NULL, "
+                + "attempts INTEGER NOT NULL, "
+                + "next_attempt_at INTEGER NOT NULL, "
+                + "last_error TEXT, "
+                + "created_at INTEGER NOT NULL)");
+
+        db.execSQL("CREATE INDEX upload_job_due ON upload_job(state, next_attempt_at)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    }
+
+    UploadJob insert(String subjectId, long[] captureIds) {
+        UploadJob job = new UploadJob();
+        job.jobKey = UUID.randomUUID().toString();
+        job.subjectId = subjectId;
+        job.captureIds = captureIds;
+        job.createdAt = System.currentTimeMillis();
+
+        ContentValues values = new ContentValues();
+        values.put("job_key", job.jobKey);
+        values.put("subject_id", subjectId);
+        values.put("capture_ids", joinIds(captureIds));
+        values.put("state", job.state);
+        values.put("attempts", job.attempts);
+        values.put("next_attempt_at", job.nextAttemptAt);
+        values.put("created_at", job.createdAt);
+        job.id = getWritableDatabase().insertOrThrow("upload_job", null, values);
+        return job;
+    }
+
+    void update(UploadJob job) {
+        ContentValues values = new ContentValues();
+        values.put("state", job.state);
+        values.put("attempts", job.attempts);
+        values.put("next_attempt_at", job.nextAttemptAt);
+        values.put("last_error", job.lastError);
+        getWritableDatabase().update("upload_job", values, "id = ?", new String[]{String.valueOf(job.id)});
+    }
+
+    /**
+     * Queued jobs due at {@code now}, oldest first.
+     */
+    List<UploadJob> getDueJobs(long now, int limit) {
+        return query("state = ? AND next_attempt_at <= ?",
+                new String[]{UploadJob.STATE_QUEUED, String.valueOf(now)}, "id", limit);
+    }
+
+    /**
+     * Earliest retry time of a queued job, or -1 when nothing is queued.
+     */
+    long getNextAttemptAt() {
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT MIN(next_attempt_at) FROM upload_job WHERE state = ?", new String[]{UploadJob.STATE_QUEUED})) {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+        }
+    }
+
+    List<UploadJob> getJobs(int limit) {
+        return query(null, null, "id DESC", limit);
+    }
+
+    /**
+     * Puts failed jobs back in the queue and makes every queued job due now.
+     */
+    int retryAll() {
+        ContentValues values = new ContentValues();
+        values.put("state", UploadJob.STATE_QUEUED);
+        values.put("next_attempt_at", 0);
+        return getWritableDatabase().update("upload_job", values, "state != ?", new String[]{UploadJob.STATE_DONE});
+    }
+
+    int deleteDone() {
+        return getWritableDatabase().delete("upload_job", "state = ?", new String[]{UploadJob.STATE_DONE});
+    }
+
+    private List<UploadJob> query(String selection, String[] args, String orderBy, int limit) {
+        ArrayList<UploadJob> jobs = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query("upload_job", JOB_COLUMNS.split(", "),
+                selection, args, null, null, orderBy, String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                UploadJob job = new UploadJob();
+                job.id = cursor.getLong(0);
+                job.jobKey = cursor.getString(1);
+                job.subjectId = cursor.getString(2);
+                job.captureIds = splitIds(cursor.getString(3));
+                job.state = cursor.getString(4);
+                job.attempts = cursor.getInt(5);
+                job.nextAttemptAt = cursor.getLong(6);
+                job.lastError = cursor.isNull(7) ? null : cursor.getString(7);
+                job.createdAt = cursor.getLong(8);
+                jobs.add(job);
+            }
+        }
+        return jobs;
+    }
+
+    private static String joinIds(long[] ids) {
+        StringBuilder joined = new StringBuilder();
+        for (long id : ids) {
+            if (joined.length() > 0) {
+                joined.append(',');
+            }
+            joined.append(id);
+        }
+        return joined.toString();
+    }
+
+    private static long[] splitIds(String joined) {
+        if (joined.isEmpty()) {
+            return new long[0];
+        }
+
+        String[] parts = joined.split(",");
+        long[] ids = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            ids[i] = Long.parseLong(parts[i]);
+        }
+        return ids;
+    }
+}
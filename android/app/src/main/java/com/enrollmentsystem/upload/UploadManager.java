@@ -0,0 +1,386 @@
+package com.enrollmentsystem.upload;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.util.Base64;
+import android.util.Log;
+
+import com.enrollmentsystem.biometricstore.BiometricRecord;
+import com.enrollmentsystem.biometricstore.BiometricStore;
+import com.enrollmentsystem.biometricstore.StoredCapture;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Uploads stored captures in the background. Jobs are persisted when queued and processed on a
+ * single thread in batches of several enrollments per request; failed batches are retried with
+ * exponential backoff and resume from the bytes the server already has. The queue is picked up
+ * again on process start and whenever the network comes back.
+ */
+public class UploadManager {
+
+    private static final String TAG = "UploadManager";
+    private static final String PREFERENCES_NAME = "upload_queue";
+    private static final String KEY_ENDPOINT = "endpoint";
+    // sealed with the vault data key, the token must not sit in the preferences file in plaintext
+    private static final String KEY_AUTH_TOKEN = "sealed_auth_token";
+    private static final int IV_SIZE = 12;
+    private static final int TAG_SIZE = 16;
+
+    private static final int MAX_BATCH_JOBS = 4;
+    private static final long MAX_BATCH_BYTES = 8L * 1024 * 1024;
+    private static final long MIN_BACKOFF_MS = 5000;
+    private static final long MAX_BACKOFF_MS = 15 * 60 * 1000L;
+
+    private static UploadManager instance;
+
+    private final Context context;
+    private final UploadJobStore jobStore;
+    private final BiometricStore store;
+    private final SharedPreferences preferences;
+    private final ScheduledExecutorService executor;
+    private final Random random = new Random();
+    private ScheduledFuture<?> scheduledRun;
+    // opened from the preferences on the first run after a process start
+    private volatile String authToken;
+
+    public static synchronized UploadManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new UploadManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private UploadManager(Context context) {
+        this(context, new UploadJobStore(context), BiometricStore.getInstance(context),
+                Executors.newSingleThreadScheduledExecutor());
+
+        ConnectivityManager connectivityManager = context.getSystemService(ConnectivityManager.class);
+        if (connectivityManager != null) {
+            connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    schedule(0);
+                }
+            });
+        }
+
+        schedule(0);
+    }
+
+    /**
+     * Nothing is scheduled until a job is queued or the manager is configured.
+     */
+    UploadManager(Context context, UploadJobStore jobStore, BiometricStore store, ScheduledExecutorService executor) {
+        this.context = context;
+        this.jobStore = jobStore;
+        this.store = store;
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        this.executor = executor;
+    }
+
+    public void configure(String endpoint, String authToken) {
+        this.authToken = authToken;
+
+        SharedPreferences.Editor editor = preferences.edit().putString(KEY_ENDPOINT, endpoint);
+        editor.remove(KEY_AUTH_TOKEN);
+        if (authToken != null && !authToken.isEmpty()) {
+            try {
+                editor.putString(KEY_AUTH_TOKEN, sealToken(authToken));
+            } catch (IOException | GeneralSecurityException e) {
+                // only kept in memory, uploads after a process restart wait for configure()
+                Log.e(TAG, "Can't store upload token: " + e.getMessage(), e);
+            }
+        }
+        editor.apply();
+        schedule(0);
+    }
+
+    public UploadJob enqueue(String subjectId, long[] captureIds) {
+        UploadJob job = jobStore.insert(subjectId, captureIds);
+        schedule(0);
+        return job;
+    }
+
+    public List<UploadJob> getJobs(int limit) {
+        return jobStore.getJobs(limit);
+    }
+
+    public int retryAll() {
+        int count = jobStore.retryAll();
+        schedule(0);
+        return count;
+    }
+
+    public int clearCompleted() {
+        return jobStore.deleteDone();
+    }
+
+    private String getAuthToken() throws IOException, GeneralSecurityException {
+        String token = authToken;
+        if (token == null) {
+            String sealed = preferences.getString(KEY_AUTH_TOKEN, null);
+            if (sealed != null) {
+                token = openToken(sealed);
+                authToken = token;
+            }
+        }
+        return token;
+    }
+
+    private String sealToken(String token) throws IOException, GeneralSecurityException {
+        byte[] iv = new byte[IV_SIZE];
+        new SecureRandom().nextBytes(iv);
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, store.getDataKey(), new GCMParameterSpec(TAG_SIZE * 8, iv));
+        byte[] ciphertext = cipher.doFinal(token.getBytes(StandardCharsets.UTF_8));
+
+        byte[] sealed = new byte[IV_SIZE + ciphertext.length];
+        System.arraycopy(iv, 0, sealed, 0, IV_SIZE);
+        System.arraycopy(ciphertext, 0, sealed, IV_SIZE, ciphertext.length);
+        return Base64.encodeToString(sealed, Base64.NO_WRAP);
+    }
+
+    private String openToken(String sealedToken) throws IOException, GeneralSecurityException {
+        byte[] sealed = Base64.decode(sealedToken, Base64.NO_WRAP);
+        if (sealed.length < IV_SIZE + TAG_SIZE) {
+            throw new GeneralSecurityException("Truncated upload token");
+        }
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, store.getDataKey(), new GCMParameterSpec(TAG_SIZE * 8, sealed, 0, IV_SIZE));
+        return new String(cipher.doFinal(sealed, IV_SIZE, sealed.length - IV_SIZE), StandardCharsets.UTF_8);
+    }
+
+    private synchronized void schedule(long delayMs) {
+        if (scheduledRun != null && !scheduledRun.isDone()) {
+            if (scheduledRun.getDelay(TimeUnit.MILLISECONDS) <= delayMs) {
+                return;
+            }
+            scheduledRun.cancel(false);
+        }
+        scheduledRun = executor.schedule(this::processQueue, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    void processQueue() {
+        synchronized (this) {
+            // this run is under way, a job queued from here on needs a run of its own
+            scheduledRun = null;
+        }
+
+        String endpoint = preferences.getString(KEY_ENDPOINT, null);
+        if (endpoint == null || endpoint.isEmpty()) {
+            // picked up again by configure()
+            return;
+        }
+
+        ConnectivityManager connectivityManager = context.getSystemService(ConnectivityManager.class);
+        if (connectivityManager != null && connectivityManager.getActiveNetwork() == null) {
+            // picked up again by the network callback
+            return;
+        }
+
+        String authToken;
+        try {
+            authToken = getAuthToken();
+        } catch (IOException | GeneralSecurityException e) {
+            // picked up again by configure()
+            Log.e(TAG, "Can't open upload token: " + e.getMessage(), e);
+            return;
+        }
+
+        UploadTransport transport = new UploadTransport(endpoint, authToken);
+
+        try {
+            while (true) {
+                List<UploadTransport.BatchItem> batch = createBatch(transport);
+                if (batch.isEmpty()) {
+                    break;
+                }
+
+                if (!sendBatch(transport, batch)) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Upload queue stopped: " + e.getMessage(), e);
+        }
+
+        long nextAttemptAt = jobStore.getNextAttemptAt();
+        if (nextAttemptAt >= 0) {
+            schedule(Math.max(0, nextAttemptAt - System.currentTimeMillis()));
+        }
+    }
+
+    private List<UploadTransport.BatchItem> createBatch(UploadTransport transport) {
+        ArrayList<UploadTransport.BatchItem> batch = new ArrayList<>();
+        long batchBytes = 0;
+
+        for (UploadJob job : jobStore.getDueJobs(System.currentTimeMillis(), MAX_BATCH_JOBS)) {
+            UploadTransport.BatchItem item = new UploadTransport.BatchItem();
+            item.job = job;
+
+            long deletedCaptureId = addRecords(item);
+            if (deletedCaptureId >= 0) {
+                // uploading the rest would pass off a partial enrollment as complete
+                fail(job, "Stored capture " + deletedCaptureId + " was deleted");
+                continue;
+            }
+
+            if (job.attempts > 0) {
+                // an earlier attempt may have been cut off mid-transfer
+                try {
+                    item.receivedBytes = transport.fetchProgress(job);
+                } catch (IOException e) {
+                    retry(job, e.getMessage());
+                    continue;
+                }
+            }
+
+            long itemBytes = item.getRemainingBytes();
+            if (!batch.isEmpty() && batchBytes + itemBytes > MAX_BATCH_BYTES) {
+                break;
+            }
+
+            batch.add(item);
+            batchBytes += itemBytes;
+        }
+
+        skipKnownBlobs(transport, batch);
+        return batch;
+    }
+
+    /**
+     * @return the id of a capture of the job that no longer exists, or -1 when all were added
+     */
+    private long addRecords(UploadTransport.BatchItem item) {
+        for (long captureId : item.job.captureIds) {
+            StoredCapture capture = store.getCapture(captureId);
+            if (capture == null) {
+                return captureId;
+            }
+            item.records.addAll(capture.records);
+        }
+        return -1;
+    }
+
+    /**
+     * Marks records whose content the server already holds, e.g. from an earlier job of a recapture,
+     * as fully received so their bytes aren't sent again.
+     */
+    private void skipKnownBlobs(UploadTransport transport, List<UploadTransport.BatchItem> batch) {
+        HashSet<String> hashes = new HashSet<>();
+        for (UploadTransport.BatchItem item : batch) {
+            for (BiometricRecord record : item.records) {
+                Long received = item.receivedBytes.get(record.id);
+                if (record.sha256 != null && (received == null || received < record.size)) {
+                    hashes.add(record.sha256);
+                }
+            }
+        }
+
+        Set<String> known;
+        try {
+            known = transport.fetchKnownBlobs(hashes);
+        } catch (IOException e) {
+            // only an optimisation, the batch itself decides whether the server is reachable
+            Log.w(TAG, "Can't check known blobs: " + e.getMessage());
+            return;
+        }
+
+        for (UploadTransport.BatchItem item : batch) {
+            for (BiometricRecord record : item.records) {
+                if (record.sha256 != null && known.contains(record.sha256)) {
+                    item.receivedBytes.put(record.id, (long) record.size);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false when the server could not be reached and the queue should wait
+     */
+    private boolean sendBatch(UploadTransport transport, List<UploadTransport.BatchItem> batch) {
+        long startTime = System.currentTimeMillis();
+
+        Map<String, UploadTransport.JobResult> results;
+        try {
+            results = transport.sendBatch(batch, recordId -> {
+                BiometricRecord record = store.readRecord(recordId);
+                if (record == null) {
+                    throw new FileNotFoundException("Stored record " + recordId + " was deleted");
+                }
+                return record.data;
+            });
+        } catch (UploadTransport.HttpStatusException e) {
+            for (UploadTransport.BatchItem item : batch) {
+                if (e.isRetryable()) {
+                    retry(item.job, e.getMessage());
+                } else {
+                    fail(item.job, e.getMessage());
+                }
+            }
+            // the server is struggling or throttling, rejected jobs don't hold up the rest
+            return !e.isRetryable();
+        } catch (IOException e) {
+            Log.w(TAG, "Upload batch interrupted: " + e.getMessage());
+            for (UploadTransport.BatchItem item : batch) {
+                retry(item.job, e.getMessage());
+            }
+            return false;
+        }
+
+        for (UploadTransport.BatchItem item : batch) {
+            UploadTransport.JobResult result = results.get(item.job.jobKey);
+            if (result != null && result.complete) {
+                item.job.state = UploadJob.STATE_DONE;
+                item.job.attempts++;
+                item.job.lastError = null;
+                jobStore.update(item.job);
+            } else if (result != null && result.error != null) {
+                fail(item.job, result.error);
+            } else {
+                retry(item.job, "Server did not confirm the upload");
+            }
+        }
+
+        Log.d(TAG, "Uploaded batch of " + batch.size() + " jobs in " + (System.currentTimeMillis() - startTime) + " ms");
+        return true;
+    }
+
+    private void retry(UploadJob job, String error) {
+        job.attempts++;
+        long backoff = Math.min(MAX_BACKOFF_MS, MIN_BACKOFF_MS << Math.min(job.attempts - 1, 20));
+        // jitter keeps devices that lost the network together from retrying in lockstep
+        job.nextAttemptAt = System.currentTimeMillis() + backoff / 2 + (long) (random.nextDouble() * backoff / 2);
+        job.lastError = error;
+        jobStore.update(job);
+    }
+
+    private void fail(UploadJob job, String error) {
+        job.attempts++;
+        job.state = UploadJob.STATE_FAILED;
+        job.lastError = error;
+        jobStore.update(job);
+    }
+}
@@ -0,0 +1,134 @@
+package com.enrollmentsystem.upload;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class UploadQueueModule extends ReactContextBaseJavaModule {
+
+    private static final String TAG = "UploadQueueModule";
+    private static final int DEFAULT_JOB_LIMIT = 50;
+
+    private final ReactApplicationContext reactContext;
+    private final ExecutorService queueExecutor = Executors.newSingleThreadExecutor();
+
+    public UploadQueueModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        this.reactContext = reactContext;
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "UploadQueueModule";
+    }
+
+    @ReactMethod
+    public void configure(ReadableMap config, Promise promise) {
+        if (!config.hasKey("endpoint")) {
+            promise.reject("INVALID_CONFIG", "endpoint is required");
+            return;
+        }
+
+        String endpoint = config.getString("endpoint");
+        String authToken = config.hasKey("authToken") ? config.getString("authToken") : null;
+        UploadManager.getInstance(reactContext).configure(endpoint, authToken);
+        promise.resolve(true);
+    }
+
+    /**
+     * Queues the given stored captures of one subject for upload. Only ids cross the bridge, the
+     * images are read from the native store when the job is sent.
+     */
+    @ReactMethod
+    public void enqueueEnrollment(String subjectId, ReadableArray captureIds, Promise promise) {
+        long[] ids = new long[captureIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (long) captureIds.getDouble(i);
+        }
+
+        queueExecutor.execute(() -> {
+            try {
+                promise.resolve(createJobMap(UploadManager.getInstance(reactContext).enqueue(subjectId, ids)));
+            } catch (Exception e) {
+                Log.e(TAG, "Error queueing upload: " + e.getMessage(), e);
+                promise.reject("QUEUE_ERROR", "Error queueing upload: " + e.getMessage());
+            }
+        });
+    }
+
+    @ReactMethod
+    public void getJobs(ReadableMap options, Promise promise) {
+        int limit = options != null && options.hasKey("limit") ? options.getInt("limit") : DEFAULT_JOB_LIMIT;
+
+        queueExecutor.execute(() -> {
+            try {
+                WritableArray jobsArray = Arguments.createArray();
+                for (UploadJob job : UploadManager.getInstance(reactContext).getJobs(limit)) {
+                    jobsArray.pushMap(createJobMap(job));
+                }
+                promise.resolve(jobsArray);
+            } catch (Exception e) {
+                Log.e(TAG, "Error reading upload jobs: " + e.getMessage(), e);
+                promise.reject("QUEUE_ERROR", "Error reading upload jobs: " + e.getMessage());
+            }
+        });
+    }
+
+    @ReactMethod
+    public void retryAll(Promise promise) {
+        queueExecutor.execute(() -> {
+            try {
+                promise.resolve(UploadManager.getInstance(reactContext).retryAll());
+            } catch (Exception e) {
+                promise.reject("QUEUE_ERROR", "Error retrying uploads: " + e.getMessage());
+            }
+        });
+    }
+
+    @ReactMethod
+    public void clearCompleted(Promise promise) {
+        queueExecutor.execute(() -> {
+            try {
+                promise.resolve(UploadManager.getInstance(reactContext).clearCompleted());
+            } catch (Exception e) {
+                promise.reject("QUEUE_ERROR", "Error clearing uploads: " + e.getMessage());
+            }
+        });
+    }
+
+    private static WritableMap createJobMap(UploadJob job) {
+        WritableMap jobMap = Arguments.createMap();
+        jobMap.putDouble("jobId", job.id);
+        jobMap.putString("jobKey", job.jobKey);
+        jobMap.putString("subjectId", job.subjectId);
+
+        WritableArray captureIds = Arguments.createArray();
+        for (long captureId : job.captureIds) {
+            captureIds.pushDouble(captureId);
+        }
+        jobMap.putArray("captureIds", captureIds);
+
+        jobMap.putString("state", job.state);
+        jobMap.putInt("attempts", job.attempts);
+        jobMap.putDouble("nextAttemptAt", job.nextAttemptAt);
+        if (job.lastError != null) {
+            jobMap.putString("lastError", job.lastError);
+        }
+        jobMap.putDouble("createdAt", job.createdAt);
+        return jobMap;
+    }
+}
@@ -0,0 +1,370 @@
+package com.enrollmentsystem.upload;
+
+import com.enrollmentsystem.biometricstore.BiometricRecord;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTTP side of the upload queue. Plain {@link HttpURLConnection}, so it can be pointed at a local
+ * stand-in server. Response bodies are always read to the end so the connection goes back to the
+ * keep-alive pool and the next batch reuses it.
+ * <p>
+ * {@code GET {endpoint}/{jobKey}} returns the bytes the server already holds per record,
+ * {@code {"records": {"<recordId>": receivedBytes}}}, or 404 for an unknown job.
+ * <p>
+ * {@code POST {endpoint}/blobs} with {@code {"sha256": [...]}} answers which content hashes the
+ * server already holds, {@code {"present": [...]}}; servers without it answer 404.
+ * <p>
+ * {@code POST {endpoint}} streams one multipart/form-data batch of several jobs. Per job a
+ * {@code manifest} JSON part lists its records with their SHA-256, followed by {@code chunk} parts of at most
+ * {@link #CHUNK_SIZE} raw bytes carrying {@code X-Job-Key}, {@code X-Record-Id} and
+ * {@code X-Offset} headers, gzipped with {@code Content-Encoding: gzip} when that makes them
+ * noticeably smaller. Records whose data is not sent, because the server already holds their
+ * hash or an earlier record of the batch carried the same bytes, are resolved by hash. The response is {@code {"jobs": {"<jobKey>": {"complete": bool, "error": "..."}}}}.
+ */
+public class UploadTransport {
+
+    public interface RecordReader {
+        byte[] read(long recordId) throws IOException;
+    }
+
+    public static class BatchItem {
+        public UploadJob job;
+        public List<BiometricRecord> records = new ArrayList<>();
+        public Map<Long, Long> receivedBytes = new HashMap<>();
+
+        public long getRemainingBytes() {
+            long remaining = 0;
+            for (BiometricRecord record : records) {
+                Long received = receivedBytes.get(record.id);
+                remaining += record.size - (received != null ? received : 0);
+            }
+            return remaining;
+        }
+    }
+
+    public static class JobResult {
+        public boolean complete;
+        public String error;
+    }
+
+    public static class HttpStatusException extends IOException {
+        public final int status;
+
+        HttpStatusException(int status, String message) {
+            super("HTTP " + status + (message != null ? ": " + message : ""));
+            this.status = status;
+        }
+
+        /**
+         * Server errors, timeouts and throttling are worth retrying, other client errors are not.
+         */
+        public boolean isRetryable() {
+            return status >= 500 || status == 408 || status == 429;
+        }
+    }
+
+    static final int CHUNK_SIZE = 256 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 60000;
+    private static final int STREAMING_CHUNK_SIZE = 64 * 1024;
+    private static final float MIN_COMPRESSION_GAIN = 0.9f;
+
+    private final String endpoint;
+    private final String authToken;
+    private final ByteArrayOutputStream compressBuffer = new ByteArrayOutputStream(CHUNK_SIZE);
+
+    public UploadTransport(String endpoint, String authToken) {
+        this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        this.authToken = authToken;
+    }
+
+    /**
+     * @return the subset of {@code hashes} the server already holds, empty when it can't tell
+     */
+    public Set<String> fetchKnownBlobs(Collection<String> hashes) throws IOException {
+        HashSet<String> known = new HashSet<>();
+        if (hashes.isEmpty()) {
+            return known;
+        }
+
+        HttpURLConnection connection = openConnection(endpoint + "/blobs");
+        try {
+            JSONArray hashArray = new JSONArray();
+            for (String hash : hashes) {
+                hashArray.put(hash);
+            }
+            byte[] body = new JSONObject().put("sha256", hashArray).toString().getBytes(StandardCharsets.UTF_8);
+
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                drain(connection.getErrorStream());
+                return known;
+            }
+            if (status / 100 != 2) {
+                throw new HttpStatusException(status, readError(connection));
+            }
+
+            JSONArray present = new JSONObject(readBody(connection.getInputStream())).optJSONArray("present");
+            if (present != null) {
+                for (int i = 0; i < present.length(); i++) {
+                    known.add(present.getString(i));
+                }
+            }
+            return known;
+        } catch (JSONException e) {
+            throw new IOException("Malformed blob response", e);
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    public Map<Long, Long> fetchProgress(UploadJob job) throws IOException {
+        HttpURLConnection connection = openConnection(endpoint + "/" + job.jobKey);
+        try {
+            connection.setRequestMethod("GET");
+
+            int status = connection.getResponseCode();
+            HashMap<Long, Long> progress = new HashMap<>();
+            if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                drain(connection.getErrorStream());
+                return progress;
+            }
+            if (status / 100 != 2) {
+                throw new HttpStatusException(status, readError(connection));
+            }
+
+            JSONObject records = new JSONObject(readBody(connection.getInputStream())).optJSONObject("records");
+            if (records != null) {
+                Iterator<String> keys = records.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    progress.put(Long.parseLong(key), records.getLong(key));
+                }
+            }
+            return progress;
+        } catch (JSONException | NumberFormatException e) {
+            throw new IOException("Malformed progress response", e);
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Streams every record of {@code items} not yet held by the server in one request.
+     *
+     * @return the server's verdict per job key
+     */
+    public Map<String, JobResult> sendBatch(List<BatchItem> items, RecordReader reader) throws IOException {
+        String boundary = "----upload" + UUID.randomUUID().toString().replace("-", "");
+
+        HttpURLConnection connection = openConnection(endpoint);
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setChunkedStreamingMode(STREAMING_CHUNK_SIZE);
+            connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
+
+            try (OutputStream out = new BufferedOutputStream(connection.getOutputStream(), STREAMING_CHUNK_SIZE)) {
+                HashSet<String> sentHashes = new HashSet<>();
+                for (BatchItem item : items) {
+                    writeJob(out, boundary, item, reader, sentHashes);
+                }
+                writeAscii(out, "--" + boundary + "--\r\n");
+            }
+
+            int status = connection.getResponseCode();
+            if (status / 100 != 2) {
+                throw new HttpStatusException(status, readError(connection));
+            }
+
+            HashMap<String, JobResult> results = new HashMap<>();
+            JSONObject jobs = new JSONObject(readBody(connection.getInputStream())).optJSONObject("jobs");
+            if (jobs != null) {
+                Iterator<String> keys = jobs.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    JSONObject jobResult = jobs.getJSONObject(key);
+
+                    JobResult result = new JobResult();
+                    result.complete = jobResult.optBoolean("complete", false);
+                    result.error = jobResult.isNull("error") ? null : jobResult.optString("error", null);
+                    results.put(key, result);
+                }
+            }
+            return results;
+        } catch (JSONException e) {
+            throw new IOException("Malformed batch response", e);
+        } catch (IOException e) {
+            // a half-written request can't go back to the keep-alive pool
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    private void writeJob(OutputStream out, String boundary, BatchItem item, RecordReader reader,
+                          Set<String> sentHashes) throws IOException {
+        try {
+            JSONArray records = new JSONArray();
+            for (BiometricRecord record : item.records) {
+                JSONObject recordJson = new JSONObject();
+                recordJson.put("recordId", record.id);
+                recordJson.put("captureId", record.captureId);
+                recordJson.put("kind", record.kind);
+                recordJson.put("position", record.position);
+                recordJson.put("imageType", record.imageType != null ? record.imageType : JSONObject.NULL);
+                recordJson.put("quality", record.quality);
+                recordJson.put("nistQuality", record.nistQuality);
+                recordJson.put("nist2Quality", record.nist2Quality);
+                recordJson.put("size", record.size);
+                recordJson.put("sha256", record.sha256 != null ? record.sha256 : JSONObject.NULL);
+                records.put(recordJson);
+            }
+
+            JSONObject manifest = new JSONObject();
+            manifest.put("jobKey", item.job.jobKey);
+            manifest.put("subjectId", item.job.subjectId);
+            manifest.put("records", records);
+
+            writeAscii(out, "--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"manifest\"\r\n"
+                    + "Content-Type: application/json\r\n\r\n");
+            out.write(manifest.toString().getBytes(StandardCharsets.UTF_8));
+            writeAscii(out, "\r\n");
+        } catch (JSONException e) {
+            throw new IOException("Can't build manifest", e);
+        }
+
+        for (BiometricRecord record : item.records) {
+            Long received = item.receivedBytes.get(record.id);
+            long offset = received != null ? received : 0;
+            if (offset >= record.size || (record.sha256 != null && sentHashes.contains(record.sha256))) {
+                continue;
+            }
+
+            // one record in memory at a time, read from the encrypted store just before sending
+            byte[] data = reader.read(record.id);
+            boolean compressible = isCompressible(record.imageType);
+
+            for (int chunkOffset = (int) offset; chunkOffset < data.length; chunkOffset += CHUNK_SIZE) {
+                int length = Math.min(CHUNK_SIZE, data.length - chunkOffset);
+                writeChunk(out, boundary, item.job.jobKey, record.id, data, chunkOffset, length, compressible);
+            }
+            if (record.sha256 != null) {
+                sentHashes.add(record.sha256);
+            }
+        }
+    }
+
+    private void writeChunk(OutputStream out, String boundary, String jobKey, long recordId,
+                            byte[] data, int offset, int length, boolean compressible) throws IOException {
+        boolean compressed = false;
+        if (compressible) {
+            compressBuffer.reset();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressBuffer, STREAMING_CHUNK_SIZE)) {
+                gzip.write(data, offset, length);
+            }
+            compressed = compressBuffer.size() < length * MIN_COMPRESSION_GAIN;
+        }
+
+        writeAscii(out, "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"chunk\"; filename=\"" + recordId + "\"\r\n"
+                + "Content-Type: application/octet-stream\r\n"
+                + (compressed ? "Content-Encoding: gzip\r\n" : "")
+                + "X-Job-Key: " + jobKey + "\r\n"
+                + "X-Record-Id: " + recordId + "\r\n"
+                + "X-Offset: " + offset + "\r\n\r\n");
+
+        if (compressed) {
+            compressBuffer.writeTo(out);
+        } else {
+            out.write(data, offset, length);
+        }
+        writeAscii(out, "\r\n");
+    }
+
+    /**
+     * WSQ, PNG and JPEG are already entropy coded, gzip only pays off for raw images and templates.
+     */
+    private static boolean isCompressible(String imageType) {
+        return imageType == null || "BMP".equals(imageType) || "RAW".equals(imageType);
+    }
+
+    private HttpURLConnection openConnection(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setRequestProperty("Accept", "application/json");
+        if (authToken != null && !authToken.isEmpty()) {
+            connection.setRequestProperty("Authorization", "Bearer " + authToken);
+        }
+        return connection;
+    }
+
+    private static void writeAscii(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+
+        try (InputStream body = in) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = body.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+            }
+            return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String readError(HttpURLConnection connection) {
+        try {
+            String body = readBody(connection.getErrorStream());
+            return body.length() > 200 ? body.substring(0, 200) : body;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reading error bodies to the end lets the connection go back to the keep-alive pool.
+     */
+    private static void drain(InputStream in) throws IOException {
+        readBody(in);
+    }
+}
@@ -0,0 +1,183 @@
+package com.enrollmentsystem.biometricstore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+public class BiometricVaultTest {
+
+    // four records fill a segment, the fifth write rotates
+    private static final long MAX_SEGMENT_SIZE = 64 * 1024;
+    private static final int RECORD_SIZE = 20000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(42);
+    private File directory;
+    private SecretKey key;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("vault");
+        byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        key = new SecretKeySpec(keyBytes, "AES");
+    }
+
+    @Test
+    public void compactedVaultReopensWithOnlyTheLiveRecords() throws IOException {
+        HashMap<Long, byte[]> live = new HashMap<>();
+        long[] ids = new long[14];
+
+        BiometricVault vault = new BiometricVault(directory, key, MAX_SEGMENT_SIZE);
+        // segment 1: records 1-4, segment 2: records 5-8
+        for (int i = 1; i <= 8; i++) {
+            ids[i] = put(vault, live);
+        }
+        assertTrue(segment(1).exists());
+        assertTrue(segment(2).exists());
+
+        // segment 1 stays mostly live, the tombstone opens segment 3
+        delete(vault, live, ids[1]);
+        assertTrue(segment(3).exists());
+
+        // segment 3: records 9-12, record 13 opens segment 4
+        for (int i = 9; i <= 13; i++) {
+            ids[i] = put(vault, live);
+        }
+        assertTrue(segment(4).exists());
+
+        // segments 2 and 3 become mostly dead and are compacted into segment 4; segment 3 holds
+        // the tombstone of record 1, which has to be carried forward while segment 1 still exists
+        delete(vault, live, ids[5]);
+        delete(vault, live, ids[6]);
+        delete(vault, live, ids[7]);
+        delete(vault, live, ids[9]);
+        delete(vault, live, ids[10]);
+        delete(vault, live, ids[11]);
+        vault.awaitCompactions();
+
+        assertTrue(segment(1).exists());
+        assertFalse(segment(2).exists());
+        assertFalse(segment(3).exists());
+        assertLive(vault, live, ids);
+        vault.sync();
+        vault.close();
+
+        vault = new BiometricVault(directory, key, MAX_SEGMENT_SIZE);
+        try {
+            assertLive(vault, live, ids);
+
+            // ids are never reused, even for records compacted away
+            assertTrue(vault.put(new byte[]{1}) > ids[13]);
+        } finally {
+            vault.close();
+        }
+    }
+
+    @Test
+    public void tamperedChunkFailsAuthentication() throws IOException {
+        byte[] data = new byte[150000];
+        random.nextBytes(data);
+
+        BiometricVault vault = new BiometricVault(directory, key, MAX_SEGMENT_SIZE);
+        long id = vault.put(data);
+        vault.sync();
+        vault.close();
+
+        // a ciphertext byte of the second chunk: segment header, record header, first chunk, chunk header
+        long position = 16 + 21 + (4 + 12 + 64 * 1024 + 16) + (4 + 12) + 100;
+        try (RandomAccessFile file = new RandomAccessFile(segment(1), "rw")) {
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0x01);
+        }
+
+        vault = new BiometricVault(directory, key, MAX_SEGMENT_SIZE);
+        try {
+            vault.get(id);
+            fail("tampered record was decrypted");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("failed authentication"));
+        } finally {
+            vault.close();
+        }
+    }
+
+    @Test
+    public void otherKeyFailsAuthentication() throws IOException {
+        BiometricVault vault = new BiometricVault(directory, key, MAX_SEGMENT_SIZE);
+        long id = vault.put(new byte[]{1, 2, 3});
+        vault.sync();
+        vault.close();
+
+        byte[] otherKey = new byte[32];
+        new SecureRandom().nextBytes(otherKey);
+        vault = new BiometricVault(directory, new SecretKeySpec(otherKey, "AES"), MAX_SEGMENT_SIZE);
+        try {
+            vault.get(id);
+            fail("record was decrypted with another key");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("failed authentication"));
+        } finally {
+            vault.close();
+        }
+    }
+
+    private long put(BiometricVault vault, HashMap<Long, byte[]> live) throws IOException {
+        byte[] data = new byte[RECORD_SIZE];
+        random.nextBytes(data);
+        long id = vault.put(data);
+        live.put(id, data);
+        return id;
+    }
+
+    private static void delete(BiometricVault vault, HashMap<Long, byte[]> live, long id) throws IOException {
+        assertTrue(vault.delete(id));
+        live.remove(id);
+    }
+
+    private static void assertLive(BiometricVault vault, HashMap<Long, byte[]> live, long[] ids) throws IOException {
+        assertEquals(live.size(), vault.getRecordCount());
+
+        for (int i = 1; i < ids.length; i++) {
+            byte[] expected = live.get(ids[i]);
+            if (expected != null) {
+                assertArrayEquals("record " + i, expected, vault.get(ids[i]));
+                continue;
+            }
+
+            try {
+                vault.get(ids[i]);
+                fail("deleted record " + i + " came back");
+            } catch (FileNotFoundException e) {
+                // deleted
+            }
+        }
+    }
+
+    private File segment(int number) {
+        return new File(directory, String.format(Locale.US, "segment-%06d.vlt", number));
+    }
+}
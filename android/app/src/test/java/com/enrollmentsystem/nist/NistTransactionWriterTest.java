@@ -0,0 +1,286 @@
+package com.enrollmentsystem.nist;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class NistTransactionWriterTest {
+
+    private static final byte FS = 0x1C;
+    private static final byte GS = 0x1D;
+    private static final String RS = "\u001E";
+    private static final String US = "\u001F";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writtenTransactionParsesBackRecordByRecord() throws IOException {
+        NistTransaction transaction = new NistTransaction();
+        transaction.originatingAgency = "ORI";
+        transaction.controlNumber = "TCN1";
+        // leaves ASCII, so Type-1 has to declare UTF-8
+        transaction.type2Fields.put(18, "Zo\u00EB");
+        transaction.type2Fields.put(30, "subject");
+
+        NistImage wsq = NistImage.finger(2, "WSQ");
+        wsq.data = createWsq(40, 30);
+        NistImage bmp = NistImage.finger(7, "BMP");
+        bmp.data = createBmp(3, 2);
+        NistImage slap = NistImage.slap(13, "PNG");
+        slap.data = createPng(120, 90);
+        NistImage face = NistImage.face("JPG");
+        face.data = createJpeg(60, 80);
+        List<NistImage> images = Arrays.asList(wsq, bmp, slap, face);
+
+        byte[] file = write(transaction, images);
+        Parser parser = new Parser(file);
+
+        Map<String, byte[]> type1 = parser.readTaggedRecord(1);
+        assertEquals("0500", ascii(type1.get("1.002")));
+        assertEquals("1" + US + "5" + RS + "2" + US + "00" + RS + "4" + US + "01" + RS + "4" + US + "02"
+                + RS + "14" + US + "03" + RS + "10" + US + "04", ascii(type1.get("1.003")));
+        assertEquals("TCN1", ascii(type1.get("1.009")));
+        assertEquals("3" + US + "UTF-8", ascii(type1.get("1.015")));
+
+        Map<String, byte[]> type2 = parser.readTaggedRecord(2);
+        assertEquals("00", ascii(type2.get("2.002")));
+        assertEquals("Zo\u00EB", new String(type2.get("2.018"), StandardCharsets.UTF_8));
+        assertEquals("subject", ascii(type2.get("2.030")));
+
+        ByteBuffer type4 = parser.readType4();
+        assertEquals(1, type4.get(4));
+        assertEquals(2, type4.get(6));
+        assertEquals(40, type4.getShort(13));
+        assertEquals(30, type4.getShort(15));
+        // GCA 1: WSQ, the data is the file as is
+        assertEquals(1, type4.get(17));
+        assertArrayEquals(wsq.data, Arrays.copyOfRange(type4.array(), 18, type4.limit()));
+
+        type4 = parser.readType4();
+        assertEquals(2, type4.get(4));
+        assertEquals(7, type4.get(6));
+        assertEquals(3, type4.getShort(13));
+        assertEquals(2, type4.getShort(15));
+        // GCA 0: raw pixels, top row first
+        assertEquals(0, type4.get(17));
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6}, Arrays.copyOfRange(type4.array(), 18, type4.limit()));
+
+        Map<String, byte[]> type14 = parser.readTaggedRecord(14);
+        assertEquals("03", ascii(type14.get("14.002")));
+        assertEquals("120", ascii(type14.get("14.006")));
+        assertEquals("90", ascii(type14.get("14.007")));
+        assertEquals("PNG", ascii(type14.get("14.011")));
+        assertEquals("13", ascii(type14.get("14.013")));
+        assertArrayEquals(slap.data, type14.get("14.999"));
+
+        Map<String, byte[]> type10 = parser.readTaggedRecord(10);
+        assertEquals("04", ascii(type10.get("10.002")));
+        assertEquals("60", ascii(type10.get("10.006")));
+        assertEquals("80", ascii(type10.get("10.007")));
+        assertEquals("JPEGB", ascii(type10.get("10.011")));
+        assertArrayEquals(face.data, type10.get("10.999"));
+
+        assertEquals(file.length, parser.offset);
+    }
+
+    @Test
+    public void asciiTransactionDeclaresNoEncoding() throws IOException {
+        NistTransaction transaction = new NistTransaction();
+        transaction.type2Fields.put(30, "subject");
+
+        NistImage wsq = NistImage.finger(1, "WSQ");
+        wsq.data = createWsq(8, 8);
+
+        Parser parser = new Parser(write(transaction, Arrays.asList(wsq)));
+        Map<String, byte[]> type1 = parser.readTaggedRecord(1);
+        assertFalse(type1.containsKey("1.015"));
+        assertEquals("1" + US + "2" + RS + "2" + US + "00" + RS + "4" + US + "01", ascii(type1.get("1.003")));
+
+        parser.readTaggedRecord(2);
+        assertEquals(1, parser.readType4().get(4));
+        assertEquals(parser.data.length, parser.offset);
+    }
+
+    @Test
+    public void lengthFieldCountsItsOwnDigits() throws IOException {
+        NistTransaction transaction = new NistTransaction();
+
+        // grows the Type-2 record across the 99/100 and 999/1000 byte boundaries
+        for (int padding = 60; padding < 1000; padding++) {
+            char[] value = new char[padding];
+            Arrays.fill(value, 'x');
+            transaction.type2Fields.put(30, new String(value));
+
+            NistImage wsq = NistImage.finger(1, "WSQ");
+            wsq.data = createWsq(8, 8);
+
+            Parser parser = new Parser(write(transaction, Arrays.asList(wsq)));
+            parser.readTaggedRecord(1);
+            parser.readTaggedRecord(2);
+            parser.readType4();
+            assertEquals(parser.data.length, parser.offset);
+        }
+    }
+
+    private byte[] write(NistTransaction transaction, List<NistImage> images) throws IOException {
+        File file = folder.newFile();
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw"); FileChannel channel = out.getChannel()) {
+            ArrayList<NistImage> planned = new ArrayList<>();
+            for (NistImage image : images) {
+                NistImage plan = new NistImage();
+                plan.recordType = image.recordType;
+                planned.add(plan);
+            }
+
+            NistTransactionWriter writer = new NistTransactionWriter(channel, transaction);
+            writer.writeHeader(planned);
+            for (NistImage image : images) {
+                writer.writeImage(image);
+            }
+            writer.finish();
+        }
+        return Files.readAllBytes(file.toPath());
+    }
+
+    private static String ascii(byte[] value) {
+        return new String(value, StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] createWsq(int width, int height) {
+        // SOI, then a SOF segment: Lsof, black, white, height, width, scale and shift
+        return new byte[]{(byte) 0xFF, (byte) 0xA0, (byte) 0xFF, (byte) 0xA2, 0, 17, 0, (byte) 0xFF,
+                (byte) (height >> 8), (byte) height, (byte) (width >> 8), (byte) width, 0, 0, 0, 0, 0, 0, 0,
+                (byte) 0xFF, (byte) 0xA1};
+    }
+
+    private static byte[] createBmp(int width, int height) {
+        int stride = (width + 3) & ~3;
+        ByteBuffer bmp = ByteBuffer.allocate(54 + stride * height).order(ByteOrder.LITTLE_ENDIAN);
+        bmp.put((byte) 'B').put((byte) 'M');
+        bmp.putInt(2, bmp.capacity());
+        bmp.putInt(10, 54);
+        bmp.putInt(14, 40);
+        bmp.putInt(18, width);
+        // bottom-up rows
+        bmp.putInt(22, height);
+        bmp.putShort(26, (short) 1);
+        bmp.putShort(28, (short) 8);
+
+        // pixels numbered from the top left, the top row is the last one in the file
+        byte value = 1;
+        for (int y = 0; y < height; y++) {
+            int row = height - 1 - y;
+            for (int x = 0; x < width; x++) {
+                bmp.put(54 + row * stride + x, value++);
+            }
+        }
+        return bmp.array();
+    }
+
+    private static byte[] createPng(int width, int height) {
+        ByteBuffer png = ByteBuffer.allocate(40);
+        png.put(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+        png.putInt(13).put(new byte[]{'I', 'H', 'D', 'R'});
+        png.putInt(width).putInt(height);
+        // a field separator inside the image data must not end the record
+        png.put(24, GS).put(25, FS);
+        return png.array();
+    }
+
+    private static byte[] createJpeg(int width, int height) {
+        ByteBuffer jpeg = ByteBuffer.allocate(24);
+        jpeg.putShort((short) 0xFFD8);
+        jpeg.putShort((short) 0xFFC0).putShort((short) 11).put((byte) 8);
+        jpeg.putShort((short) height).putShort((short) width);
+        jpeg.put(GS).put(FS);
+        return jpeg.array();
+    }
+
+    /**
+     * Reads records back only by their LEN fields, so a wrong length shows as a misplaced record.
+     */
+    private static class Parser {
+
+        final byte[] data;
+        int offset = 0;
+
+        Parser(byte[] data) {
+            this.data = data;
+        }
+
+        Map<String, byte[]> readTaggedRecord(int recordType) {
+            String lengthTag = recordType + ".001:";
+            assertEquals(lengthTag, new String(data, offset, lengthTag.length(), StandardCharsets.US_ASCII));
+
+            int lengthEnd = offset + lengthTag.length();
+            while (data[lengthEnd] != GS && data[lengthEnd] != FS) {
+                lengthEnd++;
+            }
+            int length = Integer.parseInt(new String(data, offset + lengthTag.length(),
+                    lengthEnd - offset - lengthTag.length(), StandardCharsets.US_ASCII));
+            int end = offset + length;
+            assertTrue("record " + recordType + " runs past the file", end <= data.length);
+            assertEquals("record " + recordType + " must end with FS", FS, data[end - 1]);
+
+            LinkedHashMap<String, byte[]> fields = new LinkedHashMap<>();
+            int position = lengthEnd;
+            while (data[position] == GS) {
+                int tagStart = position + 1;
+                int tagEnd = tagStart;
+                while (data[tagEnd] != ':') {
+                    tagEnd++;
+                }
+                String tag = new String(data, tagStart, tagEnd - tagStart, StandardCharsets.US_ASCII);
+
+                int valueEnd = tagEnd + 1;
+                if (tag.endsWith(".999")) {
+                    // image data is last and may hold separators, it runs to the FS
+                    valueEnd = end - 1;
+                } else {
+                    while (data[valueEnd] != GS && data[valueEnd] != FS) {
+                        valueEnd++;
+                    }
+                }
+
+                fields.put(tag, Arrays.copyOfRange(data, tagEnd + 1, valueEnd));
+                position = valueEnd;
+            }
+            assertEquals("fields of record " + recordType + " must fill LEN", end - 1, position);
+
+            offset = end;
+            return fields;
+        }
+
+        ByteBuffer readType4() {
+            int length = ByteBuffer.wrap(data, offset, 4).getInt();
+            assertTrue("Type-4 runs past the file", offset + length <= data.length);
+
+            ByteBuffer record = ByteBuffer.wrap(Arrays.copyOfRange(data, offset, offset + length));
+            for (int i = 7; i < 12; i++) {
+                assertEquals((byte) 0xFF, record.get(i));
+            }
+            offset += length;
+            return record;
+        }
+    }
+}
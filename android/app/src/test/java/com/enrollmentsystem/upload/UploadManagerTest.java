@@ -0,0 +1,238 @@
+package com.enrollmentsystem.upload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.enrollmentsystem.biometricstore.BiometricRecord;
+import com.enrollmentsystem.biometricstore.BiometricStore;
+import com.enrollmentsystem.biometricstore.StoredCapture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class UploadManagerTest {
+
+    private static final long CAPTURE_ID = 7;
+    private static final long RECORD_ID = 11;
+    private static final byte[] RECORD_DATA = "0123456789".getBytes(StandardCharsets.US_ASCII);
+    private static final String RECORD_SHA256 = "5d8c3c5f";
+    private static final String AUTH_TOKEN = "s3cr3t-bearer";
+
+    private final MockWebServer server = new MockWebServer();
+    private Context context;
+    private UploadJobStore jobStore;
+    private BiometricStore store;
+    private ScheduledExecutorService executor;
+    private UploadManager manager;
+
+    @Before
+    public void setUp() throws IOException {
+        server.start();
+
+        context = ApplicationProvider.getApplicationContext();
+        jobStore = new UploadJobStore(context);
+        store = mock(BiometricStore.class);
+        when(store.getDataKey()).thenReturn(new SecretKeySpec(new byte[32], "AES"));
+
+        // runs are driven by the test, the mock stands in for the one the executor would be running
+        ScheduledFuture<?> running = mock(ScheduledFuture.class);
+        when(running.getDelay(any(TimeUnit.class))).thenReturn(-1L);
+        executor = mock(ScheduledExecutorService.class);
+        doReturn(running).when(executor).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+
+        manager = new UploadManager(context, jobStore, store, executor);
+        manager.configure(server.url("/uploads").toString(), AUTH_TOKEN);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        jobStore.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void resumedJobSendsOnlyTheBytesTheServerLacks() throws Exception {
+        storeCapture();
+        UploadJob job = manager.enqueue("subject", new long[]{CAPTURE_ID});
+        job.attempts = 1;
+        jobStore.update(job);
+
+        server.enqueue(json("{\"records\": {\"" + RECORD_ID + "\": 4}}"));
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(json("{\"jobs\": {\"" + job.jobKey + "\": {\"complete\": true}}}"));
+
+        manager.processQueue();
+
+        RecordedRequest progress = server.takeRequest();
+        assertEquals("GET", progress.getMethod());
+        assertEquals("/uploads/" + job.jobKey, progress.getPath());
+        assertEquals("/uploads/blobs", server.takeRequest().getPath());
+
+        String body = server.takeRequest().getBody().readUtf8();
+        assertTrue(body.contains("X-Offset: 4\r\n"));
+        assertTrue(body.contains("\r\n\r\n456789\r\n"));
+
+        assertEquals(UploadJob.STATE_DONE, getJob().state);
+    }
+
+    @Test
+    public void knownBlobsAreNotSentAgain() throws Exception {
+        storeCapture();
+        UploadJob job = manager.enqueue("subject", new long[]{CAPTURE_ID});
+
+        server.enqueue(json("{\"present\": [\"" + RECORD_SHA256 + "\"]}"));
+        server.enqueue(json("{\"jobs\": {\"" + job.jobKey + "\": {\"complete\": true}}}"));
+
+        manager.processQueue();
+
+        assertEquals("/uploads/blobs", server.takeRequest().getPath());
+        String body = server.takeRequest().getBody().readUtf8();
+        assertTrue(body.contains(RECORD_SHA256));
+        assertFalse(body.contains("X-Record-Id"));
+        verify(store, never()).readRecord(anyLong());
+
+        assertEquals(UploadJob.STATE_DONE, getJob().state);
+    }
+
+    @Test
+    public void serverErrorRetriesWithBackoffAndReschedules() throws Exception {
+        storeCapture();
+        manager.enqueue("subject", new long[]{CAPTURE_ID});
+
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setResponseCode(503));
+
+        long startTime = System.currentTimeMillis();
+        manager.processQueue();
+
+        // the queue waits for the backoff instead of hammering the server
+        assertEquals(2, server.getRequestCount());
+
+        UploadJob job = getJob();
+        assertEquals(UploadJob.STATE_QUEUED, job.state);
+        assertEquals(1, job.attempts);
+        assertTrue(job.lastError.contains("503"));
+        assertTrue(job.nextAttemptAt >= startTime + 2500);
+        assertTrue(job.nextAttemptAt <= System.currentTimeMillis() + 5000);
+
+        verify(executor).schedule(any(Runnable.class), longThat(delay -> delay > 0), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void clientErrorFailsTheJob() throws Exception {
+        storeCapture();
+        manager.enqueue("subject", new long[]{CAPTURE_ID});
+
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setResponseCode(400));
+
+        manager.processQueue();
+
+        UploadJob job = getJob();
+        assertEquals(UploadJob.STATE_FAILED, job.state);
+        assertTrue(job.lastError.contains("400"));
+    }
+
+    @Test
+    public void jobWithDeletedCaptureFails() {
+        manager.enqueue("subject", new long[]{CAPTURE_ID});
+
+        manager.processQueue();
+
+        assertEquals(0, server.getRequestCount());
+        UploadJob job = getJob();
+        assertEquals(UploadJob.STATE_FAILED, job.state);
+        assertTrue(job.lastError.contains("deleted"));
+    }
+
+    @Test
+    public void authTokenIsStoredSealedAndOpenedAfterRestart() throws Exception {
+        SharedPreferences preferences = context.getSharedPreferences("upload_queue", Context.MODE_PRIVATE);
+        for (Object value : preferences.getAll().values()) {
+            assertFalse(String.valueOf(value).contains(AUTH_TOKEN));
+        }
+
+        // a new process only has what configure() stored
+        UploadManager restarted = new UploadManager(context, jobStore, store, executor);
+        storeCapture();
+        restarted.enqueue("subject", new long[]{CAPTURE_ID});
+
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setResponseCode(400));
+
+        restarted.processQueue();
+
+        assertEquals("Bearer " + AUTH_TOKEN, server.takeRequest().getHeader("Authorization"));
+    }
+
+    @Test
+    public void unreadableAuthTokenWaitsForConfigure() throws Exception {
+        BiometricStore resetStore = mock(BiometricStore.class);
+        byte[] otherKey = new byte[32];
+        otherKey[0] = 1;
+        when(resetStore.getDataKey()).thenReturn(new SecretKeySpec(otherKey, "AES"));
+
+        UploadManager restarted = new UploadManager(context, jobStore, resetStore, executor);
+        restarted.enqueue("subject", new long[]{CAPTURE_ID});
+
+        restarted.processQueue();
+
+        // sending without the token would fail the job on the 401
+        assertEquals(0, server.getRequestCount());
+        assertEquals(UploadJob.STATE_QUEUED, getJob().state);
+    }
+
+    private void storeCapture() throws IOException {
+        BiometricRecord record = BiometricRecord.of(BiometricRecord.KIND_FINGER, 2, "WSQ", RECORD_DATA, RECORD_SHA256);
+        record.id = RECORD_ID;
+        record.captureId = CAPTURE_ID;
+
+        StoredCapture capture = new StoredCapture();
+        capture.id = CAPTURE_ID;
+        capture.records.add(record);
+
+        when(store.getCapture(CAPTURE_ID)).thenReturn(capture);
+        when(store.readRecord(RECORD_ID)).thenReturn(record);
+    }
+
+    private UploadJob getJob() {
+        return jobStore.getJobs(1).get(0);
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+    }
+}
@@ -8,6 +8,7 @@ export const API_ENDPOINTS = {
   BIOMETRIC_ENROLLMENT: '/biometric/enrollment',
   FACE_ENROLLMENT: '/biometric/face',
   FINGERPRINT_ENROLLMENT: '/biometric/fingerprint',
+  BIOMETRIC_UPLOADS: '/biometric/uploads',
 
   DOCUMENT_UPLOAD: '/document/upload',
   DOCUMENT_VERIFY: '/document/verify',
@@ -0,0 +1,110 @@
+import {NativeModules, Platform} from 'react-native';
+
+const {BiometricStoreModule} = NativeModules;
+
+// Type definitions
+export type Modality = 'FINGER' | 'FACE';
+export type RecordKind =
+  | 'FINGER'
+  | 'FINGER_DISPLAY'
+  | 'FINGER_TEMPLATE'
+  | 'TEMPLATE_CONTAINER'
+  | 'SLAP'
+  | 'FACE'
+  | 'FACE_ORIGINAL'
+  | 'FACE_PORTAL';
+
+export interface StoredRecord {
+  recordId: number;
+  captureId: number;
+  kind: RecordKind;
+  position: number; // NIST position code for fingers, 0 for face
+  imageType?: string; // PNG, BMP, WSQ, JPG; absent for templates
+  quality: number;
+  nistQuality: number;
+  nist2Quality: number;
+  size: number;
+  sha256?: string; // hex SHA-256 of the data, absent on records stored before hashing
+}
+
+export interface StoredCapture {
+  captureId: number;
+  subjectId: string;
+  modality: Modality;
+  createdAt: number;
+  records: StoredRecord[];
+}
+
+export interface StoredRecordData extends StoredRecord {
+  dataBase64: string;
+}
+
+export interface ListCapturesOptions {
+  subjectId?: string;
+  modality?: Modality;
+  beforeId?: number; // nextBeforeId of the previous page
+  limit?: number; // Default: 20
+}
+
+export interface CapturePage {
+  captures: StoredCapture[];
+  nextBeforeId?: number; // absent on the last page
+}
+
+export interface NistExportOptions {
+  type?: string; // TOT, Default: 'CAR'
+  destinationAgency?: string; // DAI
+  originatingAgency?: string; // ORI
+  controlNumber?: string; // TCN, also the file name; Default: current time
+  domainName?: string; // e.g. 'EBTS'
+  domainVersion?: string;
+  priority?: number;
+  impressionType?: number; // Default: 24 (optical contactless plain)
+  type2Fields?: Record<string, string>; // keyed by field number, '18' or '2.018'
+}
+
+export interface NistExportResult {
+  path: string; // .eft file in the app cache
+  size: number;
+}
+
+class BiometricStoreService {
+  /**
+   * Page through stored captures, newest first. Records carry metadata only;
+   * fetch image bytes with readRecord when they are actually needed.
+   */
+  async listCaptures(options: ListCapturesOptions = {}): Promise<CapturePage> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Biometric store is only available on Android');
+    }
+    return await BiometricStoreModule.listCaptures(options);
+  }
+
+  async readRecord(recordId: number): Promise<StoredRecordData> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Biometric store is only available on Android');
+    }
+    return await BiometricStoreModule.readRecord(recordId);
+  }
+
+  async deleteCapture(captureId: number): Promise<boolean> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Biometric store is only available on Android');
+    }
+    return await BiometricStoreModule.deleteCapture(captureId);
+  }
+
+  /**
+   * Write the finger, slap and face images of the captures natively into one
+   * ANSI/NIST-ITL transaction file (Type-1/2/4/14/10)
+   */
+  async exportNist(captureIds: number[], options: NistExportOptions = {}): Promise<NistExportResult> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Biometric store is only available on Android');
+    }
+    return await BiometricStoreModule.exportNist(captureIds, options);
+  }
+}
+
+export const BiometricStore = new BiometricStoreService();
+export default BiometricStore;
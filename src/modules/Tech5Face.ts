@@ -1,4 +1,5 @@
 import {NativeModules, Platform} from 'react-native';
+import type {StoredCapture} from './BiometricStore';
 
 const {Tech5FaceModule} = NativeModules;
 
@@ -33,6 +34,16 @@ export interface FullFrontalCropConfig {
   segmentedImageBackgroundColor?: [number, number, number]; // RGB array
 }
 
+export type FaceRendition = 'image' | 'original' | 'portal';
+
+export interface FaceOutputPolicy {
+  // renditions to produce; others are never encoded, returned or stored. Default: all
+  renditions?: FaceRendition[];
+  portalFormat?: 'JPEG' | 'PNG'; // Default: 'JPEG'
+  portalQuality?: number; // 1-100, Default: 90
+  portalMaxWidth?: number; // downscale wider portal images; Default: 0 (keep size)
+}
+
 export interface CaptureConfig {
   license?: string;
   useBackCamera?: boolean;
@@ -51,6 +62,11 @@ export interface CaptureConfig {
   thresholds?: FaceThresholds;
   compressionConfig?: CompressionConfig;
   fullFrontalCropConfig?: FullFrontalCropConfig;
+  // false: results carry face data only, images stay native for storeLastCapture
+  returnImages?: boolean;
+  output?: FaceOutputPolicy;
+  // Client-chosen id to cancel or track this capture; generated natively when omitted
+  sessionId?: string;
 }
 
 export interface FaceData {
@@ -101,25 +117,25 @@ export interface FaceData {
   portalImageBase64?: string;
 }
 
+export type CaptureSessionState = 'pending' | 'running' | 'resolved' | 'cancelled';
+
+export interface CaptureSessionInfo {
+  sessionId: string;
+  state: CaptureSessionState;
+  active: boolean;
+}
+
 export interface CaptureResult {
   success: boolean;
   timedOut?: boolean;
   imageBase64?: string;
   originalImageBase64?: string;
   faceData?: FaceData;
+  sessionId?: string;
 }
 
 class Tech5FaceService {
-  /**
-   * Capture face using the Tech5 Face SDK
-   * @param config - Configuration options for face capture
-   * @returns Promise with capture result containing face image and quality metrics
-   */
-  async captureFace(config: CaptureConfig = {}): Promise<CaptureResult> {
-    if (Platform.OS !== 'android') {
-      throw new Error('Tech5 Face SDK is only available on Android');
-    }
-
+  private withDefaults(config: CaptureConfig): CaptureConfig {
     const defaultConfig: CaptureConfig = {
       license: '',
       useBackCamera: false,
@@ -157,7 +173,42 @@ class Tech5FaceService {
       },
     };
 
-    return await Tech5FaceModule.captureFace(mergedConfig);
+    return mergedConfig;
+  }
+
+  /**
+   * Capture face using the Tech5 Face SDK
+   * @param config - Configuration options for face capture, or the name of a profile
+   *                 registered with registerCaptureProfile
+   * @returns Promise with capture result containing face image and quality metrics
+   */
+  async captureFace(config: CaptureConfig | string = {}): Promise<CaptureResult> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Face SDK is only available on Android');
+    }
+
+    if (typeof config === 'string') {
+      return await Tech5FaceModule.captureFaceWithProfile(config);
+    }
+    return await Tech5FaceModule.captureFace(this.withDefaults(config));
+  }
+
+  /**
+   * Validate a capture config once and keep it natively under a name; capture with
+   * captureFace(name) afterwards without re-sending or re-parsing the config
+   */
+  async registerCaptureProfile(name: string, config: CaptureConfig = {}): Promise<boolean> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Face SDK is only available on Android');
+    }
+    return await Tech5FaceModule.registerCaptureProfile(name, this.withDefaults(config));
+  }
+
+  async removeCaptureProfile(name: string): Promise<boolean> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Face SDK is only available on Android');
+    }
+    return await Tech5FaceModule.removeCaptureProfile(name);
   }
 
   /**
@@ -221,6 +272,17 @@ class Tech5FaceService {
     });
   }
 
+  /**
+   * Write the images of the last capture to the native biometric store as BLOBs in one
+   * transaction; resolves with the stored record ids and metadata
+   */
+  async storeLastCapture(subjectId: string): Promise<StoredCapture> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Face SDK is only available on Android');
+    }
+    return await Tech5FaceModule.storeLastCapture(subjectId);
+  }
+
   /**
    * Initialize the SDK with license
    */
@@ -251,6 +313,36 @@ class Tech5FaceService {
     return await Tech5FaceModule.deregisterDevice();
   }
 
+  /**
+   * Cancel a pending, queued or running capture; its promise rejects with CANCELLED
+   * @returns false when no unfinished session has this id
+   */
+  async cancelCapture(sessionId: string): Promise<boolean> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Face SDK is only available on Android');
+    }
+    return await Tech5FaceModule.cancelCapture(sessionId);
+  }
+
+  async getCaptureSessions(): Promise<CaptureSessionInfo[]> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Face SDK is only available on Android');
+    }
+    return await Tech5FaceModule.getCaptureSessions();
+  }
+
+  /**
+   * What happens to a capture requested while another one is running: 'reject' (default)
+   * fails it with BUSY, 'queue' starts it once the running one settles. Finger and face
+   * captures share one camera, so they share the sessions and this policy
+   */
+  async setOverlapPolicy(policy: 'reject' | 'queue'): Promise<boolean> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Face SDK is only available on Android');
+    }
+    return await Tech5FaceModule.setOverlapPolicy(policy);
+  }
+
   /**
    * Check if camera permission is granted
    */
@@ -1,4 +1,5 @@
 import {NativeModules, Platform} from 'react-native';
+import type {NistExportOptions, NistExportResult, StoredCapture} from './BiometricStore';
 
 const {Tech5FingerModule} = NativeModules;
 
@@ -22,7 +23,8 @@ export type SegmentationMode =
   | 'RIGHT_RING_LITTLE'
   | 'LEFT_RING_LITTLE';
 
-export type CaptureSpeed = 'low' | 'normal' | 'high';
+// 'auto' uses the speed picked by calibrateDevice, normal until the device is calibrated
+export type CaptureSpeed = 'low' | 'normal' | 'high' | 'auto';
 export type CaptureMode = 'self' | 'operator';
 export type ImageType = 'PNG' | 'BMP' | 'WSQ';
 
@@ -33,6 +35,8 @@ export interface ImageConfiguration {
   croppedImageHeight?: number;
   compressionRatio?: number;
   paddingColor?: number;
+  // WSQ only: search compression ratios upwards from compressionRatio until the image fits
+  targetSizeInBytes?: number;
 }
 
 export interface CaptureConfig {
@@ -54,6 +58,13 @@ export interface CaptureConfig {
   slapImageConfig?: ImageConfiguration;
   timeoutInSecs?: number;
   showEllipses?: boolean;
+  // false: results carry metadata and templates only, images stay native for storeLastCapture
+  returnImages?: boolean;
+  // Client-chosen id to cancel or track this capture; generated natively when omitted
+  sessionId?: string;
+  // Identifies the subject so a capture killed by the OS resumes only for the same subject;
+  // defaults to sessionId, without either the capture always starts over
+  subjectId?: string;
 }
 
 export interface FingerData {
@@ -63,15 +74,19 @@ export interface FingerData {
   quality: number;
   minutiaesNumber: number;
   primaryImageType: ImageType;
-  primaryImageBase64: string;
+  primaryImageBase64?: string; // absent when returnImages is false
+  primaryImageSize: number;
+  compressionRatio?: number; // WSQ only: ratio actually used for primaryImage
   displayImageBase64?: string;
   displayImageType?: ImageType;
+  // Quality, template or image work was cancelled or missed its per-finger deadline
+  incomplete?: boolean;
 }
 
 export interface SlapImage {
   position: number;
   imageType: ImageType;
-  imageBase64: string;
+  imageBase64?: string; // absent when returnImages is false
 }
 
 export interface LivenessScore {
@@ -79,11 +94,50 @@ export interface LivenessScore {
   score: number;
 }
 
+export type CaptureSessionState = 'pending' | 'running' | 'resolved' | 'cancelled';
+
+export interface CaptureSessionInfo {
+  sessionId: string;
+  state: CaptureSessionState;
+  active: boolean;
+}
+
 export interface CaptureResult {
   success: boolean;
   fingers?: FingerData[];
   slapImages?: SlapImage[];
   livenessScores?: LivenessScore[];
+  // Compact container of all NIST minutiae templates, only when getQuality is enabled:
+  // "T5FT", version, count, then per finger
+  // position, nistQuality, nist2Quality, quality (1 byte each), minutiae (u16), length (u32), template
+  templatesBase64?: string;
+  // Set when the capture timed out: completed positions plus the best frame of the
+  // position in progress (inProgressPosition) are returned with success=false
+  timedOut?: boolean;
+  partial?: boolean;
+  inProgressPosition?: number;
+  // Some fingers or slaps were left unfinished, see FingerData.incomplete
+  incomplete?: boolean;
+  // Peak bytes held in raw, segmented and encoded images while capturing, and peak Java heap use
+  peakMemoryBytes?: number;
+  peakHeapBytes?: number;
+  sessionId?: string;
+}
+
+export interface DeviceProfile {
+  captureSpeed: 'low' | 'normal' | 'high';
+  analysisWidth: number;
+  analysisHeight: number;
+  poolSize: number;
+  // serial cost of one finger per stage
+  qualityMs: number;
+  templateMs: number;
+  encodeMs: number;
+  throughput: {threads: number; fingersPerSecond: number}[];
+  cores: number;
+  calibratedAt: number;
+  device: string;
+  sdkVersion: string;
 }
 
 // Finger position constants (NIST codes)
@@ -122,16 +176,7 @@ export const FingerPositionNames: Record<number, string> = {
 };
 
 class Tech5FingerService {
-  /**
-   * Capture fingerprints using the Tech5 SDK
-   * @param config - Configuration options for finger capture
-   * @returns Promise with capture result containing finger images and quality scores
-   */
-  async captureFingers(config: CaptureConfig = {}): Promise<CaptureResult> {
-    if (Platform.OS !== 'android') {
-      throw new Error('Tech5 Finger SDK is only available on Android');
-    }
-
+  private withDefaults(config: CaptureConfig): CaptureConfig {
     const defaultConfig: CaptureConfig = {
       license: '',
       livenessCheck: false,
@@ -159,8 +204,48 @@ class Tech5FingerService {
       showEllipses: true,
     };
 
-    const mergedConfig = {...defaultConfig, ...config};
-    return await Tech5FingerModule.captureFingers(mergedConfig);
+    return {...defaultConfig, ...config};
+  }
+
+  /**
+   * Capture fingerprints using the Tech5 SDK
+   * @param config - Configuration options for finger capture, or the name of a profile
+   *                 registered with registerCaptureProfile
+   * @returns Promise with capture result containing finger images and quality scores
+   *
+   * Resuming after process death: completed positions are checkpointed on the device, encrypted
+   * with the biometric vault key. If the OS kills the app mid-capture, the pending promise is lost
+   * and the capture screen closes without a result when the app is restored. Call captureFingers
+   * again with the same subjectId and segmentationModes within 10 minutes; it resumes after the
+   * last completed position. Any other capture discards the checkpoint.
+   */
+  async captureFingers(config: CaptureConfig | string = {}): Promise<CaptureResult> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Finger SDK is only available on Android');
+    }
+
+    if (typeof config === 'string') {
+      return await Tech5FingerModule.captureFingersWithProfile(config);
+    }
+    return await Tech5FingerModule.captureFingers(this.withDefaults(config));
+  }
+
+  /**
+   * Validate a capture config once and keep it natively under a name; capture with
+   * captureFingers(name) afterwards without re-sending or re-parsing the config
+   */
+  async registerCaptureProfile(name: string, config: CaptureConfig = {}): Promise<boolean> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Finger SDK is only available on Android');
+    }
+    return await Tech5FingerModule.registerCaptureProfile(name, this.withDefaults(config));
+  }
+
+  async removeCaptureProfile(name: string): Promise<boolean> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Finger SDK is only available on Android');
+    }
+    return await Tech5FingerModule.removeCaptureProfile(name);
   }
 
   /**
@@ -230,6 +315,144 @@ class Tech5FingerService {
     return await Tech5FingerModule.deregisterDevice();
   }
 
+  /**
+   * Start a capture session: every following capture is merged into it, keeping the
+   * best quality sample per finger across attempts
+   */
+  async startCaptureSession(): Promise<boolean> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Finger SDK is only available on Android');
+    }
+    return await Tech5FingerModule.startCaptureSession();
+  }
+
+  /**
+   * Recapture only the given NIST positions (single fingers 1-10, slaps 13/14, thumbs 15)
+   * with the last capture config. Resolves with the merged best-of-N session result.
+   */
+  async recaptureFingers(positions: number[]): Promise<CaptureResult> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Finger SDK is only available on Android');
+    }
+    return await Tech5FingerModule.recaptureFingers(positions);
+  }
+
+  async endCaptureSession(): Promise<boolean> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Finger SDK is only available on Android');
+    }
+    return await Tech5FingerModule.endCaptureSession();
+  }
+
+  /**
+   * Open a capture surface that stays alive between subjects, keeping the SDK and camera
+   * initialized. Resolves once the surface is launched; capture with nextKioskSubject.
+   * Rejects with BUSY while a capture is running, and captureFingers/recaptureFingers reject
+   * with BUSY until endKioskMode. If the surface fails with no subject in progress it closes,
+   * and the next nextKioskSubject rejects with NO_KIOSK.
+   */
+  async startKioskMode(config: CaptureConfig = {}): Promise<boolean> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Finger SDK is only available on Android');
+    }
+    return await Tech5FingerModule.startKioskMode(config);
+  }
+
+  /**
+   * Capture the next subject on the kiosk surface with a config or registered profile name
+   * (segmentation modes, image configs, qualities, timeout); resolves with that subject's result.
+   */
+  async nextKioskSubject(config: CaptureConfig | string = {}): Promise<CaptureResult> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Finger SDK is only available on Android');
+    }
+
+    if (typeof config === 'string') {
+      return await Tech5FingerModule.nextKioskSubjectWithProfile(config);
+    }
+    return await Tech5FingerModule.nextKioskSubject(config);
+  }
+
+  async endKioskMode(): Promise<boolean> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Finger SDK is only available on Android');
+    }
+    return await Tech5FingerModule.endKioskMode();
+  }
+
+  /**
+   * Write the images and templates of the last capture to the native biometric store as
+   * BLOBs in one transaction; resolves with the stored record ids and metadata
+   */
+  async storeLastCapture(subjectId: string): Promise<StoredCapture> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Finger SDK is only available on Android');
+    }
+    return await Tech5FingerModule.storeLastCapture(subjectId);
+  }
+
+  /**
+   * Write the finger and slap images of the last capture into an ANSI/NIST-ITL
+   * transaction file without passing them through JS
+   */
+  async exportLastCaptureNist(options: NistExportOptions = {}): Promise<NistExportResult> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Finger SDK is only available on Android');
+    }
+    return await Tech5FingerModule.exportLastCaptureNist(options);
+  }
+
+  /**
+   * Cancel a pending, queued or running capture; its promise rejects with CANCELLED
+   * @returns false when no unfinished session has this id
+   */
+  async cancelCapture(sessionId: string): Promise<boolean> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Finger SDK is only available on Android');
+    }
+    return await Tech5FingerModule.cancelCapture(sessionId);
+  }
+
+  async getCaptureSessions(): Promise<CaptureSessionInfo[]> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Finger SDK is only available on Android');
+    }
+    return await Tech5FingerModule.getCaptureSessions();
+  }
+
+  /**
+   * What happens to a capture requested while another one is running: 'reject' (default)
+   * fails it with BUSY, 'queue' starts it once the running one settles. Finger and face
+   * captures share one camera, so they share the sessions and this policy
+   */
+  async setOverlapPolicy(policy: 'reject' | 'queue'): Promise<boolean> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Finger SDK is only available on Android');
+    }
+    return await Tech5FingerModule.setOverlapPolicy(policy);
+  }
+
+  /**
+   * Benchmark this device (takes a few seconds) and store the capture parameters picked from it.
+   * Rejects with BUSY while a capture or kiosk mode is running.
+   */
+  async calibrateDevice(license: string): Promise<DeviceProfile> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Finger SDK is only available on Android');
+    }
+    return await Tech5FingerModule.calibrateDevice(license);
+  }
+
+  /**
+   * @returns null when the device hasn't been calibrated for its current OS build and SDK version
+   */
+  async getDeviceProfile(): Promise<DeviceProfile | null> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Tech5 Finger SDK is only available on Android');
+    }
+    return await Tech5FingerModule.getDeviceProfile();
+  }
+
   /**
    * Check if camera permission is granted
    */
@@ -0,0 +1,74 @@
+import {NativeModules, Platform} from 'react-native';
+
+const {UploadQueueModule} = NativeModules;
+
+// Type definitions
+export type UploadJobState = 'QUEUED' | 'DONE' | 'FAILED';
+
+export interface UploadQueueConfig {
+  endpoint: string; // e.g. base URL + /biometric/uploads
+  authToken?: string;
+}
+
+export interface UploadJob {
+  jobId: number;
+  jobKey: string; // idempotency key sent to the server
+  subjectId: string;
+  captureIds: number[];
+  state: UploadJobState;
+  attempts: number;
+  nextAttemptAt: number;
+  lastError?: string;
+  createdAt: number;
+}
+
+class UploadQueueService {
+  /**
+   * Set the upload endpoint; persisted natively so queued jobs keep uploading after restarts
+   */
+  async configure(config: UploadQueueConfig): Promise<boolean> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Upload queue is only available on Android');
+    }
+    return await UploadQueueModule.configure(config);
+  }
+
+  /**
+   * Queue captures stored with storeLastCapture for background upload. Images are read
+   * natively from the biometric store, batched, compressed where it helps and resumed
+   * after interruptions.
+   */
+  async enqueueEnrollment(subjectId: string, captureIds: number[]): Promise<UploadJob> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Upload queue is only available on Android');
+    }
+    return await UploadQueueModule.enqueueEnrollment(subjectId, captureIds);
+  }
+
+  async getJobs(options: {limit?: number} = {}): Promise<UploadJob[]> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Upload queue is only available on Android');
+    }
+    return await UploadQueueModule.getJobs(options);
+  }
+
+  /**
+   * Re-queue failed jobs and retry every queued job now instead of after its backoff
+   */
+  async retryAll(): Promise<number> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Upload queue is only available on Android');
+    }
+    return await UploadQueueModule.retryAll();
+  }
+
+  async clearCompleted(): Promise<number> {
+    if (Platform.OS !== 'android') {
+      throw new Error('Upload queue is only available on Android');
+    }
+    return await UploadQueueModule.clearCompleted();
+  }
+}
+
+export const UploadQueue = new UploadQueueService();
+export default UploadQueue;
@@ -1,10 +1,12 @@
-import { apiService } from './api.service'
+import { apiService, getApiBaseUrlFromRedux } from './api.service'
 import { API_ENDPOINTS } from '../config/api.config'
+import UploadQueue, { UploadJob } from '../modules/UploadQueue'
 
 export interface BiometricEnrollmentRequest {
   userId?: string
   faceImageBase64?: string
   fingerprintData?: string
+  fingerprintTemplates?: string
   enrollmentType: 'face' | 'fingerprint' | 'both'
   metadata?: {
     deviceId?: string
@@ -26,6 +28,20 @@ export interface BiometricEnrollmentResponse {
 }
 
 export const biometricService = {
+  // Hands captures saved with storeLastCapture to the native upload queue; nothing but ids
+  // crosses the bridge and the upload survives restarts and network loss
+  queueBiometricEnrollment: async (
+    subjectId: string,
+    captureIds: number[],
+    authToken?: string
+  ): Promise<UploadJob> => {
+    await UploadQueue.configure({
+      endpoint: getApiBaseUrlFromRedux() + API_ENDPOINTS.BIOMETRIC_UPLOADS,
+      authToken,
+    })
+    return UploadQueue.enqueueEnrollment(subjectId, captureIds)
+  },
+
   submitBiometricEnrollment: async (
     data: BiometricEnrollmentRequest
   ): Promise<BiometricEnrollmentResponse> => {